@@ -20,6 +20,9 @@
  */
 package paulscode.android.mupen64plusae;
 
+import android.content.ComponentCallbacks2;
+
+import paulscode.android.mupen64plusae.task.CoverArtLoader;
 import paulscode.android.mupen64plusae.util.CrashHandler;
 
 public class AppMupen64Plus extends android.app.Application
@@ -32,4 +35,14 @@ public class AppMupen64Plus extends android.app.Application
         // Initialize local crash log system
         CrashHandler.init( this );
     }
+    
+    @Override
+    public void onTrimMemory( int level )
+    {
+        super.onTrimMemory( level );
+        
+        // Decoded cover art can always be read back from the disk cache
+        if( level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN )
+            CoverArtLoader.getInstance( this ).clearMemory();
+    }
 }
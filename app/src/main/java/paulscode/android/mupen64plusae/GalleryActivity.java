@@ -33,6 +33,7 @@ import android.support.v4.view.MenuItemCompat.OnActionExpandListener;
 import android.support.v4.widget.DrawerLayout;
 import android.support.v7.app.ActionBarDrawerToggle;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.SearchView;
@@ -50,14 +51,17 @@ import android.view.inputmethod.InputMethodManager;
 import org.mupen64plusae.v3.alpha.R;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.List;
-import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
@@ -69,14 +73,14 @@ import paulscode.android.mupen64plusae.dialog.Popups;
 import paulscode.android.mupen64plusae.jni.CoreInterface;
 import paulscode.android.mupen64plusae.persistent.AppData;
 import paulscode.android.mupen64plusae.persistent.ConfigFile;
-import paulscode.android.mupen64plusae.persistent.ConfigFile.ConfigSection;
 import paulscode.android.mupen64plusae.persistent.GamePrefs;
 import paulscode.android.mupen64plusae.persistent.GlobalPrefs;
 import paulscode.android.mupen64plusae.task.ComputeMd5Task;
-import paulscode.android.mupen64plusae.util.CountryCode;
 import paulscode.android.mupen64plusae.util.FileUtil;
+import paulscode.android.mupen64plusae.util.LaunchProfiler;
 import paulscode.android.mupen64plusae.util.Notifier;
 import paulscode.android.mupen64plusae.util.RomDatabase;
+import paulscode.android.mupen64plusae.util.RomDigest;
 import paulscode.android.mupen64plusae.util.RomHeader;
 
 public class GalleryActivity extends AppCompatActivity implements GameSidebarActionHandler, PromptConfirmListener
@@ -116,8 +120,17 @@ public class GalleryActivity extends AppCompatActivity implements GameSidebarAct
     public int galleryColumns = 2;
     public float galleryAspectRatio;
 
+    // Gallery contents, built on the gallery thread
+    private final ExecutorService mGalleryExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicInteger mGalleryGeneration = new AtomicInteger();
+    private GalleryModel mGalleryModel = null;
+    private List<GalleryItem> mDeliveredItems = new ArrayList<GalleryItem>();
+    private GalleryItem.Adapter mGalleryAdapter;
+    private GridLayoutManager mGridLayoutManager;
+    private String mPendingSidebarMd5 = null;
+
     // Misc.
-    private List<GalleryItem> mGalleryItems = null;
+    private List<GalleryItem> mGalleryItems = new ArrayList<GalleryItem>();
     private GalleryItem mSelectedItem = null;
     private boolean mDragging = false;
 
@@ -192,6 +205,7 @@ public class GalleryActivity extends AppCompatActivity implements GameSidebarAct
         // Lay out the content
         setContentView( R.layout.gallery_activity );
         mGridView = (RecyclerView) findViewById( R.id.gridview );
+        setupGrid();
         refreshGrid();
 
         // Add the toolbar to the activity (which supports the fancy menu/arrow animation)
@@ -302,19 +316,9 @@ public class GalleryActivity extends AppCompatActivity implements GameSidebarAct
         if( savedInstanceState != null )
         {
             mSelectedItem = null;
-            final String md5 = savedInstanceState.getString( STATE_SIDEBAR );
-            if( md5 != null )
-            {
-                // Repopulate the game sidebar
-                for( final GalleryItem item : mGalleryItems )
-                {
-                    if( md5.equals( item.md5 ) )
-                    {
-                        onGalleryItemClick( item );
-                        break;
-                    }
-                }
-            }
+
+            // The game sidebar is repopulated once the gallery is loaded
+            mPendingSidebarMd5 = savedInstanceState.getString( STATE_SIDEBAR );
 
             final String query = savedInstanceState.getString( STATE_QUERY );
             if( query != null )
@@ -366,6 +370,20 @@ public class GalleryActivity extends AppCompatActivity implements GameSidebarAct
             mGameSidebar.setVisibility( View.GONE );
             mDrawerList.setVisibility( View.VISIBLE );
         }
+
+        // Get the core ready while the user picks a game
+        if(mGlobalPrefs.isLibraryPreloadEnabled)
+        {
+            CoreInterface.preloadLibraries( mAppData );
+        }
+    }
+
+    @Override
+    protected void onDestroy()
+    {
+        super.onDestroy();
+
+        mGalleryExecutor.shutdownNow();
     }
 
     @Override
@@ -416,7 +434,7 @@ public class GalleryActivity extends AppCompatActivity implements GameSidebarAct
             public boolean onMenuItemActionCollapse( MenuItem item )
             {
                 mSearchQuery = "";
-                refreshGrid();
+                filterGrid();
                 return true;
             }
 
@@ -441,7 +459,7 @@ public class GalleryActivity extends AppCompatActivity implements GameSidebarAct
             public boolean onQueryTextChange( String query )
             {
                 mSearchQuery = query;
-                refreshGrid();
+                filterGrid();
                 return false;
             }
         } );
@@ -669,9 +687,12 @@ public class GalleryActivity extends AppCompatActivity implements GameSidebarAct
             }
             else if(id == REMOVE_FROM_LIBRARY_DIALOG_ID)
             {
-                final ConfigFile config = new ConfigFile( mGlobalPrefs.romInfoCache_cfg );
-                config.remove(mSelectedItem.md5);
-                config.save();
+                synchronized( GalleryModel.sRomInfoCacheLock )
+                {
+                    final ConfigFile config = new ConfigFile( mGlobalPrefs.romInfoCache_cfg );
+                    config.remove(mSelectedItem.md5);
+                    config.save();
+                }
                 mDrawerLayout.closeDrawer( GravityCompat.START, false );
                 refreshGrid();
             }
@@ -688,8 +709,7 @@ public class GalleryActivity extends AppCompatActivity implements GameSidebarAct
         mGameSidebar.scrollTo(0, 0);
 
         // Set the cover art in the sidebar
-        item.loadBitmap();
-        mGameSidebar.setImage(item.artBitmap);
+        mGameSidebar.setImage(item.artPath);
 
         // Set the game title
         mGameSidebar.setTitle(item.goodName);
@@ -816,163 +836,103 @@ public class GalleryActivity extends AppCompatActivity implements GameSidebarAct
         mCacheRomInfoFragment.refreshRoms(startDir, searchZips, downloadArt, clearGallery, searchSubdirectories, mAppData, mGlobalPrefs);
     }
 
+    /**
+     * Reloads the user preferences and the game library, then updates the grid.
+     */
     void refreshGrid( ){
 
         //Reload global prefs
         mAppData = new AppData( this );
         mGlobalPrefs = new GlobalPrefs( this, mAppData );
 
-        final ConfigFile config = new ConfigFile( mGlobalPrefs.romInfoCache_cfg );
+        updateGridLayout();
+        updateGallery( true );
+    }
 
-        final String query = mSearchQuery.toLowerCase( Locale.US );
-        String[] searches = null;
-        if( query.length() > 0 )
-            searches = query.split( " " );
+    /**
+     * Updates the grid for the current search query, without reloading the library.
+     */
+    private void filterGrid()
+    {
+        updateGallery( false );
+    }
 
-        List<GalleryItem> items = new ArrayList<GalleryItem>();
-        List<GalleryItem> recentItems = null;
-        int currentTime = 0;
-        if( mGlobalPrefs.isRecentShown )
-        {
-            recentItems = new ArrayList<GalleryItem>();
-            currentTime = (int) ( new Date().getTime() / 1000 );
-        }
+    /**
+     * Builds the list of items on the gallery thread, then applies only the differences with the
+     * displayed list on the UI thread.
+     *
+     * @param reload True to read the library again from the ROM info cache.
+     */
+    private void updateGallery( final boolean reload )
+    {
+        final int generation = mGalleryGeneration.incrementAndGet();
+        final GlobalPrefs globalPrefs = mGlobalPrefs;
+        final String query = mSearchQuery;
 
-        for( final String md5 : config.keySet() )
+        mGalleryExecutor.execute( new Runnable()
         {
-            if( !ConfigFile.SECTIONLESS_NAME.equals( md5 ) )
+            @Override
+            public void run()
             {
-                final ConfigSection section = config.get( md5 );
-                String goodName;
-                if( mGlobalPrefs.isFullNameShown || !section.keySet().contains( "baseName" ) )
-                    goodName = section.get( "goodName" );
-                else
-                    goodName = section.get( "baseName" );
+                if( reload || mGalleryModel == null )
+                    mGalleryModel = GalleryModel.load( GalleryActivity.this, globalPrefs, mGalleryModel );
 
-                boolean matchesSearch = true;
-                if( searches != null && searches.length > 0 )
-                {
-                    // Make sure the ROM name contains every token in the query
-                    final String lowerName = goodName.toLowerCase( Locale.US );
-                    for( final String search : searches )
-                    {
-                        if( search.length() > 0 && !lowerName.contains( search ) )
-                        {
-                            matchesSearch = false;
-                            break;
-                        }
-                    }
-                }
+                // Don't bother filtering if another update is already queued
+                if( generation != mGalleryGeneration.get() )
+                    return;
 
-                if( matchesSearch )
+                final List<GalleryItem> items = mGalleryModel.filter( query, globalPrefs.isRecentShown );
+                final DiffUtil.DiffResult diff = DiffUtil.calculateDiff(
+                        new GalleryItem.DiffCallback( mDeliveredItems, items ) );
+                mDeliveredItems = items;
+
+                // Results are applied in order, so each diff starts from the previous one
+                runOnUiThread( new Runnable()
                 {
-                    final String romPath = config.get( md5, "romPath" );
-                    String zipPath = config.get( md5, "zipPath" );
-                    final String artFullPath = config.get( md5, "artPath" );
-
-                    //We get the file name to support the old gallery format
-                    String artPath = !TextUtils.isEmpty(artFullPath) ? new File(artFullPath).getName() : null;
-
-                    if(artPath != null)
-                        artPath = mGlobalPrefs.coverArtDir + "/" + artPath;
-                    
-                    String crc = config.get( md5, "crc" );
-                    String headerName = config.get( md5, "headerName" );
-                    final String countryCodeString = config.get( md5, "countryCode" );
-                    CountryCode countryCode = CountryCode.UNKNOWN;
-
-                    //We can't really do much if the rompath is null
-                    if (romPath != null)
+                    @Override
+                    public void run()
                     {
-                        if (countryCodeString != null)
-                        {
-                            countryCode = CountryCode.getCountryCode(Byte.parseByte(countryCodeString));
-                        }
-                        final String lastPlayedStr = config.get(md5, "lastPlayed");
-                        String extracted = config.get(md5, "extracted");
-
-                        if (crc == null || headerName == null || countryCodeString == null
-                            || extracted == null)
-                        {
-                            final File file = new File(romPath);
-                            final RomHeader header = new RomHeader(file);
-
-                            crc = header.crc;
-                            headerName = header.name;
-                            countryCode = header.countryCode;
-                            extracted = "false";
-
-                            config.put(md5, "crc", crc);
-                            config.put(md5, "headerName", headerName);
-                            config.put(md5, "countryCode", Byte.toString(countryCode.getValue()));
-                            config.put(md5, "extracted", extracted);
-                        }
-
-                        int lastPlayed = 0;
-                        if (lastPlayedStr != null)
-                            lastPlayed = Integer.parseInt(lastPlayedStr);
-
-                        final GalleryItem item = new GalleryItem(this, md5, crc, headerName, countryCode, goodName, romPath,
-                            zipPath, extracted.equals("true"), artPath, lastPlayed, mGlobalPrefs.coverArtScale);
-                        items.add(item);
-                        boolean isNotOld = currentTime - item.lastPlayed <= 60 * 60 * 24 * 7; // 7 days
-                        if (mGlobalPrefs.isRecentShown && isNotOld )
-                        {
-                            recentItems.add(item);
-                        }
-
-                        // Delete any old files that already exist inside a zip
-                        // file
-                        if (!isNotOld && !TextUtils.isEmpty(zipPath) && extracted.equals("true"))
-                        {
-                            final File deleteFile = new File(romPath);
-
-                            if(!deleteFile.isDirectory())
-                            {
-                                deleteFile.delete();
-                            }
-
-                            config.put(md5, "extracted", "false");
-                        }
+                        applyGalleryItems( items, diff );
                     }
-                }
+                } );
             }
-        }
-
-        config.save();
+        } );
+    }
 
-        Collections.sort( items, new GalleryItem.NameComparator() );
-        if( recentItems != null )
-            Collections.sort( recentItems, new GalleryItem.RecentlyPlayedComparator() );
+    private void applyGalleryItems( List<GalleryItem> items, DiffUtil.DiffResult diff )
+    {
+        mGalleryItems = items;
+        mGalleryAdapter.setItems( items, diff );
 
-        List<GalleryItem> combinedItems = items;
-        if( mGlobalPrefs.isRecentShown && recentItems.size() > 0 )
+        if( mPendingSidebarMd5 != null )
         {
-            combinedItems = new ArrayList<GalleryItem>();
-
-            combinedItems
-                    .add( new GalleryItem( this, getString( R.string.galleryRecentlyPlayed ) ) );
-            combinedItems.addAll( recentItems );
-
-            combinedItems.add( new GalleryItem( this, getString( R.string.galleryLibrary ) ) );
-            combinedItems.addAll( items );
-
-            items = combinedItems;
+            // Repopulate the game sidebar
+            for( final GalleryItem item : items )
+            {
+                if( mPendingSidebarMd5.equals( item.md5 ) )
+                {
+                    onGalleryItemClick( item );
+                    break;
+                }
+            }
+            mPendingSidebarMd5 = null;
         }
+    }
 
-        mGalleryItems = items;
-        mGridView.setAdapter( new GalleryItem.Adapter( this, items ) );
+    private void setupGrid()
+    {
+        mGalleryAdapter = new GalleryItem.Adapter( this, mGalleryItems );
+        mGridView.setAdapter( mGalleryAdapter );
 
         // Allow the headings to take up the entire width of the layout
-        final List<GalleryItem> finalItems = items;
-        final GridLayoutManager layoutManager = new GridLayoutManagerBetterScrolling( this, galleryColumns );
-        layoutManager.setSpanSizeLookup( new GridLayoutManager.SpanSizeLookup()
+        mGridLayoutManager = new GridLayoutManagerBetterScrolling( this, galleryColumns );
+        mGridLayoutManager.setSpanSizeLookup( new GridLayoutManager.SpanSizeLookup()
         {
             @Override
             public int getSpanSize( int position )
             {
                 // Headings will take up every span (column) in the grid
-                if( finalItems.get( position ).isHeading )
+                if( mGalleryAdapter.getItem( position ).isHeading )
                     return galleryColumns;
 
                 // Games will fit in a single column
@@ -980,7 +940,15 @@ public class GalleryActivity extends AppCompatActivity implements GameSidebarAct
             }
         } );
 
-        mGridView.setLayoutManager( layoutManager );
+        mGridView.setLayoutManager( mGridLayoutManager );
+        mGridView.setFocusable(false);
+        mGridView.setFocusableInTouchMode(false);
+    }
+
+    private void updateGridLayout()
+    {
+        final int oldWidth = galleryWidth;
+        final int oldColumns = galleryColumns;
 
         // Update the grid layout
         galleryMaxWidth = (int) (getResources().getDimension( R.dimen.galleryImageWidth ) * mGlobalPrefs.coverArtScale);
@@ -996,10 +964,12 @@ public class GalleryActivity extends AppCompatActivity implements GameSidebarAct
                 .ceil( width * 1.0 / ( galleryMaxWidth + galleryHalfSpacing * 2 ) );
         galleryWidth = width / galleryColumns - galleryHalfSpacing * 2;
 
-        layoutManager.setSpanCount( galleryColumns );
-        mGridView.getAdapter().notifyDataSetChanged();
-        mGridView.setFocusable(false);
-        mGridView.setFocusableInTouchMode(false);
+        // Cells only need to be laid out again if their size changed
+        if( galleryWidth != oldWidth || galleryColumns != oldColumns )
+        {
+            mGridLayoutManager.setSpanCount( galleryColumns );
+            mGalleryAdapter.notifyDataSetChanged();
+        }
     }
 
     public void launchGameActivity( String romPath, String zipPath, boolean extracted, String romMd5, String romCrc,
@@ -1019,20 +989,59 @@ public class GalleryActivity extends AppCompatActivity implements GameSidebarAct
 
         // Notify user that the game activity is starting
         Notifier.showToast( this, R.string.toast_launchingEmulator );
+        LaunchProfiler.start( romGoodName );
 
-        // Update the ConfigSection with the new value for lastPlayed
+        // Update the ConfigSection with the new value for lastPlayed, before the gallery can
+        // reload the cache and delete the extracted ROM as not recently played
+        final long begin = LaunchProfiler.begin();
         final String lastPlayed = Integer.toString( (int) ( new Date().getTime() / 1000 ) );
-        final ConfigFile config = new ConfigFile( mGlobalPrefs.romInfoCache_cfg );
-        if( config.get(romMd5) != null)
+        final String romInfoCachePath = mGlobalPrefs.romInfoCache_cfg;
+        final boolean isCached;
+        synchronized( GalleryModel.sRomInfoCacheLock )
         {
-            config.put( romMd5, "lastPlayed", lastPlayed );
-
-            if(!TextUtils.isEmpty(zipPath))
+            final ConfigFile config = new ConfigFile( romInfoCachePath );
+            isCached = config.get( romMd5 ) != null;
+            if( isCached )
             {
-                romPath = ExtractFileIfNeeded(romMd5, config, romPath, zipPath, extracted);
+                config.put( romMd5, "lastPlayed", lastPlayed );
+                config.save();
             }
+        }
+        LaunchProfiler.end( "Save ROM info cache", begin );
+
+        if( isCached )
+        {
+            // Extract the ROM while the game activity starts, the core waits for it
+            final String md5 = romMd5;
+            final String archivedRomPath = romPath;
+            final String finalZipPath = zipPath;
+            final boolean isZipped = !TextUtils.isEmpty(zipPath);
+            final boolean isExtracted = extracted;
+            if(isZipped)
+            {
+                romPath = getExtractedRomPath(romPath);
 
-            config.save();
+                CoreInterface.runStartupTask( "Extract ROM", new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if( ExtractFileIfNeeded( md5, archivedRomPath, finalZipPath, isExtracted ) )
+                        {
+                            // The gallery may have saved the cache meanwhile, read it again
+                            synchronized( GalleryModel.sRomInfoCacheLock )
+                            {
+                                final ConfigFile config = new ConfigFile( romInfoCachePath );
+                                if( config.get( md5 ) != null )
+                                {
+                                    config.put( md5, "extracted", "true" );
+                                    config.save();
+                                }
+                            }
+                        }
+                    }
+                } );
+            }
         }
 
         ///Drawer layout can be null if this method is called from onCreate
@@ -1108,11 +1117,20 @@ public class GalleryActivity extends AppCompatActivity implements GameSidebarAct
         return null;
     }
 
-    private String ExtractFileIfNeeded(String md5, ConfigFile config, String romPath, String zipPath, boolean isExtracted)
+    private String getExtractedRomPath(String romPath)
+    {
+        return mGlobalPrefs.unzippedRomsDir + "/" + new File(romPath).getName();
+    }
+
+    /**
+     * Extracts a zipped ROM, unless it already is.
+     *
+     * @return True if the ROM was extracted and should be marked so in the ROM info cache.
+     */
+    private boolean ExtractFileIfNeeded(String md5, String romPath, String zipPath, boolean isExtracted)
     {
         final File romFile = new File(romPath);
-        String romFileName = romFile.getName();
-        final File extractedRomFile = new File(mGlobalPrefs.unzippedRomsDir + "/" + romFileName);
+        final File extractedRomFile = new File(getExtractedRomPath(romPath));
         final RomHeader romHeader = new RomHeader( zipPath );
 
         final boolean isZip = romHeader.isZip;
@@ -1124,42 +1142,42 @@ public class GalleryActivity extends AppCompatActivity implements GameSidebarAct
             try
             {
                 final ZipFile zipFile = new ZipFile( zipPath );
-                final Enumeration<? extends ZipEntry> entries = zipFile.entries();
-                while( entries.hasMoreElements() && !lbFound)
+                try
                 {
-                    final ZipEntry zipEntry = entries.nextElement();
-
-                    try
+                    // Nothing is written until the entry of the ROM is found
+                    final ZipEntry romEntry = findEntry( zipFile, md5 );
+                    if( romEntry != null )
                     {
-                        final InputStream zipStream = zipFile.getInputStream( zipEntry );
-
                         final File destDir = new File( mGlobalPrefs.unzippedRomsDir );
-                        final String entryName = new File( zipEntry.getName() ).getName();
-                        File tempRomPath = new File( destDir, entryName );
-                        final boolean fileExisted = tempRomPath.exists();
+                        final File destFile = new File( destDir, new File( romEntry.getName() ).getName() );
 
-                        if( !fileExisted )
+                        if( destFile.exists() && md5.equals( ComputeMd5Task.computeMd5( destFile ) ) )
                         {
-                            tempRomPath = FileUtil.extractRomFile( destDir, zipEntry, zipStream );
+                            lbFound = true;
                         }
-
-                        final String computedMd5 = ComputeMd5Task.computeMd5( tempRomPath );
-                        lbFound = computedMd5 != null && computedMd5.equals(md5);
-
-                        //only delete the file if we extracted our selves
-                        if(!lbFound && !fileExisted && tempRomPath != null && !tempRomPath.isDirectory())
+                        else
                         {
-                            tempRomPath.delete();
-                        }
+                            final InputStream zipStream = zipFile.getInputStream( romEntry );
+                            try
+                            {
+                                lbFound = md5.equals( extractAndHash( romEntry, zipStream, destFile ) );
+                            }
+                            finally
+                            {
+                                zipStream.close();
+                            }
 
-                        zipStream.close();
-                    }
-                    catch( final IOException e )
-                    {
-                        Log.w( "CacheRomInfoTask", e );
+                            if( !lbFound )
+                            {
+                                destFile.delete();
+                            }
+                        }
                     }
                 }
-                zipFile.close();
+                finally
+                {
+                    zipFile.close();
+                }
             }
             catch( final IOException e)
             {
@@ -1170,13 +1188,77 @@ public class GalleryActivity extends AppCompatActivity implements GameSidebarAct
                 Log.w( "GalleryActivity", e );
             }
 
-            if(lbFound || romFile.exists())
+            return lbFound || romFile.exists();
+        }
+
+        return false;
+    }
+
+    /**
+     * Finds the entry of a zip file with the given MD5, hashing the entries as they are decompressed
+     * in memory.
+     *
+     * @return The entry, or null if none matches.
+     */
+    private static ZipEntry findEntry( ZipFile zipFile, String md5 )
+    {
+        final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while( entries.hasMoreElements() )
+        {
+            final ZipEntry zipEntry = entries.nextElement();
+            if( zipEntry.isDirectory() )
+                continue;
+
+            try
             {
-                config.put(md5, "extracted", "true");
+                final InputStream zipStream = zipFile.getInputStream( zipEntry );
+                try
+                {
+                    if( md5.equals( RomDigest.compute( Channels.newChannel( zipStream ) ).md5 ) )
+                        return zipEntry;
+                }
+                finally
+                {
+                    zipStream.close();
+                }
+            }
+            catch( final IOException e )
+            {
+                Log.w( "GalleryActivity", e );
             }
         }
+        return null;
+    }
+
+    /**
+     * Extracts a zip entry to a file while hashing it. The file is deleted unless the entry was
+     * extracted in full.
+     *
+     * @return The MD5 of the entry.
+     *
+     * @throws IOException if the entry could not be read or the file could not be written.
+     */
+    private static String extractAndHash( ZipEntry zipEntry, InputStream zipStream, File destFile ) throws IOException
+    {
+        FileUtil.makeDirs( destFile.getParent() );
 
-        return extractedRomFile.getPath();
+        boolean isComplete = false;
+        final FileOutputStream outStream = new FileOutputStream( destFile );
+        try
+        {
+            final String md5 = RomDigest.compute( Channels.newChannel( zipStream ), outStream.getChannel() ).md5;
+            outStream.close();
+            isComplete = zipEntry.getSize() < 0 || destFile.length() == zipEntry.getSize();
+            if( !isComplete )
+                throw new IOException( "Extracted " + destFile.length() + " of " + zipEntry.getSize() + " bytes to " + destFile );
+            return md5;
+        }
+        finally
+        {
+            outStream.close();
+            if( !isComplete )
+                destFile.delete();
+        }
     }
 
     @Override
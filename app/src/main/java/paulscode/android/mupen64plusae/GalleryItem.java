@@ -21,7 +21,7 @@
 package paulscode.android.mupen64plusae;
 
 import android.content.Context;
-import android.graphics.drawable.BitmapDrawable;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.text.TextUtils;
 import android.util.TypedValue;
@@ -40,7 +40,7 @@ import java.io.File;
 import java.util.Comparator;
 import java.util.List;
 
-import paulscode.android.mupen64plusae.task.LoadBitmapTask;
+import paulscode.android.mupen64plusae.task.CoverArtLoader;
 import paulscode.android.mupen64plusae.util.CountryCode;
 
 public class GalleryItem
@@ -57,7 +57,6 @@ public class GalleryItem
     public final boolean isExtracted;
     public final Context context;
     public final boolean isHeading;
-    public BitmapDrawable artBitmap;
     public final float scale;
     
     public GalleryItem( Context context, String md5, String crc, String headerName, CountryCode countryCode, String goodName, String romPath,
@@ -70,7 +69,6 @@ public class GalleryItem
         this.goodName = goodName;
         this.context = context;
         this.artPath = artPath;
-        this.artBitmap = null;
         this.lastPlayed = lastPlayed;
         this.isHeading = false;
         this.isExtracted = extracted;
@@ -90,7 +88,6 @@ public class GalleryItem
         this.headerName = null;
         this.countryCode = CountryCode.UNKNOWN;
         this.artPath = null;
-        this.artBitmap = null;
         this.lastPlayed = 0;
         this.isExtracted = false;
         this.romFile = null;
@@ -98,20 +95,6 @@ public class GalleryItem
         this.scale = 1.0f;
     }
     
-    public void loadBitmap()
-    {
-        if( artBitmap != null )
-            return;
-        
-        if( !TextUtils.isEmpty( artPath ) && new File( artPath ).exists() )
-            artBitmap = new BitmapDrawable( context.getResources(), artPath );
-    }
-    
-    public void clearBitmap()
-    {
-        artBitmap = null;
-    }
-    
     @Override
     public String toString()
     {
@@ -141,12 +124,72 @@ public class GalleryItem
         }
     }
     
+    /**
+     * Compares two lists of gallery items so that only the cells that changed are rebound.
+     */
+    public static class DiffCallback extends DiffUtil.Callback
+    {
+        private final List<GalleryItem> mOldItems;
+        private final List<GalleryItem> mNewItems;
+        
+        public DiffCallback( List<GalleryItem> oldItems, List<GalleryItem> newItems )
+        {
+            mOldItems = oldItems;
+            mNewItems = newItems;
+        }
+        
+        @Override
+        public int getOldListSize()
+        {
+            return mOldItems.size();
+        }
+        
+        @Override
+        public int getNewListSize()
+        {
+            return mNewItems.size();
+        }
+        
+        @Override
+        public boolean areItemsTheSame( int oldItemPosition, int newItemPosition )
+        {
+            final GalleryItem oldItem = mOldItems.get( oldItemPosition );
+            final GalleryItem newItem = mNewItems.get( newItemPosition );
+            if( oldItem.isHeading || newItem.isHeading )
+                return oldItem.isHeading == newItem.isHeading && TextUtils.equals( oldItem.goodName, newItem.goodName );
+            return oldItem.md5.equals( newItem.md5 );
+        }
+        
+        @Override
+        public boolean areContentsTheSame( int oldItemPosition, int newItemPosition )
+        {
+            // View holders keep a reference to their item, so anything an item is used for counts
+            final GalleryItem oldItem = mOldItems.get( oldItemPosition );
+            final GalleryItem newItem = mNewItems.get( newItemPosition );
+            return oldItem == newItem || ( TextUtils.equals( oldItem.goodName, newItem.goodName )
+                    && TextUtils.equals( oldItem.crc, newItem.crc )
+                    && TextUtils.equals( oldItem.headerName, newItem.headerName )
+                    && oldItem.countryCode == newItem.countryCode
+                    && TextUtils.equals( oldItem.artPath, newItem.artPath )
+                    && oldItem.lastPlayed == newItem.lastPlayed
+                    && equals( oldItem.romFile, newItem.romFile )
+                    && equals( oldItem.zipFile, newItem.zipFile )
+                    && oldItem.isExtracted == newItem.isExtracted
+                    && oldItem.scale == newItem.scale
+                    && oldItem.context == newItem.context );
+        }
+        
+        private static boolean equals( File file1, File file2 )
+        {
+            return file1 == null ? file2 == null : file1.equals( file2 );
+        }
+    }
+    
     public static class ViewHolder extends RecyclerView.ViewHolder implements OnClickListener,
             OnLongClickListener
     {
         public GalleryItem item;
         private Context mContext;
-        LoadBitmapTask mLoadBitmapTask = null;
         
         public ViewHolder( Context context, View view )
         {
@@ -187,7 +230,7 @@ public class GalleryItem
     public static class Adapter extends RecyclerView.Adapter<ViewHolder>
     {
         private final Context mContext;
-        private final List<GalleryItem> mObjects;
+        private List<GalleryItem> mObjects;
         
         public Adapter( Context context, List<GalleryItem> objects )
         {
@@ -195,6 +238,23 @@ public class GalleryItem
             mObjects = objects;
         }
         
+        /**
+         * Replaces the displayed items.
+         * 
+         * @param objects The new items.
+         * @param diff The difference between the current and the new items.
+         */
+        public void setItems( List<GalleryItem> objects, DiffUtil.DiffResult diff )
+        {
+            mObjects = objects;
+            diff.dispatchUpdatesTo( this );
+        }
+        
+        public GalleryItem getItem( int position )
+        {
+            return mObjects.get( position );
+        }
+        
         @Override
         public int getItemCount()
         {
@@ -213,19 +273,16 @@ public class GalleryItem
             return mObjects.get( position ).isHeading ? 1 : 0;
         }
         
+        @Override
+        public void onViewRecycled( ViewHolder holder )
+        {
+            // Stop loading the cover art of the now-offscreen item
+            ImageView artView = (ImageView) holder.itemView.findViewById( R.id.imageArt );
+            CoverArtLoader.getInstance( mContext ).cancel( artView );
+        }
+        
         public void onBindViewHolder( ViewHolder holder, int position )
         {
-            // Clear the now-offscreen bitmap to conserve memory, also cancel any tasks reading the bitmap
-            if( holder.item != null )
-            {
-                if(holder.mLoadBitmapTask != null)
-                {
-                    holder.mLoadBitmapTask.cancel(true);
-                    holder.mLoadBitmapTask = null;
-                }
-                holder.item.clearBitmap();
-            }
-            
             // Called by RecyclerView to display the data at the specified position.
             View view = holder.itemView;
             GalleryItem item = mObjects.get( position );
@@ -249,6 +306,7 @@ public class GalleryItem
                     tv1.setPadding( 5, 10, 0, 0 );
                     tv1.setTextSize( TypedValue.COMPLEX_UNIT_DIP, 18.0f );
                     artView.setVisibility( View.GONE );
+                    CoverArtLoader.getInstance( mContext ).cancel( artView );
                 }
                 else
                 {
@@ -261,14 +319,12 @@ public class GalleryItem
                     tv1.setTextSize( TypedValue.COMPLEX_UNIT_DIP, 13.0f*item.scale );
                     artView.setVisibility( View.VISIBLE );
                     
-                    artView.setImageResource( R.drawable.default_coverart );
-
-                    //Load the real cover art in a background task
-                    holder.mLoadBitmapTask = new LoadBitmapTask(item.context, item.artPath, artView); 
-                    holder.mLoadBitmapTask.execute((String) null);
-                    
                     artView.getLayoutParams().width = activity.galleryWidth;
                     artView.getLayoutParams().height = (int) ( activity.galleryWidth / activity.galleryAspectRatio );
+
+                    //Load the real cover art in the background, at the size of the cell
+                    CoverArtLoader.getInstance( mContext ).load( item.artPath, artView.getLayoutParams().width,
+                            artView.getLayoutParams().height, artView );
                     
                     LinearLayout layout = (LinearLayout) view.findViewById( R.id.info );
                     layout.getLayoutParams().width = activity.galleryWidth;
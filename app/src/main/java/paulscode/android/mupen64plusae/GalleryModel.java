@@ -0,0 +1,237 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2026 Mupen64PlusAE contributors
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae;
+
+import android.content.Context;
+import android.text.TextUtils;
+
+import org.mupen64plusae.v3.alpha.R;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import paulscode.android.mupen64plusae.persistent.ConfigFile;
+import paulscode.android.mupen64plusae.persistent.ConfigFile.ConfigSection;
+import paulscode.android.mupen64plusae.persistent.GlobalPrefs;
+import paulscode.android.mupen64plusae.util.CountryCode;
+import paulscode.android.mupen64plusae.util.RomHeader;
+
+/**
+ * Immutable snapshot of the game library shown in the gallery.
+ * <p>
+ * Loading the library touches the ROM info cache and possibly the ROMs themselves, so both
+ * {@link #load(Context, GlobalPrefs)} and {@link #filter(String, boolean)} are meant to be called
+ * off the UI thread.
+ */
+public final class GalleryModel
+{
+    /** Games whose last play time is within this many seconds are listed as recently played. */
+    private static final int RECENT_PERIOD = 60 * 60 * 24 * 7; // 7 days
+
+    /**
+     * Guards the ROM info cache while it is read, changed and saved, so that the gallery and a
+     * game launch never save over each other's changes.
+     */
+    static final Object sRomInfoCacheLock = new Object();
+
+    private final Context mContext;
+
+    /** Every game in the library, sorted by name. */
+    private final List<GalleryItem> mLibrary;
+
+    /** Index of the library used for searching. */
+    private final GallerySearchIndex mSearchIndex;
+
+    private GalleryModel( Context context, List<GalleryItem> library, GalleryModel previous )
+    {
+        mContext = context;
+        mLibrary = Collections.unmodifiableList( library );
+        mSearchIndex = new GallerySearchIndex( mLibrary, previous == null ? null : previous.mSearchIndex );
+    }
+
+    /**
+     * Returns every game in the library, sorted by name.
+     */
+    public List<GalleryItem> getLibrary()
+    {
+        return mLibrary;
+    }
+
+    /**
+     * Reads the library from the ROM info cache. Incomplete entries are completed from the ROM
+     * header, and ROMs extracted from zip files that were not played recently are deleted.
+     *
+     * @param context The gallery, which the items refer to.
+     * @param globalPrefs The user preferences.
+     * @param previous The previously loaded library, or null. Its search index is reused for the
+     *            games that did not change.
+     *
+     * @return The library.
+     */
+    public static GalleryModel load( Context context, GlobalPrefs globalPrefs, GalleryModel previous )
+    {
+        synchronized( sRomInfoCacheLock )
+        {
+            return loadLocked( context, globalPrefs, previous );
+        }
+    }
+
+    private static GalleryModel loadLocked( Context context, GlobalPrefs globalPrefs, GalleryModel previous )
+    {
+        final ConfigFile config = new ConfigFile( globalPrefs.romInfoCache_cfg );
+        final int currentTime = (int) ( new Date().getTime() / 1000 );
+        final List<GalleryItem> items = new ArrayList<GalleryItem>();
+
+        for( final String md5 : config.keySet() )
+        {
+            if( ConfigFile.SECTIONLESS_NAME.equals( md5 ) )
+                continue;
+
+            final ConfigSection section = config.get( md5 );
+            String goodName;
+            if( globalPrefs.isFullNameShown || !section.keySet().contains( "baseName" ) )
+                goodName = section.get( "goodName" );
+            else
+                goodName = section.get( "baseName" );
+
+            final String romPath = section.get( "romPath" );
+            final String zipPath = section.get( "zipPath" );
+            final String artFullPath = section.get( "artPath" );
+
+            //We get the file name to support the old gallery format
+            String artPath = !TextUtils.isEmpty(artFullPath) ? new File(artFullPath).getName() : null;
+
+            if(artPath != null)
+                artPath = globalPrefs.coverArtDir + "/" + artPath;
+
+            String crc = section.get( "crc" );
+            String headerName = section.get( "headerName" );
+            final String countryCodeString = section.get( "countryCode" );
+            CountryCode countryCode = CountryCode.UNKNOWN;
+
+            //We can't really do much if the rompath is null
+            if (romPath == null)
+                continue;
+
+            if (countryCodeString != null)
+            {
+                countryCode = CountryCode.getCountryCode(Byte.parseByte(countryCodeString));
+            }
+            final String lastPlayedStr = section.get("lastPlayed");
+            String extracted = section.get("extracted");
+
+            if (crc == null || headerName == null || countryCodeString == null
+                || extracted == null)
+            {
+                final File file = new File(romPath);
+                final RomHeader header = new RomHeader(file);
+
+                crc = header.crc;
+                headerName = header.name;
+                countryCode = header.countryCode;
+                extracted = "false";
+
+                config.put(md5, "crc", crc);
+                config.put(md5, "headerName", headerName);
+                config.put(md5, "countryCode", Byte.toString(countryCode.getValue()));
+                config.put(md5, "extracted", extracted);
+            }
+
+            int lastPlayed = 0;
+            if (lastPlayedStr != null)
+                lastPlayed = Integer.parseInt(lastPlayedStr);
+
+            // Delete any old files that already exist inside a zip file
+            if (currentTime - lastPlayed > RECENT_PERIOD && !TextUtils.isEmpty(zipPath) && extracted.equals("true"))
+            {
+                final File deleteFile = new File(romPath);
+
+                if(!deleteFile.isDirectory())
+                {
+                    deleteFile.delete();
+                }
+
+                extracted = "false";
+                config.put(md5, "extracted", extracted);
+            }
+
+            items.add( new GalleryItem(context, md5, crc, headerName, countryCode, goodName, romPath,
+                zipPath, extracted.equals("true"), artPath, lastPlayed, globalPrefs.coverArtScale) );
+        }
+
+        config.save();
+
+        Collections.sort( items, new GalleryItem.NameComparator() );
+        return new GalleryModel( context, items, previous );
+    }
+
+    /**
+     * Builds the list of items to display for a search query.
+     *
+     * @param query The search query, every word of which must start a word of the game name,
+     *            header name, CRC or country. Words with a typo are matched approximately.
+     * @param isRecentShown True to list recently played games first, under their own heading.
+     *
+     * @return A new list of items, including headings.
+     */
+    public List<GalleryItem> filter( String query, boolean isRecentShown )
+    {
+        final BitSet matches = mSearchIndex.search( query );
+
+        final List<GalleryItem> items;
+        if( matches == null )
+        {
+            items = new ArrayList<GalleryItem>( mLibrary );
+        }
+        else
+        {
+            // Matches are indices into the library, so they come out sorted by name
+            items = new ArrayList<GalleryItem>( matches.cardinality() );
+            for( int i = matches.nextSetBit( 0 ); i >= 0; i = matches.nextSetBit( i + 1 ) )
+                items.add( mLibrary.get( i ) );
+        }
+
+        if( !isRecentShown )
+            return items;
+
+        final int currentTime = (int) ( new Date().getTime() / 1000 );
+        final List<GalleryItem> recentItems = new ArrayList<GalleryItem>();
+        for( final GalleryItem item : items )
+        {
+            if( currentTime - item.lastPlayed <= RECENT_PERIOD )
+                recentItems.add( item );
+        }
+
+        if( recentItems.isEmpty() )
+            return items;
+
+        Collections.sort( recentItems, new GalleryItem.RecentlyPlayedComparator() );
+
+        final List<GalleryItem> combinedItems = new ArrayList<GalleryItem>( items.size() + recentItems.size() + 2 );
+        combinedItems.add( new GalleryItem( mContext, mContext.getString( R.string.galleryRecentlyPlayed ) ) );
+        combinedItems.addAll( recentItems );
+        combinedItems.add( new GalleryItem( mContext, mContext.getString( R.string.galleryLibrary ) ) );
+        combinedItems.addAll( items );
+        return combinedItems;
+    }
+}
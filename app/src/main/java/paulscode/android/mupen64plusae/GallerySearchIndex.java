@@ -0,0 +1,336 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2026 Mupen64PlusAE contributors
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae;
+
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Word index over the searchable fields of the gallery items: good name, header name, CRC and
+ * country.
+ * <p>
+ * Every distinct word is stored once in a sorted table along with the items containing it, so a
+ * query word is matched by prefix with a binary search. Query words of a few characters are also
+ * matched anywhere within the indexed words, as the gallery always did (e.g. "eye" in "GoldenEye"),
+ * with a scan of the distinct words rather than of the items. Items must match every word of the
+ * query. A query word that matches no indexed word is matched against words one typo away instead.
+ */
+final class GallerySearchIndex
+{
+    /** Query words shorter than this are never matched approximately. */
+    private static final int MIN_FUZZY_LENGTH = 3;
+
+    /** Query words shorter than this are only matched at the start of words. */
+    private static final int MIN_SUBSTRING_LENGTH = 3;
+
+    /** Distinct words, sorted. */
+    private final String[] mWords;
+
+    /** For each word, the ascending indices of the items containing it. */
+    private final int[][] mPostings;
+
+    /** Number of indexed items. */
+    private final int mItemCount;
+
+    /** Words of each item, reused when an unchanged item is indexed again. */
+    private final Map<String, ItemWords> mItemWords;
+
+    /**
+     * Words of a single item, along with the fields they were taken from.
+     */
+    private static class ItemWords
+    {
+        public final String goodName;
+        public final String headerName;
+        public final String crc;
+        public final String countryCode;
+        public final String[] words;
+
+        public ItemWords( GalleryItem item )
+        {
+            goodName = item.goodName;
+            headerName = item.headerName;
+            crc = item.crc;
+            countryCode = item.countryCode.name();
+
+            final List<String> list = new ArrayList<String>();
+            tokenize( item.toString(), list );
+            tokenize( headerName, list );
+            tokenize( crc, list );
+            tokenize( countryCode.replace( '_', ' ' ), list );
+            tokenize( item.countryCode.toString(), list );
+            words = list.toArray( new String[list.size()] );
+        }
+
+        public boolean isCurrent( GalleryItem item )
+        {
+            return TextUtils.equals( goodName, item.goodName )
+                    && TextUtils.equals( headerName, item.headerName ) && TextUtils.equals( crc, item.crc )
+                    && countryCode.equals( item.countryCode.name() );
+        }
+    }
+
+    /**
+     * Builds the index of a list of items.
+     *
+     * @param items The items. Matches are reported as indices into this list.
+     * @param previous The index of a previous load of the library, or null. Words of items that
+     *            did not change are taken from it rather than extracted again.
+     */
+    public GallerySearchIndex( List<GalleryItem> items, GallerySearchIndex previous )
+    {
+        mItemCount = items.size();
+        mItemWords = new HashMap<String, ItemWords>( mItemCount * 2 );
+
+        // Collect the items containing each word, in item order
+        final HashMap<String, IntList> postings = new HashMap<String, IntList>();
+        for( int i = 0; i < mItemCount; i++ )
+        {
+            final GalleryItem item = items.get( i );
+            if( item.isHeading )
+                continue;
+
+            ItemWords itemWords = previous == null ? null : previous.mItemWords.get( item.md5 );
+            if( itemWords == null || !itemWords.isCurrent( item ) )
+                itemWords = new ItemWords( item );
+            mItemWords.put( item.md5, itemWords );
+
+            for( final String word : itemWords.words )
+            {
+                IntList list = postings.get( word );
+                if( list == null )
+                {
+                    list = new IntList();
+                    postings.put( word, list );
+                }
+                list.add( i );
+            }
+        }
+
+        mWords = postings.keySet().toArray( new String[postings.size()] );
+        Arrays.sort( mWords );
+        mPostings = new int[mWords.length][];
+        for( int i = 0; i < mWords.length; i++ )
+            mPostings[i] = postings.get( mWords[i] ).toArray();
+    }
+
+    /**
+     * Finds the items matching a query.
+     *
+     * @param query The query, words are separated by anything that is not a letter or a digit.
+     *
+     * @return The indices of the matching items, or null if the query is empty and matches every
+     *         item.
+     */
+    public BitSet search( String query )
+    {
+        final List<String> queryWords = new ArrayList<String>();
+        tokenizeQuery( query, queryWords );
+        if( queryWords.isEmpty() )
+            return null;
+
+        BitSet result = null;
+        for( final String queryWord : queryWords )
+        {
+            BitSet matches = findPrefix( queryWord );
+            if( queryWord.length() >= MIN_SUBSTRING_LENGTH )
+                findInside( queryWord, matches );
+            if( matches.isEmpty() && queryWord.length() >= MIN_FUZZY_LENGTH )
+                matches = findApproximate( queryWord );
+
+            if( result == null )
+                result = matches;
+            else
+                result.and( matches );
+
+            if( result.isEmpty() )
+                break;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the items containing a word that starts with the given prefix.
+     */
+    private BitSet findPrefix( String prefix )
+    {
+        final BitSet matches = new BitSet( mItemCount );
+
+        int index = Arrays.binarySearch( mWords, prefix );
+        if( index < 0 )
+            index = -index - 1;
+
+        // Words sharing a prefix are adjacent in the sorted table
+        for( ; index < mWords.length && mWords[index].startsWith( prefix ); index++ )
+        {
+            for( final int item : mPostings[index] )
+                matches.set( item );
+        }
+        return matches;
+    }
+
+    /**
+     * Adds the items containing a word that contains the given text past its first character.
+     */
+    private void findInside( String text, BitSet matches )
+    {
+        for( int index = 0; index < mWords.length; index++ )
+        {
+            if( mWords[index].indexOf( text, 1 ) > 0 )
+            {
+                for( final int item : mPostings[index] )
+                    matches.set( item );
+            }
+        }
+    }
+
+    /**
+     * Returns the items containing a word that starts with the given prefix, give or take one
+     * inserted, deleted, substituted or transposed character.
+     */
+    private BitSet findApproximate( String prefix )
+    {
+        final BitSet matches = new BitSet( mItemCount );
+        for( int index = 0; index < mWords.length; index++ )
+        {
+            if( isPrefixWithinOneEdit( prefix, mWords[index] ) )
+            {
+                for( final int item : mPostings[index] )
+                    matches.set( item );
+            }
+        }
+        return matches;
+    }
+
+    private static boolean isPrefixWithinOneEdit( String prefix, String word )
+    {
+        final int length = prefix.length();
+        if( word.length() < length - 1 )
+            return false;
+
+        // Skip the common start
+        int i = 0;
+        while( i < length && i < word.length() && prefix.charAt( i ) == word.charAt( i ) )
+            i++;
+        if( i >= length - 1 )
+            return true;
+
+        // Substitution, insertion, deletion, or transposition at the first difference
+        return word.regionMatches( i + 1, prefix, i + 1, length - i - 1 )
+                || word.regionMatches( i + 1, prefix, i, length - i )
+                || word.regionMatches( i, prefix, i + 1, length - i - 1 )
+                || ( i + 1 < word.length() && prefix.charAt( i ) == word.charAt( i + 1 )
+                        && prefix.charAt( i + 1 ) == word.charAt( i )
+                        && word.regionMatches( i + 2, prefix, i + 2, length - i - 2 ) );
+    }
+
+    /**
+     * Splits text into lower case words made of letters and digits. Words mixing letters and
+     * digits (e.g. "mario64") are indexed whole and also split at each letter/digit boundary.
+     */
+    private static void tokenize( String text, List<String> words )
+    {
+        if( text == null )
+            return;
+
+        final String lower = text.toLowerCase( Locale.US );
+        final int length = lower.length();
+        int start = 0;
+        while( start < length )
+        {
+            while( start < length && !Character.isLetterOrDigit( lower.charAt( start ) ) )
+                start++;
+
+            int end = start;
+            int partStart = start;
+            boolean split = false;
+            while( end < length && Character.isLetterOrDigit( lower.charAt( end ) ) )
+            {
+                if( end > partStart
+                        && Character.isDigit( lower.charAt( end ) ) != Character.isDigit( lower.charAt( end - 1 ) ) )
+                {
+                    words.add( lower.substring( partStart, end ) );
+                    partStart = end;
+                    split = true;
+                }
+                end++;
+            }
+
+            if( end > start )
+            {
+                if( split )
+                    words.add( lower.substring( partStart, end ) );
+                words.add( lower.substring( start, end ) );
+            }
+            start = end;
+        }
+    }
+
+    private static void tokenizeQuery( String query, List<String> words )
+    {
+        final String lower = query.toLowerCase( Locale.US );
+        final int length = lower.length();
+        int start = 0;
+        while( start < length )
+        {
+            while( start < length && !Character.isLetterOrDigit( lower.charAt( start ) ) )
+                start++;
+
+            int end = start;
+            while( end < length && Character.isLetterOrDigit( lower.charAt( end ) ) )
+                end++;
+
+            if( end > start )
+                words.add( lower.substring( start, end ) );
+            start = end;
+        }
+    }
+
+    /**
+     * Growable list of ints, avoiding boxing while building the postings.
+     */
+    private static class IntList
+    {
+        private int[] mValues = new int[4];
+        private int mSize = 0;
+
+        public void add( int value )
+        {
+            // An item may contain the same word twice, it is only listed once
+            if( mSize > 0 && mValues[mSize - 1] == value )
+                return;
+
+            if( mSize == mValues.length )
+                mValues = Arrays.copyOf( mValues, mSize * 2 );
+            mValues[mSize++] = value;
+        }
+
+        public int[] toArray()
+        {
+            return Arrays.copyOf( mValues, mSize );
+        }
+    }
+}
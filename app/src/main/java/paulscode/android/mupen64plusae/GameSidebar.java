@@ -34,6 +34,8 @@ import android.widget.TextView;
 
 import org.mupen64plusae.v3.alpha.R;
 
+import paulscode.android.mupen64plusae.task.CoverArtLoader;
+
 public class GameSidebar extends MenuListView
 {
     private ImageView mInfoArt;
@@ -142,6 +144,17 @@ public class GameSidebar extends MenuListView
             mInfoArt.setImageResource( R.drawable.default_coverart );
     }
     
+    /**
+     * Loads the cover art in the background, at the size of the header.
+     *
+     * @param artPath The path of the cover art, may be null.
+     */
+    public void setImage( String artPath )
+    {
+        CoverArtLoader.getInstance( getContext() ).load( artPath, mImageLayout.getLayoutParams().width,
+                mImageLayout.getLayoutParams().height, mInfoArt );
+    }
+    
     public void setTitle( String title )
     {
         mGameTitle.setText( title );
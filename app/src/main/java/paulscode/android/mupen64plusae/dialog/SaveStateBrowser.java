@@ -0,0 +1,227 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2026 Mupen64PlusAE contributors
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.dialog;
+
+import android.app.Activity;
+import android.app.AlertDialog.Builder;
+import android.content.DialogInterface;
+import android.content.DialogInterface.OnClickListener;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.text.format.DateUtils;
+import android.text.format.Formatter;
+import android.util.LruCache;
+import android.view.View;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import org.mupen64plusae.v3.alpha.R;
+
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import paulscode.android.mupen64plusae.dialog.Prompt.ListItemTwoTextIconPopulator;
+import paulscode.android.mupen64plusae.game.SaveStateCatalog;
+
+/**
+ * A dialog listing save states with their thumbnail, date, size and play time. Thumbnails are
+ * decoded in the background as their rows are shown, and kept in memory for the next time.
+ */
+public final class SaveStateBrowser
+{
+    /**
+     * The listener interface for receiving the save state selected by the user.
+     */
+    public interface OnSaveStateSelectedListener
+    {
+        /**
+         * Called when the user selects a save state.
+         *
+         * @param entry The save state selected by the user.
+         */
+        void onSaveStateSelected( SaveStateCatalog.Entry entry );
+    }
+
+    /** Width of the thumbnails in the list, in dips. */
+    private static final int THUMBNAIL_WIDTH_DIP = 96;
+
+    /**
+     * Decoded thumbnails by path, sized in kilobytes to a fraction of the heap. Thumbnails are named
+     * after the time of their save and never rewritten, so the path is enough.
+     */
+    private static final LruCache<String, Bitmap> sThumbnails = new LruCache<String, Bitmap>(
+            (int) ( Runtime.getRuntime().maxMemory() / 1024 / 32 ) )
+    {
+        @Override
+        protected int sizeOf( String path, Bitmap bitmap )
+        {
+            return Math.max( 1, bitmap.getRowBytes() * bitmap.getHeight() / 1024 );
+        }
+    };
+
+    /** Decodes thumbnails one at a time, in the order their rows are shown. */
+    private static final ThreadPoolExecutor sExecutor = new ThreadPoolExecutor( 1, 1, 5, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+            {
+                @Override
+                public Thread newThread( Runnable runnable )
+                {
+                    return new Thread( runnable, "ThumbnailThread" );
+                }
+            } );
+
+    static
+    {
+        sExecutor.allowCoreThreadTimeOut( true );
+    }
+
+    private SaveStateBrowser()
+    {
+    }
+
+    /**
+     * Open a dialog to prompt the user for a save state.
+     *
+     * @param activity The activity.
+     * @param title    The title of the dialog.
+     * @param entries  The save states to select from.
+     * @param listener The listener to process the save state, when selected.
+     */
+    public static void show( final Activity activity, CharSequence title,
+            final List<SaveStateCatalog.Entry> entries, final OnSaveStateSelectedListener listener )
+    {
+        final DateFormat dateFormat = DateFormat.getDateTimeInstance( DateFormat.MEDIUM, DateFormat.SHORT );
+        final int thumbnailWidth = (int) ( THUMBNAIL_WIDTH_DIP * activity.getResources().getDisplayMetrics().density );
+
+        // When the user clicks a save state, notify the downstream listener
+        OnClickListener internalListener = new OnClickListener()
+        {
+            @Override
+            public void onClick( DialogInterface dialog, int which )
+            {
+                if( which >= 0 && which < entries.size() )
+                    listener.onSaveStateSelected( entries.get( which ) );
+            }
+        };
+
+        // Create the dialog builder, removing Ok button and populating list in the process
+        Builder builder = Prompt.prefillBuilder( activity, title, null, internalListener );
+        builder.setPositiveButton( null, null );
+        builder.setAdapter( Prompt.createAdapter( activity, entries,
+                new ListItemTwoTextIconPopulator<SaveStateCatalog.Entry>()
+                {
+                    @Override
+                    public void onPopulateListItem( SaveStateCatalog.Entry entry, int position,
+                            TextView text1, TextView text2, ImageView icon )
+                    {
+                        final String date = entry.timestamp > 0 ? dateFormat.format( new Date( entry.timestamp ) ) : "";
+                        if( entry.path == null )
+                            text1.setText( date.length() > 0 ? date : entry.name );
+                        else if( entry.slot >= 0 )
+                            text1.setText( activity.getString( R.string.saveStateBrowser_slot, entry.slot ) );
+                        else
+                            text1.setText( entry.name );
+
+                        final StringBuilder details = new StringBuilder();
+                        if( entry.path != null )
+                            details.append( date );
+                        if( entry.size > 0 )
+                        {
+                            if( details.length() > 0 )
+                                details.append( " · " );
+                            details.append( Formatter.formatShortFileSize( activity, entry.size ) );
+                        }
+                        if( entry.playTime >= 0 )
+                        {
+                            if( details.length() > 0 )
+                                details.append( " · " );
+                            details.append( activity.getString( R.string.saveStateBrowser_playTime,
+                                    DateUtils.formatElapsedTime( entry.playTime / 1000 ) ) );
+                        }
+                        text2.setVisibility( details.length() > 0 ? View.VISIBLE : View.GONE );
+                        text2.setText( details );
+
+                        icon.setVisibility( View.VISIBLE );
+                        icon.setAdjustViewBounds( true );
+                        icon.setMaxWidth( thumbnailWidth );
+                        icon.setMaxHeight( thumbnailWidth );
+                        loadThumbnail( activity, entry.thumbnail, icon );
+                    }
+                } ), internalListener );
+
+        // Create and launch the dialog
+        builder.create().show();
+    }
+
+    /**
+     * Shows a thumbnail in a list row, decoding it in the background if it is not in memory.
+     */
+    private static void loadThumbnail( final Activity activity, final String path, final ImageView icon )
+    {
+        // Rows are recycled, only show the thumbnail last requested for this one
+        icon.setTag( path );
+
+        final Bitmap cached = path != null ? sThumbnails.get( path ) : null;
+        if( cached != null )
+        {
+            icon.setImageBitmap( cached );
+            return;
+        }
+
+        icon.setImageResource( R.drawable.ic_save );
+        if( path == null )
+            return;
+
+        sExecutor.execute( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // The row may have been scrolled away meanwhile
+                if( !path.equals( icon.getTag() ) )
+                    return;
+
+                Bitmap bitmap = sThumbnails.get( path );
+                if( bitmap == null )
+                {
+                    bitmap = BitmapFactory.decodeFile( path );
+                    if( bitmap == null )
+                        return;
+                    sThumbnails.put( path, bitmap );
+                }
+
+                final Bitmap thumbnail = bitmap;
+                activity.runOnUiThread( new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if( path.equals( icon.getTag() ) )
+                            icon.setImageBitmap( thumbnail );
+                    }
+                } );
+            }
+        } );
+    }
+}
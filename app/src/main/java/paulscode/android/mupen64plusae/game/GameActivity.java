@@ -23,7 +23,6 @@ package paulscode.android.mupen64plusae.game;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.DialogInterface;
-import android.graphics.drawable.BitmapDrawable;
 import android.hardware.SensorManager;
 import android.media.AudioManager;
 import android.os.Bundle;
@@ -63,12 +62,15 @@ import paulscode.android.mupen64plusae.dialog.Popups;
 import paulscode.android.mupen64plusae.dialog.Prompt;
 import paulscode.android.mupen64plusae.dialog.Prompt.PromptIntegerListener;
 import paulscode.android.mupen64plusae.hack.MogaHack;
+import paulscode.android.mupen64plusae.input.InputLatencyMonitor;
+import paulscode.android.mupen64plusae.input.InputTrace;
 import paulscode.android.mupen64plusae.input.PeripheralController;
 import paulscode.android.mupen64plusae.input.SensorController;
 import paulscode.android.mupen64plusae.input.TouchController;
 import paulscode.android.mupen64plusae.input.map.VisibleTouchMap;
 import paulscode.android.mupen64plusae.input.provider.AbstractProvider;
 import paulscode.android.mupen64plusae.input.provider.AxisProvider;
+import paulscode.android.mupen64plusae.input.provider.InputEventQueue;
 import paulscode.android.mupen64plusae.input.provider.KeyProvider;
 import paulscode.android.mupen64plusae.input.provider.KeyProvider.ImeFormula;
 import paulscode.android.mupen64plusae.input.provider.MogaProvider;
@@ -86,6 +88,8 @@ import paulscode.android.mupen64plusae.persistent.GlobalPrefs;
 import paulscode.android.mupen64plusae.persistent.GlobalPrefs.PakType;
 import paulscode.android.mupen64plusae.profile.ControllerProfile;
 import paulscode.android.mupen64plusae.util.CountryCode;
+import paulscode.android.mupen64plusae.util.FileUtil;
+import paulscode.android.mupen64plusae.util.LaunchProfiler;
 import paulscode.android.mupen64plusae.util.RomDatabase;
 import paulscode.android.mupen64plusae.util.RomDatabase.RomDetail;
 
@@ -139,6 +143,7 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
     private VisibleTouchMap mTouchscreenMap;
     private KeyProvider mKeyProvider;
     private AxisProvider mAxisProvider;
+    private InputEventQueue mInputEventQueue;
     private Controller mMogaController;
     TouchController mTouchscreenController;
     private SensorController mSensorController;
@@ -158,6 +163,8 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
     private GlobalPrefs mGlobalPrefs;
     private GamePrefs mGamePrefs;
     private GameAutoSaveManager mAutoSaveManager;
+    private String mLatestAutoSave = null;  // the auto save to start from, once it is found
+    private boolean mIsFindingAutoSave = false;
     private boolean mFirstStart;
     private boolean mWaitingOnConfirmation = false;
     private boolean mShuttingDown = false;
@@ -166,6 +173,7 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
     protected void onCreate( Bundle savedInstanceState )
     {
         Log.i( "GameActivity", "onCreate" );
+        final long createBegin = LaunchProfiler.begin();
         super.setTheme( android.support.v7.appcompat.R.style.Theme_AppCompat_NoActionBar );
         final AppData appData = new AppData( this );
 
@@ -202,12 +210,6 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
             setVolumeControlStream(AudioManager.STREAM_MUSIC);
         }
 
-        mGamePrefs = new GamePrefs( this, mRomMd5, mRomCrc, romHeaderName, romGoodName,
-            CountryCode.getCountryCode(romCountryCode).toString(), appData, mGlobalPrefs, legacySaveName );
-        String cheatArgs =  mGamePrefs.getCheatArgs();
-
-        mAutoSaveManager = new GameAutoSaveManager(mGamePrefs, mGlobalPrefs.maxAutoSaves);
-
         mGlobalPrefs.enforceLocale( this );
 
         final Window window = this.getWindow();
@@ -223,12 +225,21 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
         this.setRequestedOrientation( mGlobalPrefs.displayOrientation );
 
         // If the orientation changes, the screensize info changes, so we must refresh dependencies
+        // (the game prefs depend on the screen size, so they are only loaded once, here)
         mGlobalPrefs = new GlobalPrefs( this, appData );
+        final long prefsBegin = LaunchProfiler.begin();
         mGamePrefs = new GamePrefs( this, mRomMd5, mRomCrc, romHeaderName, romGoodName,
                 CountryCode.getCountryCode(romCountryCode).toString(), appData, mGlobalPrefs, legacySaveName );
+        LaunchProfiler.end( "Load game prefs", prefsBegin );
+
+        mAutoSaveManager = new GameAutoSaveManager(mGamePrefs, mGlobalPrefs.maxAutoSaves);
 
         mFirstStart = true;
 
+        // Measure input latency for this session only
+        InputLatencyMonitor.reset();
+        InputLatencyMonitor.setEnabled( mGlobalPrefs.isInputLatencyMonitorEnabled );
+
         //TODO: Figure out why we call this in the middle
         super.onCreate( savedInstanceState );
 
@@ -247,12 +258,11 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
         // Make the background solid black
         mSurface.getRootView().setBackgroundColor(0xFF000000);
 
-        if (!TextUtils.isEmpty(artPath) && new File(artPath).exists())
-            mGameSidebar.setImage(new BitmapDrawable(this.getResources(), artPath));
+        mGameSidebar.setImage(artPath);
 
         mGameSidebar.setTitle(romGoodName);
         // Initialize the objects and data files interfacing to the emulator core
-        CoreInterface.initialize( this, mGamePrefs, mRomPath, cheatArgs, doRestart);
+        CoreInterface.initialize( this, mGamePrefs, mRomPath, doRestart);
 
         // Handle events from the side bar
         mGameSidebar.setActionHandler(this, R.menu.game_drawer);
@@ -280,10 +290,12 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
         if( mGamePrefs.isTouchscreenEnabled || mGlobalPrefs.isFpsEnabled )
         {
             // The touch map and overlay are needed to display frame rate and/or controls
+            final long skinBegin = LaunchProfiler.begin();
             mTouchscreenMap = new VisibleTouchMap( this.getResources() );
             mTouchscreenMap.load( mGamePrefs.touchscreenSkin, mGamePrefs.touchscreenProfile,
                     mGlobalPrefs.isTouchscreenAnimated, mGlobalPrefs.isFpsEnabled, mGlobalPrefs.fpsXPosition,
                     mGlobalPrefs.fpsYPosition, mGlobalPrefs.touchscreenScale, mGlobalPrefs.touchscreenTransparency );
+            LaunchProfiler.end( "Load touchscreen skin", skinBegin );
             mOverlay.initialize(mTouchscreenMap, !mGamePrefs.isTouchscreenHidden, mGlobalPrefs.isFpsEnabled,
                     mGamePrefs.isAnalogHiddenWhenSensor, mGlobalPrefs.isTouchscreenAnimated);
         }
@@ -351,6 +363,8 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
 
         if(mGlobalPrefs.touchscreenAutoHideEnabled)
             mHandler.postDelayed(mLastTouchChecker, 500);
+
+        LaunchProfiler.end( "Create game activity", createBegin );
     }
 
     @Override
@@ -414,6 +428,13 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
 
         mHandler.removeCallbacks(mLastTouchChecker);
 
+        if( mInputEventQueue != null )
+            mInputEventQueue.quit();
+
+        if( InputLatencyMonitor.isEnabled() && InputLatencyMonitor.hasMeasurements() )
+            InputLatencyMonitor.dump( mGlobalPrefs.inputLatencyDir );
+        InputLatencyMonitor.setEnabled( false );
+
         //This can happen when a controller is plugged in while the emulator
         //is running
         if(!mShuttingDown)
@@ -852,7 +873,7 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
                 final SensorManager sensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
                 mSensorController = new SensorController(sensorManager, mOverlay, mGamePrefs.sensorAxisX,
                         mGamePrefs.sensorSensitivityX, mGamePrefs.sensorAngleX, mGamePrefs.sensorAxisY,
-                        mGamePrefs.sensorSensitivityY, mGamePrefs.sensorAngleY);
+                        mGamePrefs.sensorSensitivityY, mGamePrefs.sensorAngleY, mGamePrefs.sensorFilter);
                 if (mGamePrefs.sensorActivateOnStart) {
                     mSensorController.setSensorEnabled(true);
                     mOverlay.onSensorEnabled(true);
@@ -907,6 +928,12 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
         final MogaProvider mogaProvider = new MogaProvider( mMogaController );
         mAxisProvider = new AxisProvider();
 
+        // Map inputs and update controller states on the input thread, away from UI work
+        mInputEventQueue = new InputEventQueue();
+        mKeyProvider.setEventQueue( mInputEventQueue );
+        mogaProvider.setEventQueue( mInputEventQueue );
+        mAxisProvider.setEventQueue( mInputEventQueue );
+
         // Request focus for proper listening
         inputSource.requestFocus();
         // Create the peripheral controls to handle key/stick presses
@@ -968,8 +995,31 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
             switch( state )
             {
                 case NativeConstants.EMULATOR_STATE_UNKNOWN:
-                    final String latestSave = mAutoSaveManager.getLatestAutoSave();
-                    CoreInterface.startupEmulator(latestSave);
+                    if( mLatestAutoSave != null )
+                    {
+                        CoreInterface.startupEmulator( startInputTrace( mLatestAutoSave ) );
+                    }
+                    else if( !mIsFindingAutoSave )
+                    {
+                        // Pending auto saves are checked off the UI thread, start once it is done
+                        mIsFindingAutoSave = true;
+                        mAutoSaveManager.findLatestAutoSave( new GameAutoSaveManager.OnLatestAutoSaveFoundListener()
+                        {
+                            @Override
+                            public void onLatestAutoSaveFound( final String path )
+                            {
+                                runOnUiThread( new Runnable()
+                                {
+                                    @Override
+                                    public void run()
+                                    {
+                                        mLatestAutoSave = path;
+                                        tryRunning();
+                                    }
+                                } );
+                            }
+                        } );
+                    }
                     break;
                 case NativeConstants.EMULATOR_STATE_PAUSED:
                     if( !mDrawerLayout.isDrawerOpen( GravityCompat.START )
@@ -984,20 +1034,55 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
         }
     }
 
+    private String getInputTracePath()
+    {
+        return mGlobalPrefs.inputTraceDir + "/" + mRomMd5 + ".trace";
+    }
+
+    /**
+     * Starts recording or replaying the input trace of the game, if enabled.
+     *
+     * @param latestSave The save state the game would resume from, or an empty string.
+     *
+     * @return The save state to resume from. A replay resumes from the state the recording did.
+     */
+    private String startInputTrace( String latestSave )
+    {
+        final File traceSave = new File( getInputTracePath() + ".sav" );
+
+        // Frames are counted from the start of the core, so the trace lines up with the save state
+        if( mGlobalPrefs.isInputTraceRecorded )
+        {
+            traceSave.delete();
+            if( !TextUtils.isEmpty( latestSave ) )
+                FileUtil.copyFile( new File( latestSave ), traceSave );
+            InputTrace.startRecording();
+        }
+        else if( mGlobalPrefs.isInputTraceReplayed && new File( getInputTracePath() ).exists()
+                && InputTrace.startReplay( getInputTracePath() ) )
+        {
+            return traceSave.exists() ? traceSave.getPath() : "";
+        }
+        return latestSave;
+    }
+
     private void shutdownEmulator()
     {
         mShuttingDown = true;
 
+        InputTrace.stopReplay();
+        InputTrace.stopRecording( getInputTracePath() );
+
         if(CoreInterface.isCoreRunning())
         {
             //Generate auto save file
             if(mGlobalPrefs.maxAutoSaves != 0)
             {
                 final String saveFileName = mAutoSaveManager.getAutoSaveFileName();
-                CoreInterface.autoSaveState( saveFileName );
+                mAutoSaveManager.addPendingAutoSave( saveFileName );
+                CoreInterface.autoSaveState( saveFileName, mAutoSaveManager );
             }
 
-            mAutoSaveManager.clearOldest();
             CoreInterface.shutdownEmulator();
         }
     }
@@ -1026,14 +1111,13 @@ public class GameActivity extends AppCompatActivity implements PromptConfirmList
         if(mGlobalPrefs.maxAutoSaves != 0)
         {
             final String saveFileName = mAutoSaveManager.getAutoSaveFileName();
-            CoreInterface.autoSaveState( saveFileName );
+            mAutoSaveManager.addPendingAutoSave( saveFileName );
+            CoreInterface.autoSaveState( saveFileName, mAutoSaveManager );
         }
         else
         {
             CoreInterface.pauseEmulator();
         }
-
-        mAutoSaveManager.clearOldest();
     }
 
     Runnable mLastTouchChecker = new Runnable() {
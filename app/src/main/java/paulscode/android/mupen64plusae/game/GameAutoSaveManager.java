@@ -2,21 +2,78 @@ package paulscode.android.mupen64plusae.game;
 
 import android.util.Log;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import paulscode.android.mupen64plusae.jni.CoreInterface;
 import paulscode.android.mupen64plusae.persistent.GamePrefs;
 
-public class GameAutoSaveManager
+/**
+ * Keeps the auto saves of a game.
+ * <p>
+ * The core writes each auto save as a full save state file. Once it is written, the state is
+ * committed in the background to a pack file: the state is split in chunks, and only the chunks
+ * that are not already in the previous auto save are compressed and stored, the others refer to
+ * the pack they are in. An index file lists the auto saves and the packs each of them uses, it is
+ * replaced atomically once the pack is written, so an auto save is only listed when it is complete.
+ * The save state file of the latest auto save is kept, so resuming a game does not need to rebuild
+ * it. Before the core is asked for an auto save, it is added to the index as pending. If the app is
+ * stopped before its commit finishes, the pending auto save is checked and committed in the
+ * background the next time the game is started, and is still the latest auto save if it is complete.
+ * <p>
+ * Auto saves from older versions, one save state file each, are still found until enough new auto
+ * saves replace them.
+ */
+public class GameAutoSaveManager implements CoreInterface.OnAutoSaveListener
 {
     public static final String V2 = "v2";
+    public static final String V3 = "v3";
+
+    public interface OnLatestAutoSaveFoundListener
+    {
+        /**
+         * Called on a background thread when the latest auto save is found.
+         *
+         * @param path The path of the save state file of the latest auto save.
+         */
+        public void onLatestAutoSaveFound( String path );
+    }
+
+    public interface OnAutoSaveRestoredListener
+    {
+        /**
+         * Called on a background thread when an auto save is restored.
+         *
+         * @param file The save state file of the auto save, or null if it could not be restored.
+         */
+        public void onAutoSaveRestored( File file );
+    }
 
     private final GamePrefs mGamePrefs;
     private final String mAutoSavePath;
@@ -25,6 +82,89 @@ public class GameAutoSaveManager
     private static final String sMatcherString = "^\\d\\d\\d\\d-\\d\\d-\\d\\d-\\d\\d-\\d\\d-\\d\\d\\..*sav$";
     private static final String sDefaultString = "yyyy-mm-dd-hh-mm-ss.sav";
 
+    private static final String INDEX_FILE = "autosave.index";
+    private static final String PACK_EXTENSION = ".pack";
+    private static final String STATE_EXTENSION = "." + V3 + ".sav";
+    private static final String TEMP_EXTENSION = ".tmp";
+    private static final String RESTORE_FILE = "restore.sav";
+
+    /** Size of the chunks states are split in, the page size of the RDRAM. */
+    private static final int CHUNK_SIZE = 4096;
+
+    private static final long PACK_MAGIC = 0x4d3634414550414bL; // "M64AEPAK"
+
+    /** Guards the changes of the index, which is written by the UI thread and the executor. */
+    private static final Object sIndexLock = new Object();
+
+    /** Commits and restores auto saves one at a time, for every game. */
+    private static final ThreadPoolExecutor sExecutor = new ThreadPoolExecutor( 1, 1, 5, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+            {
+                @Override
+                public Thread newThread( Runnable runnable )
+                {
+                    return new Thread( runnable, "AutoSaveThread" );
+                }
+            } );
+
+    static
+    {
+        sExecutor.allowCoreThreadTimeOut( true );
+    }
+
+    /**
+     * An auto save listed in the index.
+     */
+    private static class IndexEntry
+    {
+        public final String name;
+        public final int size;
+        public final ArrayList<String> packs;
+
+        public IndexEntry( String name, int size, ArrayList<String> packs )
+        {
+            this.name = name;
+            this.size = size;
+            this.packs = packs;
+        }
+    }
+
+    /**
+     * The index: the committed auto saves, oldest first, and the pending ones.
+     */
+    private static class Index
+    {
+        public final ArrayList<IndexEntry> entries = new ArrayList<IndexEntry>();
+        public final ArrayList<String> pending = new ArrayList<String>();
+
+        /**
+         * Gets the name of the latest committed auto save, or null if there is none.
+         */
+        public String getLatest()
+        {
+            return entries.isEmpty() ? null : entries.get(entries.size()-1).name;
+        }
+    }
+
+    /**
+     * The location of a chunk in a pack.
+     */
+    private static class ChunkRef
+    {
+        public final String pack;
+        public final int offset;
+        public final int length;
+        public final int rawLength;
+
+        public ChunkRef( String pack, int offset, int length, int rawLength )
+        {
+            this.pack = pack;
+            this.offset = offset;
+            this.length = length;
+            this.rawLength = rawLength;
+        }
+    }
+
     public GameAutoSaveManager(GamePrefs gamePrefs, int maxAutoSaves)
     {
         mGamePrefs = gamePrefs;
@@ -32,9 +172,163 @@ public class GameAutoSaveManager
         mMaxAutoSave = maxAutoSaves;
     }
 
-    public String getLatestAutoSave()
+    /**
+     * Finds the save state file of the latest auto save in the background. Pending auto saves that
+     * are complete are committed, the others are deleted, and the state file of the latest auto
+     * save is rebuilt if it was removed.
+     *
+     * @param listener The listener to notify once the file is found.
+     */
+    public void findLatestAutoSave(final OnLatestAutoSaveFoundListener listener)
+    {
+        sExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                listener.onLatestAutoSaveFound(getLatestAutoSave());
+            }
+        });
+    }
+
+    /**
+     * Gets the save state file of the latest auto save. Only called by the executor.
+     */
+    private String getLatestAutoSave()
+    {
+        final Index index = readIndex();
+        final String latest = index.getLatest();
+
+        //Auto saves the app was stopped from committing. The core is not running yet, so those it
+        //did not finish writing never will be.
+        final ArrayList<File> complete = new ArrayList<File>();
+        for( final String name : index.pending )
+        {
+            final File stateFile = new File(mAutoSavePath + name + STATE_EXTENSION);
+            if((latest == null || name.compareTo(latest) >= 0) && SaveStateBuffer.isComplete(stateFile))
+            {
+                complete.add(stateFile);
+            }
+            else
+            {
+                Log.w("GameAutoSaveManager", "Deleting incomplete autosave: " + name);
+                stateFile.delete();
+                removePending(name);
+            }
+        }
+
+        if(!complete.isEmpty())
+        {
+            //The core reads the newest while the others are committed, oldest first
+            Collections.sort(complete);
+            for( final File stateFile : complete )
+            {
+                onAutoSave(stateFile.getPath());
+            }
+            return complete.get(complete.size()-1).getPath();
+        }
+
+        if(latest != null)
+        {
+            final File stateFile = new File(mAutoSavePath + latest + STATE_EXTENSION);
+            if(stateFile.exists())
+            {
+                return stateFile.getPath();
+            }
+
+            //Rebuild the state file if it was removed
+            final File restored = restore(latest, stateFile);
+            if(restored != null)
+            {
+                return restored.getPath();
+            }
+        }
+
+        return getLatestLegacyAutoSave();
+    }
+
+    /**
+     * Adds an auto save to the index as pending, before the core is asked to write it.
+     *
+     * @param path The file the core writes the auto save to, from {@link #getAutoSaveFileName()}.
+     */
+    public void addPendingAutoSave(String path)
+    {
+        synchronized(sIndexLock)
+        {
+            final Index index = readIndex();
+            final String name = getAutoSaveName(path);
+            if(index.pending.contains(name))
+            {
+                return;
+            }
+            index.pending.add(name);
+            try
+            {
+                writeIndex(index);
+            }
+            catch(IOException e)
+            {
+                Log.w("GameAutoSaveManager", "Unable to add pending auto save: " + e);
+            }
+        }
+    }
+
+    /**
+     * Removes an auto save from the pending auto saves of the index.
+     */
+    private void removePending(String name)
+    {
+        synchronized(sIndexLock)
+        {
+            final Index index = readIndex();
+            if(!index.pending.remove(name))
+            {
+                return;
+            }
+            try
+            {
+                writeIndex(index);
+            }
+            catch(IOException e)
+            {
+                Log.w("GameAutoSaveManager", "Unable to remove pending auto save: " + e);
+            }
+        }
+    }
+
+    private String getLatestLegacyAutoSave()
     {
         final List<String> result = new ArrayList<String>();
+        for( final File file : getLegacyAutoSaves() )
+        {
+            result.add( file.getPath() );
+        }
+
+        //Sort by file name
+        Collections.sort(result);
+
+        String resultValue = "";
+        if(result.size() > 0)
+        {
+            resultValue = result.get(result.size()-1);
+        }
+        else
+        {
+            //Fall back to this if we can't find a valid filename
+            resultValue = mAutoSavePath + sDefaultString;
+        }
+
+        //Grab the last file
+        return resultValue;
+    }
+
+    /**
+     * Gets the auto saves from older versions.
+     */
+    private List<File> getLegacyAutoSaves()
+    {
+        final List<File> result = new ArrayList<File>();
         final File savePath = new File(mAutoSavePath);
 
         //Only find files that end with .sav
@@ -43,9 +337,9 @@ public class GameAutoSaveManager
             @Override
             public boolean accept(File pathname)
             {
-                //It must match this format "yyyy-MM-dd-HH-mm-ss"
+                //It must match this format "yyyy-MM-dd-HH-mm-ss", and not be a state of the index
                 final String fileName = pathname.getName();
-                return fileName.matches(sMatcherString);
+                return fileName.matches(sMatcherString) && !fileName.endsWith(STATE_EXTENSION);
             }
 
         };
@@ -62,83 +356,622 @@ public class GameAutoSaveManager
                 File completeFile = new File(file.getPath() + "." + CoreInterface.COMPLETE_EXTENSION);
                 if(!file.getPath().contains(V2) || completeFile.exists())
                 {
-                    result.add( file.getPath() );
+                    result.add( file );
                 }
             }
         }
 
-        //Sort by file name
+        return result;
+    }
+
+    /**
+     * Gets the auto saves that can be restored, newest first. Auto saves from older versions are
+     * named after their file.
+     */
+    public List<String> getAutoSaves()
+    {
+        final List<String> result = new ArrayList<String>();
+        final Index index = readIndex();
+        for( final IndexEntry entry : index.entries )
+        {
+            result.add(entry.name);
+        }
+        for( final String name : index.pending )
+        {
+            if(!result.contains(name) && new File(mAutoSavePath + name + STATE_EXTENSION).length() > 0)
+            {
+                result.add(name);
+            }
+        }
+        for( final File file : getLegacyAutoSaves() )
+        {
+            result.add(file.getName());
+        }
+
         Collections.sort(result);
+        Collections.reverse(result);
+        return result;
+    }
 
-        String resultValue = "";
-        if(result.size() > 0)
+    /**
+     * Rebuilds the save state file of an auto save in the background. Commits of earlier auto saves
+     * are completed first.
+     *
+     * @param name     The name of the auto save, from {@link #getAutoSaves()}.
+     * @param listener The listener to notify once the file is ready.
+     */
+    public void restoreAutoSave(final String name, final OnAutoSaveRestoredListener listener)
+    {
+        sExecutor.execute(new Runnable()
         {
-            resultValue = result.get(result.size()-1);
+            @Override
+            public void run()
+            {
+                final File legacyFile = new File(mAutoSavePath + name);
+                final File stateFile = new File(mAutoSavePath + name + STATE_EXTENSION);
+                if(name.endsWith(".sav") && legacyFile.exists())
+                {
+                    listener.onAutoSaveRestored(legacyFile);
+                }
+                else if(stateFile.exists())
+                {
+                    listener.onAutoSaveRestored(stateFile);
+                }
+                else
+                {
+                    listener.onAutoSaveRestored(restore(name, new File(mAutoSavePath + RESTORE_FILE)));
+                }
+            }
+        });
+    }
+
+    public String getAutoSaveFileName()
+    {
+        final DateFormat dateFormat = new SimpleDateFormat(sFormatString, java.util.Locale.getDefault());
+        final String dateAndTime = dateFormat.format(new Date()).toString();
+
+        return mAutoSavePath + dateAndTime + STATE_EXTENSION;
+    }
+
+    /**
+     * Gets the name of the auto save written to a file returned by {@link #getAutoSaveFileName()}.
+     */
+    public static String getAutoSaveName(String path)
+    {
+        final String fileName = new File(path).getName();
+        return fileName.endsWith(STATE_EXTENSION) ?
+                fileName.substring(0, fileName.length() - STATE_EXTENSION.length()) : fileName;
+    }
+
+    @Override
+    public void onAutoSave( final String path )
+    {
+        sExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                commit(new File(path));
+            }
+        });
+    }
+
+    /**
+     * Adds a save state file written by the core to the index, and removes the auto saves that no
+     * longer fit.
+     */
+    private void commit(File stateFile)
+    {
+        final String fileName = stateFile.getName();
+        if(!fileName.endsWith(STATE_EXTENSION))
+        {
+            return;
         }
-        else
+        final String name = fileName.substring(0, fileName.length() - STATE_EXTENSION.length());
+
+        //The buffer is large, only hold it while committing
+        final SaveStateBuffer state = new SaveStateBuffer();
+        if(!state.read(stateFile))
         {
-            //Fall back to this if we can't find a valid filename
-            resultValue = mAutoSavePath + sDefaultString;
+            //The file is kept, it is still the latest auto save
+            Log.e("GameAutoSaveManager", "Unable to read auto save: " + stateFile.getName());
+            return;
         }
 
-        //Grab the last file
-        return resultValue;
+        //The auto saves that are kept along with the new one, which replaces any auto save made
+        //in the same second. Only commits change the entries, and they are made one at a time.
+        final ArrayList<IndexEntry> index = readIndex().entries;
+        if(!index.isEmpty() && index.get(index.size()-1).name.equals(name))
+        {
+            index.remove(index.size()-1);
+        }
+        final ArrayList<IndexEntry> evicted = new ArrayList<IndexEntry>();
+        while(!index.isEmpty() && index.size() + 1 > mMaxAutoSave)
+        {
+            evicted.add(index.remove(0));
+        }
+
+        final HashSet<String> ownersKept = new HashSet<String>();
+        for( final IndexEntry entry : index )
+        {
+            ownersKept.add(entry.name);
+        }
+
+        //Chunks can be shared with the previous auto save, as long as their pack is kept
+        final HashMap<ByteBuffer, ChunkRef> chunks = new HashMap<ByteBuffer, ChunkRef>();
+        if(!index.isEmpty())
+        {
+            try
+            {
+                final HashMap<ByteBuffer, ChunkRef> previous = new HashMap<ByteBuffer, ChunkRef>();
+                readManifest(index.get(index.size()-1).name, previous, null);
+                for( final ByteBuffer hash : previous.keySet() )
+                {
+                    final ChunkRef ref = previous.get(hash);
+                    if(ownersKept.contains(ref.pack))
+                    {
+                        chunks.put(hash, ref);
+                    }
+                }
+            }
+            catch(IOException e)
+            {
+                Log.w("GameAutoSaveManager", "Unable to read previous auto save, storing it in full: " + e);
+            }
+        }
+
+        final ArrayList<String> packs = new ArrayList<String>();
+        try
+        {
+            writePack(name, state, chunks, packs);
+        }
+        catch(IOException e)
+        {
+            Log.e("GameAutoSaveManager", "Unable to write auto save: " + e);
+            new File(mAutoSavePath + name + PACK_EXTENSION + TEMP_EXTENSION).delete();
+            return;
+        }
+
+        final String previousLatest = index.isEmpty() ? null : index.get(index.size()-1).name;
+        index.add(new IndexEntry(name, state.size, packs));
+        final ArrayList<String> pending;
+        synchronized(sIndexLock)
+        {
+            //Auto saves may have been added as pending meanwhile
+            final Index newIndex = readIndex();
+            newIndex.entries.clear();
+            newIndex.entries.addAll(index);
+            newIndex.pending.remove(name);
+            pending = newIndex.pending;
+            try
+            {
+                writeIndex(newIndex);
+            }
+            catch(IOException e)
+            {
+                Log.e("GameAutoSaveManager", "Unable to write auto save index: " + e);
+                new File(mAutoSavePath + name + PACK_EXTENSION).delete();
+                return;
+            }
+        }
+
+        //Only the state file of the latest auto save is kept
+        if(previousLatest != null)
+        {
+            new File(mAutoSavePath + previousLatest + STATE_EXTENSION).delete();
+        }
+        for( final IndexEntry entry : evicted )
+        {
+            Log.i("GameAutoSaveManager", "Deleting old autosave: " + entry.name);
+            new File(mAutoSavePath + entry.name + STATE_EXTENSION).delete();
+        }
+        deleteUnusedFiles(index, pending, name);
     }
 
-    public void clearOldest()
+    /**
+     * Deletes the packs no auto save uses any more, the files left by interrupted commits and, once
+     * the index holds enough auto saves, the auto saves from older versions. Save state files are
+     * kept while they are pending.
+     *
+     * @param index   The auto saves that are kept.
+     * @param pending The pending auto saves.
+     * @param latest  The name of the latest auto save. Files of later states are being written.
+     */
+    private void deleteUnusedFiles(ArrayList<IndexEntry> index, ArrayList<String> pending, final String latest)
     {
-        final List<File> result = new ArrayList<File>();
-        final File savePath = new File(mAutoSavePath);
+        final HashSet<String> packsUsed = new HashSet<String>();
+        for( final IndexEntry entry : index )
+        {
+            packsUsed.addAll(entry.packs);
+        }
+
+        final File[] files = new File(mAutoSavePath).listFiles(new FileFilter()
+        {
+            @Override
+            public boolean accept(File pathname)
+            {
+                final String fileName = pathname.getName();
+                return fileName.matches("^\\d\\d\\d\\d-\\d\\d-\\d\\d-\\d\\d-\\d\\d-\\d\\d\\..*") &&
+                        fileName.compareTo(latest) < 0;
+            }
+        });
 
-        if(savePath.listFiles() != null && savePath.listFiles().length != 0)
+        if(files != null)
         {
-            //Only find files that match the matcher string
-            final FileFilter fileFilter = new FileFilter(){
+            for( final File file : files )
+            {
+                final String fileName = file.getName();
+                if(fileName.endsWith(PACK_EXTENSION))
+                {
+                    if(!packsUsed.contains(fileName.substring(0, fileName.length() - PACK_EXTENSION.length())))
+                    {
+                        file.delete();
+                    }
+                }
+                else if(fileName.endsWith(STATE_EXTENSION))
+                {
+                    if(!pending.contains(getAutoSaveName(fileName)))
+                    {
+                        file.delete();
+                    }
+                }
+                else if(fileName.endsWith(TEMP_EXTENSION))
+                {
+                    file.delete();
+                }
+            }
+        }
 
-                @Override
-                public boolean accept(File pathname)
+        if(index.size() >= mMaxAutoSave)
+        {
+            for( final File file : getLegacyAutoSaves() )
+            {
+                Log.i("GameAutoSaveManager", "Deleting old autosave file: " + file.getName());
+                file.delete();
+
+                //Also remove the corresponding ".complete" file
+                new File(file.getPath() + "." + CoreInterface.COMPLETE_EXTENSION).delete();
+            }
+        }
+    }
+
+    /**
+     * Writes the state buffer to a new pack, with the chunks that are not already stored.
+     *
+     * @param name   The name of the auto save.
+     * @param state  The state.
+     * @param chunks The chunks already stored, by hash. Chunks of the new pack are added.
+     * @param packs  Filled with the packs the auto save uses.
+     */
+    private void writePack(String name, SaveStateBuffer state, HashMap<ByteBuffer, ChunkRef> chunks,
+            ArrayList<String> packs) throws IOException
+    {
+        final int size = state.size;
+        final MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-1");
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            throw new IOException(e.toString());
+        }
+
+        final File tempFile = new File(mAutoSavePath + name + PACK_EXTENSION + TEMP_EXTENSION);
+        final FileOutputStream fileStream = new FileOutputStream(tempFile);
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try
+        {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream));
+            final byte[] compressed = new byte[CHUNK_SIZE * 2];
+            final ArrayList<ByteBuffer> hashes = new ArrayList<ByteBuffer>();
+            packs.add(name);
+
+            out.writeLong(PACK_MAGIC);
+            int offset = 8;
+            for( int start = 0; start < size; start += CHUNK_SIZE )
+            {
+                final int rawLength = Math.min(CHUNK_SIZE, size - start);
+                digest.update(state.data, start, rawLength);
+                final ByteBuffer hash = ByteBuffer.wrap(digest.digest());
+                hashes.add(hash);
+
+                final ChunkRef stored = chunks.get(hash);
+                if(stored != null && stored.rawLength == rawLength)
+                {
+                    if(!packs.contains(stored.pack))
+                    {
+                        packs.add(stored.pack);
+                    }
+                    continue;
+                }
+
+                //Store the chunk as it is if it does not compress
+                deflater.reset();
+                deflater.setInput(state.data, start, rawLength);
+                deflater.finish();
+                final int length = deflater.deflate(compressed);
+                if(deflater.finished() && length < rawLength)
+                {
+                    out.write(compressed, 0, length);
+                    chunks.put(hash, new ChunkRef(name, offset, length, rawLength));
+                    offset += length;
+                }
+                else
                 {
-                    //It must match this format "yyyy-MM-dd-HH-mm-ss"
-                    final String fileName = pathname.getName();
-                    return fileName.matches(sMatcherString);
+                    out.write(state.data, start, rawLength);
+                    chunks.put(hash, new ChunkRef(name, offset, rawLength, rawLength));
+                    offset += rawLength;
                 }
+            }
+
+            //The manifest lists the chunks of the state, in order
+            final int manifestOffset = offset;
+            out.writeInt(size);
+            out.writeInt(packs.size());
+            for( final String pack : packs )
+            {
+                out.writeUTF(pack);
+            }
+            out.writeInt(hashes.size());
+            for( final ByteBuffer hash : hashes )
+            {
+                final ChunkRef ref = chunks.get(hash);
+                out.write(hash.array());
+                out.writeShort(packs.indexOf(ref.pack));
+                out.writeInt(ref.offset);
+                out.writeInt(ref.length);
+                out.writeInt(ref.rawLength);
+            }
+            out.writeInt(manifestOffset);
+            out.writeLong(PACK_MAGIC);
+            out.flush();
+            fileStream.getFD().sync();
+        }
+        finally
+        {
+            deflater.end();
+            fileStream.close();
+        }
 
-            };
+        if(!tempFile.renameTo(new File(mAutoSavePath + name + PACK_EXTENSION)))
+        {
+            throw new IOException("Unable to rename " + tempFile.getName());
+        }
+    }
 
-            //Add all files found
-            for( final File file : savePath.listFiles(fileFilter) )
+    /**
+     * Reads the manifest of a pack.
+     *
+     * @param name   The name of the auto save.
+     * @param chunks Filled with the chunks of the state, by hash.
+     * @param order  Filled with the chunks of the state in order, if not null.
+     *
+     * @return The size of the state.
+     */
+    private int readManifest(String name, HashMap<ByteBuffer, ChunkRef> chunks, List<ChunkRef> order)
+            throws IOException
+    {
+        final RandomAccessFile file = new RandomAccessFile(mAutoSavePath + name + PACK_EXTENSION, "r");
+        try
+        {
+            file.seek(file.length() - 12);
+            final int manifestOffset = file.readInt();
+            if(file.readLong() != PACK_MAGIC)
             {
-                result.add( file );
+                throw new IOException("Bad pack: " + name);
             }
 
-            //Sort by file name
-            Collections.sort(result);
+            file.seek(manifestOffset);
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file.getFD())));
+            final int size = in.readInt();
+            final String[] packs = new String[in.readInt()];
+            for( int i = 0; i < packs.length; i++ )
+            {
+                packs[i] = in.readUTF();
+            }
+
+            final int count = in.readInt();
+            for( int i = 0; i < count; i++ )
+            {
+                final byte[] hash = new byte[20];
+                in.readFully(hash);
+                final ChunkRef ref = new ChunkRef(packs[in.readShort()], in.readInt(), in.readInt(), in.readInt());
+                chunks.put(ByteBuffer.wrap(hash), ref);
+                if(order != null)
+                {
+                    order.add(ref);
+                }
+            }
+            return size;
+        }
+        finally
+        {
+            file.close();
+        }
+    }
 
-            while(result.size() > mMaxAutoSave)
+    /**
+     * Rebuilds the state file of an auto save from its chunks. The file is not compressed, the core
+     * loads it all the same. It is written under a temporary name first, so it is never found
+     * incomplete.
+     *
+     * @return The state file, or null if it could not be rebuilt.
+     */
+    private File restore(String name, File target)
+    {
+        final HashMap<String, RandomAccessFile> packFiles = new HashMap<String, RandomAccessFile>();
+        final Inflater inflater = new Inflater(true);
+        final File tempFile = new File(target.getPath() + TEMP_EXTENSION);
+        FileOutputStream out = null;
+        try
+        {
+            final ArrayList<ChunkRef> order = new ArrayList<ChunkRef>();
+            readManifest(name, new HashMap<ByteBuffer, ChunkRef>(), order);
+
+            out = new FileOutputStream(tempFile);
+            final BufferedOutputStream stream = new BufferedOutputStream(out);
+            final byte[] compressed = new byte[CHUNK_SIZE * 2];
+            final byte[] chunk = new byte[CHUNK_SIZE];
+            for( final ChunkRef ref : order )
+            {
+                RandomAccessFile packFile = packFiles.get(ref.pack);
+                if(packFile == null)
+                {
+                    packFile = new RandomAccessFile(mAutoSavePath + ref.pack + PACK_EXTENSION, "r");
+                    packFiles.put(ref.pack, packFile);
+                }
+                packFile.seek(ref.offset);
+
+                if(ref.length == ref.rawLength)
+                {
+                    packFile.readFully(chunk, 0, ref.rawLength);
+                }
+                else
+                {
+                    packFile.readFully(compressed, 0, ref.length);
+                    inflater.reset();
+                    inflater.setInput(compressed, 0, ref.length);
+                    if(inflater.inflate(chunk, 0, ref.rawLength) != ref.rawLength)
+                    {
+                        throw new IOException("Bad chunk in " + ref.pack);
+                    }
+                }
+                stream.write(chunk, 0, ref.rawLength);
+            }
+            stream.flush();
+            out.close();
+            out = null;
+
+            if(!tempFile.renameTo(target))
+            {
+                throw new IOException("Unable to rename " + tempFile.getName());
+            }
+            return target;
+        }
+        catch(IOException|DataFormatException e)
+        {
+            Log.e("GameAutoSaveManager", "Unable to restore auto save " + name + ": " + e);
+            tempFile.delete();
+            return null;
+        }
+        finally
+        {
+            inflater.end();
+            try
+            {
+                if(out != null)
+                {
+                    out.close();
+                }
+                for( final RandomAccessFile packFile : packFiles.values() )
+                {
+                    packFile.close();
+                }
+            }
+            catch(IOException ignored)
             {
-                Log.i("GameAutoSaveManager", "Deleting old autosave file: " + result.get(0).getName());
-                File theResult = result.get(0);
+            }
+        }
+    }
 
-                if(!theResult.isDirectory())
+    /**
+     * Reads the index.
+     */
+    private Index readIndex()
+    {
+        final Index index = new Index();
+        final File indexFile = new File(mAutoSavePath + INDEX_FILE);
+        if(!indexFile.exists())
+        {
+            return index;
+        }
+
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            final int count = in.readInt();
+            for( int i = 0; i < count; i++ )
+            {
+                final String name = in.readUTF();
+                final int size = in.readInt();
+                final ArrayList<String> packs = new ArrayList<String>();
+                final int packCount = in.readInt();
+                for( int j = 0; j < packCount; j++ )
                 {
-                    theResult.delete();
+                    packs.add(in.readUTF());
+                }
+                index.entries.add(new IndexEntry(name, size, packs));
+            }
 
-                    //Also remove the corresponding ".complete" file
-                    String completeFile = theResult.getAbsolutePath();
-                    completeFile = completeFile + "." + CoreInterface.COMPLETE_EXTENSION;
-                    new File(completeFile).delete();
+            //Indexes written by older versions end with the entries
+            final int pendingCount = in.available() > 0 ? in.readInt() : 0;
+            for( int i = 0; i < pendingCount; i++ )
+            {
+                index.pending.add(in.readUTF());
+            }
+        }
+        catch(IOException e)
+        {
+            Log.w("GameAutoSaveManager", "Unable to read auto save index: " + e);
+            index.entries.clear();
+            index.pending.clear();
+        }
+        finally
+        {
+            if(in != null)
+            {
+                try
+                {
+                    in.close();
+                }
+                catch(IOException ignored)
+                {
                 }
-                result.remove(0);
             }
         }
+        return index;
     }
 
-    public String getAutoSaveFileName()
+    /**
+     * Replaces the index.
+     */
+    private void writeIndex(Index index) throws IOException
     {
-        final DateFormat dateFormat = new SimpleDateFormat(sFormatString, java.util.Locale.getDefault());
-        final String dateAndTime = dateFormat.format(new Date()).toString();
-        final String fileName = dateAndTime + "." + V2 + ".sav";
+        final File tempFile = new File(mAutoSavePath + INDEX_FILE + TEMP_EXTENSION);
+        final FileOutputStream fileStream = new FileOutputStream(tempFile);
+        try
+        {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream));
+            out.writeInt(index.entries.size());
+            for( final IndexEntry entry : index.entries )
+            {
+                out.writeUTF(entry.name);
+                out.writeInt(entry.size);
+                out.writeInt(entry.packs.size());
+                for( final String pack : entry.packs )
+                {
+                    out.writeUTF(pack);
+                }
+            }
+            out.writeInt(index.pending.size());
+            for( final String name : index.pending )
+            {
+                out.writeUTF(name);
+            }
+            out.flush();
+            fileStream.getFD().sync();
+        }
+        finally
+        {
+            fileStream.close();
+        }
 
-        return mAutoSavePath + fileName;
+        if(!tempFile.renameTo(new File(mAutoSavePath + INDEX_FILE)))
+        {
+            throw new IOException("Unable to rename " + tempFile.getName());
+        }
     }
 }
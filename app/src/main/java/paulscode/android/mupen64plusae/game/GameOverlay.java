@@ -22,6 +22,7 @@ package paulscode.android.mupen64plusae.game;
 
 import android.content.Context;
 import android.graphics.Canvas;
+import android.graphics.Rect;
 import android.util.AttributeSet;
 import android.view.View;
 
@@ -74,7 +75,7 @@ public class GameOverlay extends View implements TouchController.OnStateChangedL
             if( mHatRefreshCount % mHatRefreshPeriod == 0 && mTouchMap != null
                     && mTouchMap.updateAnalog( axisFractionX, axisFractionY ) )
             {
-                postInvalidate();
+                postInvalidate( mTouchMap.getAnalogBounds() );
             }
         }
     }
@@ -85,7 +86,7 @@ public class GameOverlay extends View implements TouchController.OnStateChangedL
         // Update the AutoHold mask, and redraw if required
         if( mTouchMap != null && mTouchMap.updateAutoHold( autoHold , index) )
         {
-            postInvalidate();
+            postInvalidate( mTouchMap.getAutoHoldBounds( index ) );
         }
     }
     
@@ -94,7 +95,20 @@ public class GameOverlay extends View implements TouchController.OnStateChangedL
     {
         // Update the FPS indicator assets, and redraw if required
         if( mTouchMap != null && mTouchMap.updateFps( fps ) )
+            postInvalidate( mTouchMap.getFpsBounds() );
+    }
+    
+    /**
+     * Redraws only an area of the overlay, the static layer is copied from its cache.
+     * 
+     * @param bounds The area to redraw, or null to redraw everything.
+     */
+    private void postInvalidate( Rect bounds )
+    {
+        if( bounds == null || bounds.isEmpty() )
             postInvalidate();
+        else
+            postInvalidate( bounds.left, bounds.top, bounds.right, bounds.bottom );
     }
     
     @Override
@@ -114,8 +128,8 @@ public class GameOverlay extends View implements TouchController.OnStateChangedL
         
         if( mDrawingEnabled )
         {
-            // Redraw the static buttons
-            mTouchMap.drawButtons( canvas );
+            // Redraw the static buttons and analog background from the cached layer
+            mTouchMap.drawStaticLayer( canvas );
         
             // Redraw the dynamic analog stick
             mTouchMap.drawAnalog( canvas );
@@ -135,6 +149,7 @@ public class GameOverlay extends View implements TouchController.OnStateChangedL
     public void onSensorEnabled(boolean sensorEnabled) {
         if (mTouchMap != null && mIsAnalogHiddenWhenSensor) {
             mTouchMap.setAnalogEnabled(!sensorEnabled);
+            postInvalidate();
         }
         onAutoHold(sensorEnabled, TouchMap.TOGGLE_SENSOR);
     }
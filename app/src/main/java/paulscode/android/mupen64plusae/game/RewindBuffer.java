@@ -0,0 +1,532 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2026 Mupen64PlusAE contributors
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.game;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import paulscode.android.mupen64plusae.input.AbstractController;
+import paulscode.android.mupen64plusae.jni.CoreInterface;
+import paulscode.android.mupen64plusae.jni.NativeConstants;
+import paulscode.android.mupen64plusae.jni.NativeExports;
+
+/**
+ * Lets the player rewind the game by a few seconds at a time.
+ * <p>
+ * While the game runs, a save state is taken every few frames. The latest state is kept whole in
+ * memory. The older states are kept as the compressed XOR of each state with the next one, so the
+ * parts of the memory that did not change cost almost nothing. Rewinding XORs the latest delta into
+ * the latest state and loads the result. The oldest deltas are dropped to stay within the memory
+ * budget, which counts the latest state and the buffers the next one is read and compressed into, so
+ * a budget smaller than about two states keeps no deltas at all.
+ * <p>
+ * The core keeps one save or load at a time, so the saves and loads of the player go through
+ * {@link #request(boolean, Runnable)}, which never waits: a request made while a state is being taken
+ * or loaded is made by the rewind thread once the core reports that state.
+ */
+public class RewindBuffer implements CoreInterface.OnStateCallbackListener
+{
+    /** Captures are checked for this often, in milliseconds. */
+    private static final int POLL_MS = 16;
+
+    /** The core reports the save or load at the next frame, wait this long for it. */
+    private static final int CALLBACK_TIMEOUT_MS = 2000;
+
+    /** Statistics are logged after this many captures. */
+    private static final int STATS_PERIOD = 60;
+
+    /** Frames per second, to compute the memory used per minute of rewind. */
+    private static final int FRAME_RATE = 60;
+
+    private final File mSaveFile;
+    private final File mLoadFile;
+    private final int mInterval;
+    private final long mBudget;
+
+    private final Object mLock = new Object();
+    private final Thread mThread;
+    private volatile boolean mRunning = true;
+    private volatile int mEmuState = NativeConstants.EMULATOR_STATE_UNKNOWN;
+
+    /** Whether a save or load was requested from the core and not reported, guarded by the lock. */
+    private boolean mInCoreJob = false;
+
+    /** Requests of the player not yet made, in order, guarded by the lock. */
+    private final ArrayDeque<Runnable> mRequests = new ArrayDeque<Runnable>();
+
+    /** Whether a thread is making the requests of the player, guarded by the lock. */
+    private boolean mMakingRequests = false;
+
+    /** Whether a save or load of the player was requested and not reported, guarded by the lock. */
+    private boolean mInPlayerJob = false;
+
+    /** Rewinds requested and not yet done, guarded by the lock. */
+    private int mRewindRequests = 0;
+
+    /** The save or load reported by the core and its result, guarded by the lock. */
+    private int mCompletedParam = 0;
+    private int mCompletedValue = 0;
+
+    // Used by the rewind thread only
+    private final SaveStateBuffer mState = new SaveStateBuffer();
+    private byte[] mLatest = null;
+    private int mLatestSize = 0;
+    private final ArrayDeque<byte[]> mDeltas = new ArrayDeque<byte[]>();
+    private long mDeltaBytes = 0;
+    private byte[] mCompressed = new byte[64 * 1024];
+    private final byte[] mInflated = new byte[64 * 1024];
+    private int mLastCaptureFrame = 0;
+    private int mCaptureCount = 0;
+    private long mCaptureNanos = 0;
+    private long mCaptureBytes = 0;
+    private boolean mOverBudgetLogged = false;
+
+    /**
+     * Creates the buffer and starts its thread. States are only taken while the core is running.
+     *
+     * @param tempDir  The folder for the state files handed to and from the core.
+     * @param interval The number of frames between states.
+     * @param budget   The memory the states and deltas may use, in bytes.
+     */
+    public RewindBuffer( String tempDir, int interval, long budget )
+    {
+        new File( tempDir ).mkdirs();
+        mSaveFile = new File( tempDir, "rewind.sav" );
+        mLoadFile = new File( tempDir, "rewind-load.sav" );
+        mInterval = Math.max( interval, 1 );
+        mBudget = budget;
+
+        CoreInterface.addOnStateCallbackListener( this );
+        mThread = new Thread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                loop();
+            }
+        }, "RewindThread" );
+        mThread.start();
+    }
+
+    /**
+     * Stops taking states and frees the buffer.
+     */
+    public void quit()
+    {
+        CoreInterface.removeOnStateCallbackListener( this );
+        mRunning = false;
+        synchronized( mLock )
+        {
+            mLock.notifyAll();
+        }
+
+        try
+        {
+            mThread.join( CALLBACK_TIMEOUT_MS );
+        }
+        catch( InterruptedException ignored )
+        {
+        }
+        mSaveFile.delete();
+        mLoadFile.delete();
+    }
+
+    /**
+     * Makes a request of the player to the core without waiting, e.g. to save or load a state. If a
+     * state is being taken or loaded, the request is made by the rewind thread once the core reports
+     * it. Requests are made in order. No state is taken or loaded, and rewinds are dropped, until the
+     * requests are made and their saves or loads are reported.
+     *
+     * @param isCoreJob True if the request is a save or load, which the core reports.
+     * @param request   Makes the request.
+     */
+    public void request( boolean isCoreJob, Runnable request )
+    {
+        synchronized( mLock )
+        {
+            mRequests.addLast( request );
+            if( isCoreJob )
+                mInPlayerJob = true;
+            if( mInCoreJob || mMakingRequests )
+                return;
+            mMakingRequests = true;
+        }
+        makeRequests();
+    }
+
+    /**
+     * Makes the requests of the player, until there are none left.
+     */
+    private void makeRequests()
+    {
+        while( true )
+        {
+            final Runnable request;
+            synchronized( mLock )
+            {
+                if( mRequests.isEmpty() )
+                {
+                    mMakingRequests = false;
+                    return;
+                }
+                request = mRequests.removeFirst();
+            }
+            request.run();
+        }
+    }
+
+    /**
+     * Whether states must not be taken or loaded, because of the requests of the player. Called with
+     * the lock held.
+     */
+    private boolean isSuspended()
+    {
+        return mInPlayerJob || mMakingRequests || !mRequests.isEmpty();
+    }
+
+    /**
+     * Goes back to the previous state, if any. Does nothing while the game is paused.
+     */
+    public void rewind()
+    {
+        synchronized( mLock )
+        {
+            mRewindRequests++;
+            mLock.notifyAll();
+        }
+    }
+
+    @Override
+    public void onStateCallback( int paramChanged, int newValue )
+    {
+        if( paramChanged == NativeConstants.M64CORE_EMU_STATE )
+        {
+            mEmuState = newValue;
+        }
+    }
+
+    /**
+     * Takes the report of a save or load from the core, before the state callback listeners.
+     *
+     * @return True if the buffer requested the save or load, so that the listeners must not see it.
+     */
+    public boolean onCoreJobReported( int paramChanged, int newValue )
+    {
+        if( paramChanged != NativeConstants.M64CORE_STATE_SAVECOMPLETE
+                && paramChanged != NativeConstants.M64CORE_STATE_LOADCOMPLETE )
+            return false;
+
+        synchronized( mLock )
+        {
+            if( !mInCoreJob )
+            {
+                // The player's, which replaced any other the player requested before it
+                mInPlayerJob = false;
+                return false;
+            }
+
+            mCompletedParam = paramChanged;
+            mCompletedValue = newValue;
+            mLock.notifyAll();
+            return true;
+        }
+    }
+
+    private void loop()
+    {
+        while( mRunning )
+        {
+            boolean rewind = false;
+            boolean suspended;
+            synchronized( mLock )
+            {
+                suspended = isSuspended();
+                if( mRewindRequests > 0 )
+                {
+                    mRewindRequests--;
+                    rewind = !suspended;
+                }
+                else
+                {
+                    try
+                    {
+                        mLock.wait( POLL_MS );
+                    }
+                    catch( InterruptedException e )
+                    {
+                        return;
+                    }
+                }
+            }
+
+            if( mEmuState != NativeConstants.EMULATOR_STATE_RUNNING || suspended )
+                continue;
+
+            if( rewind )
+                restorePrevious();
+            else if( AbstractController.getPollCount() - mLastCaptureFrame >= mInterval )
+                capture();
+        }
+    }
+
+    /**
+     * Asks the core to save or load a state and waits for it to report it, then makes the requests
+     * of the player made meanwhile.
+     *
+     * @return The result reported by the core, 1 on success, or 0 if it did not report it in time
+     *         or the player made a request before the job could be requested.
+     */
+    private int runCoreJob( int param, String path )
+    {
+        int result = 0;
+        boolean makeRequests = false;
+        synchronized( mLock )
+        {
+            // Checked under the lock, so that request() either sees the job or prevents it
+            if( isSuspended() )
+                return 0;
+
+            mInCoreJob = true;
+            try
+            {
+                mCompletedParam = 0;
+                if( param == NativeConstants.M64CORE_STATE_SAVECOMPLETE )
+                    NativeExports.emuSaveFile( path );
+                else
+                    NativeExports.emuLoadFile( path );
+
+                final long end = System.currentTimeMillis() + CALLBACK_TIMEOUT_MS;
+                while( mCompletedParam != param && mRunning && System.currentTimeMillis() < end )
+                {
+                    try
+                    {
+                        mLock.wait( POLL_MS );
+                    }
+                    catch( InterruptedException e )
+                    {
+                        break;
+                    }
+                }
+                result = mCompletedParam == param ? mCompletedValue : 0;
+            }
+            finally
+            {
+                mInCoreJob = false;
+                if( !mRequests.isEmpty() && !mMakingRequests )
+                {
+                    mMakingRequests = true;
+                    makeRequests = true;
+                }
+            }
+        }
+
+        // Outside of the lock, since the requests may add state callback listeners
+        if( makeRequests )
+            makeRequests();
+        return result;
+    }
+
+    /**
+     * Takes a state, and stores the previous one as its difference with the new one.
+     */
+    private void capture()
+    {
+        final long begin = System.nanoTime();
+        mLastCaptureFrame = AbstractController.getPollCount();
+
+        mSaveFile.delete();
+        final boolean saved = runCoreJob( NativeConstants.M64CORE_STATE_SAVECOMPLETE, mSaveFile.getPath() ) == 1
+                && mState.read( mSaveFile );
+
+        // Another save may have replaced the request, try again later
+        if( !saved )
+            return;
+
+        if( mLatest != null && mLatestSize == mState.size )
+        {
+            // Turn the previous state into the difference, then compress it
+            final byte[] state = mState.data;
+            for( int i = 0; i < mLatestSize; i++ )
+                mLatest[i] ^= state[i];
+
+            final byte[] delta = compress( mLatest, mLatestSize );
+            mDeltas.addLast( delta );
+            mDeltaBytes += delta.length;
+            mCaptureBytes += delta.length;
+
+            // The full states and the compression buffer are kept for as long as the game runs
+            final long stateBytes = (long) mLatest.length + mState.data.length + mCompressed.length;
+            while( mDeltaBytes + stateBytes > mBudget && !mDeltas.isEmpty() )
+                mDeltaBytes -= mDeltas.removeFirst().length;
+
+            if( stateBytes > mBudget && !mOverBudgetLogged )
+            {
+                mOverBudgetLogged = true;
+                Log.w( "RewindBuffer", "The states alone use " + stateBytes / 1024 + " KB, over the budget of "
+                        + mBudget / 1024 + " KB, nothing can be rewound" );
+            }
+        }
+        else
+        {
+            // The size of the states changed, the deltas no longer apply
+            mDeltas.clear();
+            mDeltaBytes = 0;
+        }
+
+        // Keep the new state, and read the next one into the old buffer
+        final byte[] latest = mLatest;
+        mLatest = mState.data;
+        mLatestSize = mState.size;
+        mState.data = latest != null ? latest : new byte[0];
+
+        mCaptureNanos += System.nanoTime() - begin;
+        if( ++mCaptureCount % STATS_PERIOD == 0 )
+            logStats();
+    }
+
+    /**
+     * Loads the state before the latest one, which becomes the latest.
+     */
+    private void restorePrevious()
+    {
+        if( mDeltas.isEmpty() )
+        {
+            Log.i( "RewindBuffer", "Nothing to rewind" );
+            return;
+        }
+
+        final byte[] delta = mDeltas.removeLast();
+        mDeltaBytes -= delta.length;
+        if( !applyDelta( delta ) )
+        {
+            // The latest state is damaged, start over from the next capture
+            mDeltas.clear();
+            mDeltaBytes = 0;
+            mLatest = null;
+            return;
+        }
+
+        FileOutputStream out = null;
+        try
+        {
+            // The core loads uncompressed states as well
+            out = new FileOutputStream( mLoadFile );
+            out.write( mLatest, 0, mLatestSize );
+        }
+        catch( IOException e )
+        {
+            Log.w( "RewindBuffer", "Unable to write state: " + e );
+            return;
+        }
+        finally
+        {
+            if( out != null )
+            {
+                try
+                {
+                    out.close();
+                }
+                catch( IOException ignored )
+                {
+                }
+            }
+        }
+
+        if( runCoreJob( NativeConstants.M64CORE_STATE_LOADCOMPLETE, mLoadFile.getPath() ) != 1 )
+            Log.w( "RewindBuffer", "Unable to load state" );
+        mLastCaptureFrame = AbstractController.getPollCount();
+    }
+
+    private byte[] compress( byte[] data, int size )
+    {
+        final Deflater deflater = new Deflater( Deflater.BEST_SPEED );
+        try
+        {
+            deflater.setInput( data, 0, size );
+            deflater.finish();
+            int length = 0;
+            while( !deflater.finished() )
+            {
+                if( length == mCompressed.length )
+                    mCompressed = Arrays.copyOf( mCompressed, mCompressed.length * 2 );
+                length += deflater.deflate( mCompressed, length, mCompressed.length - length );
+            }
+            return Arrays.copyOf( mCompressed, length );
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    /**
+     * XORs a compressed delta into the latest state.
+     *
+     * @return True if the delta matched the state.
+     */
+    private boolean applyDelta( byte[] delta )
+    {
+        final Inflater inflater = new Inflater();
+        try
+        {
+            inflater.setInput( delta );
+            int offset = 0;
+            while( !inflater.finished() )
+            {
+                final int count = inflater.inflate( mInflated );
+                if( count == 0 && ( inflater.needsInput() || inflater.needsDictionary() ) )
+                    return false;
+                if( offset + count > mLatestSize )
+                    return false;
+                for( int i = 0; i < count; i++ )
+                    mLatest[offset + i] ^= mInflated[i];
+                offset += count;
+            }
+            return offset == mLatestSize;
+        }
+        catch( DataFormatException e )
+        {
+            Log.w( "RewindBuffer", "Bad delta: " + e );
+            return false;
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+
+    private void logStats()
+    {
+        final long averageBytes = mCaptureBytes / mCaptureCount;
+        final long bytesPerMinute = averageBytes * FRAME_RATE * 60 / mInterval;
+        Log.i( "RewindBuffer", "Captures: " + mCaptureCount
+                + ", average time: " + mCaptureNanos / mCaptureCount / 1000000 + " ms"
+                + ", average delta: " + averageBytes / 1024 + " KB"
+                + ", memory per minute: " + bytesPerMinute / 1024 + " KB"
+                + ", buffered: " + mDeltas.size() * mInterval / FRAME_RATE + " s in " + mDeltaBytes / 1024 + " KB" );
+    }
+}
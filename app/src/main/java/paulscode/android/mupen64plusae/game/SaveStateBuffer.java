@@ -0,0 +1,160 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2026 Mupen64PlusAE contributors
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.game;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The uncompressed content of a save state file written by the core. Each reading fills
+ * {@link #data}, which grows as needed. The owner of the buffer may take the array and give it
+ * another one to read the next state into, as the rewind buffer does to keep its latest state. A
+ * buffer must only be used by one thread, while {@link #isComplete(File)} needs none.
+ */
+final class SaveStateBuffer
+{
+    /** The core writes the state file after reporting the save, wait this long for it. */
+    private static final int WAIT_MS = 50;
+    private static final int WAIT_TRIES = 200;
+
+    /** The content of the state, valid up to {@link #size}. */
+    public byte[] data = new byte[0];
+
+    /** The size of the state, in bytes. */
+    public int size = 0;
+
+    /**
+     * Reads a state file. The core reports the save before it writes the file, and compresses the
+     * file as it writes it, so a file that is missing, empty or ends early is read again until the
+     * core is done with it.
+     *
+     * @param stateFile The save state file.
+     *
+     * @return True if the file was read.
+     */
+    public boolean read( File stateFile )
+    {
+        for( int tries = 0; tries < WAIT_TRIES; tries++ )
+        {
+            InputStream stream = null;
+            try
+            {
+                if( stateFile.length() == 0 )
+                    throw new FileNotFoundException( stateFile.getPath() );
+
+                stream = new GZIPInputStream( new BufferedInputStream( new FileInputStream( stateFile ) ) );
+                size = 0;
+                while( true )
+                {
+                    if( size == data.length )
+                    {
+                        final byte[] buffer = new byte[Math.max( data.length * 2, 1024 * 1024 )];
+                        System.arraycopy( data, 0, buffer, 0, size );
+                        data = buffer;
+                    }
+
+                    final int count = stream.read( data, size, data.length - size );
+                    if( count < 0 )
+                        return true;
+                    size += count;
+                }
+            }
+            catch( EOFException | FileNotFoundException e )
+            {
+                // The core has not finished writing the file yet
+                try
+                {
+                    Thread.sleep( WAIT_MS );
+                }
+                catch( InterruptedException ignored )
+                {
+                    return false;
+                }
+            }
+            catch( IOException e )
+            {
+                Log.w( "SaveStateBuffer", "Unable to read " + stateFile.getName() + ": " + e );
+                return false;
+            }
+            finally
+            {
+                if( stream != null )
+                {
+                    try
+                    {
+                        stream.close();
+                    }
+                    catch( IOException ignored )
+                    {
+                    }
+                }
+            }
+        }
+
+        Log.w( "SaveStateBuffer", "Timed out waiting for " + stateFile.getName() );
+        return false;
+    }
+
+    /**
+     * Checks that a compressed state file was written in full, without keeping its content.
+     *
+     * @param stateFile The save state file.
+     *
+     * @return True if the whole file could be read and its checksum matches.
+     */
+    public static boolean isComplete( File stateFile )
+    {
+        InputStream stream = null;
+        try
+        {
+            stream = new GZIPInputStream( new BufferedInputStream( new FileInputStream( stateFile ) ) );
+            final byte[] buffer = new byte[64 * 1024];
+            while( stream.read( buffer ) >= 0 )
+            {
+            }
+            return true;
+        }
+        catch( IOException e )
+        {
+            Log.w( "SaveStateBuffer", "Incomplete state " + stateFile.getName() + ": " + e );
+            return false;
+        }
+        finally
+        {
+            if( stream != null )
+            {
+                try
+                {
+                    stream.close();
+                }
+                catch( IOException ignored )
+                {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,782 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2026 Mupen64PlusAE contributors
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.game;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import paulscode.android.mupen64plusae.persistent.GamePrefs;
+
+/**
+ * The catalogue of the save states of a game: when each state was saved, its size, its slot, the
+ * play time at that point and, if enabled, a thumbnail of the screen.
+ * <p>
+ * The catalogue is kept in a small index file in the game data folder, so listing the save states
+ * does not open them. Thumbnails are made in the background from a screenshot the core takes along
+ * with the save. The core names its screenshots after the ROM header, numbered in the order they
+ * are taken, so the first screenshot of the game that appears after the save is used. Screenshots
+ * are the player's, they are never deleted. Save states made before the catalogue existed, or while
+ * it could not record them, are listed with what their file tells.
+ */
+public class SaveStateCatalog
+{
+    /** The subdirectory of the game data folder holding the catalogue. */
+    public static final String CATALOG_DIR = "SaveStateCatalog";
+
+    private static final String INDEX_FILE = "catalog.index";
+    private static final String THUMBNAILS_DIR = "thumbnails";
+    private static final String TEMP_EXTENSION = ".tmp";
+    private static final int INDEX_VERSION = 1;
+
+    /** Key prefix of the auto saves, which are not kept as files. */
+    private static final String AUTO_SAVE_KEY = "autosave:";
+
+    /** Width of the thumbnails, in pixels. */
+    private static final int THUMBNAIL_WIDTH = 256;
+    private static final int THUMBNAIL_QUALITY = 85;
+
+    /** The core takes the screenshot and writes the state at the next frame, wait this long. */
+    private static final int WAIT_MS = 100;
+    private static final int WAIT_TRIES = 30;
+
+    /** Records save states one at a time, for every game. */
+    private static final ThreadPoolExecutor sExecutor = new ThreadPoolExecutor( 1, 1, 5, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+            {
+                @Override
+                public Thread newThread( Runnable runnable )
+                {
+                    return new Thread( runnable, "SaveStateCatalogThread" );
+                }
+            } );
+
+    static
+    {
+        sExecutor.allowCoreThreadTimeOut( true );
+    }
+
+    /**
+     * A save state of the catalogue.
+     */
+    public static class Entry
+    {
+        /** The path of the save state file, or null for an auto save. */
+        public final String path;
+
+        /** The file name of the save state, or the name of the auto save. */
+        public final String name;
+
+        /** The time the state was saved, in milliseconds since the epoch. */
+        public final long timestamp;
+
+        /** The size of the save state file, in bytes, or 0 if unknown. */
+        public final long size;
+
+        /** The slot of the save state, or -1 if it was not saved to a slot. */
+        public final int slot;
+
+        /** The time the game had been played when the state was saved, in milliseconds, or -1 if unknown. */
+        public final long playTime;
+
+        /** The path of the thumbnail, or null if there is none. */
+        public final String thumbnail;
+
+        public Entry( String path, String name, long timestamp, long size, int slot, long playTime, String thumbnail )
+        {
+            this.path = path;
+            this.name = name;
+            this.timestamp = timestamp;
+            this.size = size;
+            this.slot = slot;
+            this.playTime = playTime;
+            this.thumbnail = thumbnail;
+        }
+    }
+
+    public interface OnEntriesListener
+    {
+        /**
+         * Called on a background thread with the save states.
+         *
+         * @param entries The save states, newest first.
+         */
+        public void onEntries( List<Entry> entries );
+    }
+
+    private final String mCatalogDir;
+    private final String mScreenshotDir;
+    private final String mScreenshotPrefix;
+    private final String mSlotSaveDir;
+    private final boolean mIsThumbnailEnabled;
+
+    /** The entries by key, guarded by this. */
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>();
+
+    /** The time the game was played in previous sessions, in milliseconds, guarded by this. */
+    private long mPlayTime = 0;
+
+    private boolean mIsLoaded = false;
+
+    /**
+     * @param gamePrefs          The preferences of the game.
+     * @param isThumbnailEnabled True to take a screenshot with each save for its thumbnail.
+     */
+    public SaveStateCatalog( GamePrefs gamePrefs, boolean isThumbnailEnabled )
+    {
+        mCatalogDir = gamePrefs.gameDataDir + "/" + CATALOG_DIR;
+        mScreenshotDir = gamePrefs.screenshotDir;
+        final String headerName = gamePrefs.gameHeaderName != null ? gamePrefs.gameHeaderName : "";
+        mScreenshotPrefix = headerName.toLowerCase( Locale.US ).replace( ' ', '_' ) + "-";
+        mSlotSaveDir = gamePrefs.slotSaveDir;
+        mIsThumbnailEnabled = isThumbnailEnabled;
+    }
+
+    /**
+     * Gets the screenshots of the game already taken, to tell the one of the next save from them.
+     * Must be called before the core is asked for that screenshot.
+     *
+     * @return The screenshots, or null if thumbnails are disabled and no screenshot must be taken.
+     */
+    public Set<String> listScreenshots()
+    {
+        if( !mIsThumbnailEnabled )
+            return null;
+
+        final Set<String> screenshots = new HashSet<String>();
+        final String[] names = new File( mScreenshotDir ).list();
+        if( names != null )
+        {
+            for( String name : names )
+            {
+                if( getScreenshotNumber( name ) >= 0 )
+                    screenshots.add( name );
+            }
+        }
+        return screenshots;
+    }
+
+    /**
+     * Gets the number of a screenshot the core took of the game, named "{header name}-{number}.png".
+     *
+     * @return The number, or -1 if the file is not such a screenshot.
+     */
+    private int getScreenshotNumber( String name )
+    {
+        final int numberLength = name.length() - mScreenshotPrefix.length() - ".png".length();
+        if( !name.startsWith( mScreenshotPrefix ) || !name.endsWith( ".png" ) || numberLength != 3 )
+            return -1;
+
+        int number = 0;
+        for( int i = mScreenshotPrefix.length(); i < mScreenshotPrefix.length() + numberLength; i++ )
+        {
+            final char digit = name.charAt( i );
+            if( digit < '0' || digit > '9' )
+                return -1;
+            number = number * 10 + digit - '0';
+        }
+        return number;
+    }
+
+    /**
+     * Records a save state file once the core has written it.
+     *
+     * @param file        The save state file.
+     * @param playTime    The time the game was played in this session, in milliseconds.
+     * @param screenshots The screenshots taken before the one of this save, or null.
+     */
+    public void recordFile( final File file, final long playTime, final Set<String> screenshots )
+    {
+        record( file.getPath(), file, -1, playTime, screenshots );
+    }
+
+    /**
+     * Records a slot save once the core has written it.
+     *
+     * @param slot        The slot.
+     * @param playTime    The time the game was played in this session, in milliseconds.
+     * @param screenshots The screenshots taken before the one of this save, or null.
+     */
+    public void recordSlot( final int slot, final long playTime, final Set<String> screenshots )
+    {
+        record( null, null, slot, playTime, screenshots );
+    }
+
+    /**
+     * Records an auto save.
+     *
+     * @param name        The name of the auto save.
+     * @param file        The save state file the core writes the auto save to.
+     * @param playTime    The time the game was played in this session, in milliseconds.
+     * @param screenshots The screenshots taken before the one of this save, or null.
+     */
+    public void recordAutoSave( final String name, final File file, final long playTime,
+            final Set<String> screenshots )
+    {
+        record( AUTO_SAVE_KEY + name, file, -1, playTime, screenshots );
+    }
+
+    /**
+     * Adds the play time of a session to the play time of the game.
+     *
+     * @param playTime The time the game was played in the session, in milliseconds.
+     */
+    public void addPlayTime( final long playTime )
+    {
+        sExecutor.execute( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                synchronized( SaveStateCatalog.this )
+                {
+                    ensureLoaded();
+                    mPlayTime += playTime;
+                }
+                save();
+            }
+        } );
+    }
+
+    private void record( final String key, final File file, final int slot, final long playTime,
+            final Set<String> screenshots )
+    {
+        final long requestTime = System.currentTimeMillis();
+        sExecutor.execute( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                final File stateFile = file != null ? file : findSlotFile( slot, requestTime );
+                final long size = stateFile != null ? waitForSize( stateFile, requestTime ) : 0;
+                final String entryKey = key != null ? key : stateFile != null ? stateFile.getPath() : null;
+                if( entryKey == null )
+                {
+                    Log.w( "SaveStateCatalog", "Unable to find the file of slot " + slot );
+                    return;
+                }
+
+                final String name = key != null && key.startsWith( AUTO_SAVE_KEY ) ?
+                        key.substring( AUTO_SAVE_KEY.length() ) : stateFile.getName();
+                final String path = key != null && key.startsWith( AUTO_SAVE_KEY ) ? null : stateFile.getPath();
+                final String thumbnail = screenshots != null ? makeThumbnail( screenshots, requestTime ) : null;
+
+                final Entry previous;
+                synchronized( SaveStateCatalog.this )
+                {
+                    ensureLoaded();
+                    previous = mEntries.remove( entryKey );
+                    mEntries.put( entryKey, new Entry( path, name, requestTime, size, slot, mPlayTime + playTime,
+                            thumbnail ) );
+                }
+
+                // The state was saved over
+                if( previous != null && previous.thumbnail != null && !previous.thumbnail.equals( thumbnail ) )
+                    new File( previous.thumbnail ).delete();
+                save();
+            }
+        } );
+    }
+
+    /**
+     * Finds the file the core saved a slot to.
+     */
+    private File findSlotFile( int slot, long requestTime )
+    {
+        final String extension = ".st" + slot;
+        for( int tries = 0; tries < WAIT_TRIES; tries++ )
+        {
+            final File[] files = new File( mSlotSaveDir ).listFiles();
+            if( files != null )
+            {
+                for( File file : files )
+                {
+                    // Modification times may be rounded to the second
+                    if( file.getName().endsWith( extension ) && file.lastModified() >= requestTime - 1000 )
+                        return file;
+                }
+            }
+
+            try
+            {
+                Thread.sleep( WAIT_MS );
+            }
+            catch( InterruptedException e )
+            {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Waits for the core to finish writing a save state file, which it does after reporting the save.
+     *
+     * @return The size of the file, or 0 if it was not written in time.
+     */
+    private static long waitForSize( File file, long requestTime )
+    {
+        long lastSize = 0;
+        for( int tries = 0; tries < WAIT_TRIES; tries++ )
+        {
+            // Modification times may be rounded to the second, an older file is the previous save
+            final long size = file.lastModified() >= requestTime - 1000 ? file.length() : 0;
+            if( size > 0 && size == lastSize )
+                return size;
+            lastSize = size;
+
+            try
+            {
+                Thread.sleep( WAIT_MS );
+            }
+            catch( InterruptedException e )
+            {
+                return 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Makes a thumbnail of the screenshot the core took with a save. The screenshot is kept.
+     *
+     * @return The path of the thumbnail, or null if the screenshot was not taken.
+     */
+    private String makeThumbnail( Set<String> screenshots, long requestTime )
+    {
+        for( int tries = 0; tries < WAIT_TRIES; tries++ )
+        {
+            // Screenshots the player took after the save are numbered after it
+            String name = null;
+            for( String newName : listScreenshots() )
+            {
+                if( !screenshots.contains( newName )
+                        && ( name == null || getScreenshotNumber( newName ) < getScreenshotNumber( name ) ) )
+                    name = newName;
+            }
+
+            if( name != null )
+            {
+                final File screenshot = new File( mScreenshotDir, name );
+                final Bitmap thumbnail = decodeThumbnail( screenshot );
+
+                // Otherwise the core is still writing it
+                if( thumbnail != null )
+                {
+                    final File thumbnailFile = new File( mCatalogDir + "/" + THUMBNAILS_DIR, requestTime + ".jpg" );
+                    final boolean isSaved = saveThumbnail( thumbnail, thumbnailFile );
+                    thumbnail.recycle();
+                    return isSaved ? thumbnailFile.getPath() : null;
+                }
+            }
+
+            try
+            {
+                Thread.sleep( WAIT_MS );
+            }
+            catch( InterruptedException e )
+            {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static Bitmap decodeThumbnail( File screenshot )
+    {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile( screenshot.getPath(), options );
+        if( options.outWidth <= 0 || options.outHeight <= 0 )
+            return null;
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        while( options.outWidth / ( options.inSampleSize * 2 ) >= THUMBNAIL_WIDTH )
+            options.inSampleSize *= 2;
+
+        final Bitmap bitmap = BitmapFactory.decodeFile( screenshot.getPath(), options );
+        if( bitmap == null || bitmap.getWidth() <= THUMBNAIL_WIDTH )
+            return bitmap;
+
+        final int height = Math.max( 1, bitmap.getHeight() * THUMBNAIL_WIDTH / bitmap.getWidth() );
+        final Bitmap scaled = Bitmap.createScaledBitmap( bitmap, THUMBNAIL_WIDTH, height, true );
+        if( scaled != bitmap )
+            bitmap.recycle();
+        return scaled;
+    }
+
+    private static boolean saveThumbnail( Bitmap thumbnail, File file )
+    {
+        file.getParentFile().mkdirs();
+        FileOutputStream out = null;
+        try
+        {
+            out = new FileOutputStream( file );
+            return thumbnail.compress( Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, out );
+        }
+        catch( IOException e )
+        {
+            Log.w( "SaveStateCatalog", "Unable to save thumbnail: " + e );
+            return false;
+        }
+        finally
+        {
+            if( out != null )
+            {
+                try
+                {
+                    out.close();
+                }
+                catch( IOException ignored )
+                {
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the save states in a folder, along with the slot saves of the game, in the background.
+     * Save states recorded before are listed.
+     *
+     * @param folder   The folder of the save state files.
+     * @param listener The listener to notify with the save states.
+     */
+    public void getFileEntries( final File folder, final OnEntriesListener listener )
+    {
+        sExecutor.execute( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                listener.onEntries( listFileEntries( folder ) );
+            }
+        } );
+    }
+
+    /**
+     * Gets the save states in a folder, along with the slot saves of the game, newest first. Only
+     * called by the executor.
+     */
+    private List<Entry> listFileEntries( File folder )
+    {
+        final List<Entry> result = new ArrayList<Entry>();
+        final HashSet<String> found = new HashSet<String>();
+        final long listTime = System.currentTimeMillis();
+        final File[] files = folder.listFiles();
+        synchronized( this )
+        {
+            ensureLoaded();
+            if( files != null )
+            {
+                for( File file : files )
+                {
+                    if( !file.isFile() )
+                        continue;
+
+                    final Entry entry = mEntries.get( file.getPath() );
+                    result.add( entry != null ? entry :
+                            new Entry( file.getPath(), file.getName(), file.lastModified(), file.length(), -1, -1, null ) );
+                    found.add( file.getPath() );
+                }
+            }
+
+            // The slot folder may be shared with other games, only list the recorded slots
+            for( Entry entry : mEntries.values() )
+            {
+                if( entry.slot >= 0 && !found.contains( entry.path ) && new File( entry.path ).exists() )
+                {
+                    result.add( entry );
+                    found.add( entry.path );
+                }
+            }
+        }
+
+        final String folderPath = folder.getPath() + "/";
+        pruneEntries( new EntryFilter()
+        {
+            @Override
+            public boolean isStale( String key, Entry entry )
+            {
+                return entry.timestamp < listTime && entry.path != null
+                        && ( entry.slot >= 0 || entry.path.startsWith( folderPath ) ) && !found.contains( entry.path );
+            }
+        } );
+
+        sortNewestFirst( result );
+        return result;
+    }
+
+    /**
+     * Gets the auto saves of the game in the background.
+     *
+     * @param names    The names of the auto saves, named after the time they were made.
+     * @param listener The listener to notify with the auto saves.
+     */
+    public void getAutoSaveEntries( final List<String> names, final OnEntriesListener listener )
+    {
+        final long listTime = System.currentTimeMillis();
+        sExecutor.execute( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                listener.onEntries( listAutoSaveEntries( names, listTime ) );
+            }
+        } );
+    }
+
+    /**
+     * Gets the auto saves of the game, newest first. Only called by the executor.
+     *
+     * @param names    The names of the auto saves.
+     * @param listTime The time the names were listed.
+     */
+    private List<Entry> listAutoSaveEntries( final List<String> names, final long listTime )
+    {
+        final List<Entry> result = new ArrayList<Entry>();
+        final DateFormat nameFormat = new SimpleDateFormat( GameAutoSaveManager.sFormatString, Locale.getDefault() );
+        synchronized( this )
+        {
+            ensureLoaded();
+            for( String name : names )
+            {
+                Entry entry = mEntries.get( AUTO_SAVE_KEY + name );
+                if( entry == null )
+                {
+                    long timestamp = 0;
+                    try
+                    {
+                        timestamp = nameFormat.parse( name ).getTime();
+                    }
+                    catch( ParseException ignored )
+                    {
+                    }
+                    entry = new Entry( null, name, timestamp, 0, -1, -1, null );
+                }
+                result.add( entry );
+            }
+        }
+
+        pruneEntries( new EntryFilter()
+        {
+            @Override
+            public boolean isStale( String key, Entry entry )
+            {
+                return entry.timestamp < listTime && key.startsWith( AUTO_SAVE_KEY ) && !names.contains( entry.name );
+            }
+        } );
+
+        sortNewestFirst( result );
+        return result;
+    }
+
+    private interface EntryFilter
+    {
+        boolean isStale( String key, Entry entry );
+    }
+
+    /**
+     * Removes the entries of the save states that were deleted, and their thumbnails. Only called by
+     * the executor, so that the entries of the saves recorded before are there.
+     */
+    private void pruneEntries( EntryFilter filter )
+    {
+        final List<Entry> removed = new ArrayList<Entry>();
+        synchronized( this )
+        {
+            final Iterator<String> keys = mEntries.keySet().iterator();
+            while( keys.hasNext() )
+            {
+                final String key = keys.next();
+                final Entry entry = mEntries.get( key );
+                if( filter.isStale( key, entry ) )
+                {
+                    removed.add( entry );
+                    keys.remove();
+                }
+            }
+        }
+
+        if( removed.isEmpty() )
+            return;
+
+        for( Entry entry : removed )
+        {
+            if( entry.thumbnail != null )
+                new File( entry.thumbnail ).delete();
+        }
+        save();
+    }
+
+    private static void sortNewestFirst( List<Entry> entries )
+    {
+        Collections.sort( entries, new Comparator<Entry>()
+        {
+            @Override
+            public int compare( Entry lhs, Entry rhs )
+            {
+                return lhs.timestamp < rhs.timestamp ? 1 : lhs.timestamp > rhs.timestamp ? -1 : 0;
+            }
+        } );
+    }
+
+    /**
+     * Reads the index, if not done yet.
+     */
+    private synchronized void ensureLoaded()
+    {
+        if( mIsLoaded )
+            return;
+        mIsLoaded = true;
+
+        final File indexFile = new File( mCatalogDir, INDEX_FILE );
+        if( !indexFile.exists() )
+            return;
+
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream( new BufferedInputStream( new FileInputStream( indexFile ) ) );
+            if( in.readInt() != INDEX_VERSION )
+                return;
+
+            mPlayTime = in.readLong();
+            final int count = in.readInt();
+            for( int i = 0; i < count; i++ )
+            {
+                final String key = in.readUTF();
+                final String path = in.readUTF();
+                final String name = in.readUTF();
+                final long timestamp = in.readLong();
+                final long size = in.readLong();
+                final int slot = in.readInt();
+                final long playTime = in.readLong();
+                final String thumbnail = in.readUTF();
+                mEntries.put( key, new Entry( path.length() > 0 ? path : null, name, timestamp, size, slot,
+                        playTime, thumbnail.length() > 0 ? thumbnail : null ) );
+            }
+        }
+        catch( IOException e )
+        {
+            Log.w( "SaveStateCatalog", "Unable to read the catalog: " + e );
+        }
+        finally
+        {
+            if( in != null )
+            {
+                try
+                {
+                    in.close();
+                }
+                catch( IOException ignored )
+                {
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the index. Only called by the executor.
+     */
+    private void save()
+    {
+        final ArrayList<String> keys;
+        final ArrayList<Entry> entries;
+        final long playTime;
+        synchronized( this )
+        {
+            keys = new ArrayList<String>( mEntries.keySet() );
+            entries = new ArrayList<Entry>( mEntries.values() );
+            playTime = mPlayTime;
+        }
+
+        new File( mCatalogDir ).mkdirs();
+        final File tempFile = new File( mCatalogDir, INDEX_FILE + TEMP_EXTENSION );
+        FileOutputStream fileStream = null;
+        try
+        {
+            fileStream = new FileOutputStream( tempFile );
+            final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( fileStream ) );
+            out.writeInt( INDEX_VERSION );
+            out.writeLong( playTime );
+            out.writeInt( entries.size() );
+            for( int i = 0; i < entries.size(); i++ )
+            {
+                final Entry entry = entries.get( i );
+                out.writeUTF( keys.get( i ) );
+                out.writeUTF( entry.path != null ? entry.path : "" );
+                out.writeUTF( entry.name );
+                out.writeLong( entry.timestamp );
+                out.writeLong( entry.size );
+                out.writeInt( entry.slot );
+                out.writeLong( entry.playTime );
+                out.writeUTF( entry.thumbnail != null ? entry.thumbnail : "" );
+            }
+            out.flush();
+            fileStream.getFD().sync();
+        }
+        catch( IOException e )
+        {
+            Log.w( "SaveStateCatalog", "Unable to write the catalog: " + e );
+            return;
+        }
+        finally
+        {
+            if( fileStream != null )
+            {
+                try
+                {
+                    fileStream.close();
+                }
+                catch( IOException ignored )
+                {
+                }
+            }
+        }
+
+        if( !tempFile.renameTo( new File( mCatalogDir, INDEX_FILE ) ) )
+            Log.w( "SaveStateCatalog", "Unable to replace the catalog" );
+    }
+}
@@ -20,10 +20,11 @@
  */
 package paulscode.android.mupen64plusae.input;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 
-import paulscode.android.mupen64plusae.jni.NativeInput;
-
 /**
  * The abstract base class for implementing all N64 controllers.
  * <p/>
@@ -34,10 +35,19 @@ import paulscode.android.mupen64plusae.jni.NativeInput;
  * protected fields mState.buttons and mState.axisFraction* accordingly.</li>
  * <li>Call the protected method notifyChanged().</li>
  * </ul>
- * This abstract class will call the emulator's native libraries to update game state whenever
+ * This abstract class will publish the controller state to the emulator's native libraries whenever
  * notifyChanged() is called. Subclasses should not call any native methods themselves. (If they do,
  * then this abstract class should be expanded to cover those needs.)
  * <p>
+ * The state of each player is packed into a single int of a direct buffer shared with the input
+ * plugin, which reads it once per emulated frame. Publishing is therefore a plain memory write with
+ * no JNI call and no allocation, and writes that would not change the packed state are skipped.
+ * <p>
+ * All the controllers of a player share its state, and they may run on different threads: gamepads
+ * on the input thread, touch and sensor input on the UI thread. Subclasses must therefore modify
+ * mState and call notifyChanged() while holding the lock of mState, so that each update is
+ * published whole.
+ * <p>
  * Note that this class is stateful, in that it remembers controller button/axis state between calls
  * from the subclass. For best performance, subclasses should only call notifyChanged() when the
  * input state has actually changed, and should bundle the protected field modifications before
@@ -46,7 +56,7 @@ import paulscode.android.mupen64plusae.jni.NativeInput;
  * <pre>
  * {@code
  * buttons[0] = true; notifyChanged(); buttons[1] = false; notifyChanged(); // Inefficient
- * buttons[0] = true; buttons[1] = false; notifyChanged(); // Better
+ * synchronized( mState ) { buttons[0] = true; buttons[1] = false; notifyChanged(); } // Better
  * }
  * </pre>
  * 
@@ -135,6 +145,20 @@ public abstract class AbstractController
     /** The factor by which the axis fractions are scaled before going to the core. */
     private static final float AXIS_SCALE = 80;
     
+    /** Index of the poll counter, following the packed states in the shared buffer. */
+    private static final int POLL_COUNT_INDEX = 4;
+    
+    /**
+     * The packed state of all four player controllers, as read by the input plugin. Bits 0-15 hold
+     * the buttons, bits 16-23 and 24-31 the signed x and y axes. The plugin counts its polls in the
+     * fifth int.
+     */
+    private static final ByteBuffer sPackedStates = ByteBuffer.allocateDirect( 5 * 4 ).order(
+            ByteOrder.nativeOrder() );
+    
+    /** Int view of the packed states, indexed by player. */
+    private static final IntBuffer sPackedStateInts = sPackedStates.asIntBuffer();
+    
     static
     {
         sStates.add( new State() );
@@ -152,13 +176,102 @@ public abstract class AbstractController
     }
     
     /**
-     * Notifies the core that the N64 controller state has changed.
+     * Notifies the core that the N64 controller state has changed. Must be called while holding
+     * the lock of mState.
      */
     protected void notifyChanged()
     {
         int axisX = Math.round( AXIS_SCALE * mState.axisFractionX );
         int axisY = Math.round( AXIS_SCALE * mState.axisFractionY );
-        NativeInput.setState( mPlayerNumber - 1, mState.buttons, axisX, axisY );
+        publishState( mPlayerNumber - 1, packState( mState.buttons, axisX, axisY ) );
+        InputLatencyMonitor.end();
+    }
+    
+    /**
+     * Packs a controller state into the format read by the input plugin.
+     * 
+     * @param buttons The pressed state of the buttons.
+     * @param axisX The analog value of the x-axis, in the range [-80,80].
+     * @param axisY The analog value of the y-axis, in the range [-80,80].
+     * 
+     * @return The packed state.
+     */
+    public static int packState( boolean[] buttons, int axisX, int axisY )
+    {
+        int packed = 0;
+        for( int i = 0; i < NUM_N64_BUTTONS; i++ )
+        {
+            if( buttons[i] )
+                packed |= 1 << i;
+        }
+        return packed | ( ( axisX & 0xFF ) << 16 ) | ( ( axisY & 0xFF ) << 24 );
+    }
+    
+    /**
+     * Makes a packed controller state visible to the input plugin, unless it is already.
+     * 
+     * @param controllerNum Controller index, in the range [0,3].
+     * @param packed The packed state.
+     * 
+     * @return True if the published state changed.
+     */
+    protected static boolean publishState( int controllerNum, int packed )
+    {
+        // Live input is ignored while a trace is replayed
+        if( InputTrace.isReplaying() )
+            return false;
+        
+        return putState( controllerNum, packed );
+    }
+    
+    /**
+     * Makes a packed controller state visible to the input plugin, unless it is already, and adds
+     * it to the trace being recorded if any.
+     * 
+     * @param controllerNum Controller index, in the range [0,3].
+     * @param packed The packed state.
+     * 
+     * @return True if the published state changed.
+     */
+    static boolean putState( int controllerNum, int packed )
+    {
+        if( sPackedStateInts.get( controllerNum ) == packed )
+            return false;
+        
+        sPackedStateInts.put( controllerNum, packed );
+        InputTrace.onStateChanged( controllerNum, packed );
+        return true;
+    }
+    
+    /**
+     * Gets the number of times the input plugin polled the controllers since the core started.
+     * 
+     * @return The poll count, which increases once per input frame.
+     */
+    public static int getPollCount()
+    {
+        return sPackedStateInts.get( POLL_COUNT_INDEX );
+    }
+    
+    /**
+     * Releases every button and centers every axis of the packed states, and zeroes the poll count.
+     * Called when the core starts and exits, so that no state is carried over between sessions.
+     */
+    public static void resetPackedStates()
+    {
+        for( int i = 0; i <= POLL_COUNT_INDEX; i++ )
+            sPackedStateInts.put( i, 0 );
+    }
+    
+    /**
+     * Gets the buffer holding the packed state of the four controllers, to be shared with the
+     * input plugin.
+     * 
+     * @return The direct buffer of packed states, followed by the poll count.
+     */
+    public static ByteBuffer getPackedStates()
+    {
+        return sPackedStates;
     }
     
     /**
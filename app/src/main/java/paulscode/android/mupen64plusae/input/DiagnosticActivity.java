@@ -20,6 +20,7 @@
  */
 package paulscode.android.mupen64plusae.input;
 
+import java.io.File;
 import java.util.Locale;
 
 import org.mupen64plusae.v3.alpha.R;
@@ -29,12 +30,16 @@ import paulscode.android.mupen64plusae.input.provider.AbstractProvider;
 import paulscode.android.mupen64plusae.persistent.AppData;
 import paulscode.android.mupen64plusae.persistent.GlobalPrefs;
 import paulscode.android.mupen64plusae.util.DeviceUtil;
+import paulscode.android.mupen64plusae.util.Notifier;
 import android.os.Bundle;
 import android.os.Handler;
 import android.support.v7.app.AppCompatActivity;
 import android.view.InputDevice.MotionRange;
 import android.view.KeyEvent;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.MotionEvent;
+import android.view.View;
 import android.widget.TextView;
 
 import com.bda.controller.Controller;
@@ -44,13 +49,15 @@ import com.bda.controller.StateEvent;
 public class DiagnosticActivity extends AppCompatActivity implements ControllerListener
 {
     private Controller mMogaController = Controller.getInstance( this );
+    private GlobalPrefs mGlobalPrefs;
     
     @Override
     public void onCreate( Bundle savedInstanceState )
     {
         super.onCreate( savedInstanceState );
         AppData appData = new AppData( this );
-        new GlobalPrefs( this, appData ).enforceLocale( this );
+        mGlobalPrefs = new GlobalPrefs( this, appData );
+        mGlobalPrefs.enforceLocale( this );
         setContentView( R.layout.diagnostic_activity );
         
         // TODO: Remove hack after MOGA SDK is fixed
@@ -64,6 +71,7 @@ public class DiagnosticActivity extends AppCompatActivity implements ControllerL
     {
         super.onResume();
         mMogaController.onResume();
+        updateLatency();
     }
     
     @Override
@@ -80,6 +88,60 @@ public class DiagnosticActivity extends AppCompatActivity implements ControllerL
         mMogaController.exit();
     }
     
+    @Override
+    public boolean onCreateOptionsMenu( Menu menu )
+    {
+        getMenuInflater().inflate( R.menu.diagnostic_activity, menu );
+        return super.onCreateOptionsMenu( menu );
+    }
+    
+    @Override
+    public boolean onPrepareOptionsMenu( Menu menu )
+    {
+        boolean hasMeasurements = InputLatencyMonitor.hasMeasurements();
+        menu.findItem( R.id.menuItem_saveLatency ).setEnabled( hasMeasurements );
+        menu.findItem( R.id.menuItem_resetLatency ).setEnabled( hasMeasurements );
+        return super.onPrepareOptionsMenu( menu );
+    }
+    
+    @Override
+    public boolean onOptionsItemSelected( MenuItem item )
+    {
+        switch( item.getItemId() )
+        {
+            case R.id.menuItem_saveLatency:
+                File report = InputLatencyMonitor.dump( mGlobalPrefs.inputLatencyDir );
+                if( report != null )
+                    Notifier.showToast( this, R.string.toast_latencyReportSaved, report.getPath() );
+                else
+                    Notifier.showToast( this, R.string.toast_latencyReportFailed );
+                return true;
+            case R.id.menuItem_resetLatency:
+                InputLatencyMonitor.reset();
+                updateLatency();
+                return true;
+            default:
+                return super.onOptionsItemSelected( item );
+        }
+    }
+    
+    /**
+     * Shows the input latencies measured during the last game, if any.
+     */
+    private void updateLatency()
+    {
+        TextView view = (TextView) findViewById( R.id.textLatency );
+        if( InputLatencyMonitor.hasMeasurements() )
+        {
+            view.setText( getString( R.string.diagnosticActivity_latency, InputLatencyMonitor.getSummary() ) );
+            view.setVisibility( View.VISIBLE );
+        }
+        else
+        {
+            view.setVisibility( View.GONE );
+        }
+    }
+    
     @Override
     public void onStateEvent( StateEvent event )
     {
@@ -0,0 +1,303 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2026 Mupen64PlusAE contributors
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.input;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import paulscode.android.mupen64plusae.util.FileUtil;
+
+/**
+ * Opt-in measurement of the time from an Android input event to the moment the resulting
+ * controller state is handed to the core.
+ * <p>
+ * Event sources call one of the begin methods with the timestamp of the event before dispatching
+ * it, and {@link AbstractController} ends the measurement when it publishes the state. Latencies
+ * are accumulated per source in fixed-size histograms. Key and motion event timestamps only have
+ * millisecond resolution, so their latencies are accurate to about a millisecond.
+ * <p>
+ * Gamepad events are handed from the UI thread to the input thread. The time from the event to
+ * that hand-over is accumulated in another histogram, which measures how long the UI thread stalls
+ * the input.
+ */
+public final class InputLatencyMonitor
+{
+    /** Source: KeyProvider. */
+    public static final int SOURCE_KEY = 0;
+
+    /** Source: AxisProvider. */
+    public static final int SOURCE_AXIS = 1;
+
+    /** Source: MogaProvider. */
+    public static final int SOURCE_MOGA = 2;
+
+    /** Source: TouchController. */
+    public static final int SOURCE_TOUCH = 3;
+
+    /** Source: SensorController. */
+    public static final int SOURCE_SENSOR = 4;
+
+    /** Total number of sources. */
+    public static final int NUM_SOURCES = 5;
+
+    private static final String[] SOURCE_NAMES = { "KeyProvider", "AxisProvider", "MogaProvider",
+            "TouchController", "SensorController" };
+
+    private static final LatencyHistogram[] sHistograms = new LatencyHistogram[NUM_SOURCES];
+
+    /** Time from gamepad events to their hand-over to the input thread. */
+    private static final LatencyHistogram sUiThreadDelay = new LatencyHistogram();
+
+    private static final String UI_THREAD_DELAY_NAME = "UI thread delay";
+
+    private static volatile boolean sEnabled = false;
+
+    /** The event being dispatched on the current thread: source, and time in nanoseconds. */
+    private static final ThreadLocal<long[]> sPendingEvent = new ThreadLocal<long[]>()
+    {
+        @Override
+        protected long[] initialValue()
+        {
+            return new long[] { -1, 0 };
+        }
+    };
+
+    static
+    {
+        for( int i = 0; i < NUM_SOURCES; i++ )
+            sHistograms[i] = new LatencyHistogram();
+    }
+
+    private InputLatencyMonitor()
+    {
+    }
+
+    /**
+     * Turns the measurements on or off. Measurements are off by default.
+     */
+    public static void setEnabled( boolean enabled )
+    {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled()
+    {
+        return sEnabled;
+    }
+
+    /**
+     * Starts measuring an event timestamped with {@link SystemClock#uptimeMillis()}, such as a
+     * KeyEvent or MotionEvent.
+     *
+     * @param source The source of the event.
+     * @param eventTime The time of the event, in milliseconds.
+     */
+    public static void beginUptimeEvent( int source, long eventTime )
+    {
+        if( sEnabled )
+            beginEvent( source, eventTime * 1000000L );
+    }
+
+    /**
+     * Starts measuring an event timestamped with {@link SystemClock#elapsedRealtimeNanos()}, such
+     * as a SensorEvent.
+     *
+     * @param source The source of the event.
+     * @param timestamp The time of the event, in nanoseconds.
+     */
+    public static void beginRealtimeEvent( int source, long timestamp )
+    {
+        if( sEnabled )
+            beginEvent( source, System.nanoTime() - ( SystemClock.elapsedRealtimeNanos() - timestamp ) );
+    }
+
+    /**
+     * Starts measuring an event timestamped with {@link System#nanoTime()}. Used to hand an event
+     * over from the thread that received it to the thread that processes it.
+     *
+     * @param source The source of the event.
+     * @param nanoTime The time of the event, in nanoseconds.
+     */
+    public static void beginEvent( int source, long nanoTime )
+    {
+        final long[] pending = sPendingEvent.get();
+        pending[0] = source;
+        pending[1] = nanoTime;
+    }
+
+    /**
+     * Gets the source of the event being measured on this thread.
+     *
+     * @return The source, or -1 if no event is being measured.
+     */
+    public static int getPendingSource()
+    {
+        return (int) sPendingEvent.get()[0];
+    }
+
+    /**
+     * Gets the time of the event being measured on this thread.
+     *
+     * @return The time of the event, in nanoseconds.
+     */
+    public static long getPendingTime()
+    {
+        return sPendingEvent.get()[1];
+    }
+
+    /**
+     * Stops measuring the event of this thread without recording it.
+     */
+    public static void cancelEvent()
+    {
+        sPendingEvent.get()[0] = -1;
+    }
+
+    /**
+     * Records how long the UI thread took to hand an event over to the input thread.
+     *
+     * @param nanoTime The time of the event, in nanoseconds.
+     */
+    public static void recordUiThreadDelay( long nanoTime )
+    {
+        if( sEnabled )
+            sUiThreadDelay.record( ( System.nanoTime() - nanoTime ) / 1000 );
+    }
+
+    /**
+     * Ends the measurement of the event being dispatched on this thread, if any. Called once the
+     * controller state has been published.
+     */
+    static void end()
+    {
+        if( !sEnabled )
+            return;
+
+        final long[] pending = sPendingEvent.get();
+        if( pending[0] < 0 )
+            return;
+
+        // System.nanoTime() shares the uptime clock on Android
+        sHistograms[(int) pending[0]].record( ( System.nanoTime() - pending[1] ) / 1000 );
+        pending[0] = -1;
+    }
+
+    /**
+     * Forgets every measurement.
+     */
+    public static void reset()
+    {
+        for( LatencyHistogram histogram : sHistograms )
+            histogram.reset();
+        sUiThreadDelay.reset();
+    }
+
+    /**
+     * Returns true if at least one latency was recorded since the last reset.
+     */
+    public static boolean hasMeasurements()
+    {
+        for( LatencyHistogram histogram : sHistograms )
+        {
+            if( histogram.getTotalCount() > 0 )
+                return true;
+        }
+        return sUiThreadDelay.getTotalCount() > 0;
+    }
+
+    /**
+     * Gets a summary of the measurements, one line per source.
+     */
+    public static String getSummary()
+    {
+        final StringBuilder builder = new StringBuilder();
+        for( int i = 0; i < NUM_SOURCES; i++ )
+        {
+            builder.append( SOURCE_NAMES[i] ).append( ": " ).append( sHistograms[i].getSummary() )
+                    .append( '\n' );
+        }
+        builder.append( UI_THREAD_DELAY_NAME ).append( ": " ).append( sUiThreadDelay.getSummary() ).append( '\n' );
+        return builder.toString();
+    }
+
+    /**
+     * Writes the summary and the full histograms to a text file, for comparison between builds or
+     * devices.
+     *
+     * @param directory The directory to write the report into.
+     *
+     * @return The report file, or null if it could not be written.
+     */
+    public static File dump( String directory )
+    {
+        final DateFormat dateFormat = new SimpleDateFormat( "yyyy-MM-dd-HH-mm-ss", Locale.US );
+        final File file = new File( directory, "InputLatency-" + dateFormat.format( new Date() ) + ".txt" );
+
+        final StringBuilder builder = new StringBuilder();
+        builder.append( "Device: " ).append( Build.MANUFACTURER ).append( ' ' ).append( Build.MODEL )
+                .append( " (API " ).append( Build.VERSION.SDK_INT ).append( ")\n" );
+        builder.append( "Build: " ).append( Build.FINGERPRINT ).append( "\n\n" );
+        builder.append( getSummary() );
+        for( int i = 0; i < NUM_SOURCES; i++ )
+        {
+            builder.append( "\n[" ).append( SOURCE_NAMES[i] ).append( "]\n" );
+            builder.append( "# lowest latency of bucket (us), count\n" );
+            sHistograms[i].appendBuckets( builder );
+        }
+        builder.append( "\n[" ).append( UI_THREAD_DELAY_NAME ).append( "]\n" );
+        builder.append( "# lowest latency of bucket (us), count\n" );
+        sUiThreadDelay.appendBuckets( builder );
+
+        FileUtil.makeDirs( directory );
+        FileOutputStream fos = null;
+        try
+        {
+            fos = new FileOutputStream( file );
+            fos.write( builder.toString().getBytes( "UTF-8" ) );
+            return file;
+        }
+        catch( IOException e )
+        {
+            Log.w( "InputLatencyMonitor", e );
+            return null;
+        }
+        finally
+        {
+            if( fos != null )
+            {
+                try
+                {
+                    fos.close();
+                }
+                catch( IOException ignored )
+                {
+                }
+            }
+        }
+    }
+}
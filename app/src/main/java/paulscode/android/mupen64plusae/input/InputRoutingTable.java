@@ -0,0 +1,190 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2026 Mupen64PlusAE contributors
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.input;
+
+import java.util.Arrays;
+
+import paulscode.android.mupen64plusae.input.map.InputMap;
+
+/**
+ * An input map compiled into flat tables, routing input codes to N64/Mupen commands and tracking
+ * the strength of each command.
+ * <p>
+ * Every mapped input code owns a slot holding its command and last strength. Button codes (positive)
+ * and axis codes (negative) index dense arrays of slots, and the slots of each command are stored
+ * contiguously, so routing an input is a couple of array reads and computing the strength of a
+ * command only visits the inputs mapped to it.
+ */
+public final class InputRoutingTable
+{
+    /** Input codes beyond this magnitude are never routed. */
+    private static final int MAX_CODE = 4096;
+
+    /** The slot of each button input code, or -1. */
+    private final int[] mButtonSlots;
+
+    /** The slot of each negated axis input code, or -1. */
+    private final int[] mAxisSlots;
+
+    /** The command of each slot. */
+    private final int[] mSlotCommands;
+
+    /** The last strength of each slot, between 0 and 1, inclusive. */
+    private final float[] mSlotStrengths;
+
+    /** The slots of command i range from mCommandStarts[i] to mCommandStarts[i + 1] - 1. */
+    private final int[] mCommandStarts;
+
+    /** The strength of each command, the maximum of the strengths of its slots. */
+    private final float[] mCommandStrengths;
+
+    /**
+     * Compiles an input map.
+     *
+     * @param inputMap The map from input codes to N64/Mupen commands.
+     * @param previous The table compiled from a previous version of the map, or null. Inputs still
+     *            mapped to the same command keep their last strength.
+     */
+    public InputRoutingTable( InputMap inputMap, InputRoutingTable previous )
+    {
+        final int size = inputMap.size();
+
+        // Size the dense tables to the largest mapped codes
+        int maxButton = -1;
+        int maxAxis = -1;
+        for( int i = 0; i < size; i++ )
+        {
+            final int code = inputMap.keyAt( i );
+            if( code >= 0 && code < MAX_CODE )
+                maxButton = Math.max( maxButton, code );
+            else if( code < 0 && code > -MAX_CODE )
+                maxAxis = Math.max( maxAxis, -code );
+        }
+        mButtonSlots = new int[maxButton + 1];
+        mAxisSlots = new int[maxAxis + 1];
+        Arrays.fill( mButtonSlots, -1 );
+        Arrays.fill( mAxisSlots, -1 );
+
+        // Count the inputs of each command
+        mCommandStarts = new int[InputMap.NUM_MAPPABLES + 1];
+        for( int i = 0; i < size; i++ )
+        {
+            final int command = inputMap.valueAt( i );
+            if( isRoutable( inputMap.keyAt( i ), command ) )
+                mCommandStarts[command + 1]++;
+        }
+        for( int i = 0; i < InputMap.NUM_MAPPABLES; i++ )
+            mCommandStarts[i + 1] += mCommandStarts[i];
+
+        // Assign the slots, grouped by command
+        final int slotCount = mCommandStarts[InputMap.NUM_MAPPABLES];
+        final int[] next = Arrays.copyOf( mCommandStarts, InputMap.NUM_MAPPABLES );
+        mSlotCommands = new int[slotCount];
+        mSlotStrengths = new float[slotCount];
+        mCommandStrengths = new float[InputMap.NUM_MAPPABLES];
+        for( int i = 0; i < size; i++ )
+        {
+            final int code = inputMap.keyAt( i );
+            final int command = inputMap.valueAt( i );
+            if( !isRoutable( code, command ) )
+                continue;
+
+            final int slot = next[command]++;
+            mSlotCommands[slot] = command;
+            if( code >= 0 )
+                mButtonSlots[code] = slot;
+            else
+                mAxisSlots[-code] = slot;
+
+            if( previous != null )
+            {
+                final int previousSlot = previous.getSlot( code );
+                if( previousSlot >= 0 && previous.mSlotCommands[previousSlot] == command )
+                    mSlotStrengths[slot] = previous.mSlotStrengths[previousSlot];
+            }
+        }
+
+        for( int command = 0; command < InputMap.NUM_MAPPABLES; command++ )
+            mCommandStrengths[command] = computeStrength( command );
+    }
+
+    /**
+     * Records the strength of an input.
+     *
+     * @param inputCode The universal input code that was dispatched.
+     * @param strength The input strength, between 0 and 1, inclusive.
+     *
+     * @return The command the input is mapped to, or {@link InputMap#UNMAPPED}.
+     */
+    public int update( int inputCode, float strength )
+    {
+        final int slot = getSlot( inputCode );
+        if( slot < 0 )
+            return InputMap.UNMAPPED;
+
+        final int command = mSlotCommands[slot];
+        final float previousStrength = mSlotStrengths[slot];
+        mSlotStrengths[slot] = strength;
+
+        // Only look at the other inputs of the command when this one was the strongest
+        if( strength >= mCommandStrengths[command] )
+            mCommandStrengths[command] = strength;
+        else if( previousStrength >= mCommandStrengths[command] )
+            mCommandStrengths[command] = computeStrength( command );
+
+        return command;
+    }
+
+    /**
+     * Gets the strength of a command, the strongest of the inputs mapped to it.
+     *
+     * @param command The N64/Mupen command.
+     *
+     * @return The strength of the command, between 0 and 1, inclusive.
+     */
+    public float getStrength( int command )
+    {
+        if( command < 0 || command >= InputMap.NUM_MAPPABLES )
+            return 0;
+
+        return mCommandStrengths[command];
+    }
+
+    private int getSlot( int inputCode )
+    {
+        if( inputCode >= 0 )
+            return inputCode < mButtonSlots.length ? mButtonSlots[inputCode] : -1;
+        else
+            return inputCode > -mAxisSlots.length ? mAxisSlots[-inputCode] : -1;
+    }
+
+    private float computeStrength( int command )
+    {
+        float strength = 0;
+        for( int i = mCommandStarts[command]; i < mCommandStarts[command + 1]; i++ )
+            strength = Math.max( strength, mSlotStrengths[i] );
+        return strength;
+    }
+
+    private static boolean isRoutable( int inputCode, int command )
+    {
+        return command >= 0 && command < InputMap.NUM_MAPPABLES && inputCode < MAX_CODE
+                && inputCode > -MAX_CODE;
+    }
+}
@@ -0,0 +1,445 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2026 Mupen64PlusAE contributors
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.input;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import paulscode.android.mupen64plusae.jni.NativeInput;
+
+/**
+ * Records the controller states published to the input plugin, and replays them later.
+ * <p>
+ * Recording and replay start along with the core. Every change of a packed controller state is
+ * stamped with the input frame, i.e. the number of times the plugin had polled the controllers since
+ * the core started, and the time since the recording started. A replay hands the states to the input
+ * plugin, which publishes each one at the poll it was first read at during the recording, and live
+ * input is ignored until the replay ends. Replaying a trace from the same save state gives identical
+ * input across builds and devices.
+ * <p>
+ * If the core was not polling during the recording, the states are replayed at the same times
+ * instead, from a Java thread. Such a replay is only approximate.
+ * <p>
+ * Trace files are big-endian: the magic number, the version and the number of records, then for
+ * each record the controller index as a byte, the frame and microsecond deltas from the previous
+ * record as variable-length ints, and the packed state as an int.
+ */
+public final class InputTrace
+{
+    private static final int MAGIC = 0x4D363454; // "M64T"
+    private static final int VERSION = 1;
+    private static final int NUM_CONTROLLERS = 4;
+
+    /** Size of a replayed state in the buffer read by the input plugin: frame, controller, state. */
+    private static final int RECORD_BYTES = 3 * 4;
+
+    /** How often a replay checks whether the plugin has published every state, in milliseconds. */
+    private static final int POLL_MS = 16;
+
+    /** The trace being recorded, or null. */
+    private static volatile Trace sRecording = null;
+
+    /** The thread replaying a trace, or null. */
+    private static volatile ReplayThread sReplayThread = null;
+
+    /** The states replayed by the input plugin, kept referenced while it reads them, or null. */
+    private static ByteBuffer sReplayRecords = null;
+
+    /** Whether the input plugin was handed the replayed states, guarded by the lock. */
+    private static volatile boolean sReplayAttached = false;
+
+    private static final Object sLock = new Object();
+
+    /**
+     * Controller state changes, stored in parallel arrays.
+     */
+    private static class Trace
+    {
+        public byte[] controllers = new byte[256];
+        public int[] frames = new int[256];
+        public long[] times = new long[256];
+        public int[] states = new int[256];
+        public int size = 0;
+
+        public final long startTime;
+
+        public Trace( long startTime )
+        {
+            this.startTime = startTime;
+        }
+
+        public void add( int controllerNum, int frame, long micros, int packed )
+        {
+            if( size == states.length )
+            {
+                controllers = Arrays.copyOf( controllers, size * 2 );
+                frames = Arrays.copyOf( frames, size * 2 );
+                times = Arrays.copyOf( times, size * 2 );
+                states = Arrays.copyOf( states, size * 2 );
+            }
+            controllers[size] = (byte) controllerNum;
+            frames[size] = frame;
+            times[size] = micros;
+            states[size] = packed;
+            size++;
+        }
+    }
+
+    private InputTrace()
+    {
+    }
+
+    /**
+     * Starts recording the controller states. Must be called before the core starts, which releases
+     * every controller. Any recording in progress is discarded.
+     */
+    public static void startRecording()
+    {
+        synchronized( sLock )
+        {
+            final Trace trace = new Trace( System.nanoTime() );
+            for( int i = 0; i < NUM_CONTROLLERS; i++ )
+                trace.add( i, 0, 0, 0 );
+            sRecording = trace;
+        }
+    }
+
+    /**
+     * Stops recording and writes the trace to a file.
+     *
+     * @param path The path of the trace file, overwritten if it exists.
+     *
+     * @return True if a recording was in progress and it was written.
+     */
+    public static boolean stopRecording( String path )
+    {
+        final Trace trace;
+        synchronized( sLock )
+        {
+            trace = sRecording;
+            sRecording = null;
+        }
+        if( trace == null )
+            return false;
+
+        final File file = new File( path );
+        if( file.getParentFile() != null )
+            file.getParentFile().mkdirs();
+
+        DataOutputStream out = null;
+        try
+        {
+            out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ) ) );
+            out.writeInt( MAGIC );
+            out.writeInt( VERSION );
+            out.writeInt( trace.size );
+
+            int frame = 0;
+            long micros = 0;
+            for( int i = 0; i < trace.size; i++ )
+            {
+                out.writeByte( trace.controllers[i] );
+                writeVarInt( out, trace.frames[i] - frame );
+                writeVarInt( out, trace.times[i] - micros );
+                out.writeInt( trace.states[i] );
+                frame = trace.frames[i];
+                micros = trace.times[i];
+            }
+            out.close();
+            out = null;
+            Log.i( "InputTrace", "Recorded " + trace.size + " states to " + path );
+            return true;
+        }
+        catch( IOException e )
+        {
+            Log.w( "InputTrace", "Unable to write " + path, e );
+            return false;
+        }
+        finally
+        {
+            closeQuietly( out );
+        }
+    }
+
+    /**
+     * Replays a trace file once the core starts. Live input is ignored until the replay ends or is
+     * stopped. Any replay in progress is stopped first.
+     *
+     * @param path The path of the trace file.
+     *
+     * @return True if the trace was read and the replay started.
+     */
+    public static boolean startReplay( String path )
+    {
+        stopReplay();
+
+        final Trace trace = read( path );
+        if( trace == null )
+            return false;
+
+        // Without frame stamps the core was not polling while recording, fall back to time
+        final boolean byFrame = trace.size > 0 && trace.frames[trace.size - 1] > 0;
+        synchronized( sLock )
+        {
+            sReplayRecords = byFrame ? pack( trace ) : null;
+        }
+
+        final ReplayThread thread = new ReplayThread( trace, byFrame );
+        sReplayThread = thread;
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Hands the states of the pending replay, if any, to the input plugin. Called once the plugin
+     * reads the controller states and before the core polls them.
+     */
+    public static void onCoreStarted()
+    {
+        synchronized( sLock )
+        {
+            final int count = sReplayRecords != null ? sReplayRecords.capacity() / RECORD_BYTES : 0;
+            NativeInput.setReplayBuffer( sReplayRecords, count );
+            sReplayAttached = sReplayRecords != null;
+        }
+    }
+
+    /**
+     * Stops the replay in progress, if any, and hands the controllers back to live input.
+     */
+    public static void stopReplay()
+    {
+        final ReplayThread thread = sReplayThread;
+        sReplayThread = null;
+        if( thread != null )
+            thread.interrupt();
+
+        synchronized( sLock )
+        {
+            detachReplay();
+        }
+    }
+
+    /**
+     * Takes the replayed states back from the input plugin. Must be called while holding the lock.
+     */
+    private static void detachReplay()
+    {
+        if( sReplayAttached )
+            NativeInput.setReplayBuffer( null, 0 );
+        sReplayAttached = false;
+        sReplayRecords = null;
+    }
+
+    /**
+     * Returns true while a trace is being replayed.
+     */
+    public static boolean isReplaying()
+    {
+        return sReplayThread != null;
+    }
+
+    /**
+     * Adds a state change to the recording in progress, if any.
+     */
+    static void onStateChanged( int controllerNum, int packed )
+    {
+        if( sRecording == null )
+            return;
+
+        synchronized( sLock )
+        {
+            final Trace trace = sRecording;
+            if( trace != null )
+            {
+                final long micros = ( System.nanoTime() - trace.startTime ) / 1000;
+                trace.add( controllerNum, AbstractController.getPollCount(), micros, packed );
+            }
+        }
+    }
+
+    private static Trace read( String path )
+    {
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream( new BufferedInputStream( new FileInputStream( path ) ) );
+            if( in.readInt() != MAGIC || in.readInt() != VERSION )
+            {
+                Log.w( "InputTrace", "Not a supported input trace: " + path );
+                return null;
+            }
+
+            final int size = in.readInt();
+            final Trace trace = new Trace( 0 );
+            int frame = 0;
+            long micros = 0;
+            for( int i = 0; i < size; i++ )
+            {
+                final int controllerNum = in.readByte();
+                frame += (int) readVarInt( in );
+                micros += readVarInt( in );
+                final int packed = in.readInt();
+                if( controllerNum >= 0 && controllerNum < NUM_CONTROLLERS )
+                    trace.add( controllerNum, frame, micros, packed );
+            }
+            return trace;
+        }
+        catch( IOException e )
+        {
+            Log.w( "InputTrace", "Unable to read " + path, e );
+            return null;
+        }
+        finally
+        {
+            closeQuietly( in );
+        }
+    }
+
+    /**
+     * Packs the states of a trace for the input plugin.
+     */
+    private static ByteBuffer pack( Trace trace )
+    {
+        final ByteBuffer records = ByteBuffer.allocateDirect( trace.size * RECORD_BYTES ).order( ByteOrder.nativeOrder() );
+        final IntBuffer ints = records.asIntBuffer();
+        for( int i = 0; i < trace.size; i++ )
+        {
+            ints.put( trace.frames[i] );
+            ints.put( trace.controllers[i] );
+            ints.put( trace.states[i] );
+        }
+        return records;
+    }
+
+    private static void writeVarInt( DataOutputStream out, long value ) throws IOException
+    {
+        while( ( value & ~0x7FL ) != 0 )
+        {
+            out.writeByte( (int) ( value & 0x7F ) | 0x80 );
+            value >>>= 7;
+        }
+        out.writeByte( (int) value );
+    }
+
+    private static long readVarInt( DataInputStream in ) throws IOException
+    {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do
+        {
+            b = in.readUnsignedByte();
+            value |= (long) ( b & 0x7F ) << shift;
+            shift += 7;
+        }
+        while( ( b & 0x80 ) != 0 && shift < 64 );
+        return value;
+    }
+
+    private static void closeQuietly( Closeable closeable )
+    {
+        if( closeable == null )
+            return;
+
+        try
+        {
+            closeable.close();
+        }
+        catch( IOException ignored )
+        {
+        }
+    }
+
+    /**
+     * Waits for the input plugin to publish the states of a trace, or publishes them at their times
+     * if the trace has no frame stamps.
+     */
+    private static class ReplayThread extends Thread
+    {
+        private final Trace mTrace;
+        private final boolean mByFrame;
+
+        public ReplayThread( Trace trace, boolean byFrame )
+        {
+            super( "InputTraceReplay" );
+            mTrace = trace;
+            mByFrame = byFrame;
+        }
+
+        @Override
+        public void run()
+        {
+            Process.setThreadPriority( Process.THREAD_PRIORITY_URGENT_DISPLAY );
+
+            try
+            {
+                if( mByFrame )
+                {
+                    // The plugin publishes the last state at the poll after its frame
+                    final int lastFrame = mTrace.frames[mTrace.size - 1];
+                    while( sReplayThread == this
+                            && ( !sReplayAttached || AbstractController.getPollCount() <= lastFrame ) )
+                        Thread.sleep( POLL_MS );
+                }
+                else
+                {
+                    final long startTime = System.nanoTime();
+                    for( int i = 0; i < mTrace.size && sReplayThread == this; i++ )
+                    {
+                        final long delay = mTrace.times[i] * 1000 - ( System.nanoTime() - startTime );
+                        if( delay > 0 )
+                            Thread.sleep( delay / 1000000, (int) ( delay % 1000000 ) );
+                        AbstractController.putState( mTrace.controllers[i], mTrace.states[i] );
+                    }
+                }
+                Log.i( "InputTrace", "Replayed " + mTrace.size + " states" );
+            }
+            catch( InterruptedException e )
+            {
+                Log.i( "InputTrace", "Replay stopped" );
+            }
+            finally
+            {
+                synchronized( sLock )
+                {
+                    if( sReplayThread == this )
+                    {
+                        sReplayThread = null;
+                        detachReplay();
+                    }
+                }
+            }
+        }
+    }
+}
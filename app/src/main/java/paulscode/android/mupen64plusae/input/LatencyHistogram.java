@@ -0,0 +1,162 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2026 Mupen64PlusAE contributors
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.input;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A fixed-size histogram of latencies, in microseconds.
+ * <p>
+ * Values below 64 are counted exactly. Larger values are counted in buckets spanning 1/32 of their
+ * power of two, so any reported value is within about 3% of the recorded one. Values above 2^27
+ * microseconds (about 134 seconds) are clamped.
+ */
+public class LatencyHistogram
+{
+    /** Number of buckets per power of two, and number of exact buckets below that. */
+    private static final int SUB_BUCKETS = 32;
+
+    /** Highest power of two tracked. */
+    private static final int MAX_EXPONENT = 26;
+
+    /** Largest value that can be recorded, in microseconds. */
+    private static final long MAX_VALUE = ( 1L << ( MAX_EXPONENT + 1 ) ) - 1;
+
+    private final long[] mCounts = new long[( MAX_EXPONENT - 3 ) * SUB_BUCKETS];
+    private long mTotalCount;
+    private long mSum;
+    private long mMin;
+    private long mMax;
+
+    public LatencyHistogram()
+    {
+        reset();
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param micros The latency, in microseconds. Negative values count as zero.
+     */
+    public synchronized void record( long micros )
+    {
+        final long value = Math.max( 0, Math.min( micros, MAX_VALUE ) );
+        mCounts[getIndex( value )]++;
+        mTotalCount++;
+        mSum += value;
+        mMin = Math.min( mMin, value );
+        mMax = Math.max( mMax, value );
+    }
+
+    /**
+     * Forgets every recorded latency.
+     */
+    public synchronized void reset()
+    {
+        Arrays.fill( mCounts, 0 );
+        mTotalCount = 0;
+        mSum = 0;
+        mMin = Long.MAX_VALUE;
+        mMax = 0;
+    }
+
+    public synchronized long getTotalCount()
+    {
+        return mTotalCount;
+    }
+
+    /**
+     * Gets the latency below which a given percentage of the recorded latencies fall.
+     *
+     * @param percentile The percentage, between 0 and 100.
+     *
+     * @return The latency, in microseconds, or 0 if nothing was recorded.
+     */
+    public synchronized long getPercentile( double percentile )
+    {
+        if( mTotalCount == 0 )
+            return 0;
+
+        final long target = Math.max( 1, (long) Math.ceil( mTotalCount * percentile / 100.0 ) );
+        long count = 0;
+        for( int i = 0; i < mCounts.length; i++ )
+        {
+            count += mCounts[i];
+            if( count >= target )
+                return Math.min( getHighestValue( i ), mMax );
+        }
+        return mMax;
+    }
+
+    /**
+     * Gets a one-line summary of the recorded latencies.
+     */
+    public synchronized String getSummary()
+    {
+        if( mTotalCount == 0 )
+            return "n=0";
+
+        return String.format( Locale.US,
+                "n=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms p99.9=%.2fms min=%.2fms max=%.2fms",
+                mTotalCount, mSum / 1000.0 / mTotalCount, getPercentile( 50 ) / 1000.0,
+                getPercentile( 90 ) / 1000.0, getPercentile( 99 ) / 1000.0,
+                getPercentile( 99.9 ) / 1000.0, mMin / 1000.0, mMax / 1000.0 );
+    }
+
+    /**
+     * Appends the non-empty buckets, one per line as the lowest latency of the bucket in
+     * microseconds followed by its count.
+     *
+     * @param builder The builder to append to.
+     */
+    public synchronized void appendBuckets( StringBuilder builder )
+    {
+        for( int i = 0; i < mCounts.length; i++ )
+        {
+            if( mCounts[i] > 0 )
+                builder.append( getLowestValue( i ) ).append( ' ' ).append( mCounts[i] ).append( '\n' );
+        }
+    }
+
+    private static int getIndex( long value )
+    {
+        if( value < SUB_BUCKETS )
+            return (int) value;
+
+        // Keep the five most significant bits
+        final int exponent = 63 - Long.numberOfLeadingZeros( value );
+        final int shift = exponent - 5;
+        return shift * SUB_BUCKETS + (int) ( value >> shift );
+    }
+
+    private static long getLowestValue( int index )
+    {
+        if( index < SUB_BUCKETS )
+            return index;
+
+        final int shift = index / SUB_BUCKETS - 1;
+        return (long) ( index % SUB_BUCKETS + SUB_BUCKETS ) << shift;
+    }
+
+    private static long getHighestValue( int index )
+    {
+        return getLowestValue( index + 1 ) - 1;
+    }
+}
@@ -20,8 +20,9 @@
  */
 package paulscode.android.mupen64plusae.input;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
-import android.util.SparseArray;
 import android.view.InputDevice;
 import android.view.KeyEvent;
 import android.view.View;
@@ -46,9 +47,6 @@ public class PeripheralController extends AbstractController implements
     /** The map from hardware identifiers to players. */
     private final PlayerMap mPlayerMap;
     
-    /** The map from input codes to entries w/ the N64 command index. */
-    private final SparseArray<InputEntry> mEntryMap = new SparseArray<InputEntry>();
-    
     /** The analog deadzone, between 0 and 1, inclusive. */
     private final float mDeadzoneFraction;
     
@@ -65,8 +63,8 @@ public class PeripheralController extends AbstractController implements
     /** The user input providers. */
     private final ArrayList<AbstractProvider> mProviders;
     
-    /** The calculator for the strength of an input. */
-    private final InputStrengthCalculator mStrengthCalculator;
+    /** The routing table from input codes to N64/Mupen commands and their strengths. */
+    private final InputRoutingTable mRoutingTable;
     
     /** The positive analog-x strength, between 0 and 1, inclusive. */
     private float mStrengthXpos;
@@ -83,6 +81,9 @@ public class PeripheralController extends AbstractController implements
     /** Called for menu and back keys */
     private View.OnKeyListener mKeyListener;
     
+    /** Runs the global functions on the UI thread when inputs arrive on the input thread. */
+    private final Handler mMainHandler = new Handler( Looper.getMainLooper() );
+    
     /**
      * Instantiates a new peripheral controller.
      * 
@@ -109,8 +110,8 @@ public class PeripheralController extends AbstractController implements
         mKeyListener = keyListener;
         mSensorController = sensorController;
         
-        // Populate the entry map
-        mStrengthCalculator = new InputStrengthCalculator( inputMap, mEntryMap );
+        // Compile the input map
+        mRoutingTable = new InputRoutingTable( inputMap, null );
         
         // Assign the non-null input providers
         mProviders = new ArrayList<AbstractProvider>();
@@ -141,11 +142,13 @@ public class PeripheralController extends AbstractController implements
             if( device != null )
                 CoreInterface.registerVibrator( mPlayerNumber, device.getVibrator() );
             
-            // Apply user changes to the controller state
-            apply( inputCode, strength );
-            
-            // Notify the core that controller state has changed
-            notifyChanged();
+            // Apply user changes to the controller state and notify the core, touch and sensor
+            // input of the same player may be doing the same on the UI thread
+            synchronized( mState )
+            {
+                apply( inputCode, strength );
+                notifyChanged();
+            }
         }
     }
     
@@ -161,12 +164,13 @@ public class PeripheralController extends AbstractController implements
         // Process multiple simultaneous user inputs from gamepad, keyboard, etc.
         if( mPlayerMap.testHardware( hardwareId, mPlayerNumber ) )
         {
-            // Apply user changes to the controller state
-            for( int i = 0; i < inputCodes.length; i++ )
-                apply( inputCodes[i], strengths[i] );
-            
-            // Notify the core that controller state has changed
-            notifyChanged();
+            // Apply user changes to the controller state and notify the core
+            synchronized( mState )
+            {
+                for( int i = 0; i < inputCodes.length; i++ )
+                    apply( inputCodes[i], strengths[i] );
+                notifyChanged();
+            }
         }
     }
     
@@ -180,16 +184,14 @@ public class PeripheralController extends AbstractController implements
      */
     private boolean apply( int inputCode, float strength )
     {
-        InputEntry entry = mEntryMap.get( inputCode );
+        int n64Index = mRoutingTable.update( inputCode, strength );
         
-        if( entry == null )
+        if( n64Index == InputMap.UNMAPPED )
             return false;
         
         // Evaluate the strengths of the inputs that map to the control.
-        entry.getStrength().set( strength );
-        int n64Index = entry.mN64Index;
-        strength = mStrengthCalculator.calculate( n64Index );
-        boolean keyDown = strength > AbstractProvider.STRENGTH_THRESHOLD;
+        strength = mRoutingTable.getStrength( n64Index );
+        final boolean keyDown = strength > AbstractProvider.STRENGTH_THRESHOLD;
         
         if( n64Index >= 0 && n64Index < InputMap.NUM_N64_CONTROLS )
         {
@@ -242,7 +244,38 @@ public class PeripheralController extends AbstractController implements
                 mState.axisFractionY = 0;
             }
         }
-        else if( keyDown )
+        else
+        {
+            // Functions act on the UI, run them there
+            if( Looper.myLooper() == Looper.getMainLooper() )
+            {
+                return performFunction( n64Index, keyDown );
+            }
+            
+            final int function = n64Index;
+            mMainHandler.post( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    performFunction( function, keyDown );
+                }
+            } );
+        }
+        return true;
+    }
+    
+    /**
+     * Performs a global function.
+     * 
+     * @param n64Index The function index.
+     * @param keyDown  True if the function's input was pressed, false if it was released.
+     * 
+     * @return True, if a function was performed.
+     */
+    private boolean performFunction( int n64Index, boolean keyDown )
+    {
+        if( keyDown )
         {
             switch( n64Index )
             {
@@ -304,13 +337,19 @@ public class PeripheralController extends AbstractController implements
                     Log.v( "PeripheralController", "FUNC_SCREENSHOT" );
                     CoreInterface.screenshot();
                     break;
+                case InputMap.FUNC_REWIND:
+                    Log.v( "PeripheralController", "FUNC_REWIND" );
+                    CoreInterface.rewind();
+                    break;
                 case InputMap.FUNC_SENSOR_TOGGLE:
                     Log.v("PeripheralController", "FUNC_SENSOR_TOGGLE");
                     if (mSensorController != null) {
                         boolean sensorEnabled = !mSensorController.isSensorEnabled();
                         if (!sensorEnabled) {
-                            mState.axisFractionX = 0;
-                            mState.axisFractionY = 0;
+                            synchronized (mState) {
+                                mState.axisFractionX = 0;
+                                mState.axisFractionY = 0;
+                            }
                             if (mListener != null) {
                                 mListener.onAnalogChanged(mState.axisFractionX, mState.axisFractionY);
                             }
@@ -31,6 +31,24 @@ import paulscode.android.mupen64plusae.input.TouchController.OnStateChangedListe
  * Emulates a joystick using accelerometer sensor
  */
 public class SensorController extends AbstractController implements SensorEventListener {
+    /** Number of intervals of the arc tangent table, over ratios in [0,1] */
+    private static final int ATAN_STEPS = 1024;
+
+    /** Arc tangent of i/ATAN_STEPS, with one extra entry for interpolation */
+    private static final float[] ATAN_TABLE = new float[ATAN_STEPS + 2];
+
+    /**
+     * Without polls from the core (e.g. paused), the state is still published
+     * at this interval, in nanoseconds
+     */
+    private static final long IDLE_PUBLISH_INTERVAL = 50000000L;
+
+    static {
+        for (int i = 0; i < ATAN_TABLE.length; i++) {
+            ATAN_TABLE[i] = (float) Math.atan((double) i / ATAN_STEPS);
+        }
+    }
+
     private final SensorManager mSensorManager;
 
     /** The state change listener. */
@@ -42,14 +60,21 @@ public class SensorController extends AbstractController implements SensorEventL
 
     private final float angleX, angleY;
     private final float sensitivityX, sensitivityY;
+    private final SensorFilter filterX, filterY;
     private boolean isPaused = true;
     private boolean mSensorEnabled = false;
 
+    // The last published state is only refreshed once per input frame
+    private int lastPublishedPollCount = -1;
+    private long lastPublishedTime = 0;
+
     public SensorController(SensorManager sensorManager, OnStateChangedListener listener, String sensorAxisX,
             int sensorSensitivityX, float sensorAngleX, String sensorAxisY, int sensorSensitivityY,
-            float sensorAngleY) {
+            float sensorAngleY, String sensorFilter) {
         mSensorManager = sensorManager;
         mListener = listener;
+        filterX = SensorFilter.create(sensorFilter);
+        filterY = SensorFilter.create(sensorFilter);
 
         String[] x = sensorAxisX.split("/");
         if (x.length == 2 && !x[0].isEmpty() && !x[1].isEmpty()) {
@@ -99,6 +124,9 @@ public class SensorController extends AbstractController implements SensorEventL
     }
 
     private void updateListener() {
+        filterX.reset();
+        filterY.reset();
+        lastPublishedPollCount = -1;
         if (mSensorEnabled && isPaused == false) {
             mSensorManager.registerListener(this, mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER),
                     SensorManager.SENSOR_DELAY_GAME);
@@ -113,17 +141,32 @@ public class SensorController extends AbstractController implements SensorEventL
 
     @Override
     public void onSensorChanged(SensorEvent event) {
+        // Every sample goes through the filters, so they see the full rate
         float rawX = getStrength(event.values, sensorEventValuesRefX, sensorEventAdjacentValuesRefX, angleX);
-        rawX *= sensitivityX;
+        rawX = filterX.apply(rawX * sensitivityX, event.timestamp);
         float rawY = getStrength(event.values, sensorEventValuesRefY, sensorEventAdjacentValuesRefY, angleY);
-        rawY *= sensitivityY;
-
-        float magnitude = (float) Math.sqrt((rawX * rawX) + (rawY * rawY));
-        float factor = magnitude > 1 ? magnitude : 1;
-        mState.axisFractionX = rawX / factor;
-        mState.axisFractionY = rawY / factor;
-        notifyChanged();
-        mListener.onAnalogChanged(mState.axisFractionX, mState.axisFractionY);
+        rawY = filterY.apply(rawY * sensitivityY, event.timestamp);
+
+        // But the core reads the state at most once per frame, publishing more
+        // often only costs overlay redraws
+        int pollCount = getPollCount();
+        if (pollCount == lastPublishedPollCount && event.timestamp - lastPublishedTime < IDLE_PUBLISH_INTERVAL) {
+            return;
+        }
+        lastPublishedPollCount = pollCount;
+        lastPublishedTime = event.timestamp;
+
+        InputLatencyMonitor.beginRealtimeEvent(InputLatencyMonitor.SOURCE_SENSOR, event.timestamp);
+        float magnitudeSquared = (rawX * rawX) + (rawY * rawY);
+        float factor = magnitudeSquared > 1 ? (float) Math.sqrt(magnitudeSquared) : 1;
+        final float axisFractionX = rawX / factor;
+        final float axisFractionY = rawY / factor;
+        synchronized (mState) {
+            mState.axisFractionX = axisFractionX;
+            mState.axisFractionY = axisFractionY;
+            notifyChanged();
+        }
+        mListener.onAnalogChanged(axisFractionX, axisFractionY);
     }
 
     /**
@@ -151,10 +194,10 @@ public class SensorController extends AbstractController implements SensorEventL
         }
         float value = calculateAcceleration(sensorEventValues, valuesRef);
         float adjacentValue = calculateAcceleration(sensorEventValues, adjacentValuesRef);
-        float angle = (float) calculateAngle(value, adjacentValue) - idleAngleDegree / 180 * (float) Math.PI;
+        float angle = calculateAngle(value, adjacentValue) - idleAngleDegree / 180 * (float) Math.PI;
         // Fixing angle to have range in [-Pi,Pi]
         while (Math.abs(angle) > Math.PI) {
-            angle -= Math.signum(angle) * 2 * Math.PI;
+            angle -= Math.signum(angle) * 2 * (float) Math.PI;
         }
         // If abs(angle)>Pi/2 (90°), decreasing it (135°=> 45°, 180° => 0°)
         if (angle > Math.PI / 2) {
@@ -198,15 +241,30 @@ public class SensorController extends AbstractController implements SensorEventL
         if (Math.abs(value) <= Math.abs(adjacentValue)) {
             if (adjacentValue > 0) {
                 // Classic arc tangent
-                return (float) Math.atan(value / adjacentValue);
+                return atan(value / adjacentValue);
             } else {
-                return (float) Math.PI + (float) Math.atan(value / adjacentValue);
+                return (float) Math.PI + atan(value / adjacentValue);
             }
         } else {
             // Calculating arc tangent with the opposite ratio. Result is the
             // same as above, unless if adjacentValue=0 (avoiding error).
-            return (float) (Math.signum(value) * Math.PI / 2 - Math.atan(adjacentValue / value));
+            return Math.signum(value) * (float) Math.PI / 2 - atan(adjacentValue / value);
+        }
+    }
+
+    /**
+     * Arc tangent of a ratio in [-1,1], interpolated from a table. The error
+     * is below 1e-6 radians, far less than the sensor noise.
+     */
+    private static float atan(float ratio) {
+        if (ratio != ratio) {
+            return 0; // NaN, both values were 0
         }
+        float position = Math.abs(ratio) * ATAN_STEPS;
+        int index = (int) position;
+        float fraction = position - index;
+        float angle = ATAN_TABLE[index] + fraction * (ATAN_TABLE[index + 1] - ATAN_TABLE[index]);
+        return ratio < 0 ? -angle : angle;
     }
 
     private float angleToStrength(float angle) {
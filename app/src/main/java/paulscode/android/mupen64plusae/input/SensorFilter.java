@@ -0,0 +1,200 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2026 Mupen64PlusAE contributors
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.input;
+
+/**
+ * Smooths the successive values of a sensor axis. Each filter keeps its own state, so one instance
+ * is needed per axis.
+ */
+public abstract class SensorFilter {
+    /** Filter name: values are passed through. */
+    public static final String NONE = "none";
+
+    /** Filter name: first order low-pass filter. */
+    public static final String LOW_PASS = "lowpass";
+
+    /** Filter name: One Euro filter, smoothing more when the value moves slowly. */
+    public static final String ONE_EURO = "oneeuro";
+
+    /** Filter name: Kalman filter for a slowly drifting value. */
+    public static final String KALMAN = "kalman";
+
+    /** Gaps between samples beyond this are treated as a restart. */
+    private static final float MAX_PERIOD = 0.5f;
+
+    private long mLastTimestamp = 0;
+
+    /**
+     * Creates a filter from its name.
+     *
+     * @param name
+     *            one of {@link #NONE}, {@link #LOW_PASS}, {@link #ONE_EURO}
+     *            or {@link #KALMAN}; unknown names give {@link #NONE}
+     */
+    public static SensorFilter create(String name) {
+        if (LOW_PASS.equals(name)) {
+            return new LowPass(5f);
+        } else if (ONE_EURO.equals(name)) {
+            return new OneEuro(1f, 0.4f, 1f);
+        } else if (KALMAN.equals(name)) {
+            return new Kalman(4f, 0.05f);
+        } else {
+            return new SensorFilter() {
+                @Override
+                protected float filter(float value, float period) {
+                    return value;
+                }
+
+                @Override
+                protected void onReset(float value) {
+                }
+            };
+        }
+    }
+
+    /**
+     * Filters the next value of the axis.
+     *
+     * @param value
+     *            the raw value
+     * @param timestamp
+     *            the time of the value, in nanoseconds
+     * @return the filtered value
+     */
+    public float apply(float value, long timestamp) {
+        float period = (timestamp - mLastTimestamp) / 1e9f;
+        mLastTimestamp = timestamp;
+        if (period <= 0 || period > MAX_PERIOD) {
+            onReset(value);
+            return value;
+        }
+        return filter(value, period);
+    }
+
+    /**
+     * Forgets the previous values, e.g. when the sensor is paused.
+     */
+    public void reset() {
+        mLastTimestamp = 0;
+    }
+
+    /**
+     * @param period
+     *            the time since the previous value, in seconds
+     */
+    protected abstract float filter(float value, float period);
+
+    /**
+     * Starts over from a value.
+     */
+    protected abstract void onReset(float value);
+
+    /**
+     * @return the smoothing factor of a low-pass filter with the given cutoff
+     *         frequency, for the given sample period
+     */
+    private static float alpha(float cutoff, float period) {
+        float tau = 1f / (2f * (float) Math.PI * cutoff);
+        return 1f / (1f + tau / period);
+    }
+
+    private static class LowPass extends SensorFilter {
+        private final float mCutoff;
+        private float mValue;
+
+        LowPass(float cutoff) {
+            mCutoff = cutoff;
+        }
+
+        @Override
+        protected float filter(float value, float period) {
+            mValue += alpha(mCutoff, period) * (value - mValue);
+            return mValue;
+        }
+
+        @Override
+        protected void onReset(float value) {
+            mValue = value;
+        }
+    }
+
+    /**
+     * See Casiez et al., "1 Euro Filter: A Simple Speed-based Low-pass Filter for
+     * Noisy Input in Interactive Systems", CHI 2012.
+     */
+    private static class OneEuro extends SensorFilter {
+        private final float mMinCutoff;
+        private final float mBeta;
+        private final float mDerivativeCutoff;
+        private float mValue;
+        private float mDerivative;
+
+        OneEuro(float minCutoff, float beta, float derivativeCutoff) {
+            mMinCutoff = minCutoff;
+            mBeta = beta;
+            mDerivativeCutoff = derivativeCutoff;
+        }
+
+        @Override
+        protected float filter(float value, float period) {
+            float derivative = (value - mValue) / period;
+            mDerivative += alpha(mDerivativeCutoff, period) * (derivative - mDerivative);
+            float cutoff = mMinCutoff + mBeta * Math.abs(mDerivative);
+            mValue += alpha(cutoff, period) * (value - mValue);
+            return mValue;
+        }
+
+        @Override
+        protected void onReset(float value) {
+            mValue = value;
+            mDerivative = 0;
+        }
+    }
+
+    private static class Kalman extends SensorFilter {
+        /** Variance the value gains per second. */
+        private final float mProcessNoise;
+
+        /** Variance of the measurement noise. */
+        private final float mMeasurementNoise;
+
+        private float mValue;
+        private float mVariance;
+
+        Kalman(float processNoise, float measurementNoise) {
+            mProcessNoise = processNoise;
+            mMeasurementNoise = measurementNoise;
+        }
+
+        @Override
+        protected float filter(float value, float period) {
+            mVariance += mProcessNoise * period;
+            float gain = mVariance / (mVariance + mMeasurementNoise);
+            mValue += gain * (value - mValue);
+            mVariance *= 1 - gain;
+            return mValue;
+        }
+
+        @Override
+        protected void onReset(float value) {
+            mValue = value;
+            mVariance = mMeasurementNoise;
+        }
+    }
+}
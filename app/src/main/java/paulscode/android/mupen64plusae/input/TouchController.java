@@ -194,6 +194,8 @@ public class TouchController extends AbstractController implements OnTouchListen
         if( mSourceFilter != 0 && mSourceFilter != source )
             return false;
         
+        InputLatencyMonitor.beginUptimeEvent( InputLatencyMonitor.SOURCE_TOUCH, event.getEventTime() );
+        
         int action = event.getAction();
         int actionCode = action & MotionEvent.ACTION_MASK;
         
@@ -249,8 +251,11 @@ public class TouchController extends AbstractController implements OnTouchListen
             }
         }
         
-        // Process each touch
-        processTouches( mTouchState, mPointerX, mPointerY, mElapsedTime, maxPid, actionCode );
+        // Process each touch, a gamepad of the same player may be updating the state on the input thread
+        synchronized( mState )
+        {
+            processTouches( mTouchState, mPointerX, mPointerY, mElapsedTime, maxPid, actionCode );
+        }
         
         return true;
     }
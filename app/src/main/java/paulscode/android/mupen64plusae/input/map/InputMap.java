@@ -104,8 +104,11 @@ public class InputMap extends SerializableMap
     /** Mupen64Plus function: activate/deactivate sensor. */
     public static final int FUNC_SENSOR_TOGGLE              = OFFSET_GLOBAL_FUNCS + 14;
     
+    /** Mupen64Plus function: rewind. */
+    public static final int FUNC_REWIND                 = OFFSET_GLOBAL_FUNCS + 15;
+    
     /** Total number of mappable controls/functions. */
-    public static final int NUM_MAPPABLES               = OFFSET_GLOBAL_FUNCS + 15;
+    public static final int NUM_MAPPABLES               = OFFSET_GLOBAL_FUNCS + 16;
     // @formatter:on
     
     /**
@@ -0,0 +1,132 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2026 Mupen64PlusAE contributors
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.input.map;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.LruCache;
+
+import java.io.File;
+
+import paulscode.android.mupen64plusae.persistent.ConfigFile;
+import paulscode.android.mupen64plusae.util.Image;
+
+/**
+ * Process-wide cache of decoded skin images and parsed skin.ini files, so that starting a game or
+ * reloading a layout in the profile editor does not decode the same PNG files again.
+ * <p>
+ * Entries are keyed by path and remember the size and modification time of their file, so a skin
+ * edited on disk is reloaded. Images are scaled when drawn, so the decoded bitmaps are shared by
+ * every scale. The bitmaps are never recycled, an evicted bitmap may still be used by a touch map.
+ */
+final class SkinCache
+{
+    /** Fraction of the maximum heap the decoded images may use. */
+    private static final int MEMORY_CACHE_FRACTION = 16;
+
+    /** Number of skin.ini files kept. */
+    private static final int INI_CACHE_SIZE = 8;
+
+    /** Decoded images, keyed by path. Sized in kilobytes. */
+    private static final LruCache<String, CachedEntry<Bitmap>> sImages = new LruCache<String, CachedEntry<Bitmap>>(
+            (int) ( Runtime.getRuntime().maxMemory() / 1024 / MEMORY_CACHE_FRACTION ) )
+    {
+        @Override
+        protected int sizeOf( String key, CachedEntry<Bitmap> entry )
+        {
+            return Math.max( 1, entry.value.getByteCount() / 1024 );
+        }
+    };
+
+    /** Parsed skin.ini files, keyed by path. */
+    private static final LruCache<String, CachedEntry<ConfigFile>> sSkinInis = new LruCache<String, CachedEntry<ConfigFile>>(
+            INI_CACHE_SIZE );
+
+    /**
+     * A cached value along with the size and modification time of the file it was loaded from.
+     */
+    private static class CachedEntry<T>
+    {
+        public final T value;
+        public final long length;
+        public final long lastModified;
+
+        public CachedEntry( T value, File file )
+        {
+            this.value = value;
+            length = file.length();
+            lastModified = file.lastModified();
+        }
+
+        public boolean isCurrent( File file )
+        {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+    }
+
+    private SkinCache()
+    {
+    }
+
+    /**
+     * Gets an image of a skin, decoding it only if it is not cached.
+     *
+     * @param resources The resources of the activity the image is drawn in.
+     * @param path      The path of the PNG file.
+     *
+     * @return A new image sharing the decoded bitmap. Its bitmap is null if the file could not be
+     *         decoded.
+     */
+    public static Image getImage( Resources resources, String path )
+    {
+        final File file = new File( path );
+        final CachedEntry<Bitmap> cached = sImages.get( path );
+        if( cached != null && cached.isCurrent( file ) )
+            return new Image( resources, cached.value );
+
+        final Bitmap bitmap = BitmapFactory.decodeFile( path );
+        if( bitmap != null )
+            sImages.put( path, new CachedEntry<Bitmap>( bitmap, file ) );
+        else
+            sImages.remove( path );
+        return new Image( resources, bitmap );
+    }
+
+    /**
+     * Gets the skin.ini file of a skin, parsing it only if it is not cached. The file must not be
+     * modified.
+     *
+     * @param skinFolder The folder of the skin.
+     *
+     * @return The parsed file, empty if it does not exist.
+     */
+    public static ConfigFile getSkinIni( String skinFolder )
+    {
+        final String path = skinFolder + "/skin.ini";
+        final File file = new File( path );
+        final CachedEntry<ConfigFile> cached = sSkinInis.get( path );
+        if( cached != null && cached.isCurrent( file ) )
+            return cached.value;
+
+        final ConfigFile skinIni = new ConfigFile( path );
+        sSkinInis.put( path, new CachedEntry<ConfigFile>( skinIni, file ) );
+        return skinIni;
+    }
+}
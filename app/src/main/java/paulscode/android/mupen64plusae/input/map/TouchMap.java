@@ -25,8 +25,10 @@ import android.graphics.Point;
 import android.graphics.Rect;
 import android.util.Log;
 import android.util.SparseArray;
+import android.util.SparseIntArray;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 
 import paulscode.android.mupen64plusae.input.AbstractController;
@@ -136,6 +138,12 @@ public class TouchMap
     /** The error in RGB (256x256x256) space that we tolerate when matching mask colors. */
     private static final int MATCH_TOLERANCE = 10;
     
+    /** Size of the square cells of the hit grid, in pixels. */
+    static final int HIT_GRID_CELL_SIZE = 4;
+    
+    /** N64 button under each cell of the digitizer, rebuilt whenever the buttons move. */
+    private volatile HitGrid mHitGrid = null;
+    
     /** True if A/B buttons are split */
     protected boolean mSplitAB;
     
@@ -221,6 +229,7 @@ public class TouchMap
         analogPadding = 32;
         analogDeadzone = 2;
         analogMaximum = 360;
+        mHitGrid = null;
 
         //Defaults in case skin.ini is not present
         mN64ToColor[AbstractController.DPD_R] = 0x00FFF0;
@@ -266,6 +275,8 @@ public class TouchMap
             analogBackImage.setScale( ( analogBackScaling * scale ) );
             analogBackImage.fitPercent( analogBackX, analogBackY, w, h );
         }
+        
+        buildHitGrid( w, h );
     }
     
     /**
@@ -280,34 +291,92 @@ public class TouchMap
      */
     public int getButtonPress( int xLocation, int yLocation )
     {
-        // Search through every button mask to see if the corresponding button was touched
-        for( int i = 0; i < buttonMasks.size(); i++ )
+        final HitGrid grid = mHitGrid;
+        if( grid == null || xLocation < 0 || yLocation < 0 )
+            return UNMAPPED;
+        
+        final int column = xLocation / HIT_GRID_CELL_SIZE;
+        final int row = yLocation / HIT_GRID_CELL_SIZE;
+        if( column >= grid.columns || row >= grid.rows )
+            return UNMAPPED;
+        
+        return grid.cells[row * grid.columns + column];
+    }
+    
+    /**
+     * Rasterizes the button masks into the hit grid, so that touches are resolved with a single
+     * lookup. Each cell maps to the button under its center.
+     * 
+     * @param w The width of the digitizer, in pixels.
+     * @param h The height of the digitizer, in pixels.
+     */
+    private void buildHitGrid( int w, int h )
+    {
+        final int columns = ( w + HIT_GRID_CELL_SIZE - 1 ) / HIT_GRID_CELL_SIZE;
+        final int rows = ( h + HIT_GRID_CELL_SIZE - 1 ) / HIT_GRID_CELL_SIZE;
+        final byte[] cells = new byte[columns * rows];
+        Arrays.fill( cells, (byte) UNMAPPED );
+        
+        final SparseIntArray colorToButton = new SparseIntArray();
+        int[] pixels = new int[0];
+        
+        // Where masks overlap, the first mask with a colored pixel wins, so paint the last one first
+        for( int i = buttonMasks.size() - 1; i >= 0; i-- )
         {
-            if( buttonMasks.get( i ) != null )
+            final Image mask = buttonMasks.get( i );
+            if( mask == null || mask.image == null )
+                continue;
+            
+            final float maskScale = buttonScaling.get( i ) * scale;
+            final int left = mask.x;
+            final int right = left + (int) ( mask.width * mask.scale );
+            final int bottom = mask.y;
+            final int top = bottom + (int) ( mask.height * mask.scale );
+            
+            if( pixels.length < mask.width )
+                pixels = new int[mask.width];
+            
+            final int firstRow = Math.max( 0, bottom / HIT_GRID_CELL_SIZE );
+            final int lastRow = Math.min( rows - 1, top / HIT_GRID_CELL_SIZE );
+            final int firstColumn = Math.max( 0, left / HIT_GRID_CELL_SIZE );
+            final int lastColumn = Math.min( columns - 1, right / HIT_GRID_CELL_SIZE );
+            
+            for( int row = firstRow; row <= lastRow; row++ )
             {
-                int left = buttonMasks.get( i ).x;
-                int right = left + (int) ( buttonMasks.get( i ).width * buttonMasks.get( i ).scale );
-                int bottom = buttonMasks.get( i ).y;
-                int top = bottom + (int) ( buttonMasks.get( i ).height * buttonMasks.get( i ).scale );
+                final int y = row * HIT_GRID_CELL_SIZE + HIT_GRID_CELL_SIZE / 2;
+                final int maskY = (int) ( ( y - bottom ) / maskScale );
+                if( y < bottom || y >= top || maskY >= mask.height )
+                    continue;
+                
+                // Read a whole row of the mask at once
+                mask.image.getPixels( pixels, 0, mask.width, 0, maskY, mask.width, 1 );
                 
-                // See if the touch falls in the vicinity of the button (conservative test)
-                if( xLocation >= left && xLocation < right && yLocation >= bottom
-                        && yLocation < top )
+                for( int column = firstColumn; column <= lastColumn; column++ )
                 {
-                    // Get the mask color at this location
-                    int c = buttonMasks.get( i ).image.getPixel( (int) ( ( xLocation - buttonMasks.get( i ).x ) / 
-                            ( buttonScaling.get( i ) * scale ) ), (int) ( ( yLocation - buttonMasks.get( i ).y ) / ( buttonScaling.get( i ) * scale ) ) );
+                    final int x = column * HIT_GRID_CELL_SIZE + HIT_GRID_CELL_SIZE / 2;
+                    final int maskX = (int) ( ( x - left ) / maskScale );
+                    if( x < left || x >= right || maskX >= mask.width )
+                        continue;
                     
                     // Ignore the alpha component if any
-                    int rgb = c & 0x00ffffff;
+                    final int rgb = pixels[maskX] & 0x00ffffff;
                     
                     // Ignore black and get the N64 button associated with this color
                     if( rgb > 0 )
-                        return getButtonFromColor( rgb );
+                    {
+                        int index = colorToButton.indexOfKey( rgb );
+                        if( index < 0 )
+                        {
+                            colorToButton.put( rgb, getButtonFromColor( rgb ) );
+                            index = colorToButton.indexOfKey( rgb );
+                        }
+                        cells[row * columns + column] = (byte) colorToButton.valueAt( index );
+                    }
                 }
             }
         }
-        return UNMAPPED;
+        
+        mHitGrid = new HitGrid( cells, columns, rows );
     }
     
     /**
@@ -469,7 +538,7 @@ public class TouchMap
         
         // Load the configuration files
         skinFolder = skinDir;
-        ConfigFile skin_ini = new ConfigFile( skinFolder + "/skin.ini" );
+        ConfigFile skin_ini = SkinCache.getSkinIni( skinFolder );
         
         mSplitAB = SafeMethods.toBoolean( skin_ini.get( "INFO", "split-AB" ), false);
         
@@ -531,6 +600,7 @@ public class TouchMap
                         buttonMasks.get( i ).fitPercent( buttonX.get( i ), buttonY.get( i ), w, h );
                     }
                 }
+                buildHitGrid( w, h );
             }
         }
     }
@@ -619,12 +689,12 @@ public class TouchMap
             // The images (used by touchscreens) are in PNG image format.
             if( animated )
             {
-                 analogBackImage = new Image( mResources, skinFolder + "/analog-back.png" );
-                 analogForeImage = new Image( mResources, skinFolder + "/analog-fore.png" );
+                 analogBackImage = SkinCache.getImage( mResources, skinFolder + "/analog-back.png" );
+                 analogForeImage = SkinCache.getImage( mResources, skinFolder + "/analog-fore.png" );
             }
             else
             {
-                analogBackImage = new Image( mResources, skinFolder + "/analog.png" );
+                analogBackImage = SkinCache.getImage( mResources, skinFolder + "/analog.png" );
             }
             
             // Sensitivity (percentages of the radius, i.e. half the image width)
@@ -649,18 +719,52 @@ public class TouchMap
         
         if( x >= 0 && y >= 0 )
         {
-            // Position (percentages of the digitizer dimensions)
-            buttonX.add( x );
-            buttonY.add( y );
-            buttonNames.add( name );
-            
             // Load the displayed and mask images
-            buttonImages.add( new Image( mResources, skinFolder + "/" + name + ".png" ) );
-            buttonMasks.add( new Image( mResources, skinFolder + "/" + name + "-mask.png" ) );
-            buttonScaling.add( (float) scaling / 100.f );
+            addButton( name, SkinCache.getImage( mResources, skinFolder + "/" + name + ".png" ),
+                    SkinCache.getImage( mResources, skinFolder + "/" + name + "-mask.png" ), x, y,
+                    (float) scaling / 100.f );
         }
     }
+    
+    /**
+     * Adds a button to the map. The hit grid is rebuilt on the next resize.
+     * 
+     * @param name    The name of the button/group.
+     * @param image   The displayed image.
+     * @param mask    The mask image.
+     * @param x       The x-coordinate of the button, in percent.
+     * @param y       The y-coordinate of the button, in percent.
+     * @param scaling The scaling factor of the button.
+     */
+    void addButton( String name, Image image, Image mask, int x, int y, float scaling )
+    {
+        // Position (percentages of the digitizer dimensions)
+        buttonX.add( x );
+        buttonY.add( y );
+        buttonNames.add( name );
+        buttonImages.add( image );
+        buttonMasks.add( mask );
+        buttonScaling.add( scaling );
+    }
 
+    /**
+     * N64 (pseudo-)buttons of the digitizer, sampled every few pixels.
+     */
+    private static class HitGrid
+    {
+        /** Button index of each cell, row by row, or UNMAPPED. */
+        public final byte[] cells;
+        public final int columns;
+        public final int rows;
+        
+        public HitGrid( byte[] cells, int columns, int rows )
+        {
+            this.cells = cells;
+            this.columns = columns;
+            this.rows = rows;
+        }
+    }
+    
     /**
      * Determines if the two specified line segments intersect with each other, and calculates where
      * the intersection occurs if they do.
@@ -21,12 +21,13 @@
 package paulscode.android.mupen64plusae.input.map;
 
 import android.content.res.Resources;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
 import android.util.DisplayMetrics;
 import android.util.Log;
 
-import java.util.concurrent.CopyOnWriteArrayList;
-
 import paulscode.android.mupen64plusae.game.GameOverlay;
 import paulscode.android.mupen64plusae.persistent.ConfigFile;
 import paulscode.android.mupen64plusae.profile.Profile;
@@ -58,7 +59,7 @@ public class VisibleTouchMap extends TouchMap
     private int mFpsTextY;
     
     /** The current FPS value. */
-    private int mFpsValue;
+    private volatile int mFpsValue;
     
     /** The minimum size of the FPS indicator in pixels. */
     private float mFpsMinPixels;
@@ -96,12 +97,29 @@ public class VisibleTouchMap extends TouchMap
     /** The last height passed to {@link #resize(int, int, DisplayMetrics)}. */
     private DisplayMetrics cacheMetrics;
     
-    /** The set of images representing the FPS string. */
-    private final CopyOnWriteArrayList<Image> mFpsDigits;
+    /** The maximum number of digits of the FPS indicator. */
+    private static final int MAX_FPS_DIGITS = 4;
     
     /** The set of images representing the numerals 0, 1, 2, ..., 9. */
     private final Image[] mNumerals;
     
+    /** The numerals side by side in a single bitmap, or null. */
+    private Bitmap mNumeralAtlas;
+    
+    /** The area of each numeral in the atlas, or null if the numeral is missing. */
+    private final Rect[] mNumeralSources;
+    
+    /** The paint used to draw the numerals, filtered like the other images. */
+    private final Paint mNumeralPaint = new Paint( Paint.FILTER_BITMAP_FLAG );
+    
+    /** The digits drawn by {@link #drawFps(Canvas)} and their positions, only used on the UI thread. */
+    private final int[] mFpsDrawDigits = new int[MAX_FPS_DIGITS];
+    private final Rect[] mFpsDrawRects = new Rect[MAX_FPS_DIGITS];
+    
+    /** The digits laid out by {@link #updateFps(int)}, only used on the thread reporting the FPS. */
+    private final int[] mFpsUpdateDigits = new int[MAX_FPS_DIGITS];
+    private final Rect[] mFpsUpdateRects = new Rect[MAX_FPS_DIGITS];
+    
     /** Auto-hold overlay images. */
     public final Image[] autoHoldImages;
 
@@ -117,6 +135,18 @@ public class VisibleTouchMap extends TouchMap
     /** True if touch controls are currently being shown */
     private boolean controlsShown = true;
     
+    /** The buttons and analog background, pre-composited, or null. */
+    private Bitmap mStaticLayer;
+    
+    /** The area of the screen covered by the static layer. */
+    private final Rect mStaticLayerBounds = new Rect();
+    
+    /** True if the static layer must be redrawn before it is used. */
+    private volatile boolean mStaticLayerDirty = true;
+    
+    /** The area of the screen covered by the FPS indicator, before and after the last update. */
+    private final Rect mFpsBounds = new Rect();
+    
     /**
      * Instantiates a new visible touch map.
      * 
@@ -125,8 +155,13 @@ public class VisibleTouchMap extends TouchMap
     public VisibleTouchMap( Resources resources )
     {
         super( resources );
-        mFpsDigits = new CopyOnWriteArrayList<Image>();
         mNumerals = new Image[10];
+        mNumeralSources = new Rect[10];
+        for( int i = 0; i < MAX_FPS_DIGITS; i++ )
+        {
+            mFpsDrawRects[i] = new Rect();
+            mFpsUpdateRects[i] = new Rect();
+        }
         autoHoldImages = new Image[NUM_N64_PSEUDOBUTTONS];
         autoHoldImagesPressed = new boolean[NUM_N64_PSEUDOBUTTONS];
         autoHoldX = new int[NUM_N64_PSEUDOBUTTONS];
@@ -146,9 +181,16 @@ public class VisibleTouchMap extends TouchMap
         mFpsFrameX = mFpsFrameY = 0;
         mFpsTextX = mFpsTextY = 50;
         mFpsValue = 0;
-        mFpsDigits.clear();
         for( int i = 0; i < mNumerals.length; i++ )
+        {
             mNumerals[i] = null;
+            mNumeralSources[i] = null;
+        }
+        if( mNumeralAtlas != null )
+        {
+            mNumeralAtlas.recycle();
+            mNumeralAtlas = null;
+        }
         for( int i = 0; i < autoHoldImages.length; i++ )
         {
             autoHoldImagesPressed[i] = false;
@@ -158,6 +200,7 @@ public class VisibleTouchMap extends TouchMap
             autoHoldX[i] = 0;
         for( int i = 0; i < autoHoldY.length; i++ )
             autoHoldY[i] = 0;
+        mStaticLayerDirty = true;
     }
     
     /**
@@ -249,23 +292,101 @@ public class VisibleTouchMap extends TouchMap
                 mNumerals[i].setScale( fpsScale );
         }
         
-        // Compute the FPS digit locations
-        refreshFpsImages();
-        refreshFpsPositions();
+        mStaticLayerDirty = true;
     }
     
     /**
-     * Draws the buttons.
+     * Draws the buttons and the analog background. They only change with the layout, so they are
+     * composited once into a bitmap covering their area, and each redraw copies that bitmap.
      * 
      * @param canvas The canvas on which to draw.
      */
-    public void drawButtons( Canvas canvas )
+    public void drawStaticLayer( Canvas canvas )
+    {
+        if( !controlsShown )
+            return;
+        
+        if( mStaticLayerDirty )
+        {
+            mStaticLayerDirty = false;
+            rebuildStaticLayer();
+        }
+        
+        if( mStaticLayer != null )
+        {
+            canvas.drawBitmap( mStaticLayer, mStaticLayerBounds.left, mStaticLayerBounds.top, null );
+        }
+        else
+        {
+            // No room for the layer, draw the images directly
+            drawStaticImages( canvas );
+        }
+    }
+    
+    /**
+     * Redraws the static layer, reusing its bitmap if the area did not change size.
+     */
+    private void rebuildStaticLayer()
+    {
+        final Rect bounds = new Rect();
+        for( Image button : buttonImages )
+            bounds.union( button.drawRect );
+        if( analogBackImage != null )
+            bounds.union( analogBackImage.drawRect );
+        if( !bounds.intersect( 0, 0, cacheWidth, cacheHeight ) )
+            bounds.setEmpty();
+        
+        if( bounds.isEmpty() )
+        {
+            releaseStaticLayer();
+            mStaticLayerBounds.setEmpty();
+            return;
+        }
+        
+        if( mStaticLayer == null || mStaticLayer.getWidth() != bounds.width()
+                || mStaticLayer.getHeight() != bounds.height() )
+        {
+            releaseStaticLayer();
+            try
+            {
+                mStaticLayer = Bitmap.createBitmap( bounds.width(), bounds.height(), Bitmap.Config.ARGB_8888 );
+            }
+            catch( OutOfMemoryError e )
+            {
+                Log.w( "VisibleTouchMap", "Unable to allocate the static layer: " + e.getMessage() );
+                return;
+            }
+        }
+        else
+        {
+            mStaticLayer.eraseColor( 0 );
+        }
+        mStaticLayerBounds.set( bounds );
+        
+        final Canvas layerCanvas = new Canvas( mStaticLayer );
+        layerCanvas.translate( -bounds.left, -bounds.top );
+        drawStaticImages( layerCanvas );
+    }
+    
+    private void drawStaticImages( Canvas canvas )
     {
-        // Draw the buttons onto the canvas
         for( Image button : buttonImages )
         {
             button.draw( canvas );
         }
+        if( analogBackImage != null )
+        {
+            analogBackImage.draw( canvas );
+        }
+    }
+    
+    private void releaseStaticLayer()
+    {
+        if( mStaticLayer != null )
+        {
+            mStaticLayer.recycle();
+            mStaticLayer = null;
+        }
     }
     
     /**
@@ -286,19 +407,12 @@ public class VisibleTouchMap extends TouchMap
     }
     
     /**
-     * Draws the analog stick.
+     * Draws the movable foreground of the analog stick. The background is part of the static layer.
      * 
      * @param canvas The canvas on which to draw.
      */
     public void drawAnalog( Canvas canvas )
     {
-        // Draw the background image
-        if( analogBackImage != null )
-        {
-            analogBackImage.draw( canvas );
-        }
-        
-        // Draw the movable foreground (the stick)
         if( analogForeImage != null )
         {
             analogForeImage.draw( canvas );
@@ -319,9 +433,48 @@ public class VisibleTouchMap extends TouchMap
         if( mFpsFrame != null )
             mFpsFrame.draw( canvas );
         
-        // Draw each digit of the FPS number
-        for( Image digit : mFpsDigits )
-            digit.draw( canvas );
+        // Draw each digit of the FPS number from the numeral atlas
+        if( mNumeralAtlas != null )
+        {
+            final int count = layoutFpsDigits( mFpsValue, mFpsDrawDigits, mFpsDrawRects );
+            for( int i = 0; i < count; i++ )
+            {
+                canvas.drawBitmap( mNumeralAtlas, mNumeralSources[mFpsDrawDigits[i]], mFpsDrawRects[i],
+                        mNumeralPaint );
+            }
+        }
+    }
+    
+    /**
+     * Gets the area of the screen the analog stick can be drawn in.
+     * 
+     * @return The bounds of the analog background, or null if there is no analog stick.
+     */
+    public Rect getAnalogBounds()
+    {
+        return analogBackImage != null ? analogBackImage.drawRect : null;
+    }
+    
+    /**
+     * Gets the area of the screen an auto-hold mask is drawn in.
+     * 
+     * @param index The index of the auto-hold mask.
+     * 
+     * @return The bounds of the mask, or null if there is no mask.
+     */
+    public Rect getAutoHoldBounds( int index )
+    {
+        return autoHoldImages[index] != null ? autoHoldImages[index].drawRect : null;
+    }
+    
+    /**
+     * Gets the area of the screen changed by the last call to {@link #updateFps(int)}.
+     * 
+     * @return The bounds of the FPS indicator, including the digits before and after the update.
+     */
+    public Rect getFpsBounds()
+    {
+        return mFpsBounds;
     }
     
     /**
@@ -372,12 +525,19 @@ public class VisibleTouchMap extends TouchMap
         if( !mFpsEnabled || mFpsValue == fps )
             return false;
         
-        // Store the new value
-        mFpsValue = fps;
+        // Track the area covered by the digits before and after the change
+        mFpsBounds.setEmpty();
+        if( mFpsFrame != null )
+            mFpsBounds.union( mFpsFrame.drawRect );
+        int count = layoutFpsDigits( mFpsValue, mFpsUpdateDigits, mFpsUpdateRects );
+        for( int i = 0; i < count; i++ )
+            mFpsBounds.union( mFpsUpdateRects[i] );
+        count = layoutFpsDigits( fps, mFpsUpdateDigits, mFpsUpdateRects );
+        for( int i = 0; i < count; i++ )
+            mFpsBounds.union( mFpsUpdateRects[i] );
         
-        // Refresh the FPS digits
-        refreshFpsImages();
-        refreshFpsPositions();
+        // Store the new value, the digits are laid out again when drawn
+        mFpsValue = fps;
         
         return true;
     }
@@ -406,33 +566,29 @@ public class VisibleTouchMap extends TouchMap
     }
     
     /**
-     * Refreshes the images used to draw the FPS string.
+     * Computes the positions of the digits of a value, centered on the FPS text centroid. Does not
+     * allocate, so it can run on every update.
+     * 
+     * @param value  The value to lay out, between 0 and 9999, inclusive.
+     * @param digits Receives the numeral of each digit, most significant first.
+     * @param rects  Receives the position of each digit.
+     * 
+     * @return The number of digits laid out.
      */
-    private void refreshFpsImages()
+    private int layoutFpsDigits( int value, int[] digits, Rect[] rects )
     {
-        // Refresh the list of FPS digits
-        String fpsString = Integer.toString( mFpsValue );
-        mFpsDigits.clear();
-        for( int i = 0; i < 4; i++ )
+        // Split the value into digits, skipping numerals the skin lacks
+        int count = 0;
+        for( int divisor = 1000; divisor > 0; divisor /= 10 )
         {
-            // Create a new sequence of numeral images
-            if( i < fpsString.length() )
+            if( value >= divisor || divisor == 1 )
             {
-                int numeral = SafeMethods.toInt( fpsString.substring( i, i + 1 ), -1 );
-                if( numeral > -1 && numeral < 10 )
-                {
-                    // Clone the numeral from the font images and move to next digit
-                    mFpsDigits.add( new Image( mResources, mNumerals[numeral] ) );
-                }
+                final int numeral = ( value / divisor ) % 10;
+                if( mNumeralSources[numeral] != null )
+                    digits[count++] = numeral;
             }
         }
-    }
-    
-    /**
-     * Refreshes the positions of the FPS images.
-     */
-    private void refreshFpsPositions()
-    {
+        
         // Compute the centroid of the FPS text
         int x = 0;
         int y = 0;
@@ -444,17 +600,67 @@ public class VisibleTouchMap extends TouchMap
         
         // Compute the width of the FPS text
         int totalWidth = 0;
-        for( Image digit : mFpsDigits )
-            totalWidth += (int) ( digit.width * digit.scale );
+        for( int i = 0; i < count; i++ )
+        {
+            final Image numeral = mNumerals[digits[i]];
+            totalWidth += (int) ( numeral.width * numeral.scale );
+        }
         
         // Compute the starting position of the FPS text
         x -= (int) ( totalWidth / 2f );
         
         // Compute the position of each digit
-        for( Image digit : mFpsDigits )
+        for( int i = 0; i < count; i++ )
         {
-            digit.setPos( x, y - (int) ( digit.hHeight * digit.scale ) );
-            x += (int) ( digit.width * digit.scale );
+            final Image numeral = mNumerals[digits[i]];
+            final int width = (int) ( numeral.width * numeral.scale );
+            final int top = y - (int) ( numeral.hHeight * numeral.scale );
+            rects[i].set( x, top, x + width, top + (int) ( numeral.height * numeral.scale ) );
+            x += width;
+        }
+        return count;
+    }
+    
+    /**
+     * Packs the numeral images side by side into a single bitmap, so the FPS indicator draws all its
+     * digits from one texture.
+     */
+    private void buildNumeralAtlas()
+    {
+        int atlasWidth = 0;
+        int atlasHeight = 0;
+        for( Image numeral : mNumerals )
+        {
+            if( numeral != null && numeral.image != null )
+            {
+                atlasWidth += numeral.width;
+                atlasHeight = Math.max( atlasHeight, numeral.height );
+            }
+        }
+        if( atlasWidth == 0 || atlasHeight == 0 )
+            return;
+        
+        try
+        {
+            mNumeralAtlas = Bitmap.createBitmap( atlasWidth, atlasHeight, Bitmap.Config.ARGB_8888 );
+        }
+        catch( OutOfMemoryError e )
+        {
+            Log.w( "VisibleTouchMap", "Unable to allocate the numeral atlas: " + e.getMessage() );
+            return;
+        }
+        
+        final Canvas atlasCanvas = new Canvas( mNumeralAtlas );
+        int x = 0;
+        for( int i = 0; i < mNumerals.length; i++ )
+        {
+            final Image numeral = mNumerals[i];
+            if( numeral != null && numeral.image != null )
+            {
+                atlasCanvas.drawBitmap( numeral.image, x, 0, null );
+                mNumeralSources[i] = new Rect( x, 0, x + numeral.width, numeral.height );
+                x += numeral.width;
+            }
         }
     }
     
@@ -478,7 +684,7 @@ public class VisibleTouchMap extends TouchMap
         mTouchscreenTransparency = alpha;
         
         super.load( skinDir, profile, animated );
-        ConfigFile skin_ini = new ConfigFile( skinFolder + "/skin.ini" );
+        ConfigFile skin_ini = SkinCache.getSkinIni( skinFolder );
         mReferenceWidth = SafeMethods.toInt( skin_ini.get( "INFO", "referenceScreenWidth" ), 1280 );
         mReferenceHeight = SafeMethods.toInt( skin_ini.get( "INFO", "referenceScreenHeight" ), 720 );
         mFpsTextX = SafeMethods.toInt( skin_ini.get( "INFO", "fps-numx" ), 27 );
@@ -498,6 +704,7 @@ public class VisibleTouchMap extends TouchMap
     public void refreshButtonPosition( Profile profile, String name )
     {
         super.updateButton( profile, name, cacheWidth, cacheHeight );
+        mStaticLayerDirty = true;
     }
     
     /*
@@ -525,6 +732,7 @@ public class VisibleTouchMap extends TouchMap
         {
             analogForeImage.setAlpha( mTouchscreenTransparency );
         }
+        mStaticLayerDirty = true;
         
         // Load the FPS and autohold images
         if( profile != null )
@@ -569,6 +777,7 @@ public class VisibleTouchMap extends TouchMap
                 analogForeImage.setAlpha(0);
             }
         }
+        mStaticLayerDirty = true;
     }
 
     /**
@@ -631,6 +840,7 @@ public class VisibleTouchMap extends TouchMap
         setAnalogEnabled(isAnalogEnabled);
 
         controlsShown = true;
+        mStaticLayerDirty = true;
         return true;
     }
 
@@ -647,7 +857,7 @@ public class VisibleTouchMap extends TouchMap
             mFpsFrameY = mFpsYPos;
             
             // Load frame image
-            mFpsFrame = new Image( mResources, skinFolder + "/fps.png" );
+            mFpsFrame = SkinCache.getImage( mResources, skinFolder + "/fps.png" );
             
             // Minimum factor the FPS indicator can be scaled by
             mFpsMinScale = mFpsMinPixels / (float) mFpsFrame.width;
@@ -660,8 +870,9 @@ public class VisibleTouchMap extends TouchMap
                 for( int i = 0; i < mNumerals.length; i++ )
                 {
                     filename = skinFolder + "/fps-" + i + ".png";
-                    mNumerals[i] = new Image( mResources, filename );
+                    mNumerals[i] = SkinCache.getImage( mResources, filename );
                 }
+                buildNumeralAtlas();
             }
             catch( Exception e )
             {
@@ -698,7 +909,7 @@ public class VisibleTouchMap extends TouchMap
             autoHoldY[index] = y;
             
             // The drawable image is in PNG image format.
-            autoHoldImages[index] = new Image( mResources, skinFolder + "/" + name + ".png" );
+            autoHoldImages[index] = SkinCache.getImage( mResources, skinFolder + "/" + name + ".png" );
             autoHoldImages[index].setAlpha( 0 );
         }
     }
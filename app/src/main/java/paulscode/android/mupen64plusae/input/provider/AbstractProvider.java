@@ -77,6 +77,9 @@ public abstract class AbstractProvider
     /** Listener management. */
     private final SubscriptionManager<AbstractProvider.OnInputListener> mPublisher;
     
+    /** The queue the inputs go through before reaching the listeners, or null. */
+    private InputEventQueue mEventQueue;
+    
     /**
      * Instantiates a new abstract provider.
      */
@@ -105,6 +108,17 @@ public abstract class AbstractProvider
         mPublisher.unsubscribe( listener );
     }
     
+    /**
+     * Sets the queue through which inputs reach the listeners. Listeners are then notified on the
+     * input thread of the queue rather than on the thread that received the input.
+     * 
+     * @param eventQueue The queue, or null to notify listeners directly.
+     */
+    public void setEventQueue( InputEventQueue eventQueue )
+    {
+        mEventQueue = eventQueue;
+    }
+    
     /**
      * Unregisters all listeners.
      */
@@ -414,6 +428,12 @@ public abstract class AbstractProvider
      * @param hardwareId The identifier of the source device.
      */
     protected void notifyListeners( int inputCode, float strength, int hardwareId )
+    {
+        if( mEventQueue == null || !mEventQueue.post( this, inputCode, strength, hardwareId ) )
+            dispatchListeners( inputCode, strength, hardwareId );
+    }
+    
+    void dispatchListeners( int inputCode, float strength, int hardwareId )
     {
         for( OnInputListener listener : mPublisher.getSubscribers() )
             listener.onInput( inputCode, strength, hardwareId );
@@ -428,6 +448,12 @@ public abstract class AbstractProvider
      * @param hardwareId The identifier of the source device.
      */
     protected void notifyListeners( int[] inputCodes, float[] strengths, int hardwareId )
+    {
+        if( mEventQueue == null || !mEventQueue.post( this, inputCodes, strengths, hardwareId ) )
+            dispatchListeners( inputCodes, strengths, hardwareId );
+    }
+    
+    void dispatchListeners( int[] inputCodes, float[] strengths, int hardwareId )
     {
         for( OnInputListener listener : mPublisher.getSubscribers() )
             listener.onInput( inputCodes.clone(), strengths.clone(), hardwareId );
@@ -25,6 +25,7 @@ import android.view.InputDevice.MotionRange;
 import android.view.MotionEvent;
 import android.view.View;
 
+import paulscode.android.mupen64plusae.input.InputLatencyMonitor;
 import paulscode.android.mupen64plusae.input.map.AxisMap;
 
 /**
@@ -139,6 +140,7 @@ public class AxisProvider extends AbstractProvider implements View.OnGenericMoti
         }
 
         // Notify listeners about new input data
+        InputLatencyMonitor.beginUptimeEvent( InputLatencyMonitor.SOURCE_AXIS, event.getEventTime() );
         notifyListeners( mInputCodes, strengths, getHardwareId( event ) );
 
         return true;
@@ -0,0 +1,229 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2026 Mupen64PlusAE contributors
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.input.provider;
+
+import android.os.Process;
+
+import java.util.concurrent.locks.LockSupport;
+
+import paulscode.android.mupen64plusae.input.InputLatencyMonitor;
+
+/**
+ * A queue of provider inputs, drained by a dedicated high-priority thread that notifies the
+ * providers' listeners.
+ * <p>
+ * Providers receive their events on the UI thread and only copy them into a ring buffer of
+ * primitive arrays, so mapping the inputs and updating the controller states is not delayed by
+ * whatever else the UI thread is busy with. The ring buffer is lock-free with a single producer,
+ * so every provider using a queue must post to it from the same thread.
+ */
+public final class InputEventQueue
+{
+    /** Number of inputs the queue holds, a power of two. */
+    private static final int CAPACITY = 512;
+    private static final int MASK = CAPACITY - 1;
+
+    private final AbstractProvider[] mProviders = new AbstractProvider[CAPACITY];
+    private final int[] mInputCodes = new int[CAPACITY];
+    private final float[] mStrengths = new float[CAPACITY];
+    private final int[] mHardwareIds = new int[CAPACITY];
+    private final int[] mBatchSizes = new int[CAPACITY];
+    private final boolean[] mIsArray = new boolean[CAPACITY];
+    private final int[] mLatencySources = new int[CAPACITY];
+    private final long[] mLatencyTimes = new long[CAPACITY];
+
+    /** Arrays the batches are handed to the listeners in, by batch size, only used by the input thread. */
+    private final int[][] mBatchInputCodes = new int[CAPACITY + 1][];
+    private final float[][] mBatchStrengths = new float[CAPACITY + 1][];
+
+    /** Index of the next input to write, only changed by the producer. */
+    private volatile long mWriteIndex = 0;
+
+    /** Index of the next input to read, only changed by the input thread. */
+    private volatile long mReadIndex = 0;
+
+    private volatile boolean mRunning = true;
+
+    private final Thread mThread;
+
+    /**
+     * Creates the queue and starts its input thread.
+     */
+    public InputEventQueue()
+    {
+        mThread = new Thread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Process.setThreadPriority( Process.THREAD_PRIORITY_URGENT_DISPLAY );
+                drain();
+            }
+        }, "InputThread" );
+        mThread.start();
+    }
+
+    /**
+     * Stops the input thread. Inputs posted afterwards are refused.
+     */
+    public void quit()
+    {
+        mRunning = false;
+        LockSupport.unpark( mThread );
+    }
+
+    /**
+     * Adds an input to the queue. The listeners of the provider are notified of it on the input
+     * thread.
+     *
+     * @param provider The provider of the input.
+     * @param inputCode The universal input code that was dispatched.
+     * @param strength The input strength, between 0 and 1, inclusive.
+     * @param hardwareId The identifier of the source device.
+     *
+     * @return True if the input was queued, false if the input thread was stopped.
+     */
+    boolean post( AbstractProvider provider, int inputCode, float strength, int hardwareId )
+    {
+        if( !reserve( 1 ) )
+            return false;
+
+        final long write = mWriteIndex;
+        put( write, provider, inputCode, strength, hardwareId, 1, false );
+        publish( write + 1 );
+        return true;
+    }
+
+    /**
+     * Adds inputs to the queue. The listeners of the provider are notified of them together on the
+     * input thread, with arrays that are reused for the next batch of the same size, so they must
+     * not keep them.
+     *
+     * @param provider The provider of the inputs.
+     * @param inputCodes The universal input codes that were dispatched.
+     * @param strengths The input strengths, between 0 and 1, inclusive.
+     * @param hardwareId The identifier of the source device.
+     *
+     * @return True if the inputs were queued, false if the input thread was stopped or there are
+     *         too many inputs.
+     */
+    boolean post( AbstractProvider provider, int[] inputCodes, float[] strengths, int hardwareId )
+    {
+        final int count = inputCodes.length;
+        if( count == 0 || count > CAPACITY || !reserve( count ) )
+            return false;
+
+        final long write = mWriteIndex;
+        for( int i = 0; i < count; i++ )
+            put( write + i, provider, inputCodes[i], strengths[i], hardwareId, i == 0 ? count : 0, true );
+        publish( write + count );
+        return true;
+    }
+
+    /**
+     * Waits for the input thread to make room for inputs, which it does quickly.
+     */
+    private boolean reserve( int count )
+    {
+        while( mWriteIndex + count - mReadIndex > CAPACITY )
+        {
+            if( !mRunning )
+                return false;
+            Thread.yield();
+        }
+        return mRunning;
+    }
+
+    private void put( long index, AbstractProvider provider, int inputCode, float strength,
+            int hardwareId, int batchSize, boolean isArray )
+    {
+        final int slot = (int) index & MASK;
+        mProviders[slot] = provider;
+        mInputCodes[slot] = inputCode;
+        mStrengths[slot] = strength;
+        mHardwareIds[slot] = hardwareId;
+        mBatchSizes[slot] = batchSize;
+        mIsArray[slot] = isArray;
+        mLatencySources[slot] = -1;
+
+        // Hand the latency measurement of the event, if any, over to the input thread
+        if( batchSize > 0 && InputLatencyMonitor.isEnabled() )
+        {
+            mLatencySources[slot] = InputLatencyMonitor.getPendingSource();
+            mLatencyTimes[slot] = InputLatencyMonitor.getPendingTime();
+            InputLatencyMonitor.cancelEvent();
+            if( mLatencySources[slot] >= 0 )
+                InputLatencyMonitor.recordUiThreadDelay( mLatencyTimes[slot] );
+        }
+    }
+
+    private void publish( long writeIndex )
+    {
+        // The volatile write makes the inputs visible to the input thread
+        mWriteIndex = writeIndex;
+        LockSupport.unpark( mThread );
+    }
+
+    private void drain()
+    {
+        while( mRunning )
+        {
+            long read = mReadIndex;
+            if( read == mWriteIndex )
+            {
+                LockSupport.park( this );
+                continue;
+            }
+
+            final int first = (int) read & MASK;
+            final AbstractProvider provider = mProviders[first];
+            final int hardwareId = mHardwareIds[first];
+            final int count = mBatchSizes[first];
+            if( mLatencySources[first] >= 0 )
+                InputLatencyMonitor.beginEvent( mLatencySources[first], mLatencyTimes[first] );
+
+            if( !mIsArray[first] )
+            {
+                final int inputCode = mInputCodes[first];
+                final float strength = mStrengths[first];
+                mProviders[first] = null;
+                mReadIndex = read + 1;
+                provider.dispatchListeners( inputCode, strength, hardwareId );
+                continue;
+            }
+
+            if( mBatchInputCodes[count] == null )
+            {
+                mBatchInputCodes[count] = new int[count];
+                mBatchStrengths[count] = new float[count];
+            }
+            final int[] inputCodes = mBatchInputCodes[count];
+            final float[] strengths = mBatchStrengths[count];
+            for( int i = 0; i < count; i++ )
+            {
+                final int slot = (int) ( read + i ) & MASK;
+                inputCodes[i] = mInputCodes[slot];
+                strengths[i] = mStrengths[slot];
+                mProviders[slot] = null;
+            }
+            mReadIndex = read + count;
+            provider.dispatchListeners( inputCodes, strengths, hardwareId );
+        }
+    }
+}
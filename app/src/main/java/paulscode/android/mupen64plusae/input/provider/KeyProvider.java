@@ -27,6 +27,8 @@ import android.content.DialogInterface;
 import android.view.KeyEvent;
 import android.view.View;
 
+import paulscode.android.mupen64plusae.input.InputLatencyMonitor;
+
 /**
  * A class for transforming Android KeyEvent inputs into a common format.
  */
@@ -174,6 +176,7 @@ public class KeyProvider extends AbstractProvider implements View.OnKeyListener,
             strength = 0;
         
         // Notify listeners about new input data
+        InputLatencyMonitor.beginUptimeEvent( InputLatencyMonitor.SOURCE_KEY, event.getEventTime() );
         notifyListeners( inputCode, strength, getHardwareId( event ) );
         
         return true;
@@ -28,6 +28,8 @@ import com.bda.controller.KeyEvent;
 import com.bda.controller.MotionEvent;
 import com.bda.controller.StateEvent;
 
+import paulscode.android.mupen64plusae.input.InputLatencyMonitor;
+
 /**
  * A class for transforming MOGA input events into a common format.
  */
@@ -67,6 +69,7 @@ public class MogaProvider extends AbstractProvider implements ControllerListener
         int hardwareId = getHardwareId( event );
         
         // Notify listeners about new input data
+        InputLatencyMonitor.beginUptimeEvent( InputLatencyMonitor.SOURCE_MOGA, event.getEventTime() );
         notifyListeners( inputCode, strength, hardwareId );
     }
     
@@ -96,6 +99,7 @@ public class MogaProvider extends AbstractProvider implements ControllerListener
         int hardwareId = getHardwareId( event );
         
         // Notify listeners about new input data
+        InputLatencyMonitor.beginUptimeEvent( InputLatencyMonitor.SOURCE_MOGA, event.getEventTime() );
         notifyListeners( mInputCodes, strengths, hardwareId );
     }
     
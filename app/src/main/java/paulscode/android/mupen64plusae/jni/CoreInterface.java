@@ -22,6 +22,7 @@ package paulscode.android.mupen64plusae.jni;
 
 import android.content.DialogInterface;
 import android.os.Build;
+import android.os.SystemClock;
 import android.os.Vibrator;
 import android.support.v4.app.FragmentManager;
 import android.support.v7.app.AppCompatActivity;
@@ -32,22 +33,35 @@ import org.mupen64plusae.v3.alpha.R;
 
 import java.io.File;
 import java.io.FileFilter;
-import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import paulscode.android.mupen64plusae.dialog.ConfirmationDialog;
 import paulscode.android.mupen64plusae.dialog.Prompt;
-import paulscode.android.mupen64plusae.dialog.Prompt.PromptFileListener;
 import paulscode.android.mupen64plusae.dialog.Prompt.PromptIntegerListener;
 import paulscode.android.mupen64plusae.dialog.Prompt.PromptTextListener;
+import paulscode.android.mupen64plusae.dialog.SaveStateBrowser;
+import paulscode.android.mupen64plusae.dialog.SaveStateBrowser.OnSaveStateSelectedListener;
 import paulscode.android.mupen64plusae.game.GameAutoSaveManager;
+import paulscode.android.mupen64plusae.game.RewindBuffer;
+import paulscode.android.mupen64plusae.game.SaveStateCatalog;
+import paulscode.android.mupen64plusae.input.AbstractController;
+import paulscode.android.mupen64plusae.input.InputTrace;
 import paulscode.android.mupen64plusae.persistent.AppData;
 import paulscode.android.mupen64plusae.persistent.GamePrefs;
 import paulscode.android.mupen64plusae.persistent.GlobalPrefs;
 import paulscode.android.mupen64plusae.util.FileUtil;
+import paulscode.android.mupen64plusae.util.LaunchProfiler;
 import paulscode.android.mupen64plusae.util.Notifier;
 import paulscode.android.mupen64plusae.util.Utility;
 
@@ -76,6 +90,17 @@ public class CoreInterface
         public void onStateCallback( int paramChanged, int newValue );
     }
 
+    public interface OnAutoSaveListener
+    {
+        /**
+         * Called on the core thread when the core has saved an auto save. The core may still be
+         * writing the file.
+         *
+         * @param path The path of the save state file.
+         */
+        public void onAutoSave( String path );
+    }
+
     public interface OnFpsChangedListener
     {
         /**
@@ -160,6 +185,28 @@ public class CoreInterface
     protected static String sCheatOptions = null;
     protected static boolean sIsRestarting = false;
 
+    // Launch phases running alongside the activity and core thread startup - used internally
+    private static final ThreadPoolExecutor sStartupExecutor = new ThreadPoolExecutor( 2, 2, 5L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+            {
+                @Override
+                public Thread newThread( Runnable runnable )
+                {
+                    return new Thread( runnable, "StartupTask" );
+                }
+            } );
+    private static final ArrayList<Future<?>> sStartupTasks = new ArrayList<Future<?>>();
+
+    // Native library state - used internally
+    private static final Object sLibraryLock = new Object();
+    private static boolean sLibrariesLoaded = false;
+    private static long sPreloadDuration = 0;
+
+    static
+    {
+        sStartupExecutor.allowCoreThreadTimeOut( true );
+    }
+
     // Speed info - used internally
     private static final int BASELINE_SPEED = 100;
     private static final int DEFAULT_SPEED = 250;
@@ -178,25 +225,206 @@ public class CoreInterface
 
     private static boolean sIsCoreRunning = false;
 
+    // Rewind info - used internally
+    private static volatile RewindBuffer sRewindBuffer = null;
+
+    // Save state info - used internally
+    private static SaveStateCatalog sSaveStateCatalog = null;
+    private static final Object sPlayTimeLock = new Object();
+    private static long sPlayTime = 0;
+    private static long sRunningSince = 0;
+
+    // Play time counts while the core is running - used internally
+    private static final OnStateCallbackListener sPlayTimeListener = new OnStateCallbackListener()
+    {
+        @Override
+        public void onStateCallback( int paramChanged, int newValue )
+        {
+            if( paramChanged != NativeConstants.M64CORE_EMU_STATE )
+                return;
+
+            synchronized( sPlayTimeLock )
+            {
+                if( newValue == NativeConstants.EMULATOR_STATE_RUNNING )
+                {
+                    if( sRunningSince == 0 )
+                        sRunningSince = SystemClock.elapsedRealtime();
+                }
+                else if( sRunningSince != 0 )
+                {
+                    sPlayTime += SystemClock.elapsedRealtime() - sRunningSince;
+                    sRunningSince = 0;
+                }
+            }
+        }
+    };
+
     private static Object sActivitySync = new Object();
 
     public static void initialize(AppCompatActivity activity, GamePrefs gamePrefs, String romPath,
-                                  String cheatArgs, boolean isRestarting)
+                                  boolean isRestarting)
     {
         sRomPath = romPath;
-        sCheatOptions = cheatArgs;
         sIsRestarting = isRestarting;
 
         sActivity = activity;
-        sAppData = new AppData( sActivity );
-        sGlobalPrefs = new GlobalPrefs( sActivity, sAppData );
+        final AppData appData = new AppData( sActivity );
+        final GlobalPrefs globalPrefs = new GlobalPrefs( sActivity, appData );
+        sAppData = appData;
+        sGlobalPrefs = globalPrefs;
         sGamePrefs = gamePrefs;
-        NativeConfigFiles.syncConfigFiles( sGamePrefs, sGlobalPrefs, sAppData );
+        sSaveStateCatalog = new SaveStateCatalog( gamePrefs, globalPrefs.isSaveStateThumbnailEnabled );
+
+        // The core only reads the config files and cheats once it starts, prepare them meanwhile
+        runStartupTask( "Sync config files", new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                NativeConfigFiles.syncConfigFiles( gamePrefs, globalPrefs, appData );
+            }
+        } );
+        runStartupTask( "Build cheat args", new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                sCheatOptions = gamePrefs.getCheatArgs();
+            }
+        } );
 
         makeDirs();
         moveFromLegacy();
     }
 
+    /**
+     * Runs a launch phase in the background. The core thread waits for every such phase to
+     * complete before starting the emulator.
+     *
+     * @param phase The name of the phase, for the launch profile.
+     * @param task  The work of the phase.
+     */
+    public static void runStartupTask( final String phase, final Runnable task )
+    {
+        final Future<?> future = sStartupExecutor.submit( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                final long begin = LaunchProfiler.begin();
+                task.run();
+                LaunchProfiler.end( phase, begin );
+            }
+        } );
+
+        synchronized( sStartupTasks )
+        {
+            sStartupTasks.add( future );
+        }
+    }
+
+    /**
+     * Loads the native libraries in the background, so that launching the next game does not wait
+     * for them. They stay loaded until that game exits, and are preloaded again after it if enabled.
+     * Does nothing if the libraries are already loaded.
+     *
+     * @param appData The app data, for the location of the libraries.
+     */
+    public static void preloadLibraries( final AppData appData )
+    {
+        sStartupExecutor.execute( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                synchronized( sLibraryLock )
+                {
+                    if( sLibrariesLoaded )
+                        return;
+
+                    final long begin = System.nanoTime();
+                    NativeExports.loadLibraries( appData.libsDir, Build.VERSION.SDK_INT );
+                    sLibrariesLoaded = true;
+                    sPreloadDuration = System.nanoTime() - begin;
+                    Log.i( "CoreInterface", "Preloaded native libraries in " + sPreloadDuration / 1000000 + " ms" );
+                }
+            }
+        } );
+    }
+
+    /**
+     * Loads the native libraries for the core thread, unless they were preloaded.
+     */
+    private static void loadLibraries()
+    {
+        synchronized( sLibraryLock )
+        {
+            if( sLibrariesLoaded )
+            {
+                LaunchProfiler.skip( "Load native libraries", sPreloadDuration );
+                return;
+            }
+
+            final long begin = LaunchProfiler.begin();
+            NativeExports.loadLibraries( sAppData.libsDir, Build.VERSION.SDK_INT );
+            LaunchProfiler.end( "Load native libraries", begin );
+            sLibrariesLoaded = true;
+            sPreloadDuration = 0;
+        }
+    }
+
+    /**
+     * Unloads the native libraries, so that their static variables are re-initialized by the next
+     * load, then preloads them again if enabled.
+     */
+    private static void unloadLibraries()
+    {
+        synchronized( sLibraryLock )
+        {
+            if( sLibrariesLoaded )
+            {
+                NativeExports.unloadLibraries();
+                sLibrariesLoaded = false;
+            }
+        }
+
+        if( sGlobalPrefs != null && sGlobalPrefs.isLibraryPreloadEnabled )
+            preloadLibraries( sAppData );
+    }
+
+    /**
+     * Waits for the launch phases started with {@link #runStartupTask(String, Runnable)}.
+     */
+    private static void awaitStartupTasks()
+    {
+        final long begin = LaunchProfiler.begin();
+        while( true )
+        {
+            final Future<?> future;
+            synchronized( sStartupTasks )
+            {
+                if( sStartupTasks.isEmpty() )
+                    break;
+                future = sStartupTasks.remove( 0 );
+            }
+
+            try
+            {
+                future.get();
+            }
+            catch( ExecutionException e )
+            {
+                Log.e( "CoreInterface", "Startup task failed", e.getCause() );
+            }
+            catch( InterruptedException e )
+            {
+                Log.w( "CoreInterface", "Interrupted while waiting for startup tasks" );
+                break;
+            }
+        }
+        LaunchProfiler.end( "Wait for startup tasks", begin );
+    }
+
     public static void detachActivity()
     {
         synchronized (sActivitySync)
@@ -378,6 +606,15 @@ public class CoreInterface
         {
             Log.i("CoreInterface", "Startup emulator");
 
+            // The play time of this session is added to the catalogue of the game once the core exits
+            final SaveStateCatalog catalog = sSaveStateCatalog;
+            synchronized( sPlayTimeLock )
+            {
+                sPlayTime = 0;
+                sRunningSince = 0;
+            }
+            addOnStateCallbackListener( sPlayTimeListener );
+
             // Start the core thread if not already running
             sCoreThread = new Thread( new Runnable()
             {
@@ -385,8 +622,9 @@ public class CoreInterface
                 public void run()
                 {
 
-                    // Load the native libraries
-                    NativeExports.loadLibraries( sAppData.libsDir, Build.VERSION.SDK_INT );
+                    // Load the native libraries, while the startup tasks complete
+                    loadLibraries();
+                    awaitStartupTasks();
 
                     // Only increase priority if we have more than one processor. The call to check the number of
                     // processors is only available in API level 17
@@ -399,6 +637,9 @@ public class CoreInterface
 
                     // Initialize input-android plugin (even if we aren't going to use it)
                     NativeInput.init();
+                    AbstractController.resetPackedStates();
+                    NativeInput.setStateBuffer( AbstractController.getPackedStates() );
+                    InputTrace.onCoreStarted();
                     NativeInput.setConfig( 0, sGamePrefs.isPlugged1, sGlobalPrefs.getPakType( 1 ).getNativeValue() );
                     NativeInput.setConfig( 1, sGamePrefs.isPlugged2, sGlobalPrefs.getPakType( 2 ).getNativeValue() );
                     NativeInput.setConfig( 2, sGamePrefs.isPlugged3, sGlobalPrefs.getPakType( 3 ).getNativeValue() );
@@ -433,6 +674,18 @@ public class CoreInterface
 
                     Log.e( "CoreInterface", "Core thread exit!");
 
+                    // Buttons held when the game exited must not carry over to the next one
+                    AbstractController.resetPackedStates();
+
+                    if( sRewindBuffer != null )
+                    {
+                        sRewindBuffer.quit();
+                        sRewindBuffer = null;
+                    }
+
+                    removeOnStateCallbackListener( sPlayTimeListener );
+                    catalog.addPlayTime( getPlayTime() );
+
                     synchronized (sActivitySync)
                     {
                         if(sActivity != null)
@@ -495,7 +748,7 @@ public class CoreInterface
                             sCoreThread = null;
 
                             // Unload the native libraries
-                            NativeExports.unloadLibraries();
+                            unloadLibraries();
                             sActivity.runOnUiThread( new Runnable()
                             {
                                 @Override
@@ -516,9 +769,38 @@ public class CoreInterface
                 }
             }, "CoreThread" );
 
+            // The launch ends once the core starts emulating
+            final String launchProfileLog = sGlobalPrefs.launchProfileLog;
+            addOnStateCallbackListener( new OnStateCallbackListener()
+            {
+                @Override
+                public void onStateCallback( int paramChanged, int newValue )
+                {
+                    if( paramChanged == NativeConstants.M64CORE_EMU_STATE
+                            && newValue == NativeConstants.EMULATOR_STATE_RUNNING )
+                    {
+                        removeOnStateCallbackListener( this );
+                        sStartupExecutor.execute( new Runnable()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                LaunchProfiler.finish( launchProfileLog );
+                            }
+                        } );
+                    }
+                }
+            } );
+
             sUseCustomSpeed = false;
             NativeExports.emuSetSpeed( BASELINE_SPEED );
 
+            if( sGlobalPrefs.rewindMemory > 0 )
+            {
+                sRewindBuffer = new RewindBuffer( sGlobalPrefs.coreUserCacheDir + "/Rewind",
+                        sGlobalPrefs.rewindInterval, sGlobalPrefs.rewindMemory * 1024L * 1024L );
+            }
+
             // Start the core on its own thread
 
             sIsPaused = false;
@@ -530,8 +812,22 @@ public class CoreInterface
     {
         if( sCoreThread != null )
         {
-            // Tell the core to quit
-            NativeExports.emuStop();
+            final Runnable stop = new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    // Tell the core to quit
+                    NativeExports.emuStop();
+                }
+            };
+
+            // After any auto save still waiting for the rewind buffer
+            final RewindBuffer rewindBuffer = sRewindBuffer;
+            if( rewindBuffer != null )
+                rewindBuffer.request( false, stop );
+            else
+                stop.run();
         }
     }
 
@@ -544,7 +840,7 @@ public class CoreInterface
             NativeExports.emuStop();
             NativeExports.emuShutdown();
             // Unload the native libraries
-            NativeExports.unloadLibraries();
+            unloadLibraries();
 
             sCoreThread = null;
         }
@@ -559,7 +855,7 @@ public class CoreInterface
         }
     }
 
-    public static synchronized void autoSaveState( final String latestSave )
+    public static synchronized void autoSaveState( final String latestSave, final OnAutoSaveListener listener )
     {
         // Auto-save in case device doesn't resume properly (e.g. OS kills process, battery dies, etc.)
 
@@ -567,6 +863,10 @@ public class CoreInterface
         resumeEmulator();
         Log.i("CoreInterface", "Saving file: " + latestSave);
 
+        final SaveStateCatalog catalog = sSaveStateCatalog;
+        final Set<String> screenshots = catalog.listScreenshots();
+        final long playTime = getPlayTime();
+
         addOnStateCallbackListener( new OnStateCallbackListener()
         {
             @Override
@@ -579,11 +879,9 @@ public class CoreInterface
                     //newValue == 1, then it was successful
                     if(newValue == 1)
                     {
-                        try {
-                            new File(latestSave + "." + COMPLETE_EXTENSION).createNewFile();
-                        } catch (IOException e) {
-                            Log.e("CoreInterface", "Unable to save file due to file write failure: " + latestSave);
-                        }
+                        listener.onAutoSave( latestSave );
+                        catalog.recordAutoSave( GameAutoSaveManager.getAutoSaveName( latestSave ),
+                                new File( latestSave ), playTime, screenshots );
                     }
                     else
                     {
@@ -597,7 +895,17 @@ public class CoreInterface
             }
         } );
 
-        NativeExports.emuSaveFile( latestSave );
+        //Keep the rewind buffer from saving over the auto save
+        requestCoreJob( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if( screenshots != null )
+                    NativeExports.emuScreenshot();
+                NativeExports.emuSaveFile( latestSave );
+            }
+        } );
     }
 
     public static void saveState( final String filename )
@@ -620,7 +928,7 @@ public class CoreInterface
             }
             else
             {
-                NativeExports.emuSaveFile( sCurrentSaveStateFile.getAbsolutePath() );
+                saveStateFile( sCurrentSaveStateFile );
 
                 Notifier.showToast( sActivity, R.string.toast_savingFile, sCurrentSaveStateFile.getName() );
 
@@ -632,6 +940,64 @@ public class CoreInterface
         }
     }
 
+    /**
+     * Saves the state to a file, along with a screenshot for its thumbnail if enabled.
+     */
+    private static void saveStateFile( final File file )
+    {
+        final Set<String> screenshots = sSaveStateCatalog.listScreenshots();
+        requestCoreJob( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if( screenshots != null )
+                    NativeExports.emuScreenshot();
+                NativeExports.emuSaveFile( file.getAbsolutePath() );
+            }
+        } );
+        sSaveStateCatalog.recordFile( file, getPlayTime(), screenshots );
+    }
+
+    /**
+     * Asks the core to save or load a state for the player. While the rewind buffer takes or loads a
+     * state, the request is made by the rewind thread once the core reports that state, since the
+     * core keeps one save or load at a time.
+     *
+     * @param request Makes the request.
+     */
+    private static void requestCoreJob( Runnable request )
+    {
+        final RewindBuffer rewindBuffer = sRewindBuffer;
+        if( rewindBuffer != null )
+            rewindBuffer.request( true, request );
+        else
+            request.run();
+    }
+
+    /**
+     * Lets the rewind buffer take the report of a save or load it requested, before the state
+     * callback listeners.
+     *
+     * @return True if the rewind buffer requested the save or load.
+     */
+    protected static boolean isRewindJobReported( int paramChanged, int newValue )
+    {
+        final RewindBuffer rewindBuffer = sRewindBuffer;
+        return rewindBuffer != null && rewindBuffer.onCoreJobReported( paramChanged, newValue );
+    }
+
+    /**
+     * Gets the time the game has been running since the core started, in milliseconds.
+     */
+    private static long getPlayTime()
+    {
+        synchronized( sPlayTimeLock )
+        {
+            return sPlayTime + ( sRunningSince != 0 ? SystemClock.elapsedRealtime() - sRunningSince : 0 );
+        }
+    }
+
     public static synchronized void pauseEmulator(  )
     {
         if( sCoreThread != null )
@@ -671,6 +1037,14 @@ public class CoreInterface
         NativeExports.emuSetSlot( slot );
     }
 
+    public static void rewind()
+    {
+        if( sRewindBuffer != null )
+        {
+            sRewindBuffer.rewind();
+        }
+    }
+
     public static void incrementSlot()
     {
         int slot = NativeExports.emuGetSlot();
@@ -686,7 +1060,18 @@ public class CoreInterface
             Notifier.showToast( sActivity, R.string.toast_savingSlot, slot );
         }
 
-        NativeExports.emuSaveSlot();
+        final Set<String> screenshots = sSaveStateCatalog.listScreenshots();
+        requestCoreJob( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if( screenshots != null )
+                    NativeExports.emuScreenshot();
+                NativeExports.emuSaveSlot();
+            }
+        } );
+        sSaveStateCatalog.recordSlot( slot, getPlayTime(), screenshots );
 
         if(onSaveLoadListener != null)
         {
@@ -703,7 +1088,14 @@ public class CoreInterface
             Notifier.showToast( sActivity, R.string.toast_loadingSlot, slot );
         }
 
-        NativeExports.emuLoadSlot();
+        requestCoreJob( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                NativeExports.emuLoadSlot();
+            }
+        } );
 
         if(onSaveLoadListener != null)
         {
@@ -736,23 +1128,54 @@ public class CoreInterface
     {
         if(sActivity != null)
         {
-            CharSequence title = sActivity.getText( R.string.menuItem_fileLoad );
+            final CharSequence title = sActivity.getText( R.string.menuItem_fileLoad );
             File startPath = new File( sGamePrefs.userSaveDir );
-            Prompt.promptFile( sActivity, title, null, startPath, "", new PromptFileListener()
+            sSaveStateCatalog.getFileEntries( startPath, new OnEntriesShownListener( title,
+                    new OnSaveStateSelectedListener()
             {
                 @Override
-                public void onDialogClosed( File file, int which )
+                public void onSaveStateSelected( SaveStateCatalog.Entry entry )
                 {
-                    if( which >= 0 )
-                    {
-                        loadState( file );
+                    loadState( new File( entry.path ) );
 
-                        if(onSaveLoadListener != null)
-                        {
-                            onSaveLoadListener.onSaveLoad();
-                        }
+                    if(onSaveLoadListener != null)
+                    {
+                        onSaveLoadListener.onSaveLoad();
                     }
                 }
+            } ) );
+        }
+    }
+
+    /**
+     * Shows the save states listed by the catalogue in the background.
+     */
+    private static class OnEntriesShownListener implements SaveStateCatalog.OnEntriesListener
+    {
+        private final CharSequence mTitle;
+        private final OnSaveStateSelectedListener mListener;
+
+        public OnEntriesShownListener( CharSequence title, OnSaveStateSelectedListener listener )
+        {
+            mTitle = title;
+            mListener = listener;
+        }
+
+        @Override
+        public void onEntries( final List<SaveStateCatalog.Entry> entries )
+        {
+            final AppCompatActivity activity = sActivity;
+            if( activity == null )
+                return;
+
+            activity.runOnUiThread( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if( !activity.isFinishing() )
+                        SaveStateBrowser.show( activity, mTitle, entries, mListener );
+                }
             } );
         }
     }
@@ -761,36 +1184,59 @@ public class CoreInterface
     {
         if(sActivity != null)
         {
-            CharSequence title = sActivity.getText( R.string.menuItem_fileLoadAutoSave );
-            File startPath = new File( sGamePrefs.autoSaveDir );
-            Prompt.promptFile( sActivity, title, null, startPath, "sav", new PromptFileListener()
+            final CharSequence title = sActivity.getText( R.string.menuItem_fileLoadAutoSave );
+            final GameAutoSaveManager autoSaveManager = new GameAutoSaveManager( sGamePrefs, sGlobalPrefs.maxAutoSaves );
+            final List<String> autoSaves = autoSaveManager.getAutoSaves();
+
+            sSaveStateCatalog.getAutoSaveEntries( autoSaves, new OnEntriesShownListener( title,
+                    new OnSaveStateSelectedListener()
             {
                 @Override
-                public void onDialogClosed( File file, int which )
+                public void onSaveStateSelected( SaveStateCatalog.Entry entry )
                 {
-                    if( which >= 0 )
+                    autoSaveManager.restoreAutoSave( entry.name, new GameAutoSaveManager.OnAutoSaveRestoredListener()
                     {
-                        loadState( file );
-
-                        if(onSaveLoadListener != null)
+                        @Override
+                        public void onAutoSaveRestored( final File file )
                         {
-                            onSaveLoadListener.onSaveLoad();
-                        }
-                    }
+                            if( file == null || sActivity == null )
+                                return;
+
+                            sActivity.runOnUiThread( new Runnable()
+                            {
+                                @Override
+                                public void run()
+                                {
+                                    loadState( file );
 
+                                    if(onSaveLoadListener != null)
+                                    {
+                                        onSaveLoadListener.onSaveLoad();
+                                    }
+                                }
+                            } );
+                        }
+                    } );
                 }
-            } );
+            } ) );
         }
     }
 
-    public static void loadState( File file )
+    public static void loadState( final File file )
     {
         if(sActivity != null)
         {
             Notifier.showToast( sActivity, R.string.toast_loadingFile, file.getName() );
         }
 
-        NativeExports.emuLoadFile( file.getAbsolutePath() );
+        requestCoreJob( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                NativeExports.emuLoadFile( file.getAbsolutePath() );
+            }
+        } );
     }
 
     public static void screenshot()
@@ -936,7 +1382,7 @@ public class CoreInterface
         {
             if (which == DialogInterface.BUTTON_POSITIVE)
             {
-                NativeExports.emuSaveFile(sCurrentSaveStateFile.getAbsolutePath());
+                saveStateFile(sCurrentSaveStateFile);
 
                 if(sActivity != null)
                 {
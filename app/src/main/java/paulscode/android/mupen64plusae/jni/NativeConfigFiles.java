@@ -29,6 +29,7 @@ import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.HashMap;
 import java.util.zip.GZIPInputStream;
 
 import paulscode.android.mupen64plusae.persistent.AppData;
@@ -52,17 +53,48 @@ public class NativeConfigFiles
     //True if this device supports full GL mode
     private static boolean supportsFullGl = false;
 
+    /** Config files from previous syncs, keyed by path, reused while the files are unchanged on disk. */
+    private static final HashMap<String, CachedConfigFile> sConfigFiles = new HashMap<String, CachedConfigFile>();
+
+    /**
+     * A config file along with the size and modification time of the file it was last loaded from or
+     * saved to.
+     */
+    private static class CachedConfigFile
+    {
+        public final ConfigFile configFile;
+        public long length;
+        public long lastModified;
+
+        public CachedConfigFile( ConfigFile configFile, File file )
+        {
+            this.configFile = configFile;
+            updateStamp( file );
+        }
+
+        public void updateStamp( File file )
+        {
+            length = file.length();
+            lastModified = file.lastModified();
+        }
+
+        public boolean isCurrent( File file )
+        {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+    }
+
     /**
      * Populates the core configuration files with the user preferences.
      */
-    public static void syncConfigFiles( GamePrefs game, GlobalPrefs global, AppData appData)
+    public static synchronized void syncConfigFiles( GamePrefs game, GlobalPrefs global, AppData appData)
     {
         //@formatter:off
 
         supportsFullGl = appData.doesSupportFullGL();
 
         // gln64 config file
-        final ConfigFile gln64_conf = new ConfigFile( appData.gln64_conf );
+        final ConfigFile gln64_conf = getConfigFile( appData.gln64_conf );
         gln64_conf.put( ConfigFile.SECTIONLESS_NAME, "window width", String.valueOf( game.videoRenderWidth ) );
         gln64_conf.put( ConfigFile.SECTIONLESS_NAME, "window height", String.valueOf( game.videoRenderHeight ) );
         gln64_conf.put( ConfigFile.SECTIONLESS_NAME, "auto frameskip", boolToNum( game.isGln64AutoFrameskipEnabled ) );
@@ -77,11 +109,11 @@ public class NativeConfigFiles
         gln64_conf.put( ConfigFile.SECTIONLESS_NAME, "hack z", boolToNum( game.isGln64HackDepthEnabled ) );
 
         // glide64 config file
-        final ConfigFile glide64_conf = new ConfigFile( appData.glide64mk2_ini );
+        final ConfigFile glide64_conf = getConfigFile( appData.glide64mk2_ini );
         glide64_conf.put( "DEFAULT", "aspect", "2" );                                                                       // Stretch to SurfaceView, Java will manage aspect ratio
 
         // Core and rice config file
-        final ConfigFile mupen64plus_cfg = new ConfigFile( game.mupen64plus_cfg );
+        final ConfigFile mupen64plus_cfg = getConfigFile( game.mupen64plus_cfg );
 
         mupen64plus_cfg.put( "Audio-OpenSLES", "Version", "1.000000" );                                                          // Mupen64Plus OpenSLES Audio Plugin config parameter version number
         mupen64plus_cfg.put( "Audio-OpenSLES", "SWAP_CHANNELS", boolToTF( global.audioSwapChannels ) );                          // Swaps left and right channels
@@ -191,7 +223,7 @@ public class NativeConfigFiles
         readHiResSettings(game, global, appData);
 
         // gln64 config file
-        final ConfigFile glideN64_conf = new ConfigFile( appData.glideN64_conf );
+        final ConfigFile glideN64_conf = getConfigFile( appData.glideN64_conf );
 
         mupen64plus_cfg.put( "Video-GLideN64", "configVersion", "17" );
 
@@ -276,13 +308,54 @@ public class NativeConfigFiles
 
         mupen64plus_cfg.put( "Video-Angrylion", "VIOverlay", boolToTF( game.angrylionVIOverlayEnabled ) );
 
-        gln64_conf.save();
-        glide64_conf.save();
-        mupen64plus_cfg.save();
+        saveConfigFile( appData.gln64_conf, gln64_conf );
+        saveConfigFile( appData.glide64mk2_ini, glide64_conf );
+        saveConfigFile( game.mupen64plus_cfg, mupen64plus_cfg );
 
         //@formatter:on
     }
 
+    /**
+     * Returns the config file at the given path. The copy kept from a previous sync is reused as long
+     * as nothing else modified the file since, so puts of unchanged values leave it clean and
+     * {@link #saveConfigFile(String, ConfigFile)} can skip it.
+     */
+    private static synchronized ConfigFile getConfigFile( String filename )
+    {
+        final File file = new File( filename );
+        final CachedConfigFile cached = sConfigFiles.get( filename );
+        if( cached != null && cached.isCurrent( file ) )
+            return cached.configFile;
+
+        // First use or modified externally (e.g. by the core), read it again
+        final ConfigFile configFile = new ConfigFile( filename );
+        sConfigFiles.put( filename, new CachedConfigFile( configFile, file ) );
+        return configFile;
+    }
+
+    /**
+     * Writes a config file obtained from {@link #getConfigFile(String)}, but only if its content
+     * changed.
+     */
+    private static synchronized void saveConfigFile( String filename, ConfigFile configFile )
+    {
+        if( !configFile.isDirty() )
+            return;
+
+        Log.i( "NativeConfigFiles", "Writing " + filename );
+        if( configFile.save() )
+        {
+            final CachedConfigFile cached = sConfigFiles.get( filename );
+            if( cached != null && cached.configFile == configFile )
+                cached.updateStamp( new File( filename ) );
+        }
+        else
+        {
+            // Force a fresh read next time rather than trusting an unsaved copy
+            sConfigFiles.remove( filename );
+        }
+    }
+
     private static String boolToTF( boolean b )
     {
         return b ? "True" : "False";
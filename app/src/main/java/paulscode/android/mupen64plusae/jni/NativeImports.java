@@ -39,6 +39,12 @@ public class NativeImports extends CoreInterface
      */
     public static void stateCallback( int paramChanged, int newValue )
     {
+        // The saves and loads of the rewind buffer are its own
+        if( isRewindJobReported( paramChanged, newValue ) )
+        {
+            return;
+        }
+
         synchronized( sStateCallbackLock )
         {
             for( int i = sStateCallbackListeners.size(); i > 0; i-- )
@@ -20,6 +20,7 @@
  */
 package paulscode.android.mupen64plusae.jni;
 
+import java.nio.ByteBuffer;
 
 /**
  * Calls made between the native input-android library and Java. Any function names changed here
@@ -44,14 +45,26 @@ public class NativeInput extends CoreInterface
     public static native void init();
     
     /**
-     * Set the button/axis state of a controller.
+     * Set the buffer the button/axis state of the controllers is read from. The plugin keeps reading
+     * it every frame, so the buffer must remain referenced.
      * 
-     * @param controllerNum Controller index, in the range [0,3].
-     * @param buttons The pressed state of the buttons.
-     * @param axisX The analog value of the x-axis, in the range [-80,80].
-     * @param axisY The analog value of the y-axis, in the range [-80,80].
+     * @param states A direct buffer of five ints in native byte order: one per controller, then
+     *            the number of times the plugin polled the controllers, which it increments.
+     * @see paulscode.android.mupen64plusae.input.AbstractController#packState(boolean[], int, int)
+     */
+    public static native void setStateBuffer( ByteBuffer states );
+    
+    /**
+     * Set the controller states to replay. The plugin publishes each state in the state buffer at
+     * the poll following the one it was recorded at, so the core reads it at the same frame as when
+     * it was recorded. The buffer must remain referenced until it is replaced.
+     * 
+     * @param records A direct buffer of three ints per record in native byte order, sorted by poll
+     *            count: the poll count, the controller index and the packed state; or null to stop.
+     * @param count The number of records.
+     * @see #setStateBuffer(ByteBuffer)
      */
-    public static native void setState( int controllerNum, boolean[] buttons, int axisX, int axisY );
+    public static native void setReplayBuffer( ByteBuffer records, int count );
     
     /**
      * Set the plugged state and pak type of a controller.
@@ -1,21 +1,21 @@
 /**
  * Mupen64PlusAE, an N64 emulator for the Android platform
- * 
+ *
  * Copyright (C) 2013 Paul Lamb
- * 
+ *
  * This file is part of Mupen64PlusAE.
- * 
+ *
  * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
  * GNU General Public License as published by the Free Software Foundation, either version 3 of the
  * License, or (at your option) any later version.
- * 
+ *
  * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
  * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
  * GNU General Public License for more details.
- * 
+ *
  * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
  * not, see <http://www.gnu.org/licenses/>.
- * 
+ *
  * Authors: Paul Lamb, lioncash
  */
 package paulscode.android.mupen64plusae.persistent;
@@ -23,19 +23,15 @@ package paulscode.android.mupen64plusae.persistent;
 import android.text.TextUtils;
 import android.util.Log;
 
-import java.io.BufferedReader;
-import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.Set;
 
 import paulscode.android.mupen64plusae.util.FileUtil;
@@ -55,23 +51,31 @@ import paulscode.android.mupen64plusae.util.FileUtil;
  * <li>Leading and trailing whitespace in lines, param names, and values is discarded.
  * <li>Whitespace inside brackets or double-quotes is not discarded.
  * </ul>
- * 
+ * Comments, blank lines and lines that cannot be parsed are kept as they are, so saving a file
+ * that was not modified reproduces it exactly. The file is only written by {@link #save()} if
+ * something changed since it was loaded or last saved.
+ *
  * @author Paul Lamb
  */
 public class ConfigFile
 {
     /** The name we use for the untitled section (preamble) of the config file. */
     public static final String SECTIONLESS_NAME = "[<sectionless!>]";
-    
+
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
     /** Name of the config file. */
     private final String mFilename;
-    
+
     /** Sections mapped by title for easy lookup, with insertion order retained. */
     private final LinkedHashMap<String, ConfigSection> mConfigMap;
-    
+
+    /** True if sections were added or removed since the file was loaded or saved. */
+    private boolean mDirty;
+
     /**
      * Reads the entire config file, and saves the data to internal collections for manipulation.
-     * 
+     *
      * @param filename The config file to read from.
      */
     public ConfigFile( String filename )
@@ -80,59 +84,53 @@ public class ConfigFile
         mConfigMap = new LinkedHashMap<String, ConfigSection>();
         reload();
     }
-    
+
     /**
      * Looks up a config section by its title.
-     * 
+     *
      * @param sectionTitle Title of the section containing the parameter.
-     * 
+     *
      * @return A ConfigSection containing parameters, or null if not found.
      */
     public ConfigSection get( String sectionTitle )
     {
         return mConfigMap.get( sectionTitle );
     }
-    
+
     /**
      * Removes a config section by its title. Note that the removal is not actually persisted to
      * disk until the {@link #save()} method is called.
-     * 
+     *
      * @param sectionTitle Title of the section containing the parameter.
      */
     public void remove( String sectionTitle )
     {
-        mConfigMap.remove( sectionTitle );
+        if( mConfigMap.remove( sectionTitle ) != null )
+            mDirty = true;
     }
-    
+
     /**
      * Looks up the specified parameter under the specified section title.
-     * 
+     *
      * @param sectionTitle Title of the section containing the parameter.
      * @param parameter Name of the parameter.
-     * 
+     *
      * @return The value of the specified parameter, or null if not found.
      */
     public String get( String sectionTitle, String parameter )
     {
         ConfigSection section = mConfigMap.get( sectionTitle );
-        
+
         // The specified section doesn't exist or is empty.. quit
-        if( section == null || section.parameters == null )
-            return null;
-        
-        ConfigParameter confParam = section.parameters.get( parameter );
-        
-        // The specified parameter doesn't exist.. quit
-        if( confParam == null )
+        if( section == null )
             return null;
-        
-        // Got it
-        return confParam.value;
+
+        return section.get( parameter );
     }
-    
+
     /**
      * Assigns the specified value to the specified parameter under the specified section.
-     * 
+     *
      * @param sectionTitle The title of the section to contain the parameter.
      * @param parameter The name of the parameter.
      * @param value The value to give the parameter.
@@ -145,22 +143,43 @@ public class ConfigFile
             // Add a new section
             section = new ConfigSection( sectionTitle );
             mConfigMap.put( sectionTitle, section );
+            mDirty = true;
         }
         section.put( parameter, value );
     }
-    
+
     /**
      * Erases any previously loaded data.
      */
     public void clear()
     {
+        if( !mConfigMap.isEmpty() )
+            mDirty = true;
         mConfigMap.clear();
     }
-    
+
+    /**
+     * Returns true if the data was modified since the file was loaded or saved.
+     *
+     * @return True if {@link #save()} needs to write the file.
+     */
+    public boolean isDirty()
+    {
+        if( mDirty )
+            return true;
+
+        for( ConfigSection section : mConfigMap.values() )
+        {
+            if( section.mDirty )
+                return true;
+        }
+        return false;
+    }
+
     /**
      * Re-loads the entire config file, overwriting any unsaved changes, and saves the data in
      * 'configMap'.
-     * 
+     *
      * @return True if successful.
      * @see #save()
      */
@@ -169,58 +188,135 @@ public class ConfigFile
         // Make sure a file was actually specified
         if( TextUtils.isEmpty( mFilename ) )
             return false;
-        
+
         // Free any previously loaded data
-        clear();
-        
-        FileInputStream fstream;
+        mConfigMap.clear();
+
+        byte[] bytes;
         try
         {
-            fstream = new FileInputStream( mFilename );
+            bytes = readFile( mFilename );
         }
         catch( FileNotFoundException fnfe )
         {
-            // File not found... we can't continue
+            // File not found... we can't continue, but saving must create it
+            mDirty = true;
+            return false;
+        }
+        catch( IOException ioe )
+        {
+            Log.e( "ConfigFile", "IOException reading file " + mFilename + ", error message: "
+                    + ioe.getMessage() );
+            mDirty = true;
             return false;
         }
-        
-        DataInputStream in = new DataInputStream( fstream );
-        BufferedReader br = new BufferedReader( new InputStreamReader( in ) );
-        
-        String sectionName = SECTIONLESS_NAME;
-        ConfigSection section = new ConfigSection( sectionName, br ); // Read the 'sectionless'
-                                                                      // section
-        mConfigMap.put( sectionName, section ); // Save the data to 'configMap'
-        
-        // Loop through reading the remaining sections
-        while( !TextUtils.isEmpty( section.nextName ) )
+
+        parse( bytes );
+        mDirty = false;
+
+        // Success
+        return true;
+    }
+
+    /**
+     * Parses the contents of a config file in a single pass.
+     *
+     * @param bytes The contents of the file.
+     */
+    private void parse( byte[] bytes )
+    {
+        // Read the 'sectionless' section
+        ConfigSection section = new ConfigSection( SECTIONLESS_NAME );
+        mConfigMap.put( SECTIONLESS_NAME, section );
+
+        int start = 0;
+        while( start < bytes.length )
         {
-            // Get the next section name
-            sectionName = section.nextName;
-            
-            // Load the next section
-            section = new ConfigSection( sectionName, br );
-            mConfigMap.put( sectionName, section ); // Save the data to 'configMap'
+            // Find the end of the line
+            int end = start;
+            while( end < bytes.length && bytes[end] != '\n' )
+                end++;
+            int next = end + 1;
+            if( end > start && bytes[end - 1] == '\r' )
+                end--;
+
+            String fullLine = new String( bytes, start, end - start, UTF_8 );
+            String strLine = fullLine.trim();
+            start = next;
+
+            if( strLine.length() < 1 || strLine.charAt( 0 ) == '#' || strLine.charAt( 0 ) == ';'
+                    || strLine.startsWith( "//" ) )
+            {
+                // A comment or blank line.
+                section.addLine( fullLine + "\n" );
+            }
+            else if( strLine.indexOf( '=' ) >= 0 )
+            {
+                // This should be a "parameter=value" pair:
+                int x = fullLine.indexOf( '=' );
+                String p = fullLine.substring( 0, x ).trim();
+                String v = fullLine.substring( x + 1 ).trim();
+
+                if( p.length() < 1 )
+                {
+                    // Bad syntax, keep the line as it is
+                    section.addLine( fullLine + "\n" );
+                }
+                else if( v.length() > 0 )
+                {
+                    // Save the parameter=value pair, a repeated parameter updates the first line
+                    section.addParameter( fullLine.substring( 0, x + 1 ), p, v );
+                }
+                // It's ok to have an empty assignment (such as "param=")
+            }
+            else if( strLine.charAt( 0 ) == '[' && strLine.indexOf( ']' ) > 1 )
+            {
+                // This should be the beginning of the next section
+                String name = strLine.substring( 1, strLine.indexOf( ']' ) ).trim();
+                section = new ConfigSection( name );
+                mConfigMap.put( name, section );
+            }
+            else
+            {
+                // Bad syntax, keep the line as it is
+                section.addLine( fullLine + "\n" );
+            }
         }
-        
+
+        // Loading is not a modification
+        for( ConfigSection loaded : mConfigMap.values() )
+            loaded.mDirty = false;
+    }
+
+    private static byte[] readFile( String filename ) throws IOException
+    {
+        FileInputStream fstream = new FileInputStream( filename );
         try
         {
-            // Finished. Close the file.
-            in.close();
-            br.close();
+            byte[] bytes = new byte[(int) fstream.getChannel().size()];
+            int offset = 0;
+            int n;
+            while( offset < bytes.length && ( n = fstream.read( bytes, offset, bytes.length - offset ) ) > 0 )
+                offset += n;
+            return offset == bytes.length ? bytes : Arrays.copyOf( bytes, offset );
         }
-        catch( IOException ioe )
+        finally
         {
-            // (Don't care)
+            try
+            {
+                fstream.close();
+            }
+            catch( IOException ioe )
+            {
+                // (Don't care)
+            }
         }
-        
-        // Success
-        return true;
     }
-    
+
     /**
-     * Saves the data from 'configMap' back to the config file.
-     * 
+     * Saves the data from 'configMap' back to the config file, if it was modified. The file is
+     * replaced atomically, so that it is never left partially written.
+     *
      * @return True if successful. False otherwise.
      * @see #reload()
      */
@@ -232,379 +328,264 @@ public class ConfigFile
             Log.e( "ConfigFile", "Filename not specified in method save()" );
             return false; // Quit
         }
-        
+
+        // Nothing to write
+        if( !isDirty() )
+            return true;
+
         // Ensure parent directories exist before writing file
-        FileUtil.makeDirs(new File( mFilename ).getParentFile().getPath());
-        
-        // Write data to file
-        FileWriter fw = null;
+        final File file = new File( mFilename );
+        FileUtil.makeDirs( file.getParentFile().getPath() );
+
+        // Serialize the sections
+        StringBuilder builder = new StringBuilder();
+        for( ConfigSection section : mConfigMap.values() )
+        {
+            if( section != null )
+                section.write( builder );
+        }
+
+        // Write data to a temporary file, then move it into place. Each save gets its own temporary
+        // file, so that concurrent saves of the same file never write into each other's.
+        File tempFile = null;
+        FileOutputStream fos = null;
         try
         {
-            fw = new FileWriter( mFilename );
-            
-            // Loop through the sections
-            for( ConfigSection section : mConfigMap.values() )
-            {
-                if( section != null )
-                    section.save( fw );
-            }
+            tempFile = File.createTempFile( file.getName() + ".save", ".tmp", file.getParentFile() );
+            fos = new FileOutputStream( tempFile );
+            fos.write( builder.toString().getBytes( UTF_8 ) );
+            fos.getFD().sync();
         }
         catch( IOException ioe )
         {
             Log.e( "ConfigFile", "IOException creating file " + mFilename + ", error message: "
                     + ioe.getMessage() );
+            if( tempFile != null )
+                tempFile.delete();
             return false; // Some problem creating the file.. quit
         }
         finally
         {
-            if( fw != null )
+            if( fos != null )
             {
                 try
                 {
-                    fw.close();
+                    fos.close();
                 }
                 catch( IOException ignored )
                 {
                 }
             }
         }
-        
+
+        if( !tempFile.renameTo( file ) )
+        {
+            Log.e( "ConfigFile", "Unable to replace file " + mFilename );
+            tempFile.delete();
+            return false;
+        }
+
+        // Everything is now persisted
+        mDirty = false;
+        for( ConfigSection section : mConfigMap.values() )
+            section.mDirty = false;
+
         // Success
         return true;
     }
-    
+
     /**
      * Returns a handle to the configMap keyset.
-     * 
+     *
      * @return keyset containing all the config section titles.
      */
     public Set<String> keySet()
     {
         return mConfigMap.keySet();
     }
-    
+
     /**
-     * The ConfigSection class reads all the parameters in the next section of the config file.
-     * Saves the name of the next section (or null if end of file or error). Can also be used to add
-     * a new section to an existing configuration.
+     * The ConfigSection class holds all the lines of a section of the config file, including
+     * comments. Lines are stored in parallel arrays, with an index from parameter name to line.
+     * Can also be used to add a new section to an existing configuration.
      */
     public static class ConfigSection
     {
+        private static final int INITIAL_CAPACITY = 8;
+
         public String name; // Section name
-        private HashMap<String, ConfigParameter> parameters; // Parameters sorted by name for easy
-                                                             // lookup
-        private LinkedList<ConfigLine> lines; // All the lines in this section, including comments
-        
-        // Name of the next section, or null if there are no sections left to read in the file:
-        private String nextName = null;
-        
+
+        // For parameter lines, the parameter name, or null for any other line
+        private String[] mKeys = new String[INITIAL_CAPACITY];
+        // For parameter lines, the text up to and including the equal sign, otherwise the full line
+        private String[] mText = new String[INITIAL_CAPACITY];
+        // For parameter lines, the parameter value
+        private String[] mValues = new String[INITIAL_CAPACITY];
+        private int mLineCount = 0;
+
+        // Line of each parameter, for easy lookup
+        private final HashMap<String, Integer> mIndex = new HashMap<String, Integer>();
+
+        // True if the section was modified since it was loaded or saved
+        private boolean mDirty = true;
+
         /**
          * Constructor: Creates an empty config section
-         * 
+         *
          * @param sectionName The section title.
          */
         public ConfigSection( String sectionName )
         {
-            parameters = new HashMap<String, ConfigParameter>();
-            lines = new LinkedList<ConfigLine>();
-            
             if( !TextUtils.isEmpty( sectionName ) && !sectionName.equals( SECTIONLESS_NAME ) )
-                lines.add( new ConfigLine( ConfigLine.LINE_SECTION, "[" + sectionName + "]\n", null ) );
-            
+                addLine( "[" + sectionName + "]\n" );
+
             name = sectionName;
         }
-        
-        // TODO: Clean this method up a bit?
-        /**
-         * Constructor: Reads the next section of the config file, and saves it in 'parameters'.
-         * 
-         * @param sectionName The section title.
-         * @param br The config file to read from.
-         */
-        public ConfigSection( String sectionName, BufferedReader br )
+
+        private void addLine( String line )
         {
-            String fullLine, strLine, p, v;
-            ConfigParameter confParam;
-            int x, y;
-            
-            parameters = new HashMap<String, ConfigParameter>();
-            lines = new LinkedList<ConfigLine>();
-            
-            if( !TextUtils.isEmpty( sectionName ) && !sectionName.equals( SECTIONLESS_NAME ) )
-                lines.add( new ConfigLine( ConfigLine.LINE_SECTION, "[" + sectionName + "]\n", null ) );
-            
-            name = sectionName;
-            
-            // No file to read from. Quit.
-            if( br == null )
-                return;
-            
-            try
+            appendLine( null, line, null );
+        }
+
+        private void addParameter( String text, String parameter, String value )
+        {
+            Integer line = mIndex.get( parameter );
+            if( line != null )
             {
-                while( ( fullLine = br.readLine() ) != null )
-                {
-                    strLine = fullLine.trim();
-                    if( ( strLine.length() < 1 )
-                            || ( strLine.substring( 0, 1 ).equals( "#" ) )
-                            || ( strLine.substring( 0, 1 ).equals( ";" ) )
-                            || ( ( strLine.length() > 1 ) && ( strLine.substring( 0, 2 )
-                                    .equals( "//" ) ) ) )
-                    
-                    { // A comment or blank line.
-                        lines.add( new ConfigLine( ConfigLine.LINE_GARBAGE, fullLine + "\n", null ) );
-                    }
-                    else if( strLine.contains( "=" ) )
-                    {
-                        // This should be a "parameter=value" pair:
-                        x = strLine.indexOf( '=' );
-                        
-                        if( x < 1 )
-                            return; // This shouldn't happen (bad syntax). Quit.
-                            
-                        if( x < ( strLine.length() - 1 ) )
-                        {
-                            p = strLine.substring( 0, x ).trim();
-                            if( p.length() < 1 )
-                                return; // This shouldn't happen (bad syntax). Quit.
-                                
-                            v = strLine.substring( x + 1, strLine.length() ).trim();
-                            // v = v.replace( "\"", "" ); // I'm doing this later, so I can save
-                            // back without losing them
-                            
-                            if( v.length() > 0 )
-                            {
-                                // Save the parameter=value pair
-                                confParam = parameters.get( p );
-                                if( confParam != null )
-                                {
-                                    confParam.value = v;
-                                }
-                                else
-                                {
-                                    confParam = new ConfigParameter( p, v );
-                                    lines.add( new ConfigLine( ConfigLine.LINE_PARAM, fullLine
-                                            + "\n", confParam ) );
-                                    parameters.put( p, confParam ); // Save the pair.
-                                }
-                            }
-                        } // It's ok to have an empty assignment (such as "param=")
-                    }
-                    else if( strLine.contains( "[" ) )
-                    {
-                        // This should be the beginning of the next section
-                        if( ( strLine.length() < 3 ) || ( !strLine.contains( "]" ) ) )
-                            return; // This shouldn't happen (bad syntax). Quit.
-                            
-                        x = strLine.indexOf( '[' );
-                        y = strLine.indexOf( ']' );
-                        
-                        if( ( y <= x + 1 ) || ( x == -1 ) || ( y == -1 ) )
-                            return; // This shouldn't happen (bad syntax). Quit.
-                            
-                        p = strLine.substring( x + 1, y ).trim();
-                        
-                        // Save the name of the next section.
-                        nextName = p;
-                        
-                        // Done reading parameters. Return.
-                        return;
-                    }
-                    else
-                    {
-                        // This shouldn't happen (bad syntax). Quit.
-                        return;
-                    }
-                }
+                mValues[line] = value;
             }
-            catch( IOException ioe )
+            else
             {
-                // (Don't care)
+                mIndex.put( parameter, mLineCount );
+                appendLine( parameter, text, value );
+            }
+        }
+
+        private void appendLine( String key, String text, String value )
+        {
+            if( mLineCount == mKeys.length )
+            {
+                int capacity = mLineCount * 2;
+                mKeys = Arrays.copyOf( mKeys, capacity );
+                mText = Arrays.copyOf( mText, capacity );
+                mValues = Arrays.copyOf( mValues, capacity );
+            }
+            mKeys[mLineCount] = key;
+            mText[mLineCount] = text;
+            mValues[mLineCount] = value;
+            mLineCount++;
+            mDirty = true;
+        }
+
+        private void removeLine( int line )
+        {
+            int moved = mLineCount - line - 1;
+            System.arraycopy( mKeys, line + 1, mKeys, line, moved );
+            System.arraycopy( mText, line + 1, mText, line, moved );
+            System.arraycopy( mValues, line + 1, mValues, line, moved );
+            mLineCount--;
+            mKeys[mLineCount] = null;
+            mText[mLineCount] = null;
+            mValues[mLineCount] = null;
+            mDirty = true;
+
+            // Lines after the removed one have shifted
+            mIndex.clear();
+            for( int i = 0; i < mLineCount; i++ )
+            {
+                if( mKeys[i] != null )
+                    mIndex.put( mKeys[i], i );
             }
-            
-            // Reached end of file or error.. either way, just quit
-            return;
         }
-        
+
         /**
          * Returns a handle to the parameter keyset.
-         * 
+         *
          * @return keyset containing all the parameters.
          */
         public Set<String> keySet()
         {
-            return parameters.keySet();
+            return mIndex.keySet();
         }
-        
+
         /**
          * Returns the value of the specified parameter.
-         * 
+         *
          * @param parameter Name of the parameter.
-         * 
+         *
          * @return Parameter's value, or null if not found.
          */
         public String get( String parameter )
         {
-            // Error: no parameters, or parameter was null
-            if( parameters == null || TextUtils.isEmpty( parameter ) )
+            // Error: parameter was null
+            if( TextUtils.isEmpty( parameter ) )
                 return null;
-            
-            ConfigParameter confParam = parameters.get( parameter );
-            
+
+            Integer line = mIndex.get( parameter );
+
             // Parameter not found
-            if( confParam == null )
+            if( line == null )
                 return null;
-            
+
             // Got it
-            return confParam.value;
+            return mValues[line];
         }
 
         /**
-         * Remove instances of this parameter.
+         * Remove instances of this parameter that differ only by case.
          * @param parameter
          */
-        private void removePreviousInstance(String parameter)
+        private void removeOtherInstances( String parameter )
         {
-            //Create a copy first
-            ArrayList<String> keys = new ArrayList<String>(parameters.keySet());
-
-            //Remove from parameters
-            for(String key : keys)
+            for( int i = mLineCount - 1; i >= 0; i-- )
             {
-                if(key.toLowerCase().equals(parameter.toLowerCase()))
-                {
-                    parameters.remove(key);
-                }
-            }
-
-            //Remove from lines
-            String lineParameterTest1 = parameter + " = ";
-            String lineParameterTest2 = parameter + "=";
-            Iterator<ConfigLine> iter = lines.iterator();
-            while (iter.hasNext()) {
-                ConfigLine line = iter.next();
-
-                if(line.strLine.toLowerCase().startsWith(lineParameterTest1.toLowerCase()) ||
-                        line.strLine.toLowerCase().startsWith(lineParameterTest2.toLowerCase()))
-                {
-                    iter.remove();
-                }
+                if( mKeys[i] != null && !mKeys[i].equals( parameter ) && mKeys[i].equalsIgnoreCase( parameter ) )
+                    removeLine( i );
             }
         }
-        
+
         /**
          * Adds the specified parameter to this config section, updates the value if it already
          * exists, or removes the parameter.
-         * 
+         *
          * @param parameter The name of the parameter.
          * @param value The parameter's value, or null to remove.
          */
         public void put( String parameter, String value )
         {
-            removePreviousInstance(parameter);
+            removeOtherInstances( parameter );
 
-            if( !TextUtils.isEmpty( value ) )
-            {
-                ConfigParameter confParam = new ConfigParameter( parameter, value );
-                lines.add( new ConfigLine( ConfigLine.LINE_PARAM, parameter + "=" + value
-                        + "\n", confParam ) );
-                parameters.put( parameter, confParam );
-            }
-        }
-        
-        /**
-         * Writes the entire section to file.
-         * 
-         * @param fw File to write to.
-         * 
-         * @throws IOException if a writing error occurs.
-         */
-        public void save( FileWriter fw ) throws IOException
-        {
-            for( ConfigLine line : lines )
+            Integer line = mIndex.get( parameter );
+            if( TextUtils.isEmpty( value ) )
             {
-                if( line != null ) {
-                    line.save(fw);
-                }
+                if( line != null )
+                    removeLine( line );
             }
-        }
-    }
-    
-    /**
-     * The ConfigLine class stores each line of the config file (including comments).
-     */
-    private static class ConfigLine
-    {
-        public static final int LINE_GARBAGE = 0; // Comment, whitespace, or blank line
-        public static final int LINE_SECTION = 1; // Section title
-        public static final int LINE_PARAM = 2; // Parameter=value pair
-        
-        public int lineType = 0; // LINE_GARBAGE, LINE_SECTION, or LINE_PARAM.
-        public String strLine = ""; // Actual line from the config file.
-        public ConfigParameter confParam = null; // Null unless this line has a parameter.
-        
-        /**
-         * Constructor: Saves the relevant information about the line.
-         * 
-         * @param type The type of line.
-         * @param line The line itself.
-         * @param param Config parameters pertaining to the line.
-         */
-        public ConfigLine( int type, String line, ConfigParameter param )
-        {
-            lineType = type;
-            strLine = line;
-            confParam = param;
-        }
-        
-        /**
-         * Saves the ConfigLine.
-         * 
-         * @param fw The file to save the ConfigLine to.
-         * 
-         * @throws IOException If a writing error occurs.
-         */
-        public void save( FileWriter fw ) throws IOException
-        {
-            int x;
-            if( lineType == LINE_PARAM )
+            else if( line == null )
             {
-                if( !strLine.contains( "=" ) || confParam == null )
-                    return; // This shouldn't happen
-                    
-                x = strLine.indexOf( '=' );
-                
-                if( x < 1 )
-                    return; // This shouldn't happen either
-                    
-                if( x < strLine.length() )
-                    fw.write( strLine.substring( 0, x + 1 ) + confParam.value + "\n" );
+                mIndex.put( parameter, mLineCount );
+                appendLine( parameter, parameter + "=", value );
             }
-            else
+            else if( !value.equals( mValues[line] ) )
             {
-                fw.write( strLine );
+                mValues[line] = value;
+                mDirty = true;
             }
         }
-    }
-    
-    /**
-     * The ConfigParameter class associates a parameter with its value.
-     */
-    private static class ConfigParameter
-    {
-        @SuppressWarnings( "unused" )
-        public String parameter;
-        public String value;
-        
+
         /**
-         * Constructor: Associate the parameter and value
-         * 
-         * @param parameter The name of the parameter.
-         * @param value The value of the parameter.
+         * Writes the entire section.
+         *
+         * @param builder Buffer to write to.
          */
-        public ConfigParameter( String parameter, String value )
+        void write( StringBuilder builder )
         {
-            this.parameter = parameter;
-            this.value = value;
+            for( int i = 0; i < mLineCount; i++ )
+            {
+                builder.append( mText[i] );
+                if( mKeys[i] != null )
+                    builder.append( mValues[i] ).append( '\n' );
+            }
         }
     }
 }
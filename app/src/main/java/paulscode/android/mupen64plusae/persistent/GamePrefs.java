@@ -370,6 +370,9 @@ public class GamePrefs
     /** The sensor's Y axis sensitivity (%), may be negative to invert axes */
     public final int sensorSensitivityY;
 
+    /** The filter smoothing the sensor values, see SensorFilter. None unless the user picks one. */
+    public final String sensorFilter;
+
     /** True if Player 1's controller is enabled. */
     public final boolean isControllerEnabled1;
 
@@ -718,6 +721,7 @@ public class GamePrefs
                 sensitivity = -sensitivity;
             }
             sensorSensitivityY = sensitivity;
+            sensorFilter = touchscreenProfile.get("sensorFilter", "none");
         }
         else
         {
@@ -734,6 +738,7 @@ public class GamePrefs
             sensorAxisY = null;
             sensorAngleY = 0;
             sensorSensitivityY = 100;
+            sensorFilter = "none";
         }
 
         isTouchscreenHidden = !isTouchscreenEnabled || globalPrefs.touchscreenTransparency == 0;
@@ -103,6 +103,15 @@ public class GlobalPrefs
     /** The subdirectory containing crash logs. */
     public final String crashLogDir;
 
+    /** The subdirectory containing input latency reports. */
+    public final String inputLatencyDir;
+
+    /** The subdirectory containing recorded input traces. */
+    public final String inputTraceDir;
+
+    /** The log of the time spent in each phase of the game launches. */
+    public final String launchProfileLog;
+
     /** The subdirectory returned from the core's ConfigGetUserDataPath() method. */
     public final String coreUserDataDir;
 
@@ -268,6 +277,15 @@ public class GlobalPrefs
     /** Maximum number of auto saves */
     public final int maxAutoSaves;
 
+    /** Memory the rewind buffer may use, in megabytes, or 0 if rewind is disabled. */
+    public final int rewindMemory;
+
+    /** Number of frames between the save states of the rewind buffer. */
+    public final int rewindInterval;
+
+    /** True if a screenshot is taken with each save state, for its thumbnail. */
+    public final boolean isSaveStateThumbnailEnabled;
+
     /** True if specific game data should be saved in a flat file structure */
     public final boolean useFlatGameDataPath;
 
@@ -300,6 +318,18 @@ public class GlobalPrefs
 
     public final boolean useHighPriorityThread;
 
+    /** True if the native libraries are loaded while the library is shown, before a game is picked. */
+    public final boolean isLibraryPreloadEnabled;
+
+    /** True if the delay between input events and their delivery to the core is measured. */
+    public final boolean isInputLatencyMonitorEnabled;
+
+    /** True if the controller input of each game is recorded to a trace file. */
+    public final boolean isInputTraceRecorded;
+
+    /** True if the controller input of each game is replayed from its trace file. */
+    public final boolean isInputTraceReplayed;
+
     // Shared preferences keys and key templates
     private static final String KEY_EMULATION_PROFILE_DEFAULT = "emulationProfileDefault";
     private static final String KEY_TOUCHSCREEN_PROFILE_DEFAULT = "touchscreenProfileDefault";
@@ -410,6 +440,9 @@ public class GlobalPrefs
         unzippedRomsDir = galleryCacheDir + "/UnzippedRoms";
         profilesDir = appData.userDataDir + "/Profiles";
         crashLogDir = appData.userDataDir + "/CrashLogs";
+        inputLatencyDir = appData.userDataDir + "/InputLatency";
+        inputTraceDir = appData.userDataDir + "/InputTraces";
+        launchProfileLog = appData.userDataDir + "/LaunchProfile.txt";
         coreUserDataDir = appData.userDataDir + "/CoreConfig/UserData";
         coreUserCacheDir = appData.userDataDir + "/CoreConfig/UserCache";
         hiResTextureDir = coreUserDataDir + "/mupen64plus/hires_texture/"; // MUST match what rice assumes natively
@@ -544,6 +577,9 @@ public class GlobalPrefs
         final String inGameMenuMode = mPreferences.getString( "inGameMenu", "back-key" );
 
         maxAutoSaves = mPreferences.getInt( "gameAutoSaves", 5 );
+        rewindMemory = mPreferences.getInt( "rewindMemory", 0 );
+        rewindInterval = mPreferences.getInt( "rewindInterval", 60 );
+        isSaveStateThumbnailEnabled = mPreferences.getBoolean( "saveStateThumbnails", false );
 
         useFlatGameDataPath = mPreferences.getBoolean( "useFlatGameDataPath", false );
 
@@ -604,6 +640,11 @@ public class GlobalPrefs
         showBuiltInControllerProfiles = mPreferences.getBoolean(ManageControllerProfilesActivity.SHOW_BUILT_IN_PREF_KEY, true);
 
         useHighPriorityThread = mPreferences.getBoolean( "useHighPriorityThread", false );
+        isLibraryPreloadEnabled = mPreferences.getBoolean( "preloadLibraries", false );
+        isInputLatencyMonitorEnabled = mPreferences.getBoolean( "inputLatencyMonitor", false );
+        final String inputTrace = mPreferences.getString( "inputTrace", "off" );
+        isInputTraceRecorded = inputTrace.equals( "record" );
+        isInputTraceReplayed = inputTrace.equals( "replay" );
 
         supportedGlesVersion = AppData.getOpenGlEsVersion(context);
     }
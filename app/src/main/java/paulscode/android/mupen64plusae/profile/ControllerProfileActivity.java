@@ -97,6 +97,7 @@ public class ControllerProfileActivity extends ControllerProfileActivityBase imp
         setupButton( R.id.buttonSimulateMenu,  InputMap.FUNC_SIMULATE_MENU );
         setupButton( R.id.buttonScreenshot,    InputMap.FUNC_SCREENSHOT );
         setupButton( R.id.buttonSensorToggle,  InputMap.FUNC_SENSOR_TOGGLE );
+        setupButton( R.id.buttonRewind,        InputMap.FUNC_REWIND );
         // @formatter:on
     }
     
@@ -33,6 +33,8 @@ class SensorConfigurationDialog implements OnClickListener {
 
     private final String[] axes;
     private final CheckBox activateOnStart;
+    private final String[] filters;
+    private final Spinner filterSpinner;
     private final Spinner xAxisSpinner, yAxisSpinner;
     private final EditText xAxisEditText, yAxisEditText;
     private final EditText xAngleEditText, yAngleEditText;
@@ -45,6 +47,8 @@ class SensorConfigurationDialog implements OnClickListener {
         view = View.inflate(context, R.layout.sensor_configuration, null);
         axes = context.getResources().getStringArray(R.array.sensorConfig_axis_values);
         activateOnStart = (CheckBox) view.findViewById(R.id.sensorConfig_activateOnStart);
+        filters = context.getResources().getStringArray(R.array.sensorConfig_filter_values);
+        filterSpinner = (Spinner) view.findViewById(R.id.sensorConfig_filter);
 
         xAxisSpinner = (Spinner) view.findViewById(R.id.sensorConfig_sensorX);
         xAxisEditText = (EditText) view.findViewById(R.id.sensorConfig_customX);
@@ -59,6 +63,12 @@ class SensorConfigurationDialog implements OnClickListener {
 
         // Updating values from profile
         activateOnStart.setChecked(Boolean.valueOf(mProfile.get("sensorActivateOnStart")));
+        String filterValue = mProfile.get("sensorFilter", "none");
+        for (int i = 0; i < filters.length; i++) {
+            if (filters[i].equals(filterValue)) {
+                filterSpinner.setSelection(i);
+            }
+        }
         String xAxisValue = mProfile.get("sensorAxisX", "");
         updateSpinner(xAxisSpinner, xAxisValue);
         xAxisEditText.setText(xAxisValue);
@@ -87,6 +97,7 @@ class SensorConfigurationDialog implements OnClickListener {
     public void onClick(DialogInterface dialog, int which) {
         if (which == DialogInterface.BUTTON_POSITIVE) {
             mProfile.put("sensorActivateOnStart", String.valueOf(activateOnStart.isChecked()));
+            mProfile.put("sensorFilter", filters[filterSpinner.getSelectedItemPosition()]);
             mProfile.put("sensorAxisX", fixSensorAxisString(xAxisEditText.getText().toString()));
             mProfile.put("sensorAxisY", fixSensorAxisString(yAxisEditText.getText().toString()));
             mProfile.put("sensorAngleX", String.valueOf(SafeMethods.toFloat(xAngleEditText.getText().toString(), 0)));
@@ -46,11 +46,24 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -62,6 +75,7 @@ import paulscode.android.mupen64plusae.persistent.ConfigFile;
 import paulscode.android.mupen64plusae.util.FileUtil;
 import paulscode.android.mupen64plusae.util.RomDatabase;
 import paulscode.android.mupen64plusae.util.RomDatabase.RomDetail;
+import paulscode.android.mupen64plusae.util.RomDigest;
 import paulscode.android.mupen64plusae.util.RomHeader;
 
 public class CacheRomInfoService extends Service
@@ -75,7 +89,7 @@ public class CacheRomInfoService extends Service
     private boolean mDownloadArt;
     private boolean mClearGallery;
     private boolean mSearchSubdirectories;
-    private boolean mbStopped;
+    private volatile boolean mbStopped;
     
     private int mStartId;
     private Looper mServiceLooper;
@@ -85,6 +99,18 @@ public class CacheRomInfoService extends Service
     private CacheRomInfoListener mListener = null;
 
     final static int ONGOING_NOTIFICATION_ID = 1;
+
+    // Number of files the directory walker may queue ahead of the hashing workers
+    private static final int FILE_QUEUE_SIZE = 64;
+    // Maximum number of results committed to the config file at once
+    private static final int COMMIT_BATCH_SIZE = 32;
+    // How often blocked stages check whether the scan was canceled
+    private static final long QUEUE_POLL_MS = 100;
+    private static final long EXECUTOR_SHUTDOWN_S = 10;
+    // Marks the end of the directory walk for the hashing workers
+    private static final File END_OF_FILES = new File( "" );
+    // Number of hashing workers, hashing is bound by the CPU as much as by storage
+    private static final int SCAN_THREADS = Math.max( 2, Runtime.getRuntime().availableProcessors() );
     
     public interface CacheRomInfoListener
     {
@@ -139,7 +165,6 @@ public class CacheRomInfoService extends Service
             // http://android2know.blogspot.com/2013/01/create-nomedia-file.html
             touchFile( mArtDir + "/.nomedia" );
             
-            final List<File> files = getAllFiles( searchPathFile, 0 );
             final RomDatabase database = RomDatabase.getInstance();
             if(!database.hasDatabaseFile())
             {
@@ -149,69 +174,8 @@ public class CacheRomInfoService extends Service
             final ConfigFile config = new ConfigFile( mConfigPath );
             if (mClearGallery)
                 config.clear();
-            
-            mListener.GetProgressDialog().setMaxProgress( files.size() );
-            for( final File file : files )
-            {
-                mListener.GetProgressDialog().setSubtext( "" );
-                mListener.GetProgressDialog().setText( file.getName() );
-                mListener.GetProgressDialog().setMessage( R.string.cacheRomInfo_searching );
-                
-                if( mbStopped ) break;
-                RomHeader header = new RomHeader( file );
-                if( header.isValid )
-                {
-                    cacheFile( file, database, config, null );
-                }
-                else if( header.isZip && mSearchZips && !ConfigHasZip(config, file.getPath()))
-                {
-                    Log.i( "CacheRomInfoService", "Found zip file " + file.getName() );
-                    try
-                    {
-                        ZipFile zipFile = new ZipFile( file );
-                        Enumeration<? extends ZipEntry> entries = zipFile.entries();
-                        while( entries.hasMoreElements() )
-                        {
-                            try
-                            {
-                                ZipEntry zipEntry = entries.nextElement();
-                                mListener.GetProgressDialog().setSubtext( new File(zipEntry.getName()).getName() );
-                                mListener.GetProgressDialog().setMessage( R.string.cacheRomInfo_searchingZip );
-
-                                if( mbStopped ) break;
-
-                                InputStream zipStream = zipFile.getInputStream( zipEntry );
-                                mListener.GetProgressDialog().setMessage( R.string.cacheRomInfo_extractingZip );
-                                File extractedFile = FileUtil.extractRomFile( new File( mUnzipDir ), zipEntry, zipStream );
-                                
-                                if( mbStopped ) break;
-                                if( extractedFile != null)
-                                {
-                                    RomHeader extractedHeader = new RomHeader( extractedFile );
-                                    if(extractedHeader.isValid)
-                                    {
-                                        cacheFile( extractedFile, database, config, file );
-                                    }
-                 
-                                    extractedFile.delete();
-                                }
-
-                                zipStream.close();
-                            }
-                            catch( IOException|IllegalArgumentException e  )
-                            {
-                                Log.w( "CacheRomInfoService", e );
-                            }
-                        }
-                        zipFile.close();
-                    }
-                    catch( IOException|ArrayIndexOutOfBoundsException e )
-                    {
-                        Log.w( "CacheRomInfoService", e );
-                    }
-                }
-                mListener.GetProgressDialog().incrementProgress( 1 );
-            }
+
+            scanFiles( searchPathFile, database, config );
 
             CleanupMissingFiles(config);
             downloadCoverArt(database, config);
@@ -229,6 +193,60 @@ public class CacheRomInfoService extends Service
         }
     }
 
+    /**
+     * The result of scanning a single ROM, produced by a hashing worker and consumed by the
+     * config writer.
+     */
+    private static class ScanResult
+    {
+        public final String md5;
+        public final File romFile;
+        public final File zipFile;
+        public final RomHeader header;
+        public final RomDetail detail;
+        public final Fingerprint fingerprint;
+
+        public ScanResult( String md5, File romFile, File zipFile, RomHeader header, RomDetail detail,
+            Fingerprint fingerprint )
+        {
+            this.md5 = md5;
+            this.romFile = romFile;
+            this.zipFile = zipFile;
+            this.header = header;
+            this.detail = detail;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    /**
+     * The size and modification time of a scanned file (the zip file for zipped ROMs), used to
+     * skip files that have not changed since the previous scan.
+     */
+    private static class Fingerprint
+    {
+        public final long length;
+        public final long lastModified;
+
+        // ROMs previously found in this file
+        public final List<String> md5s = new ArrayList<String>( 1 );
+
+        public Fingerprint( long length, long lastModified )
+        {
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        public Fingerprint( File file )
+        {
+            this( file.length(), file.lastModified() );
+        }
+
+        public boolean matches( File file )
+        {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+    }
+
     @Override
     public void onCreate() {
       // Start up the thread running the service.  Note that we create a
@@ -277,68 +295,321 @@ public class CacheRomInfoService extends Service
     }
 
     /**
-     * Get all files in a directory and subdirectories
+     * Scans all files under the search path using a pipeline of three stages: a directory walker
+     * feeding a bounded queue, a pool of workers that read headers and compute MD5s, and this
+     * thread, which commits the results to the config file in batches. Every stage stops as soon
+     * as the scan is canceled.
+     * 
      * @param searchPath Path to start search on
-     * @param count How many levels deep we currently are
-     * @return List of files
+     * @param database ROM database used to look up the ROM details
+     * @param config Config file the results are written to
      */
-    private List<File> getAllFiles( File searchPath, int count )
+    private void scanFiles( final File searchPath, final RomDatabase database, final ConfigFile config )
     {
-        List<File> result = new ArrayList<File>();
-        if( searchPath.isDirectory())
+        final BlockingQueue<File> pendingFiles = new ArrayBlockingQueue<File>( FILE_QUEUE_SIZE );
+        final BlockingQueue<ScanResult> results = new LinkedBlockingQueue<ScanResult>();
+        final AtomicInteger filesFound = new AtomicInteger( 0 );
+        final AtomicInteger filesScanned = new AtomicInteger( 0 );
+        final AtomicInteger activeWorkers = new AtomicInteger( SCAN_THREADS );
+        final AtomicBoolean walkFinished = new AtomicBoolean( false );
+        final Map<String, Fingerprint> fingerprints = getFingerprints( config );
+        final Queue<String> changedPaths = new ConcurrentLinkedQueue<String>();
+
+        final ExecutorService executor = Executors.newFixedThreadPool( SCAN_THREADS + 1 );
+
+        // Stage 1: walk the directory tree
+        executor.execute( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Process.setThreadPriority( Process.THREAD_PRIORITY_BACKGROUND );
+                walkFiles( searchPath, 0, pendingFiles, filesFound );
+                walkFinished.set( true );
+
+                // Wake up every worker so that they can finish
+                for( int i = 0; i < SCAN_THREADS; i++ )
+                    putUntilStopped( pendingFiles, END_OF_FILES );
+            }
+        } );
+
+        // Stage 2: read headers and compute the MD5 of each file
+        for( int i = 0; i < SCAN_THREADS; i++ )
+        {
+            executor.execute( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    Process.setThreadPriority( Process.THREAD_PRIORITY_BACKGROUND );
+                    try
+                    {
+                        File file;
+                        while( !mbStopped && ( file = pendingFiles.poll( QUEUE_POLL_MS,
+                                TimeUnit.MILLISECONDS ) ) != END_OF_FILES )
+                        {
+                            if( file != null )
+                            {
+                                scanFile( file, database, fingerprints, changedPaths, results );
+                                filesScanned.incrementAndGet();
+                            }
+                        }
+                    }
+                    catch( InterruptedException e )
+                    {
+                        Log.w( "CacheRomInfoService", e );
+                    }
+                    finally
+                    {
+                        activeWorkers.decrementAndGet();
+                    }
+                }
+            } );
+        }
+        executor.shutdown();
+
+        // Stage 3: commit the results to the config file
+        final List<ScanResult> batch = new ArrayList<ScanResult>( COMMIT_BATCH_SIZE );
+        int filesCommitted = 0;
+        int lastScanned = 0;
+        boolean maxProgressSet = false;
+        mListener.GetProgressDialog().setMaxProgress( 0 );
+        mListener.GetProgressDialog().setMessage( R.string.cacheRomInfo_searching );
+
+        while( !mbStopped && ( activeWorkers.get() > 0 || !results.isEmpty() ) )
+        {
+            try
+            {
+                ScanResult result = results.poll( QUEUE_POLL_MS, TimeUnit.MILLISECONDS );
+                if( result != null )
+                {
+                    batch.add( result );
+                    results.drainTo( batch, COMMIT_BATCH_SIZE - batch.size() );
+                }
+            }
+            catch( InterruptedException e )
+            {
+                Log.w( "CacheRomInfoService", e );
+                break;
+            }
+
+            // Forget the ROMs previously found in files that have changed
+            String changedPath;
+            while( ( changedPath = changedPaths.poll() ) != null )
+            {
+                for( String md5 : fingerprints.get( changedPath ).md5s )
+                    config.remove( md5 );
+            }
+
+            for( ScanResult result : batch )
+                commitResult( result, config );
+            filesCommitted += batch.size();
+
+            // Report the progress of every stage
+            final ProgressDialog progress = mListener.GetProgressDialog();
+            if( !batch.isEmpty() )
+                progress.setText( batch.get( batch.size() - 1 ).romFile.getName() );
+            progress.setSubtext( getString( R.string.cacheRomInfo_pipelineStatus, filesFound.get(),
+                    filesScanned.get(), filesCommitted ) );
+
+            if( walkFinished.get() )
+            {
+                // The total is only known once the walk is complete
+                final int scanned = filesScanned.get();
+                if( !maxProgressSet )
+                {
+                    progress.setMaxProgress( filesFound.get() );
+                    progress.incrementProgress( scanned );
+                    progress.setMessage( R.string.cacheRomInfo_computingMD5 );
+                    maxProgressSet = true;
+                    lastScanned = scanned;
+                }
+                else if( scanned > lastScanned )
+                {
+                    progress.incrementProgress( scanned - lastScanned );
+                    lastScanned = scanned;
+                }
+            }
+
+            batch.clear();
+        }
+
+        try
+        {
+            executor.awaitTermination( EXECUTOR_SHUTDOWN_S, TimeUnit.SECONDS );
+        }
+        catch( InterruptedException e )
+        {
+            Log.w( "CacheRomInfoService", e );
+        }
+
+        mListener.GetProgressDialog().setMessage( R.string.cacheRomInfo_refreshingUI );
+    }
+
+    /**
+     * Walk a directory and its subdirectories, queueing every file found
+     * @param searchPath Path to start search on
+     * @param depth How many levels deep we currently are
+     * @param queue Queue receiving the files found
+     * @param filesFound Running count of the files found
+     */
+    private void walkFiles( File searchPath, int depth, BlockingQueue<File> queue, AtomicInteger filesFound )
+    {
+        if( searchPath.isDirectory() )
         {
             File[] allFiles = searchPath.listFiles();
-            if(allFiles != null)
+            if( allFiles != null )
             {
                 for( File file : allFiles )
                 {
                     if( mbStopped ) break;
 
                     //Search subdirectories if option is enabled and we less than 10 levels deep
-                    if(mSearchSubdirectories && count < 10)
+                    if( mSearchSubdirectories && depth < 10 )
                     {
-                        result.addAll( getAllFiles( file, ++count ) );
+                        walkFiles( file, depth + 1, queue, filesFound );
                     }
-                    else if(!file.isDirectory())
+                    else if( !file.isDirectory() )
                     {
-                        result.add(file);
+                        if( putUntilStopped( queue, file ) )
+                            filesFound.incrementAndGet();
                     }
-
                 }
             }
         }
-        else
+        else if( putUntilStopped( queue, searchPath ) )
+        {
+            filesFound.incrementAndGet();
+        }
+    }
+
+    /**
+     * Put an item in a bounded queue, waiting for space unless the scan is canceled
+     * @return true if the item was queued
+     */
+    private <T> boolean putUntilStopped( BlockingQueue<T> queue, T item )
+    {
+        try
+        {
+            while( !mbStopped )
+            {
+                if( queue.offer( item, QUEUE_POLL_MS, TimeUnit.MILLISECONDS ) )
+                    return true;
+            }
+        }
+        catch( InterruptedException e )
+        {
+            Log.w( "CacheRomInfoService", e );
+        }
+        return false;
+    }
+
+    /**
+     * Scan a single file, which may be a ROM or a zip file containing ROMs
+     * @param file File to scan
+     * @param database ROM database used to look up the ROM details
+     * @param fingerprints Fingerprints of the files found by the previous scan
+     * @param changedPaths Queue receiving the previously scanned files that have changed
+     * @param results Queue receiving the scanned ROMs
+     */
+    private void scanFile( File file, RomDatabase database, Map<String, Fingerprint> fingerprints,
+        Queue<String> changedPaths, BlockingQueue<ScanResult> results )
+    {
+        // Skip the file entirely if it has not changed since the previous scan
+        final String path = file.getAbsolutePath();
+        final Fingerprint previous = fingerprints.get( path );
+        if( previous != null )
+        {
+            if( previous.matches( file ) )
+                return;
+            changedPaths.add( path );
+        }
+
+        // Take the fingerprint before reading, so that a concurrent change forces a rescan
+        final Fingerprint fingerprint = new Fingerprint( file );
+        RomHeader header = new RomHeader( file );
+        if( header.isValid )
+        {
+            ScanResult result = cacheFile( file, database, fingerprint );
+            if( result != null )
+                results.add( result );
+        }
+        else if( header.isZip && mSearchZips )
         {
-            result.add( searchPath );
+            Log.i( "CacheRomInfoService", "Found zip file " + file.getName() );
+            try
+            {
+                ZipFile zipFile = new ZipFile( file );
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while( entries.hasMoreElements() )
+                {
+                    try
+                    {
+                        ZipEntry zipEntry = entries.nextElement();
+
+                        if( mbStopped ) break;
+
+                        // Hash the entry while it is decompressed, it is only extracted when launched
+                        InputStream zipStream = zipFile.getInputStream( zipEntry );
+                        RomDigest digest = RomDigest.compute( Channels.newChannel( zipStream ) );
+
+                        if( mbStopped ) break;
+                        if( digest.header.isValid )
+                        {
+                            // Record the location the ROM is extracted to when launched
+                            File romFile = new File( mUnzipDir, new File( zipEntry.getName() ).getName() );
+                            RomDetail detail = database.lookupByMd5WithFallback( digest.md5, romFile,
+                                digest.header.crc, digest.header.countryCode );
+                            results.add( new ScanResult( digest.md5, romFile, file, digest.header, detail,
+                                fingerprint ) );
+                        }
+
+                        zipStream.close();
+                    }
+                    catch( IOException|IllegalArgumentException e  )
+                    {
+                        Log.w( "CacheRomInfoService", e );
+                    }
+                }
+                zipFile.close();
+            }
+            catch( IOException|ArrayIndexOutOfBoundsException e )
+            {
+                Log.w( "CacheRomInfoService", e );
+            }
         }
-        return result;
     }
     
-    private void cacheFile( File file, RomDatabase database, ConfigFile config, File zipFileLocation )
+    private ScanResult cacheFile( File file, RomDatabase database, Fingerprint fingerprint )
     {
-        if( mbStopped ) return;
-        mListener.GetProgressDialog().setMessage( R.string.cacheRomInfo_computingMD5 );
-        String md5 = ComputeMd5Task.computeMd5( file );
-        RomHeader header = new RomHeader(file);
+        if( mbStopped ) return null;
+        RomDigest digest = RomDigest.compute( file );
         
-        if( mbStopped ) return;
-        mListener.GetProgressDialog().setMessage( R.string.cacheRomInfo_searchingDB );
-        RomDetail detail = database.lookupByMd5WithFallback( md5, file, header.crc );
+        if( mbStopped || digest == null ) return null;
+        RomDetail detail = database.lookupByMd5WithFallback( digest.md5, file, digest.header.crc,
+            digest.header.countryCode );
+        return new ScanResult( digest.md5, file, null, digest.header, detail, fingerprint );
+    }
+
+    private void commitResult( ScanResult result, ConfigFile config )
+    {
+        final String md5 = result.md5;
+        final RomDetail detail = result.detail;
         String artPath = mArtDir + "/" + detail.artName;
         config.put( md5, "goodName", detail.goodName );
         if (detail.baseName != null && detail.baseName.length() != 0)
             config.put( md5, "baseName", detail.baseName );
-        config.put( md5, "romPath", file.getAbsolutePath() );
-        config.put( md5, "zipPath", zipFileLocation == null ? "":zipFileLocation.getAbsolutePath() );
+        config.put( md5, "romPath", result.romFile.getAbsolutePath() );
+        config.put( md5, "zipPath", result.zipFile == null ? "":result.zipFile.getAbsolutePath() );
         config.put( md5, "artPath", artPath );
-        config.put( md5, "crc", header.crc );
-        config.put( md5, "headerName", header.name );
+        config.put( md5, "crc", result.header.crc );
+        config.put( md5, "headerName", result.header.name );
 
-        String countryCodeString = Byte.toString(header.countryCode.getValue());
+        String countryCodeString = Byte.toString(result.header.countryCode.getValue());
         config.put( md5, "countryCode",  countryCodeString);
         config.put( md5, "extracted", "false" );
-
-        mListener.GetProgressDialog().setMessage( R.string.cacheRomInfo_refreshingUI );
+        config.put( md5, "fileLength", Long.toString( result.fingerprint.length ) );
+        config.put( md5, "fileLastModified", Long.toString( result.fingerprint.lastModified ) );
     }
     
     private static Throwable touchFile( String destPath )
@@ -477,23 +748,41 @@ public class CacheRomInfoService extends Service
     }
 
     /**
-     * Return true if the config file already contains the given zip file, this is because
-     * exctracting zip files takes a long time
-     * @param zipFile Zip file to search config file for
-     * @return true if zip file is present
+     * Return the fingerprints recorded by the previous scan, keyed by the path of the scanned file
+     * (the zip file for zipped ROMs). Entries from older versions have no fingerprint and are
+     * always rescanned.
+     * @param theConfigFile Config file to search
+     * @return fingerprints of the files previously scanned
      */
-    private boolean ConfigHasZip(ConfigFile theConfigFile, String zipFile)
+    private Map<String, Fingerprint> getFingerprints(ConfigFile theConfigFile)
     {
-        Set<String> keys = theConfigFile.keySet();
-        boolean found = false;
-
-        Iterator iter = keys.iterator();
-        while (iter.hasNext() && !found) {
-            String key = (String) iter.next();
+        Map<String, Fingerprint> fingerprints = new HashMap<String, Fingerprint>();
+        for (String key : theConfigFile.keySet())
+        {
             String foundZipPath = theConfigFile.get(key, "zipPath");
-            found = foundZipPath != null && foundZipPath.equals(zipFile);
+            String path = TextUtils.isEmpty(foundZipPath) ? theConfigFile.get(key, "romPath") : foundZipPath;
+            String length = theConfigFile.get(key, "fileLength");
+            String lastModified = theConfigFile.get(key, "fileLastModified");
+
+            if (TextUtils.isEmpty(path) || TextUtils.isEmpty(length) || TextUtils.isEmpty(lastModified))
+                continue;
+
+            Fingerprint fingerprint = fingerprints.get(path);
+            if (fingerprint == null)
+            {
+                try
+                {
+                    fingerprint = new Fingerprint(Long.parseLong(length), Long.parseLong(lastModified));
+                }
+                catch (NumberFormatException e)
+                {
+                    continue;
+                }
+                fingerprints.put(path, fingerprint);
+            }
+            fingerprint.md5s.add(key);
         }
-        return found;
+        return fingerprints;
     }
 
     /**
@@ -569,20 +858,18 @@ public class CacheRomInfoService extends Service
                 String romFile = theConfigFile.get(key, "romPath");
                 String crc = theConfigFile.get(key, "crc");
 
-                if(!TextUtils.isEmpty(artPath) && !TextUtils.isEmpty(romFile) && !TextUtils.isEmpty(crc))
+                //Only download art if it's not already present
+                if(!TextUtils.isEmpty(artPath) && !TextUtils.isEmpty(romFile) && !TextUtils.isEmpty(crc)
+                        && !(new File(artPath)).exists())
                 {
                     RomDetail detail = database.lookupByMd5WithFallback( key, new File(romFile), crc );
 
                     mListener.GetProgressDialog().setText( new File(romFile).getName() );
 
-                    //Only download art if it's not already present
-                    if(!(new File(artPath)).exists())
-                    {
-                        Log.i( "CacheRomInfoService", "Start art download: " +  artPath);
-                        downloadFile( detail.artUrl, artPath );
+                    Log.i( "CacheRomInfoService", "Start art download: " +  artPath);
+                    downloadFile( detail.artUrl, artPath );
 
-                        Log.i( "CacheRomInfoService", "End art download: " +  artPath);
-                    }
+                    Log.i( "CacheRomInfoService", "End art download: " +  artPath);
                 }
 
                 mListener.GetProgressDialog().incrementProgress(1);
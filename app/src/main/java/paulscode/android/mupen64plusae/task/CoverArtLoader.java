@@ -0,0 +1,492 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2026 Mupen64PlusAE contributors
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.task;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import org.mupen64plusae.v3.alpha.R;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import paulscode.android.mupen64plusae.util.FileUtil;
+import paulscode.android.mupen64plusae.util.RomDigest;
+
+/**
+ * Loads cover art into image views without blocking the UI thread.
+ * <p>
+ * Cover art is decoded at the size it is displayed at by a small pool of background threads.
+ * Decoded bitmaps are kept in a memory cache sized to a fraction of the heap, and the downscaled
+ * images are also written to a disk cache so that later loads skip decoding the full size art.
+ * Requests for the same image are shared, and a request is dropped as soon as no view waits for it
+ * anymore. Bitmaps evicted from the memory cache are reused for decoding when possible.
+ * <p>
+ * All public methods must be called from the UI thread.
+ */
+public final class CoverArtLoader
+{
+    /** Portion of the maximum heap used by the memory cache. */
+    private static final int MEMORY_CACHE_FRACTION = 8;
+
+    /** Maximum size of the thumbnail disk cache, in bytes. */
+    private static final long MAX_DISK_CACHE_SIZE = 32 * 1024 * 1024;
+
+    /** Name of the thumbnail disk cache folder, inside the application cache folder. */
+    private static final String DISK_CACHE_DIR = "coverArt";
+
+    /** Quality used when compressing opaque thumbnails. */
+    private static final int JPEG_QUALITY = 90;
+
+    private static CoverArtLoader sInstance = null;
+
+    /** Decoded bitmaps, keyed by art path and size. Sized in kilobytes. */
+    private final LruCache<String, Bitmap> mMemoryCache;
+
+    /** Bitmaps evicted from the memory cache that are no longer displayed, for inBitmap reuse. */
+    private final Set<SoftReference<Bitmap>> mReusableBitmaps = new HashSet<SoftReference<Bitmap>>();
+
+    /** Decodes in progress or queued, keyed by cache key. */
+    private final HashMap<String, Future<?>> mPending = new HashMap<String, Future<?>>();
+
+    /** Views waiting for a decode, with the cache key they are waiting for. */
+    private final WeakHashMap<ImageView, String> mTargets = new WeakHashMap<ImageView, String>();
+
+    /** Views currently showing a bitmap from the memory cache. */
+    private final WeakHashMap<ImageView, Bitmap> mDisplayed = new WeakHashMap<ImageView, Bitmap>();
+
+    private final ExecutorService mExecutor;
+    private final Handler mHandler;
+    private final File mDiskCacheDir;
+
+    /**
+     * Returns the cover art loader of the application.
+     */
+    public static CoverArtLoader getInstance( Context context )
+    {
+        if( sInstance == null )
+            sInstance = new CoverArtLoader( context.getApplicationContext() );
+        return sInstance;
+    }
+
+    private CoverArtLoader( Context context )
+    {
+        final int cacheSize = (int) ( Runtime.getRuntime().maxMemory() / 1024 / MEMORY_CACHE_FRACTION );
+        mMemoryCache = new LruCache<String, Bitmap>( cacheSize )
+        {
+            @Override
+            protected int sizeOf( String key, Bitmap bitmap )
+            {
+                return bitmap.getAllocationByteCount() / 1024;
+            }
+
+            @Override
+            protected void entryRemoved( boolean evicted, String key, Bitmap oldValue, Bitmap newValue )
+            {
+                // A bitmap still on screen must not be overwritten by a later decode
+                if( evicted && oldValue.isMutable() && !mDisplayed.containsValue( oldValue ) )
+                {
+                    synchronized( mReusableBitmaps )
+                    {
+                        mReusableBitmaps.add( new SoftReference<Bitmap>( oldValue ) );
+                    }
+                }
+            }
+        };
+
+        final int threads = Math.max( 2, Math.min( 4, Runtime.getRuntime().availableProcessors() ) );
+        mExecutor = new ThreadPoolExecutor( threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread( final Runnable runnable )
+                    {
+                        return new Thread( new Runnable()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                Process.setThreadPriority( Process.THREAD_PRIORITY_BACKGROUND );
+                                runnable.run();
+                            }
+                        }, "CoverArtLoader" );
+                    }
+                } );
+        mHandler = new Handler( Looper.getMainLooper() );
+        mDiskCacheDir = new File( context.getCacheDir(), DISK_CACHE_DIR );
+
+        mExecutor.execute( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                trimDiskCache();
+            }
+        } );
+    }
+
+    /**
+     * Displays cover art in a view. The default cover art is shown until the image is decoded, or
+     * if it does not exist. Any previous request for the view is cancelled.
+     *
+     * @param artPath The path of the cover art, may be null.
+     * @param width The width the image is displayed at, in pixels.
+     * @param height The height the image is displayed at, in pixels.
+     * @param view The view to display the image in.
+     */
+    public void load( String artPath, int width, int height, ImageView view )
+    {
+        cancel( view );
+
+        if( TextUtils.isEmpty( artPath ) || width <= 0 || height <= 0 )
+        {
+            setDefault( view );
+            return;
+        }
+
+        final String key = artPath + "@" + width + "x" + height;
+        final Bitmap bitmap = mMemoryCache.get( key );
+        if( bitmap != null )
+        {
+            setBitmap( view, bitmap );
+            return;
+        }
+
+        setDefault( view );
+        mTargets.put( view, key );
+
+        if( !mPending.containsKey( key ) )
+            mPending.put( key, mExecutor.submit( new DecodeTask( key, artPath, width, height ) ) );
+    }
+
+    /**
+     * Stops waiting for the image requested for a view. The decode itself is dropped if no other
+     * view is waiting for it.
+     *
+     * @param view The view, typically one being recycled.
+     */
+    public void cancel( ImageView view )
+    {
+        final String key = mTargets.remove( view );
+        if( key != null && !mTargets.containsValue( key ) )
+        {
+            final Future<?> future = mPending.remove( key );
+            if( future != null )
+                future.cancel( false );
+        }
+    }
+
+    /**
+     * Drops all decoded bitmaps from memory, e.g. when the system runs low on memory.
+     */
+    public void clearMemory()
+    {
+        mMemoryCache.evictAll();
+        synchronized( mReusableBitmaps )
+        {
+            mReusableBitmaps.clear();
+        }
+    }
+
+    private void setDefault( ImageView view )
+    {
+        mDisplayed.remove( view );
+        view.setImageResource( R.drawable.default_coverart );
+    }
+
+    private void setBitmap( ImageView view, Bitmap bitmap )
+    {
+        mDisplayed.put( view, bitmap );
+        view.setImageBitmap( bitmap );
+    }
+
+    /**
+     * Called on the UI thread once a decode completes.
+     */
+    private void onDecoded( String key, Bitmap bitmap )
+    {
+        mPending.remove( key );
+
+        if( bitmap != null )
+            mMemoryCache.put( key, bitmap );
+
+        final Iterator<Map.Entry<ImageView, String>> iterator = mTargets.entrySet().iterator();
+        while( iterator.hasNext() )
+        {
+            final Map.Entry<ImageView, String> entry = iterator.next();
+            if( key.equals( entry.getValue() ) )
+            {
+                iterator.remove();
+                if( bitmap != null )
+                    setBitmap( entry.getKey(), bitmap );
+            }
+        }
+    }
+
+    private class DecodeTask implements Runnable
+    {
+        private final String mKey;
+        private final String mArtPath;
+        private final int mWidth;
+        private final int mHeight;
+
+        public DecodeTask( String key, String artPath, int width, int height )
+        {
+            mKey = key;
+            mArtPath = artPath;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public void run()
+        {
+            Bitmap bitmap = null;
+            try
+            {
+                bitmap = decode( mKey, new File( mArtPath ), mWidth, mHeight );
+            }
+            catch( OutOfMemoryError e )
+            {
+                Log.w( "CoverArtLoader", "Out of memory decoding " + mArtPath );
+            }
+
+            final Bitmap result = bitmap;
+            mHandler.post( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    onDecoded( mKey, result );
+                }
+            } );
+        }
+    }
+
+    /**
+     * Decodes an image at the given size, from the disk cache if possible.
+     */
+    private Bitmap decode( String key, File artFile, int width, int height )
+    {
+        if( !artFile.exists() )
+            return null;
+
+        final File thumbnail = new File( mDiskCacheDir, thumbnailName( key ) );
+        if( thumbnail.exists() && thumbnail.lastModified() >= artFile.lastModified() )
+        {
+            final Bitmap bitmap = decodeThumbnail( thumbnail, width, height );
+            if( bitmap != null )
+                return bitmap;
+        }
+
+        final Bitmap bitmap = decodeScaled( artFile, width, height );
+        if( bitmap != null )
+            writeThumbnail( bitmap, thumbnail );
+        return bitmap;
+    }
+
+    private Bitmap decodeThumbnail( File thumbnail, int width, int height )
+    {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inMutable = true;
+        options.inBitmap = takeReusableBitmap( width, height );
+
+        try
+        {
+            return BitmapFactory.decodeFile( thumbnail.getPath(), options );
+        }
+        catch( IllegalArgumentException e )
+        {
+            // The reused bitmap did not fit after all, decode into a new one
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile( thumbnail.getPath(), options );
+        }
+    }
+
+    private static Bitmap decodeScaled( File artFile, int width, int height )
+    {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile( artFile.getPath(), options );
+        if( options.outWidth <= 0 || options.outHeight <= 0 )
+            return null;
+
+        // Subsample as much as possible while staying at least as large as the view
+        int sampleSize = 1;
+        while( options.outWidth / ( sampleSize * 2 ) >= width
+                && options.outHeight / ( sampleSize * 2 ) >= height )
+        {
+            sampleSize *= 2;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inMutable = true;
+        final Bitmap decoded = BitmapFactory.decodeFile( artFile.getPath(), options );
+        if( decoded == null || ( decoded.getWidth() == width && decoded.getHeight() == height ) )
+            return decoded;
+
+        final Bitmap scaled = Bitmap.createScaledBitmap( decoded, width, height, true );
+        if( scaled != decoded )
+            decoded.recycle();
+        return scaled;
+    }
+
+    private static void writeThumbnail( Bitmap bitmap, File thumbnail )
+    {
+        FileUtil.makeDirs( thumbnail.getParent() );
+
+        final File tempFile = new File( thumbnail.getPath() + ".tmp" );
+        FileOutputStream fos = null;
+        boolean written = false;
+        try
+        {
+            fos = new FileOutputStream( tempFile );
+            if( bitmap.hasAlpha() )
+                written = bitmap.compress( Bitmap.CompressFormat.PNG, 100, fos );
+            else
+                written = bitmap.compress( Bitmap.CompressFormat.JPEG, JPEG_QUALITY, fos );
+        }
+        catch( IOException e )
+        {
+            Log.w( "CoverArtLoader", e );
+        }
+        finally
+        {
+            if( fos != null )
+            {
+                try
+                {
+                    fos.close();
+                }
+                catch( IOException e )
+                {
+                    written = false;
+                }
+            }
+        }
+
+        if( !written || !tempFile.renameTo( thumbnail ) )
+            tempFile.delete();
+    }
+
+    /**
+     * Removes a reusable bitmap of the given size from the pool, if there is one.
+     */
+    private Bitmap takeReusableBitmap( int width, int height )
+    {
+        synchronized( mReusableBitmaps )
+        {
+            final Iterator<SoftReference<Bitmap>> iterator = mReusableBitmaps.iterator();
+            while( iterator.hasNext() )
+            {
+                final Bitmap bitmap = iterator.next().get();
+                if( bitmap == null || !bitmap.isMutable() || bitmap.isRecycled() )
+                {
+                    iterator.remove();
+                }
+                else if( bitmap.getWidth() == width && bitmap.getHeight() == height
+                        && bitmap.getConfig() == Bitmap.Config.ARGB_8888 )
+                {
+                    iterator.remove();
+                    return bitmap;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Deletes the least recently written thumbnails until the disk cache fits its maximum size.
+     */
+    private void trimDiskCache()
+    {
+        final File[] files = mDiskCacheDir.listFiles();
+        if( files == null )
+            return;
+
+        long totalSize = 0;
+        for( File file : files )
+            totalSize += file.length();
+
+        if( totalSize <= MAX_DISK_CACHE_SIZE )
+            return;
+
+        Arrays.sort( files, new Comparator<File>()
+        {
+            @Override
+            public int compare( File file1, File file2 )
+            {
+                final long lastModified1 = file1.lastModified();
+                final long lastModified2 = file2.lastModified();
+                return lastModified1 < lastModified2 ? -1 : ( lastModified1 == lastModified2 ? 0 : 1 );
+            }
+        } );
+
+        for( int i = 0; i < files.length && totalSize > MAX_DISK_CACHE_SIZE * 3 / 4; i++ )
+        {
+            final long length = files[i].length();
+            if( files[i].delete() )
+                totalSize -= length;
+        }
+    }
+
+    private static String thumbnailName( String key )
+    {
+        try
+        {
+            final MessageDigest digester = MessageDigest.getInstance( "MD5" );
+            return RomDigest.toHexString( digester.digest( key.getBytes( "UTF-8" ) ) );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            return Integer.toHexString( key.hashCode() );
+        }
+        catch( IOException e )
+        {
+            return Integer.toHexString( key.hashCode() );
+        }
+    }
+}
@@ -54,7 +54,20 @@ public final class Image
      */
     public Image( Resources res, String filename )
     {
-        image = BitmapFactory.decodeFile( filename );
+        this( res, BitmapFactory.decodeFile( filename ) );
+    }
+    
+    /**
+     * Constructor: Wraps a decoded bitmap and sets the initial properties.
+     *
+     * @param res
+     *            A handle to the app resources.
+     * @param bitmap
+     *            The bitmap to draw, shared with other images, or null.
+     */
+    public Image( Resources res, Bitmap bitmap )
+    {
+        image = bitmap;
         drawable = new BitmapDrawable( res, image );
         
         if( image == null )
@@ -0,0 +1,213 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2026 Mupen64PlusAE contributors
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.util;
+
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Timestamps the phases of a game launch, from the tap in the gallery until the core starts
+ * emulating, and appends a breakdown of each launch to a log file.
+ * <p>
+ * Phases may run concurrently on several threads, so each one is recorded with the thread it ran
+ * on, its start relative to the launch and its duration. Phases whose work was done ahead of the
+ * launch are recorded with the time they saved. Phases reported while no launch is being profiled
+ * are ignored.
+ */
+public final class LaunchProfiler
+{
+    /** The log is started over when it grows beyond this size, in bytes. */
+    private static final long MAX_LOG_SIZE = 256 * 1024;
+
+    private static final Object sLock = new Object();
+
+    /** The name of the game being launched, or null if no launch is being profiled. */
+    private static String sGameName = null;
+
+    /** The start of the launch, in nanoseconds. */
+    private static long sStartTime = 0;
+
+    private static final ArrayList<Phase> sPhases = new ArrayList<Phase>();
+
+    /** The time saved by phases done ahead of the launch, in nanoseconds. */
+    private static long sSavedTime = 0;
+
+    private static class Phase
+    {
+        public final String name;
+        public final String thread;
+        public final long start;
+        public final long duration;
+
+        public Phase( String name, String thread, long start, long duration )
+        {
+            this.name = name;
+            this.thread = thread;
+            this.start = start;
+            this.duration = duration;
+        }
+    }
+
+    private LaunchProfiler()
+    {
+    }
+
+    /**
+     * Starts profiling a launch. Any launch still being profiled is discarded.
+     *
+     * @param gameName The name of the game, for the log.
+     */
+    public static void start( String gameName )
+    {
+        synchronized( sLock )
+        {
+            sGameName = gameName != null ? gameName : "";
+            sStartTime = System.nanoTime();
+            sSavedTime = 0;
+            sPhases.clear();
+        }
+    }
+
+    /**
+     * Gets the start time of a phase, to be passed to {@link #end(String, long)}.
+     */
+    public static long begin()
+    {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a phase that just ended on the current thread.
+     *
+     * @param phase     The name of the phase.
+     * @param beginTime The time returned by {@link #begin()} when the phase started.
+     */
+    public static void end( String phase, long beginTime )
+    {
+        final long endTime = System.nanoTime();
+        synchronized( sLock )
+        {
+            if( sGameName != null )
+            {
+                sPhases.add( new Phase( phase, Thread.currentThread().getName(), beginTime - sStartTime,
+                        endTime - beginTime ) );
+            }
+        }
+    }
+
+    /**
+     * Records a phase skipped on the current thread because its work was done ahead of the launch.
+     *
+     * @param phase The name of the phase.
+     * @param saved The time the work took when it was done, in nanoseconds.
+     */
+    public static void skip( String phase, long saved )
+    {
+        final long now = System.nanoTime();
+        synchronized( sLock )
+        {
+            if( sGameName != null )
+            {
+                sPhases.add( new Phase( phase + " (saved " + toMillis( saved ) + " ms)",
+                        Thread.currentThread().getName(), now - sStartTime, 0 ) );
+                sSavedTime += saved;
+            }
+        }
+    }
+
+    /**
+     * Ends the launch being profiled, if any, and appends its breakdown to a log file.
+     *
+     * @param logPath The path of the log file.
+     */
+    public static void finish( String logPath )
+    {
+        final StringBuilder builder = new StringBuilder();
+        synchronized( sLock )
+        {
+            if( sGameName == null )
+                return;
+
+            final long total = System.nanoTime() - sStartTime;
+            final DateFormat dateFormat = new SimpleDateFormat( "yyyy-MM-dd HH:mm:ss", Locale.US );
+            builder.append( "[" ).append( dateFormat.format( new Date() ) ).append( "] " ).append( sGameName )
+                    .append( " (" ).append( Build.MODEL ).append( ", API " ).append( Build.VERSION.SDK_INT )
+                    .append( ")\n" );
+            builder.append( "# phase, thread, start (ms), duration (ms)\n" );
+            for( Phase phase : sPhases )
+            {
+                builder.append( phase.name ).append( ", " ).append( phase.thread ).append( ", " )
+                        .append( toMillis( phase.start ) ).append( ", " ).append( toMillis( phase.duration ) )
+                        .append( '\n' );
+            }
+            if( sSavedTime > 0 )
+                builder.append( "Saved ahead of launch, , , " ).append( toMillis( sSavedTime ) ).append( '\n' );
+            builder.append( "Total, , 0, " ).append( toMillis( total ) ).append( "\n\n" );
+
+            sGameName = null;
+            sPhases.clear();
+        }
+
+        Log.i( "LaunchProfiler", builder.toString() );
+
+        final File file = new File( logPath );
+        if( file.length() > MAX_LOG_SIZE )
+            file.delete();
+        if( file.getParentFile() != null )
+            file.getParentFile().mkdirs();
+
+        FileOutputStream fos = null;
+        try
+        {
+            fos = new FileOutputStream( file, true );
+            fos.write( builder.toString().getBytes( "UTF-8" ) );
+        }
+        catch( IOException e )
+        {
+            Log.w( "LaunchProfiler", e );
+        }
+        finally
+        {
+            if( fos != null )
+            {
+                try
+                {
+                    fos.close();
+                }
+                catch( IOException ignored )
+                {
+                }
+            }
+        }
+    }
+
+    private static String toMillis( long nanos )
+    {
+        return String.format( Locale.US, "%.1f", nanos / 1000000.0 );
+    }
+}
@@ -19,17 +19,11 @@
  */
 package paulscode.android.mupen64plusae.util;
 
-import android.text.TextUtils;
 import android.util.Log;
 
 import org.apache.commons.lang.NullArgumentException;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.HashMap;
-
-import paulscode.android.mupen64plusae.persistent.ConfigFile;
-import paulscode.android.mupen64plusae.persistent.ConfigFile.ConfigSection;
 
 /**
  * This class wraps the <a href=https://github.com/mupen64plus/mupen64plus-core/tree/master/data>ROM
@@ -97,8 +91,7 @@ public class RomDatabase
     private static final String ART_URL_TEMPLATE = "http://paulscode.com/downloads/Mupen64Plus-AE/CoverArt/%s";
     private static final String WIKI_URL_TEMPLATE = "https://github.com/mupen64plus-ae/mupen64plus-ae-meta/wiki/%s";
     
-    private ConfigFile mConfigFile = null;
-    private final HashMap<String, ArrayList<ConfigSection>> mCrcMap = new HashMap<String, ArrayList<ConfigSection>>();
+    private RomDatabaseIndex mIndex = null;
     
     private static RomDatabase instance = null;
     protected RomDatabase() {
@@ -111,31 +104,37 @@ public class RomDatabase
        return instance;
     }
     
+    /**
+     * Loads the ROM database. A binary index of the database is generated the first time and
+     * whenever the database changes, so this is normally just a memory map of the index.
+     * 
+     * @param mupen64plusIni Path to mupen64plus.ini
+     */
     public void setDatabaseFile( String mupen64plusIni )
     {
-        mConfigFile = new ConfigFile( mupen64plusIni );
-        for( String key : mConfigFile.keySet() )
-        {
-            ConfigSection section = mConfigFile.get( key );
-            if( section != null )
-            {
-                String crc = section.get( "CRC" );
-                if( crc != null )
-                {
-                    if( mCrcMap.get( crc ) == null )
-                        mCrcMap.put( crc, new ArrayList<ConfigSection>() );
-                    mCrcMap.get( crc ).add( section );
-                }
-            }
-        }
+        mIndex = RomDatabaseIndex.open( mupen64plusIni );
     }
     
     public boolean hasDatabaseFile()
     {
-        return mConfigFile != null;
+        return mIndex != null;
     }
     
     public RomDetail lookupByMd5WithFallback( String md5, File file, String crc )
+    {
+        return lookupByMd5WithFallback( md5, file, crc, null );
+    }
+
+    /**
+     * Looks up a ROM by MD5, falling back to its CRC and country code.
+     * 
+     * @param md5 MD5 of the ROM
+     * @param file ROM file, only used to name unknown ROMs if the country code is provided
+     * @param crc CRC from the ROM header
+     * @param countryCode Country code from the ROM header, or null to read it from the file
+     * @return The ROM details, never null
+     */
+    public RomDetail lookupByMd5WithFallback( String md5, File file, String crc, CountryCode countryCode )
     {
         RomDetail detail = lookupByMd5( md5 );
         if( detail == null )
@@ -143,13 +142,14 @@ public class RomDatabase
             RomDetail[] romDetails = lookupByCrc( crc );
             if(romDetails.length > 1)
             {
-                RomHeader romHeader = new RomHeader(file);
+                if( countryCode == null )
+                    countryCode = new RomHeader(file).countryCode;
                 int count = 0;
                 // CRC in the database more than once;
                 // Attempt to auto-select the correct match based on country code of rom
                 for(RomDetail romDetail : romDetails)
                 {
-                    if(romDetail.goodName.contains(romHeader.countryCode.toString())) {
+                    if(romDetail.goodName.contains(countryCode.toString())) {
                         detail = romDetail;
                         ++count;
                     }
@@ -197,19 +197,17 @@ public class RomDatabase
     
     public RomDetail lookupByMd5( String md5 )
     {
-        ConfigSection section = mConfigFile.get( md5 );
-        return section == null ? null : new RomDetail( section );
+        int entry = mIndex.findMd5( md5 );
+        return entry < 0 ? null : new RomDetail( entry );
     }
     
     public RomDetail[] lookupByCrc( String crc )
     {
-        ArrayList<ConfigSection> sections = mCrcMap.get( crc );
-        if( sections == null )
-            return new RomDetail[0];
+        int[] entries = mIndex.findCrc( crc );
         
-        RomDetail[] results = new RomDetail[sections.size()];
+        RomDetail[] results = new RomDetail[entries.length];
         for( int i = 0; i < results.length; i++ )
-            results[i] = new RomDetail( sections.get( i ) );
+            results[i] = new RomDetail( entries[i] );
         return results;
     }
     
@@ -226,19 +224,15 @@ public class RomDatabase
         public final int players;
         public final boolean rumble;
         
-        private RomDetail( ConfigSection section )
+        private RomDetail( int entry )
         {
-            // Never pass a null section
-            if( section == null )
-                throw new NullArgumentException( "section" );
-            
-            crc = section.get( "CRC" );
+            crc = mIndex.getCrc( entry );
             
             // Use an empty goodname (not null) for certain homebrew ROMs
             if( "00000000 00000000".equals( crc ) )
                 goodName = "";
             else
-                goodName = section.get( "GoodName" );
+                goodName = mIndex.getGoodName( entry );
             
             if( goodName != null )
             {
@@ -266,31 +260,11 @@ public class RomDatabase
                 wikiUrl = null;
             }
             
-            // Some ROMs have multiple entries. Instead of duplicating common data, the ini file
-            // just references another entry.
-            String refMd5 = section.get( "RefMD5" );
-            if( !TextUtils.isEmpty( refMd5 ) )
-                section = mConfigFile.get( refMd5 );
-            
-            if( section != null )
-            {
-                saveType = section.get( "SaveType" );
-                String statusString = section.get( "Status" );
-                String playersString = section.get( "Players" );
-                String rumbleString = section.get( "Rumble" );
-                status = TextUtils.isEmpty( statusString ) ? 0 : Integer.parseInt( statusString );
-                players = TextUtils.isEmpty( playersString ) ? 4 : Integer.parseInt( playersString );
-                rumble = TextUtils.isEmpty( rumbleString ) ? true : "Yes".equals( rumbleString );
-            }
-            else
-            {
-                Log.e( "RomDetail.ctor",
-                        "mupen64plus.ini appears to be corrupt.  RefMD5 field does not refer to a known ROM." );
-                saveType = null;
-                status = 0;
-                players = 4;
-                rumble = true;
-            }
+            // References to other entries are resolved by the index
+            saveType = mIndex.getSaveType( entry );
+            status = mIndex.getStatus( entry );
+            players = mIndex.getPlayers( entry );
+            rumble = mIndex.getRumble( entry );
         }
         
         private RomDetail( String assumedCrc, String assumedGoodName )
@@ -0,0 +1,540 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2026 Mupen64PlusAE contributors
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.util;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import paulscode.android.mupen64plusae.persistent.ConfigFile;
+import paulscode.android.mupen64plusae.persistent.ConfigFile.ConfigSection;
+
+/**
+ * A compact, read-only index of the ROM database, stored next to mupen64plus.ini and memory
+ * mapped when loaded. It is regenerated whenever the size or modification time of the ini file
+ * changes.
+ * <p>
+ * The index contains a table of entries sorted by MD5, a table of CRCs sorted by value pointing
+ * back into the entry table, and a pool of the strings referenced by the entries. References to
+ * other entries (RefMD5) are resolved when the index is generated, so that lookups are binary
+ * searches that never touch the ini file.
+ *
+ * @see RomDatabase
+ */
+final class RomDatabaseIndex
+{
+    private static final int MAGIC = 0x4D363449; // "M64I"
+    private static final int VERSION = 1;
+
+    // @formatter:off
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4 + 4;
+    private static final int ENTRY_SIZE  = 8 + 8 + 4 + 4 + 4 + 1 + 1 + 1 + 1;
+    private static final int CRC_SIZE    = 4 + 4 + 4;
+    // @formatter:on
+
+    private static final int NO_STRING = -1;
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    private final ByteBuffer mBuffer;
+    private final int mEntryCount;
+    private final int mCrcCount;
+    private final int mEntriesOffset;
+    private final int mCrcOffset;
+    private final int mStringsOffset;
+
+    private RomDatabaseIndex( ByteBuffer buffer )
+    {
+        mBuffer = buffer;
+        mEntryCount = buffer.getInt( 24 );
+        mCrcCount = buffer.getInt( 28 );
+        mEntriesOffset = HEADER_SIZE;
+        mCrcOffset = buffer.getInt( 32 );
+        mStringsOffset = buffer.getInt( 36 );
+    }
+
+    /**
+     * Loads the index of a ROM database, generating it first if it is missing or out of date.
+     *
+     * @param mupen64plusIni Path to the ROM database.
+     *
+     * @return The index, or null if the database could not be read.
+     */
+    public static RomDatabaseIndex open( String mupen64plusIni )
+    {
+        final File iniFile = new File( mupen64plusIni );
+        final File indexFile = new File( mupen64plusIni + ".idx" );
+
+        ByteBuffer buffer = map( indexFile );
+        if( buffer != null && isCurrent( buffer, iniFile ) )
+            return new RomDatabaseIndex( buffer );
+
+        if( !iniFile.exists() )
+            return null;
+
+        Log.i( "RomDatabaseIndex", "Generating index for " + mupen64plusIni );
+        final byte[] index = generate( iniFile );
+
+        // Commit the index atomically so that a partially written index is never loaded
+        final File tempFile = new File( indexFile.getPath() + ".tmp" );
+        FileOutputStream outStream = null;
+        try
+        {
+            outStream = new FileOutputStream( tempFile );
+            outStream.write( index );
+            outStream.close();
+            outStream = null;
+            if( tempFile.renameTo( indexFile ) )
+                buffer = map( indexFile );
+            else
+                buffer = null;
+        }
+        catch( IOException e )
+        {
+            Log.w( "RomDatabaseIndex", "Index could not be written: " + indexFile );
+            buffer = null;
+        }
+        finally
+        {
+            if( outStream != null )
+            {
+                try
+                {
+                    outStream.close();
+                }
+                catch( IOException ignored )
+                {
+                }
+            }
+            tempFile.delete();
+        }
+
+        // Fall back to the in-memory copy if the index could not be saved
+        return new RomDatabaseIndex( buffer != null ? buffer : ByteBuffer.wrap( index ) );
+    }
+
+    private static ByteBuffer map( File indexFile )
+    {
+        if( !indexFile.exists() || indexFile.length() < HEADER_SIZE )
+            return null;
+
+        RandomAccessFile file = null;
+        try
+        {
+            file = new RandomAccessFile( indexFile, "r" );
+            return file.getChannel().map( FileChannel.MapMode.READ_ONLY, 0, file.length() );
+        }
+        catch( IOException e )
+        {
+            Log.w( "RomDatabaseIndex", "Index could not be mapped: " + indexFile );
+            return null;
+        }
+        finally
+        {
+            if( file != null )
+            {
+                try
+                {
+                    // The mapping remains valid after the file is closed
+                    file.close();
+                }
+                catch( IOException ignored )
+                {
+                }
+            }
+        }
+    }
+
+    private static boolean isCurrent( ByteBuffer buffer, File iniFile )
+    {
+        return buffer.getInt( 0 ) == MAGIC && buffer.getInt( 4 ) == VERSION
+                && buffer.getLong( 8 ) == iniFile.length() && buffer.getLong( 16 ) == iniFile.lastModified()
+                && buffer.getInt( 36 ) <= buffer.capacity();
+    }
+
+    /**
+     * Finds a ROM by MD5.
+     *
+     * @param md5 MD5 of the ROM, as a hexadecimal string.
+     *
+     * @return Index of the entry, or -1 if not found.
+     */
+    public int findMd5( String md5 )
+    {
+        if( !isMd5( md5 ) )
+            return -1;
+
+        final long hi = parseHex( md5, 0, 16 );
+        final long lo = parseHex( md5, 16, 32 );
+
+        int low = 0;
+        int high = mEntryCount - 1;
+        while( low <= high )
+        {
+            final int mid = ( low + high ) >>> 1;
+            final int offset = mEntriesOffset + mid * ENTRY_SIZE;
+            int cmp = compareUnsigned( mBuffer.getLong( offset ), hi );
+            if( cmp == 0 )
+                cmp = compareUnsigned( mBuffer.getLong( offset + 8 ), lo );
+
+            if( cmp < 0 )
+                low = mid + 1;
+            else if( cmp > 0 )
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds all the ROMs with a given CRC.
+     *
+     * @param crc CRC of the ROM, formatted as in the ROM database (e.g. "3B941695 F90A5EEB").
+     *
+     * @return Indices of the entries, in database order.
+     */
+    public int[] findCrc( String crc )
+    {
+        if( crc == null || crc.length() != 17 || crc.charAt( 8 ) != ' ' )
+            return new int[0];
+
+        final long crc1 = parseHex( crc, 0, 8 );
+        final long crc2 = parseHex( crc, 9, 17 );
+        if( crc1 < 0 || crc2 < 0 )
+            return new int[0];
+        final long key = ( crc1 << 32 ) | crc2;
+
+        // Find the first matching CRC
+        int low = 0;
+        int high = mCrcCount;
+        while( low < high )
+        {
+            final int mid = ( low + high ) >>> 1;
+            if( compareUnsigned( crcKey( mid ), key ) < 0 )
+                low = mid + 1;
+            else
+                high = mid;
+        }
+
+        int end = low;
+        while( end < mCrcCount && crcKey( end ) == key )
+            end++;
+
+        final int[] results = new int[end - low];
+        for( int i = 0; i < results.length; i++ )
+            results[i] = mBuffer.getInt( mCrcOffset + ( low + i ) * CRC_SIZE + 8 );
+        return results;
+    }
+
+    public String getCrc( int entry )
+    {
+        return getString( mBuffer.getInt( entryOffset( entry ) + 16 ) );
+    }
+
+    public String getGoodName( int entry )
+    {
+        return getString( mBuffer.getInt( entryOffset( entry ) + 20 ) );
+    }
+
+    public String getSaveType( int entry )
+    {
+        return getString( mBuffer.getInt( entryOffset( entry ) + 24 ) );
+    }
+
+    public int getStatus( int entry )
+    {
+        return mBuffer.get( entryOffset( entry ) + 28 );
+    }
+
+    public int getPlayers( int entry )
+    {
+        return mBuffer.get( entryOffset( entry ) + 29 );
+    }
+
+    public boolean getRumble( int entry )
+    {
+        return mBuffer.get( entryOffset( entry ) + 30 ) != 0;
+    }
+
+    private int entryOffset( int entry )
+    {
+        return mEntriesOffset + entry * ENTRY_SIZE;
+    }
+
+    private long crcKey( int index )
+    {
+        final int offset = mCrcOffset + index * CRC_SIZE;
+        return ( (long) mBuffer.getInt( offset ) << 32 ) | ( mBuffer.getInt( offset + 4 ) & 0xFFFFFFFFL );
+    }
+
+    private String getString( int offset )
+    {
+        if( offset == NO_STRING )
+            return null;
+
+        // Work on a duplicate so that concurrent lookups never share a position
+        final ByteBuffer buffer = mBuffer.duplicate();
+        buffer.position( mStringsOffset + offset );
+        final byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get( bytes );
+        return new String( bytes, UTF_8 );
+    }
+
+    private static int compareUnsigned( long a, long b )
+    {
+        return Long.compare( a ^ Long.MIN_VALUE, b ^ Long.MIN_VALUE );
+    }
+
+    private static boolean isMd5( String string )
+    {
+        if( string == null || string.length() != 32 )
+            return false;
+        for( int i = 0; i < 32; i++ )
+        {
+            if( Character.digit( string.charAt( i ), 16 ) < 0 )
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parses up to 16 hexadecimal digits.
+     *
+     * @return The value, or -1 if the string is not hexadecimal.
+     */
+    private static long parseHex( String string, int start, int end )
+    {
+        long value = 0;
+        for( int i = start; i < end; i++ )
+        {
+            final int digit = Character.digit( string.charAt( i ), 16 );
+            if( digit < 0 )
+                return -1;
+            value = ( value << 4 ) | digit;
+        }
+        return value;
+    }
+
+    /**
+     * Generates the index of a ROM database.
+     *
+     * @param iniFile The ROM database.
+     *
+     * @return The contents of the index.
+     */
+    private static byte[] generate( File iniFile )
+    {
+        final long iniLength = iniFile.length();
+        final long iniLastModified = iniFile.lastModified();
+        final ConfigFile configFile = new ConfigFile( iniFile.getPath() );
+
+        // Collect the entries, resolving references to other entries
+        final List<Entry> entries = new ArrayList<Entry>();
+        final ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        final HashMap<String, Integer> stringOffsets = new HashMap<String, Integer>();
+        for( String key : configFile.keySet() )
+        {
+            final ConfigSection section = configFile.get( key );
+            if( section == null || !isMd5( key ) )
+                continue;
+
+            final Entry entry = new Entry( parseHex( key, 0, 16 ), parseHex( key, 16, 32 ) );
+            entry.order = entries.size();
+            entry.crc = section.get( "CRC" );
+            entry.crcOffset = addString( strings, stringOffsets, entry.crc );
+            entry.goodNameOffset = addString( strings, stringOffsets, section.get( "GoodName" ) );
+
+            // Some ROMs have multiple entries. Instead of duplicating common data, the ini file
+            // just references another entry.
+            ConfigSection dataSection = section;
+            final String refMd5 = section.get( "RefMD5" );
+            if( !TextUtils.isEmpty( refMd5 ) )
+                dataSection = configFile.get( refMd5 );
+
+            if( dataSection != null )
+            {
+                entry.saveTypeOffset = addString( strings, stringOffsets, dataSection.get( "SaveType" ) );
+                entry.status = parseInt( dataSection.get( "Status" ), 0 );
+                entry.players = parseInt( dataSection.get( "Players" ), 4 );
+                final String rumble = dataSection.get( "Rumble" );
+                entry.rumble = TextUtils.isEmpty( rumble ) || "Yes".equals( rumble );
+            }
+            else
+            {
+                Log.e( "RomDatabaseIndex",
+                        "mupen64plus.ini appears to be corrupt.  RefMD5 field does not refer to a known ROM." );
+            }
+            entries.add( entry );
+        }
+
+        // Sort the CRC table first, so that duplicate CRCs remain in database order
+        final List<Entry> crcEntries = new ArrayList<Entry>();
+        for( Entry entry : entries )
+        {
+            if( entry.crc != null && entry.crc.length() == 17 && entry.crc.charAt( 8 ) == ' ' )
+            {
+                final long crc1 = parseHex( entry.crc, 0, 8 );
+                final long crc2 = parseHex( entry.crc, 9, 17 );
+                if( crc1 >= 0 && crc2 >= 0 )
+                {
+                    entry.crcKey = ( crc1 << 32 ) | crc2;
+                    crcEntries.add( entry );
+                }
+            }
+        }
+
+        Collections.sort( entries, new Comparator<Entry>()
+        {
+            @Override
+            public int compare( Entry lhs, Entry rhs )
+            {
+                final int cmp = compareUnsigned( lhs.md5Hi, rhs.md5Hi );
+                return cmp != 0 ? cmp : compareUnsigned( lhs.md5Lo, rhs.md5Lo );
+            }
+        } );
+        for( int i = 0; i < entries.size(); i++ )
+            entries.get( i ).order = i;
+
+        Collections.sort( crcEntries, new Comparator<Entry>()
+        {
+            @Override
+            public int compare( Entry lhs, Entry rhs )
+            {
+                return compareUnsigned( lhs.crcKey, rhs.crcKey );
+            }
+        } );
+
+        // Write the index
+        final int crcOffset = HEADER_SIZE + entries.size() * ENTRY_SIZE;
+        final int stringsOffset = crcOffset + crcEntries.size() * CRC_SIZE;
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream( stringsOffset + strings.size() );
+        final DataOutputStream out = new DataOutputStream( bytes );
+        try
+        {
+            out.writeInt( MAGIC );
+            out.writeInt( VERSION );
+            out.writeLong( iniLength );
+            out.writeLong( iniLastModified );
+            out.writeInt( entries.size() );
+            out.writeInt( crcEntries.size() );
+            out.writeInt( crcOffset );
+            out.writeInt( stringsOffset );
+
+            for( Entry entry : entries )
+            {
+                out.writeLong( entry.md5Hi );
+                out.writeLong( entry.md5Lo );
+                out.writeInt( entry.crcOffset );
+                out.writeInt( entry.goodNameOffset );
+                out.writeInt( entry.saveTypeOffset );
+                out.writeByte( entry.status );
+                out.writeByte( entry.players );
+                out.writeByte( entry.rumble ? 1 : 0 );
+                out.writeByte( 0 );
+            }
+
+            for( Entry entry : crcEntries )
+            {
+                out.writeLong( entry.crcKey );
+                out.writeInt( entry.order );
+            }
+
+            strings.writeTo( out );
+            out.flush();
+        }
+        catch( IOException e )
+        {
+            // Never happens when writing to memory
+            Log.e( "RomDatabaseIndex", "Index could not be generated", e );
+        }
+        return bytes.toByteArray();
+    }
+
+    private static int addString( ByteArrayOutputStream strings, HashMap<String, Integer> offsets, String value )
+    {
+        if( value == null )
+            return NO_STRING;
+
+        Integer offset = offsets.get( value );
+        if( offset == null )
+        {
+            byte[] bytes = value.getBytes( UTF_8 );
+            if( bytes.length > 0xFFFF )
+                return NO_STRING;
+
+            offset = strings.size();
+            strings.write( bytes.length >> 8 );
+            strings.write( bytes.length );
+            strings.write( bytes, 0, bytes.length );
+            offsets.put( value, offset );
+        }
+        return offset;
+    }
+
+    private static int parseInt( String value, int defaultValue )
+    {
+        if( TextUtils.isEmpty( value ) )
+            return defaultValue;
+        try
+        {
+            return Integer.parseInt( value );
+        }
+        catch( NumberFormatException e )
+        {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * An entry of the index while it is being generated.
+     */
+    private static class Entry
+    {
+        public final long md5Hi;
+        public final long md5Lo;
+        public int order;
+        public String crc;
+        public long crcKey;
+        public int crcOffset = NO_STRING;
+        public int goodNameOffset = NO_STRING;
+        public int saveTypeOffset = NO_STRING;
+        public int status = 0;
+        public int players = 4;
+        public boolean rumble = true;
+
+        public Entry( long md5Hi, long md5Lo )
+        {
+            this.md5Hi = md5Hi;
+            this.md5Lo = md5Lo;
+        }
+    }
+}
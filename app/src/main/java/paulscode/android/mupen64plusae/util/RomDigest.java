@@ -0,0 +1,245 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2026 Mupen64PlusAE contributors
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.util;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes the MD5 of a ROM image in its native (.z64) byte order, along with its header, in a
+ * single pass over the file.
+ * <p>
+ * The image is read through a channel in large blocks into a reusable direct buffer. Byte-swapped
+ * (.v64) and word-swapped (.n64) images are normalized in place a short or an int at a time before
+ * being handed to the digest.
+ *
+ * @see RomHeader
+ */
+public final class RomDigest
+{
+    /** Size of the read buffer, must be a multiple of four so that words never straddle reads. */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /** Size of the ROM header. */
+    private static final int HEADER_SIZE = 0x40;
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /** Read buffer reused by every digest computed on the same thread. */
+    private static final ThreadLocal<ByteBuffer> sBuffer = new ThreadLocal<ByteBuffer>()
+    {
+        @Override
+        protected ByteBuffer initialValue()
+        {
+            return ByteBuffer.allocateDirect( BUFFER_SIZE );
+        }
+    };
+
+    /** Upper case hexadecimal MD5 of the normalized image. */
+    public final String md5;
+
+    /** Header of the image. */
+    public final RomHeader header;
+
+    private RomDigest( String md5, RomHeader header )
+    {
+        this.md5 = md5;
+        this.header = header;
+    }
+
+    /**
+     * Computes the digest of a ROM file.
+     *
+     * @param file The ROM file.
+     *
+     * @return The digest, or null if the file could not be read.
+     */
+    public static RomDigest compute( File file )
+    {
+        if( file == null )
+            return null;
+
+        FileInputStream inputStream = null;
+        try
+        {
+            inputStream = new FileInputStream( file );
+            return compute( inputStream.getChannel() );
+        }
+        catch( IOException e )
+        {
+            Log.w( "RomDigest", "ROM file could not be read: " + file );
+            return null;
+        }
+        finally
+        {
+            if( inputStream != null )
+            {
+                try
+                {
+                    inputStream.close();
+                }
+                catch( IOException e )
+                {
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the digest of a ROM image read from a channel. The channel is left open.
+     *
+     * @param channel The channel to read the image from.
+     *
+     * @return The digest.
+     *
+     * @throws IOException if the image could not be read.
+     */
+    public static RomDigest compute( ReadableByteChannel channel ) throws IOException
+    {
+        return compute( channel, null );
+    }
+
+    /**
+     * Computes the digest of a ROM image read from a channel, copying the image as it is read. The
+     * channels are left open.
+     *
+     * @param channel The channel to read the image from.
+     * @param copy    The channel to copy the image to, in its original byte order, or null.
+     *
+     * @return The digest.
+     *
+     * @throws IOException if the image could not be read or copied.
+     */
+    public static RomDigest compute( ReadableByteChannel channel, WritableByteChannel copy ) throws IOException
+    {
+        final MessageDigest digester;
+        try
+        {
+            digester = MessageDigest.getInstance( "MD5" );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new IOException( e.getMessage() );
+        }
+
+        final ByteBuffer buffer = sBuffer.get();
+        byte[] headerBytes = null;
+        int firstByte = -1;
+
+        while( fill( channel, buffer ) )
+        {
+            buffer.flip();
+
+            if( headerBytes == null )
+            {
+                // The header is kept in its original byte order, RomHeader normalizes it itself
+                headerBytes = new byte[HEADER_SIZE];
+                buffer.get( headerBytes, 0, Math.min( HEADER_SIZE, buffer.remaining() ) );
+                buffer.rewind();
+                firstByte = headerBytes[0];
+            }
+
+            if( copy != null )
+            {
+                final ByteBuffer original = buffer.duplicate();
+                while( original.hasRemaining() )
+                    copy.write( original );
+            }
+
+            switch( firstByte )
+            {
+                case 0x37:
+                    // Byteswap if .v64 image
+                    swapShorts( buffer );
+                    break;
+                case 0x40:
+                    // Wordswap if .n64 image
+                    swapInts( buffer );
+                    break;
+                default:
+                    // No swap otherwise
+                    break;
+            }
+
+            digester.update( buffer );
+            buffer.clear();
+        }
+        buffer.clear();
+
+        if( headerBytes == null )
+            headerBytes = new byte[HEADER_SIZE];
+
+        return new RomDigest( toHexString( digester.digest() ), new RomHeader( headerBytes ) );
+    }
+
+    /**
+     * Reads from the channel until the buffer is full or the end of the stream is reached.
+     *
+     * @return True if any bytes were read.
+     */
+    private static boolean fill( ReadableByteChannel channel, ByteBuffer buffer ) throws IOException
+    {
+        while( buffer.hasRemaining() )
+        {
+            if( channel.read( buffer ) < 0 )
+                break;
+        }
+        return buffer.position() > 0;
+    }
+
+    private static void swapShorts( ByteBuffer buffer )
+    {
+        final ShortBuffer shorts = buffer.asShortBuffer();
+        final int count = shorts.limit();
+        for( int i = 0; i < count; i++ )
+            shorts.put( i, Short.reverseBytes( shorts.get( i ) ) );
+    }
+
+    private static void swapInts( ByteBuffer buffer )
+    {
+        final IntBuffer ints = buffer.asIntBuffer();
+        final int count = ints.limit();
+        for( int i = 0; i < count; i++ )
+            ints.put( i, Integer.reverseBytes( ints.get( i ) ) );
+    }
+
+    /**
+     * Converts a hash to an upper case hexadecimal string.
+     */
+    public static String toHexString( byte[] hash )
+    {
+        final char[] chars = new char[hash.length * 2];
+        for( int i = 0; i < hash.length; i++ )
+        {
+            chars[i * 2] = HEX_DIGITS[( hash[i] >> 4 ) & 0x0F];
+            chars[i * 2 + 1] = HEX_DIGITS[hash[i] & 0x0F];
+        }
+        return new String( chars );
+    }
+}
@@ -71,9 +71,10 @@ static jclass _jniClass = NULL;
 static jmethodID _jniRumble = NULL;
 static int _androidPluggedState[4];
 static int _androidPakType[4];
-static unsigned char _androidButtonState[4][16];
-static signed char _androidAnalogX[4];
-static signed char _androidAnalogY[4];
+static volatile jint* _androidPackedState = NULL;
+static volatile jint* _replayRecords = NULL;
+static volatile int _replayCount = 0;
+static int _replayNext = 0;
 static int _pluginInitialized = 0;
 static CONTROL* _controllerInfos = NULL;
 
@@ -156,19 +157,36 @@ JNIEXPORT void JNICALL Java_paulscode_android_mupen64plusae_jni_NativeInput_setC
     }
 }
 
-JNIEXPORT void JNICALL Java_paulscode_android_mupen64plusae_jni_NativeInput_setState(JNIEnv* env, jclass jcls, jint controllerNum, jbooleanArray mp64pButtons,
-        jint mp64pXAxis, jint mp64pYAxis)
+JNIEXPORT void JNICALL Java_paulscode_android_mupen64plusae_jni_NativeInput_setStateBuffer(JNIEnv* env, jclass jcls, jobject states)
 {
-    jboolean* elements = (*env)->GetBooleanArrayElements(env, mp64pButtons, NULL);
-    int b;
-    for (b = 0; b < 16; b++)
+    // Java packs the state of each controller into one int: buttons in bits 0-15, then X and Y axes
+    // The fifth int is the number of polls, written by this plugin
+    _androidPackedState = (volatile jint*) (*env)->GetDirectBufferAddress(env, states);
+    if (_androidPackedState == NULL)
     {
-        _androidButtonState[controllerNum][b] = elements[b];
+        DebugMessage(M64MSG_WARNING, "Couldn't access controller state buffer");
     }
-    (*env)->ReleaseBooleanArrayElements(env, mp64pButtons, elements, 0);
+}
+
+JNIEXPORT void JNICALL Java_paulscode_android_mupen64plusae_jni_NativeInput_setReplayBuffer(JNIEnv* env, jclass jcls, jobject records, jint count)
+{
+    // Stop applying the previous records before switching to the new ones
+    _replayRecords = NULL;
+    _replayCount = 0;
+    _replayNext = 0;
 
-    _androidAnalogX[controllerNum] = (signed char) ((int) mp64pXAxis);
-    _androidAnalogY[controllerNum] = (signed char) ((int) mp64pYAxis);
+    if (records == NULL || count <= 0)
+        return;
+
+    // Java writes three ints per record: the poll count it was recorded at, the controller, the state
+    jint* address = (jint*) (*env)->GetDirectBufferAddress(env, records);
+    if (address == NULL)
+    {
+        DebugMessage(M64MSG_WARNING, "Couldn't access replay buffer");
+        return;
+    }
+    _replayCount = count;
+    _replayRecords = address;
 }
 
 //*****************************************************************************
@@ -283,17 +301,42 @@ EXPORT void CALL GetKeys(int controllerNum, BUTTONS* keys)
     // Reset the controller state
     keys->Value = 0;
 
+    if (_androidPackedState == NULL || controllerNum < 0 || controllerNum > 3)
+        return;
+
+    // Count the polls of the first plugged controller, Java uses it to timestamp input by frame
+    int first = 0;
+    while (first < 3 && !_androidPluggedState[first])
+        first++;
+    if (controllerNum == first)
+    {
+        jint poll = ++_androidPackedState[4];
+
+        // A state recorded after n polls was first read at poll n + 1, apply it just before then
+        volatile jint* records = _replayRecords;
+        while (records != NULL && _replayNext < _replayCount && records[3 * _replayNext] < poll)
+        {
+            int replayed = records[3 * _replayNext + 1];
+            if (replayed >= 0 && replayed <= 3)
+                _androidPackedState[replayed] = records[3 * _replayNext + 2];
+            _replayNext++;
+        }
+    }
+
+    // Read the state published by Java once, it may be updated concurrently
+    jint state = _androidPackedState[controllerNum];
+
     // Set the button bits
     int b;
     for (b = 0; b < 16; b++)
     {
-        if (_androidButtonState[controllerNum][b])
+        if (state & (1 << b))
             keys->Value |= BUTTON_BITS[b];
     }
 
     // Set the analog bytes
-    keys->X_AXIS = _androidAnalogX[controllerNum];
-    keys->Y_AXIS = _androidAnalogY[controllerNum];
+    keys->X_AXIS = (signed char) ((state >> 16) & 0xFF);
+    keys->Y_AXIS = (signed char) ((state >> 24) & 0xFF);
 }
 
 EXPORT void CALL ControllerCommand(int controllerNum, unsigned char* command)
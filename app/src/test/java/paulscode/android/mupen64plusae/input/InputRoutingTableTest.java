@@ -0,0 +1,233 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2026 Mupen64PlusAE contributors
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.input;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import paulscode.android.mupen64plusae.input.map.InputMap;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith( RobolectricTestRunner.class )
+@Config( manifest = Config.NONE )
+public class InputRoutingTableTest
+{
+    /** Largest key code used in the maps. */
+    private static final int MAX_KEY_CODE = 300;
+
+    /** Largest axis used in the maps. */
+    private static final int MAX_AXIS = 47;
+
+    /**
+     * The routing PeripheralController used before the routing table: every mapped input code has
+     * an entry holding its command and last strength, and the strength of a command is the
+     * strongest of its entries.
+     */
+    private static class EntryRouting
+    {
+        private final HashMap<Integer, Integer> mCommands = new HashMap<Integer, Integer>();
+        private final HashMap<Integer, Float> mStrengths = new HashMap<Integer, Float>();
+
+        public EntryRouting( InputMap inputMap, EntryRouting previous )
+        {
+            for( int i = 0; i < inputMap.size(); i++ )
+            {
+                final int code = inputMap.keyAt( i );
+                final int command = inputMap.valueAt( i );
+                mCommands.put( code, command );
+
+                // Entries still mapped to the same command were reused
+                if( previous != null && previous.mCommands.containsKey( code )
+                        && previous.mCommands.get( code ) == command )
+                    mStrengths.put( code, previous.mStrengths.get( code ) );
+                else
+                    mStrengths.put( code, 0f );
+            }
+        }
+
+        public int update( int inputCode, float strength )
+        {
+            final Integer command = mCommands.get( inputCode );
+            if( command == null )
+                return InputMap.UNMAPPED;
+
+            mStrengths.put( inputCode, strength );
+            return command;
+        }
+
+        public float getStrength( int command )
+        {
+            float strength = 0;
+            for( int code : mCommands.keySet() )
+            {
+                if( mCommands.get( code ) == command )
+                    strength = Math.max( strength, mStrengths.get( code ) );
+            }
+            return strength;
+        }
+    }
+
+    private static int randomCode( Random random )
+    {
+        if( random.nextBoolean() )
+            return 1 + random.nextInt( MAX_KEY_CODE );
+        else
+            return -( random.nextInt( MAX_AXIS + 1 ) * 2 + 1 + random.nextInt( 2 ) );
+    }
+
+    private static float randomStrength( Random random )
+    {
+        switch( random.nextInt( 4 ) )
+        {
+            case 0:
+                return 0;
+            case 1:
+                return 1;
+            default:
+                return random.nextFloat();
+        }
+    }
+
+    private static InputMap randomMap( Random random, int count )
+    {
+        final InputMap map = new InputMap();
+        for( int i = 0; i < count; i++ )
+            map.map( randomCode( random ), random.nextInt( InputMap.NUM_MAPPABLES ) );
+        return map;
+    }
+
+    private static void assertSameStrengths( EntryRouting expected, InputRoutingTable actual )
+    {
+        for( int command = 0; command < InputMap.NUM_MAPPABLES; command++ )
+        {
+            assertEquals( "command " + command, expected.getStrength( command ),
+                    actual.getStrength( command ), 0 );
+        }
+    }
+
+    /**
+     * Sends random inputs, most of them mapped, to both routings.
+     */
+    private static void assertSameRouting( Random random, InputMap map, EntryRouting expected,
+            InputRoutingTable actual, int events )
+    {
+        for( int i = 0; i < events; i++ )
+        {
+            final int code = random.nextInt( 4 ) > 0 ? map.keyAt( random.nextInt( map.size() ) )
+                    : randomCode( random );
+            final float strength = randomStrength( random );
+
+            final int command = expected.update( code, strength );
+            assertEquals( "code " + code, command, actual.update( code, strength ) );
+            if( command != InputMap.UNMAPPED )
+            {
+                assertEquals( "code " + code, expected.getStrength( command ),
+                        actual.getStrength( command ), 0 );
+            }
+        }
+        assertSameStrengths( expected, actual );
+    }
+
+    @Test
+    public void matchesEntryRouting()
+    {
+        final Random random = new Random( 64 );
+        for( int round = 0; round < 20; round++ )
+        {
+            final InputMap map = randomMap( random, 1 + random.nextInt( 60 ) );
+            assertSameRouting( random, map, new EntryRouting( map, null ),
+                    new InputRoutingTable( map, null ), 2000 );
+        }
+    }
+
+    @Test
+    public void matchesEntryRoutingAcrossMapEdits()
+    {
+        final Random random = new Random( 1964 );
+        final InputMap map = randomMap( random, 40 );
+        EntryRouting expected = new EntryRouting( map, null );
+        InputRoutingTable actual = new InputRoutingTable( map, null );
+        assertSameRouting( random, map, expected, actual, 500 );
+
+        for( int round = 0; round < 50; round++ )
+        {
+            // Remap, unmap and add a few inputs while some are held
+            for( int i = 0; i < 3; i++ )
+            {
+                map.map( map.keyAt( random.nextInt( map.size() ) ),
+                        random.nextInt( InputMap.NUM_MAPPABLES ) );
+            }
+            if( map.size() > 10 )
+                map.unmap( map.keyAt( random.nextInt( map.size() ) ) );
+            map.map( randomCode( random ), random.nextInt( InputMap.NUM_MAPPABLES ) );
+
+            expected = new EntryRouting( map, expected );
+            actual = new InputRoutingTable( map, actual );
+            assertSameStrengths( expected, actual );
+            assertSameRouting( random, map, expected, actual, 100 );
+        }
+    }
+
+    @Test
+    public void strengthFallsBackToOtherInputs()
+    {
+        final InputMap map = new InputMap();
+        map.map( 96, AbstractController.BTN_A );
+        map.map( -3, AbstractController.BTN_A );
+        map.map( -4, InputMap.AXIS_R );
+        final InputRoutingTable table = new InputRoutingTable( map, null );
+
+        assertEquals( AbstractController.BTN_A, table.update( -3, 0.4f ) );
+        assertEquals( AbstractController.BTN_A, table.update( 96, 1 ) );
+        assertEquals( 1, table.getStrength( AbstractController.BTN_A ), 0 );
+
+        // Releasing the strongest input leaves the other one
+        table.update( 96, 0 );
+        assertEquals( 0.4f, table.getStrength( AbstractController.BTN_A ), 0 );
+        table.update( -3, 0 );
+        assertEquals( 0, table.getStrength( AbstractController.BTN_A ), 0 );
+        assertEquals( 0, table.getStrength( InputMap.AXIS_R ), 0 );
+    }
+
+    @Test
+    public void unmappedInputs()
+    {
+        final InputMap map = new InputMap( "7:96,16:-3," );
+        final InputRoutingTable table = new InputRoutingTable( map, null );
+
+        assertEquals( AbstractController.BTN_A, table.update( 96, 1 ) );
+        assertEquals( InputMap.AXIS_R, table.update( -3, 1 ) );
+        assertEquals( InputMap.UNMAPPED, table.update( 97, 1 ) );
+        assertEquals( InputMap.UNMAPPED, table.update( -4, 1 ) );
+        assertEquals( InputMap.UNMAPPED, table.update( 100000, 1 ) );
+        assertEquals( InputMap.UNMAPPED, table.update( -100000, 1 ) );
+        assertEquals( 0, table.getStrength( InputMap.UNMAPPED ), 0 );
+        assertEquals( 0, table.getStrength( InputMap.NUM_MAPPABLES ), 0 );
+
+        final InputRoutingTable empty = new InputRoutingTable( new InputMap(), null );
+        assertEquals( InputMap.UNMAPPED, empty.update( 96, 1 ) );
+        assertEquals( InputMap.UNMAPPED, empty.update( -3, 1 ) );
+    }
+}
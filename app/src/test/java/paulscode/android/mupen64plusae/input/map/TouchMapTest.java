@@ -0,0 +1,378 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2026 Mupen64PlusAE contributors
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.input.map;
+
+import android.graphics.Bitmap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+
+import paulscode.android.mupen64plusae.input.AbstractController;
+import paulscode.android.mupen64plusae.profile.Profile;
+import paulscode.android.mupen64plusae.util.Image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith( RobolectricTestRunner.class )
+@Config( manifest = Config.NONE )
+public class TouchMapTest
+{
+    /** Digitizer size, not a multiple of the cell size. */
+    private static final int WIDTH = 203;
+    private static final int HEIGHT = 151;
+
+    private static final int BLACK = 0xFF000000;
+    private static final int TRANSPARENT = 0x00000000;
+
+    /** Default mask colors of the buttons used here. */
+    private static final int COLOR_A = 0xFF007F46;
+    private static final int COLOR_B = 0xFF4B4B4B;
+    private static final int COLOR_START = 0xFFB45D5D;
+    private static final int COLOR_CU = 0xFF00E0CA;
+    private static final int COLOR_CD = 0xFF84A1D5;
+    private static final int COLOR_CL = 0xFF5A6B1F;
+    private static final int COLOR_CR = 0xFFFF635C;
+    private static final int COLOR_DU = 0xFFFF0000;
+    private static final int COLOR_DD = 0xFFCC00FF;
+    private static final int COLOR_DL = 0xFFD62D4D;
+    private static final int COLOR_DR = 0xFF00FFF0;
+
+    /** Softened edge of the A button, within the match tolerance. */
+    private static final int COLOR_A_EDGE = 0xFF037D48;
+
+    /** A color that matches no button. */
+    private static final int COLOR_UNKNOWN = 0xFF123456;
+
+    private static final int[][] BUTTON_COLORS = {
+            { COLOR_A, AbstractController.BTN_A },
+            { COLOR_B, AbstractController.BTN_B },
+            { COLOR_START, AbstractController.START },
+            { COLOR_CU, AbstractController.CPD_U },
+            { COLOR_CD, AbstractController.CPD_D },
+            { COLOR_CL, AbstractController.CPD_L },
+            { COLOR_CR, AbstractController.CPD_R },
+            { COLOR_DU, AbstractController.DPD_U },
+            { COLOR_DD, AbstractController.DPD_D },
+            { COLOR_DL, AbstractController.DPD_L },
+            { COLOR_DR, AbstractController.DPD_R },
+    };
+
+    private TouchMap mMap;
+
+    /** The masks in the order they were added to the map. */
+    private final ArrayList<Image> mMasks = new ArrayList<Image>();
+
+    @Before
+    public void setUp()
+    {
+        mMap = new TouchMap( null );
+        mMap.clear();
+        mMasks.clear();
+
+        // Same order as TouchMap.loadAllAssets, the d-pad overlaps the A/B group
+        addButton( "dpad", dpadMask(), 50, 40, 2.0f );
+        addButton( "groupAB", groupAbMask(), 70, 60, 1.5f );
+        addButton( "groupC", groupCMask(), 10, 10, 0.75f );
+        addButton( "buttonS", fill( 10, 6, COLOR_START ), 100, 100, 1.3f );
+    }
+
+    private void addButton( String name, Bitmap mask, int x, int y, float scaling )
+    {
+        final Image maskImage = new Image( null, mask );
+        mMasks.add( maskImage );
+        mMap.addButton( name, new Image( null, mask ), maskImage, x, y, scaling );
+    }
+
+    private static Bitmap fill( int width, int height, int color )
+    {
+        final int[] pixels = new int[width * height];
+        for( int i = 0; i < pixels.length; i++ )
+            pixels[i] = color;
+        return Bitmap.createBitmap( pixels, width, height, Bitmap.Config.ARGB_8888 );
+    }
+
+    /**
+     * A round d-pad split into four directions, on a black background.
+     */
+    private static Bitmap dpadMask()
+    {
+        final int size = 30;
+        final int[] pixels = new int[size * size];
+        for( int y = 0; y < size; y++ )
+        {
+            for( int x = 0; x < size; x++ )
+            {
+                final int dX = x - size / 2;
+                final int dY = y - size / 2;
+                final int color;
+                if( dX * dX + dY * dY > size * size / 4 )
+                    color = BLACK;
+                else if( Math.abs( dX ) > Math.abs( dY ) )
+                    color = dX > 0 ? COLOR_DR : COLOR_DL;
+                else
+                    color = dY > 0 ? COLOR_DD : COLOR_DU;
+                pixels[y * size + x] = color;
+            }
+        }
+        return Bitmap.createBitmap( pixels, size, size, Bitmap.Config.ARGB_8888 );
+    }
+
+    /**
+     * An ellipse split diagonally between A and B, with a softened edge, a patch of an unknown
+     * color, and a transparent corner.
+     */
+    private static Bitmap groupAbMask()
+    {
+        final int width = 40;
+        final int height = 30;
+        final int[] pixels = new int[width * height];
+        for( int y = 0; y < height; y++ )
+        {
+            for( int x = 0; x < width; x++ )
+            {
+                final float dX = ( x - width / 2 ) / ( width / 2f );
+                final float dY = ( y - height / 2 ) / ( height / 2f );
+                final int split = y * width / height;
+                final int color;
+                if( x < 4 && y < 4 )
+                    color = TRANSPARENT;
+                else if( dX * dX + dY * dY > 1 )
+                    color = BLACK;
+                else if( y >= 14 && y < 17 && x >= 2 && x < 6 )
+                    color = COLOR_UNKNOWN;
+                else if( x == split )
+                    color = COLOR_A_EDGE;
+                else
+                    color = x < split ? COLOR_A : COLOR_B;
+                pixels[y * width + x] = color;
+            }
+        }
+        return Bitmap.createBitmap( pixels, width, height, Bitmap.Config.ARGB_8888 );
+    }
+
+    /**
+     * A square split into the four C buttons.
+     */
+    private static Bitmap groupCMask()
+    {
+        final int size = 25;
+        final int[] pixels = new int[size * size];
+        for( int y = 0; y < size; y++ )
+        {
+            for( int x = 0; x < size; x++ )
+            {
+                final int dX = x - size / 2;
+                final int dY = y - size / 2;
+                final int color;
+                if( Math.abs( dX ) > Math.abs( dY ) )
+                    color = dX > 0 ? COLOR_CR : COLOR_CL;
+                else
+                    color = dY > 0 ? COLOR_CD : COLOR_CU;
+                pixels[y * size + x] = color;
+            }
+        }
+        return Bitmap.createBitmap( pixels, size, size, Bitmap.Config.ARGB_8888 );
+    }
+
+    /**
+     * The hit test TouchMap used before the hit grid: the first mask with a colored pixel at the
+     * touch location wins.
+     */
+    private int getButtonPressByMask( int xLocation, int yLocation )
+    {
+        for( Image mask : mMasks )
+        {
+            final int left = mask.x;
+            final int right = left + (int) ( mask.width * mask.scale );
+            final int bottom = mask.y;
+            final int top = bottom + (int) ( mask.height * mask.scale );
+
+            if( xLocation >= left && xLocation < right && yLocation >= bottom && yLocation < top )
+            {
+                final int c = mask.image.getPixel( (int) ( ( xLocation - mask.x ) / mask.scale ),
+                        (int) ( ( yLocation - mask.y ) / mask.scale ) );
+                final int rgb = c & 0x00ffffff;
+                if( rgb > 0 )
+                    return getButtonFromColor( rgb );
+            }
+        }
+        return TouchMap.UNMAPPED;
+    }
+
+    /**
+     * Matches a mask color to the closest button color, within the tolerance used by TouchMap.
+     */
+    private static int getButtonFromColor( int rgb )
+    {
+        int closestMatch = TouchMap.UNMAPPED;
+        int matchDif = 10 * 10;
+        for( int[] buttonColor : BUTTON_COLORS )
+        {
+            final int difR = ( ( rgb >> 16 ) & 0xFF ) - ( ( buttonColor[0] >> 16 ) & 0xFF );
+            final int difG = ( ( rgb >> 8 ) & 0xFF ) - ( ( buttonColor[0] >> 8 ) & 0xFF );
+            final int difB = ( rgb & 0xFF ) - ( buttonColor[0] & 0xFF );
+            final int dif = difR * difR + difG * difG + difB * difB;
+            if( dif < matchDif )
+            {
+                closestMatch = buttonColor[1];
+                matchDif = dif;
+            }
+        }
+        return closestMatch;
+    }
+
+    private static int cellCenter( int location )
+    {
+        return location / TouchMap.HIT_GRID_CELL_SIZE * TouchMap.HIT_GRID_CELL_SIZE
+                + TouchMap.HIT_GRID_CELL_SIZE / 2;
+    }
+
+    /**
+     * Checks every pixel of the digitizer against the old hit test at the center of its cell.
+     */
+    private void assertMatchesMasks()
+    {
+        for( int y = 0; y < HEIGHT; y++ )
+        {
+            for( int x = 0; x < WIDTH; x++ )
+            {
+                assertEquals( x + "," + y, getButtonPressByMask( cellCenter( x ), cellCenter( y ) ),
+                        mMap.getButtonPress( x, y ) );
+            }
+        }
+    }
+
+    @Test
+    public void gridMatchesMasksAtCellCenters()
+    {
+        mMap.resize( WIDTH, HEIGHT );
+        assertMatchesMasks();
+    }
+
+    @Test
+    public void gridMatchesMasksAwayFromEdges()
+    {
+        mMap.resize( WIDTH, HEIGHT );
+
+        // Touches only differ from the old hit test in cells that straddle the edge of a button
+        final int cellSize = TouchMap.HIT_GRID_CELL_SIZE;
+        int uniformCells = 0;
+        for( int row = 0; row * cellSize < HEIGHT; row++ )
+        {
+            for( int column = 0; column * cellSize < WIDTH; column++ )
+            {
+                final int button = getButtonPressByMask( column * cellSize, row * cellSize );
+                boolean isUniform = true;
+                for( int y = row * cellSize; y < Math.min( HEIGHT, ( row + 1 ) * cellSize ); y++ )
+                {
+                    for( int x = column * cellSize; x < Math.min( WIDTH, ( column + 1 ) * cellSize ); x++ )
+                        isUniform &= getButtonPressByMask( x, y ) == button;
+                }
+
+                if( isUniform )
+                {
+                    assertEquals( column + "," + row, button,
+                            mMap.getButtonPress( column * cellSize, row * cellSize ) );
+                    uniformCells++;
+                }
+            }
+        }
+        assertTrue( uniformCells > 0 );
+    }
+
+    @Test
+    public void buttonsUnderTouches()
+    {
+        mMap.resize( WIDTH, HEIGHT );
+        final ArrayList<Integer> buttons = new ArrayList<Integer>();
+        for( int y = 0; y < HEIGHT; y++ )
+        {
+            for( int x = 0; x < WIDTH; x++ )
+            {
+                final int button = mMap.getButtonPress( x, y );
+                if( !buttons.contains( button ) )
+                    buttons.add( button );
+            }
+        }
+
+        // Every button is reachable, including A through its softened edge alone
+        for( int[] buttonColor : BUTTON_COLORS )
+            assertTrue( "button " + buttonColor[1], buttons.contains( buttonColor[1] ) );
+        assertTrue( buttons.contains( TouchMap.UNMAPPED ) );
+        assertEquals( AbstractController.BTN_A, getButtonFromColor( COLOR_A_EDGE & 0x00ffffff ) );
+        assertEquals( TouchMap.UNMAPPED, getButtonFromColor( COLOR_UNKNOWN & 0x00ffffff ) );
+    }
+
+    @Test
+    public void touchesOutsideDigitizer()
+    {
+        // No grid until the digitizer size is known
+        assertEquals( TouchMap.UNMAPPED, mMap.getButtonPress( WIDTH / 2, HEIGHT / 2 ) );
+
+        mMap.resize( WIDTH, HEIGHT );
+        assertEquals( TouchMap.UNMAPPED, mMap.getButtonPress( -1, HEIGHT - 1 ) );
+        assertEquals( TouchMap.UNMAPPED, mMap.getButtonPress( WIDTH - 1, -1 ) );
+        assertEquals( TouchMap.UNMAPPED, mMap.getButtonPress( WIDTH + TouchMap.HIT_GRID_CELL_SIZE, 0 ) );
+        assertEquals( TouchMap.UNMAPPED, mMap.getButtonPress( 0, HEIGHT + TouchMap.HIT_GRID_CELL_SIZE ) );
+
+        // The start button sits in the bottom right corner
+        assertEquals( AbstractController.START, mMap.getButtonPress( WIDTH - 1, HEIGHT - 4 ) );
+    }
+
+    @Test
+    public void gridFollowsMovedButton()
+    {
+        mMap.resize( WIDTH, HEIGHT );
+
+        final Profile profile = new Profile( false, "test", null );
+        profile.putInt( "dpad-x", 0 );
+        profile.putInt( "dpad-y", 100 );
+        mMap.updateButton( profile, "dpad", WIDTH, HEIGHT );
+        assertMatchesMasks();
+
+        // The d-pad no longer covers the A/B group
+        final Image dpad = mMasks.get( 0 );
+        assertEquals( 0, dpad.x );
+        assertEquals( AbstractController.DPD_D, mMap.getButtonPress( 30, HEIGHT - 4 ) );
+    }
+
+    @Test
+    public void gridFollowsResize()
+    {
+        mMap.resize( WIDTH, HEIGHT );
+        mMap.resize( WIDTH / 2 + 40, HEIGHT / 2 + 40 );
+
+        final int width = WIDTH / 2 + 40;
+        final int height = HEIGHT / 2 + 40;
+        for( int y = 0; y < height; y++ )
+        {
+            for( int x = 0; x < width; x++ )
+            {
+                assertEquals( x + "," + y, getButtonPressByMask( cellCenter( x ), cellCenter( y ) ),
+                        mMap.getButtonPress( x, y ) );
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2026 Mupen64PlusAE contributors
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.persistent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith( RobolectricTestRunner.class )
+@Config( manifest = Config.NONE )
+public class ConfigFileTest
+{
+    private static final String CONTENT =
+            "# Preamble comment\n" +
+            "version=2\n" +
+            "\n" +
+            "[Video-General]\n" +
+            "; Width of the screen\n" +
+            "ScreenWidth=640\n" +
+            "ScreenHeight=480\n" +
+            "// Old style comment\n" +
+            "Fullscreen=False\n" +
+            "this line is not a parameter\n" +
+            "\n" +
+            "[Input]\n" +
+            "plugged=True\n" +
+            "mapping=\"A B C\"\n";
+
+    private File mDir;
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        mDir = File.createTempFile( "ConfigFileTest", "" );
+        assertTrue( mDir.delete() );
+        assertTrue( mDir.mkdir() );
+        mFile = new File( mDir, "test.cfg" );
+    }
+
+    @After
+    public void tearDown()
+    {
+        final File[] files = mDir.listFiles();
+        if( files != null )
+        {
+            for( File file : files )
+                file.delete();
+        }
+        mDir.delete();
+    }
+
+    private void write( String content ) throws IOException
+    {
+        final OutputStream out = new FileOutputStream( mFile );
+        try
+        {
+            out.write( content.getBytes( "UTF-8" ) );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private String read() throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final InputStream in = new FileInputStream( mFile );
+        try
+        {
+            final byte[] buffer = new byte[4096];
+            int count;
+            while( ( count = in.read( buffer ) ) > 0 )
+                bytes.write( buffer, 0, count );
+        }
+        finally
+        {
+            in.close();
+        }
+        return bytes.toString( "UTF-8" );
+    }
+
+    @Test
+    public void parse() throws IOException
+    {
+        write( CONTENT );
+        final ConfigFile config = new ConfigFile( mFile.getPath() );
+
+        assertEquals( Arrays.asList( ConfigFile.SECTIONLESS_NAME, "Video-General", "Input" ),
+                new ArrayList<String>( config.keySet() ) );
+        assertEquals( "2", config.get( ConfigFile.SECTIONLESS_NAME, "version" ) );
+        assertEquals( "640", config.get( "Video-General", "ScreenWidth" ) );
+        assertEquals( "False", config.get( "Video-General", "Fullscreen" ) );
+        assertEquals( "\"A B C\"", config.get( "Input", "mapping" ) );
+        assertNull( config.get( "Input", "missing" ) );
+        assertNull( config.get( "Missing", "plugged" ) );
+        assertFalse( config.isDirty() );
+    }
+
+    @Test
+    public void saveKeepsCommentsAndOrder() throws IOException
+    {
+        write( CONTENT );
+        ConfigFile config = new ConfigFile( mFile.getPath() );
+        config.put( "Video-General", "ScreenWidth", "1280" );
+        assertTrue( config.isDirty() );
+        assertTrue( config.save() );
+        assertFalse( config.isDirty() );
+
+        // Only the changed line differs
+        assertEquals( CONTENT.replace( "ScreenWidth=640", "ScreenWidth=1280" ), read() );
+
+        config = new ConfigFile( mFile.getPath() );
+        assertEquals( Arrays.asList( ConfigFile.SECTIONLESS_NAME, "Video-General", "Input" ),
+                new ArrayList<String>( config.keySet() ) );
+        assertEquals( "1280", config.get( "Video-General", "ScreenWidth" ) );
+        assertEquals( "480", config.get( "Video-General", "ScreenHeight" ) );
+    }
+
+    @Test
+    public void saveAddsAndRemoves() throws IOException
+    {
+        write( CONTENT );
+        ConfigFile config = new ConfigFile( mFile.getPath() );
+        config.put( "Video-General", "ScreenHeight", null );
+        config.put( "Video-General", "VerticalSync", "True" );
+        config.put( "Audio", "volume", "80" );
+        config.remove( "Input" );
+        assertTrue( config.save() );
+
+        // New parameters go at the end of their section, new sections at the end of the file
+        final String expected = CONTENT
+                .replace( "ScreenHeight=480\n", "" )
+                .replace( "this line is not a parameter\n\n", "this line is not a parameter\n\nVerticalSync=True\n" )
+                .replace( "[Input]\nplugged=True\nmapping=\"A B C\"\n", "" )
+                + "[Audio]\nvolume=80\n";
+        assertEquals( expected, read() );
+
+        config = new ConfigFile( mFile.getPath() );
+        assertEquals( Arrays.asList( ConfigFile.SECTIONLESS_NAME, "Video-General", "Audio" ),
+                new ArrayList<String>( config.keySet() ) );
+        assertNull( config.get( "Video-General", "ScreenHeight" ) );
+        assertEquals( "True", config.get( "Video-General", "VerticalSync" ) );
+        assertEquals( "80", config.get( "Audio", "volume" ) );
+    }
+
+    @Test
+    public void putReplacesParametersDifferingByCase() throws IOException
+    {
+        write( "[Section]\nkey=1\nKEY=2\nother=3\n" );
+        final ConfigFile config = new ConfigFile( mFile.getPath() );
+        config.put( "Section", "Key", "4" );
+        assertTrue( config.save() );
+
+        assertEquals( "[Section]\nother=3\nKey=4\n", read() );
+    }
+
+    @Test
+    public void repeatedParameterKeepsFirstLine() throws IOException
+    {
+        write( "[Section]\nkey=1\nother=2\nkey=3\n" );
+        final ConfigFile config = new ConfigFile( mFile.getPath() );
+        assertEquals( "3", config.get( "Section", "key" ) );
+
+        config.put( "Section", "other", "4" );
+        assertTrue( config.save() );
+        assertEquals( "[Section]\nkey=3\nother=4\n", read() );
+    }
+
+    @Test
+    public void unmodifiedFileIsNotWritten() throws IOException
+    {
+        write( CONTENT );
+        assertTrue( mFile.setLastModified( 0 ) );
+
+        final ConfigFile config = new ConfigFile( mFile.getPath() );
+        config.put( "Video-General", "ScreenWidth", "640" );
+        assertFalse( config.isDirty() );
+        assertTrue( config.save() );
+        assertEquals( 0, mFile.lastModified() );
+    }
+
+    @Test
+    public void missingFileIsCreated() throws IOException
+    {
+        final ConfigFile config = new ConfigFile( mFile.getPath() );
+        assertTrue( config.isDirty() );
+
+        config.put( "Section", "key", "value" );
+        assertTrue( config.save() );
+        assertEquals( "[Section]\nkey=value\n", read() );
+    }
+
+    @Test
+    public void saveLeavesNoTemporaryFiles() throws IOException
+    {
+        write( CONTENT );
+        final ConfigFile config = new ConfigFile( mFile.getPath() );
+        config.put( "Input", "plugged", "False" );
+        assertTrue( config.save() );
+
+        final List<String> names = Arrays.asList( mDir.list() );
+        assertEquals( Arrays.asList( mFile.getName() ), names );
+    }
+}
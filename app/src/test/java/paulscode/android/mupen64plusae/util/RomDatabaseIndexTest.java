@@ -0,0 +1,293 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2026 Mupen64PlusAE contributors
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import paulscode.android.mupen64plusae.persistent.ConfigFile;
+import paulscode.android.mupen64plusae.persistent.ConfigFile.ConfigSection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith( RobolectricTestRunner.class )
+@Config( manifest = Config.NONE )
+public class RomDatabaseIndexTest
+{
+    /** The ROM database shipped with the app, relative to the module. */
+    private static final String SHIPPED_INI = "src/main/assets/mupen64plus_data/mupen64plus.ini";
+
+    private static final String MD5_A = "0123456789ABCDEF0123456789ABCDEF";
+    private static final String MD5_A_BAD = "FEDCBA9876543210FEDCBA9876543210";
+    private static final String MD5_B_E = "00000000000000000000000000000001";
+    private static final String MD5_B_J = "80000000000000000000000000000000";
+
+    private static final String INI =
+            "; ROM database\n" +
+            "\n" +
+            "[" + MD5_A + "]\n" +
+            "GoodName=Game A (U) [!]\n" +
+            "CRC=11111111 22222222\n" +
+            "SaveType=Eeprom 4KB\n" +
+            "Status=3\n" +
+            "Players=2\n" +
+            "Rumble=No\n" +
+            "\n" +
+            "[" + MD5_A_BAD + "]\n" +
+            "GoodName=Game A (U) [b1]\n" +
+            "CRC=11111111 22222222\n" +
+            "RefMD5=" + MD5_A + "\n" +
+            "\n" +
+            "[" + MD5_B_E + "]\n" +
+            "GoodName=Game B (E)\n" +
+            "CRC=33333333 44444444\n" +
+            "\n" +
+            "[" + MD5_B_J + "]\n" +
+            "GoodName=Game B (J)\n" +
+            "CRC=33333333 44444444\n" +
+            "Players=1\n";
+
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        mDir = File.createTempFile( "RomDatabaseIndexTest", "" );
+        assertTrue( mDir.delete() );
+        assertTrue( mDir.mkdir() );
+    }
+
+    @After
+    public void tearDown()
+    {
+        final File[] files = mDir.listFiles();
+        if( files != null )
+        {
+            for( File file : files )
+                file.delete();
+        }
+        mDir.delete();
+    }
+
+    private static void write( File file, byte[] content ) throws IOException
+    {
+        final OutputStream out = new FileOutputStream( file );
+        try
+        {
+            out.write( content );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private File writeIni( String content ) throws IOException
+    {
+        final File iniFile = new File( mDir, "mupen64plus.ini" );
+        write( iniFile, content.getBytes( "UTF-8" ) );
+        return iniFile;
+    }
+
+    @Test
+    public void entryFields() throws IOException
+    {
+        final RomDatabaseIndex index = RomDatabaseIndex.open( writeIni( INI ).getPath() );
+        assertNotNull( index );
+
+        final int a = index.findMd5( MD5_A );
+        assertTrue( a >= 0 );
+        assertEquals( "Game A (U) [!]", index.getGoodName( a ) );
+        assertEquals( "11111111 22222222", index.getCrc( a ) );
+        assertEquals( "Eeprom 4KB", index.getSaveType( a ) );
+        assertEquals( 3, index.getStatus( a ) );
+        assertEquals( 2, index.getPlayers( a ) );
+        assertFalse( index.getRumble( a ) );
+
+        // Fields missing from the database take the defaults
+        final int b = index.findMd5( MD5_B_E );
+        assertTrue( b >= 0 );
+        assertNull( index.getSaveType( b ) );
+        assertEquals( 0, index.getStatus( b ) );
+        assertEquals( 4, index.getPlayers( b ) );
+        assertTrue( index.getRumble( b ) );
+    }
+
+    @Test
+    public void referencedEntry() throws IOException
+    {
+        final RomDatabaseIndex index = RomDatabaseIndex.open( writeIni( INI ).getPath() );
+
+        // The name and CRC are the entry's own, the rest comes from the referenced entry
+        final int bad = index.findMd5( MD5_A_BAD );
+        assertTrue( bad >= 0 );
+        assertEquals( "Game A (U) [b1]", index.getGoodName( bad ) );
+        assertEquals( "11111111 22222222", index.getCrc( bad ) );
+        assertEquals( "Eeprom 4KB", index.getSaveType( bad ) );
+        assertEquals( 3, index.getStatus( bad ) );
+        assertEquals( 2, index.getPlayers( bad ) );
+        assertFalse( index.getRumble( bad ) );
+    }
+
+    @Test
+    public void md5Lookups() throws IOException
+    {
+        final RomDatabaseIndex index = RomDatabaseIndex.open( writeIni( INI ).getPath() );
+
+        assertEquals( index.findMd5( MD5_A ), index.findMd5( MD5_A.toLowerCase() ) );
+        assertTrue( index.findMd5( MD5_B_J ) >= 0 );
+        assertEquals( -1, index.findMd5( "00000000000000000000000000000002" ) );
+        assertEquals( -1, index.findMd5( "not an md5" ) );
+        assertEquals( -1, index.findMd5( null ) );
+    }
+
+    @Test
+    public void crcLookups() throws IOException
+    {
+        final RomDatabaseIndex index = RomDatabaseIndex.open( writeIni( INI ).getPath() );
+
+        // Entries sharing a CRC are found in database order
+        assertArrayEquals( new int[] { index.findMd5( MD5_B_E ), index.findMd5( MD5_B_J ) },
+                index.findCrc( "33333333 44444444" ) );
+        assertArrayEquals( new int[] { index.findMd5( MD5_A ), index.findMd5( MD5_A_BAD ) },
+                index.findCrc( "11111111 22222222" ) );
+        assertEquals( 0, index.findCrc( "55555555 66666666" ).length );
+        assertEquals( 0, index.findCrc( "3333333344444444" ).length );
+        assertEquals( 0, index.findCrc( null ).length );
+    }
+
+    @Test
+    public void indexReusedUntilIniChanges() throws IOException
+    {
+        final File iniFile = writeIni( INI );
+        final File indexFile = new File( iniFile.getPath() + ".idx" );
+
+        assertNotNull( RomDatabaseIndex.open( iniFile.getPath() ) );
+        assertTrue( indexFile.exists() );
+
+        // An index that is still current is mapped as it is
+        assertTrue( indexFile.setLastModified( 0 ) );
+        RomDatabaseIndex index = RomDatabaseIndex.open( iniFile.getPath() );
+        assertEquals( 0, indexFile.lastModified() );
+        assertEquals( "Game B (J)", index.getGoodName( index.findMd5( MD5_B_J ) ) );
+
+        // A changed database is indexed again
+        writeIni( INI.replace( "Game B (J)", "Game B (Japan)" ) );
+        index = RomDatabaseIndex.open( iniFile.getPath() );
+        assertEquals( "Game B (Japan)", index.getGoodName( index.findMd5( MD5_B_J ) ) );
+    }
+
+    @Test
+    public void corruptIndexIsRegenerated() throws IOException
+    {
+        final File iniFile = writeIni( INI );
+        write( new File( iniFile.getPath() + ".idx" ), new byte[64] );
+
+        final RomDatabaseIndex index = RomDatabaseIndex.open( iniFile.getPath() );
+        assertEquals( "Game A (U) [!]", index.getGoodName( index.findMd5( MD5_A ) ) );
+    }
+
+    @Test
+    public void missingIni()
+    {
+        assertNull( RomDatabaseIndex.open( new File( mDir, "missing.ini" ).getPath() ) );
+    }
+
+    @Test
+    public void shippedDatabaseRoundTrip() throws IOException
+    {
+        final File shippedIni = new File( SHIPPED_INI );
+        assertTrue( shippedIni.getAbsolutePath(), shippedIni.exists() );
+
+        // The index is written next to the database, keep it out of the source tree
+        final File iniFile = new File( mDir, "mupen64plus.ini" );
+        final byte[] content = new byte[(int) shippedIni.length()];
+        final DataInputStream in = new DataInputStream( new FileInputStream( shippedIni ) );
+        try
+        {
+            in.readFully( content );
+        }
+        finally
+        {
+            in.close();
+        }
+        write( iniFile, content );
+
+        final RomDatabaseIndex index = RomDatabaseIndex.open( iniFile.getPath() );
+        final ConfigFile ini = new ConfigFile( iniFile.getPath() );
+        int count = 0;
+        for( String md5 : ini.keySet() )
+        {
+            final ConfigSection section = ini.get( md5 );
+            if( md5.length() != 32 )
+                continue;
+
+            final int entry = index.findMd5( md5 );
+            assertTrue( md5, entry >= 0 );
+            assertEquals( md5, section.get( "GoodName" ), index.getGoodName( entry ) );
+            assertEquals( md5, section.get( "CRC" ), index.getCrc( entry ) );
+
+            final String refMd5 = section.get( "RefMD5" );
+            final ConfigSection data = refMd5 != null && refMd5.length() > 0 ? ini.get( refMd5 ) : section;
+            if( data != null )
+            {
+                final String status = data.get( "Status" );
+                final String players = data.get( "Players" );
+                final String rumble = data.get( "Rumble" );
+                assertEquals( md5, data.get( "SaveType" ), index.getSaveType( entry ) );
+                assertEquals( md5, status != null ? Integer.parseInt( status ) : 0, index.getStatus( entry ) );
+                assertEquals( md5, players != null ? Integer.parseInt( players ) : 4, index.getPlayers( entry ) );
+                assertEquals( md5, rumble == null || rumble.length() == 0 || "Yes".equals( rumble ),
+                        index.getRumble( entry ) );
+            }
+
+            if( section.get( "CRC" ) != null )
+            {
+                final int[] crcEntries = index.findCrc( section.get( "CRC" ) );
+                assertTrue( md5, Arrays.binarySearch( sorted( crcEntries ), entry ) >= 0 );
+            }
+            count++;
+        }
+        assertTrue( count > 1000 );
+    }
+
+    private static int[] sorted( int[] values )
+    {
+        final int[] copy = values.clone();
+        Arrays.sort( copy );
+        return copy;
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Mupen64PlusAE, an N64 emulator for the Android platform
+ *
+ * Copyright (C) 2026 Mupen64PlusAE contributors
+ *
+ * This file is part of Mupen64PlusAE.
+ *
+ * Mupen64PlusAE is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Mupen64PlusAE is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Mupen64PlusAE. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package paulscode.android.mupen64plusae.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class RomDigestTest
+{
+    /** Larger than the read buffer, so that the image is read in more than one block. */
+    private static final int IMAGE_SIZE = 1024 * 1024 + 0x1000;
+
+    /** MD5 of the image built by {@link #buildZ64()}, computed separately. */
+    private static final String IMAGE_MD5 = "18833875D2A3F291DA58D0ED70534D59";
+
+    private static final String IMAGE_NAME = "TEST ROM";
+
+    /**
+     * Builds a ROM image in its native byte order.
+     */
+    private static byte[] buildZ64()
+    {
+        final byte[] image = new byte[IMAGE_SIZE];
+        for( int i = 0; i < image.length; i++ )
+            image[i] = (byte) ( i * 7 + ( i >> 11 ) );
+
+        image[0] = (byte) 0x80;
+        image[1] = 0x37;
+        image[2] = 0x12;
+        image[3] = 0x40;
+        for( int i = 0x20; i < 0x34; i++ )
+            image[i] = (byte) ( i - 0x20 < IMAGE_NAME.length() ? IMAGE_NAME.charAt( i - 0x20 ) : ' ' );
+        return image;
+    }
+
+    /**
+     * Swaps the bytes of each short, as in a .v64 image.
+     */
+    private static byte[] toV64( byte[] z64 )
+    {
+        final byte[] image = new byte[z64.length];
+        for( int i = 0; i < z64.length; i += 2 )
+        {
+            image[i] = z64[i + 1];
+            image[i + 1] = z64[i];
+        }
+        return image;
+    }
+
+    /**
+     * Reverses the bytes of each int, as in a .n64 image.
+     */
+    private static byte[] toN64( byte[] z64 )
+    {
+        final byte[] image = new byte[z64.length];
+        for( int i = 0; i < z64.length; i += 4 )
+        {
+            image[i] = z64[i + 3];
+            image[i + 1] = z64[i + 2];
+            image[i + 2] = z64[i + 1];
+            image[i + 3] = z64[i];
+        }
+        return image;
+    }
+
+    private static RomDigest compute( byte[] image ) throws IOException
+    {
+        return RomDigest.compute( Channels.newChannel( new ByteArrayInputStream( image ) ) );
+    }
+
+    @Test
+    public void nativeImage() throws IOException
+    {
+        final RomDigest digest = compute( buildZ64() );
+        assertEquals( IMAGE_MD5, digest.md5 );
+        assertEquals( IMAGE_NAME, digest.header.name );
+    }
+
+    @Test
+    public void byteSwappedImage() throws IOException
+    {
+        final byte[] image = toV64( buildZ64() );
+        assertEquals( 0x37, image[0] );
+
+        final RomDigest digest = compute( image );
+        assertEquals( IMAGE_MD5, digest.md5 );
+        assertEquals( IMAGE_NAME, digest.header.name );
+    }
+
+    @Test
+    public void wordSwappedImage() throws IOException
+    {
+        final byte[] image = toN64( buildZ64() );
+        assertEquals( 0x40, image[0] );
+
+        final RomDigest digest = compute( image );
+        assertEquals( IMAGE_MD5, digest.md5 );
+        assertEquals( IMAGE_NAME, digest.header.name );
+    }
+
+    @Test
+    public void copyKeepsOriginalByteOrder() throws IOException
+    {
+        final byte[] image = toV64( buildZ64() );
+        final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        final RomDigest digest = RomDigest.compute( Channels.newChannel( new ByteArrayInputStream( image ) ),
+                Channels.newChannel( copy ) );
+        assertEquals( IMAGE_MD5, digest.md5 );
+        assertArrayEquals( image, copy.toByteArray() );
+    }
+
+    @Test
+    public void emptyImage() throws IOException
+    {
+        // MD5 of no data
+        assertEquals( "D41D8CD98F00B204E9800998ECF8427E", compute( new byte[0] ).md5 );
+    }
+
+    @Test
+    public void hexString()
+    {
+        assertEquals( "00FF7F80", RomDigest.toHexString( new byte[] { 0x00, (byte) 0xFF, 0x7F, (byte) 0x80 } ) );
+    }
+}